@@ -0,0 +1,93 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.budget;
+
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * Thrown by a mock execution that went over its performance budget. The message lists the violated limits, and the
+ * budget report, see {@link PerformanceBudget#check(String, java.util.Map)}, is the extended info of the exception, so a
+ * BoxLang {@code catch} can read it from {@code e.extendedInfo}.
+ */
+public class BudgetExceededException extends BoxRuntimeException {
+
+	/**
+	 * The type BoxLang code can catch
+	 */
+	public static final String	TYPE	= "PerformanceBudgetExceeded";
+
+	/**
+	 * The budget report
+	 */
+	private final IStruct		report;
+
+	/**
+	 * Create the failure of an execution
+	 *
+	 * @param request The method and path of the execution
+	 * @param report  The budget report, with at least one violation
+	 */
+	public BudgetExceededException( String request, IStruct report ) {
+		super(
+		    "The performance budget [" + report.get( Key.of( "route" ) ) + "] was exceeded by [" + request + "]: " + describe( report ),
+		    "Measured: " + report.get( Key.of( "measured" ) ),
+		    TYPE,
+		    report,
+		    null
+		);
+		this.report = report;
+	}
+
+	/**
+	 * Describe the violations of a report, e.g. {@code wallMs 812.4 > 500, flushes 3 > 1}
+	 *
+	 * @param report The budget report
+	 *
+	 * @return The description
+	 */
+	private static String describe( IStruct report ) {
+		return ( ( Array ) report.get( Key.of( "violations" ) ) ).stream()
+		    .map( violation -> ( IStruct ) violation )
+		    .map( violation -> violation.get( Key.of( "metric" ) ) + " " + format( violation.get( Key.of( "actual" ) ) ) + " > "
+		        + format( violation.get( Key.of( "limit" ) ) ) )
+		    .collect( Collectors.joining( ", " ) );
+	}
+
+	/**
+	 * @param value A measured value or a limit
+	 *
+	 * @return The value, without decimals when it is whole
+	 */
+	private static String format( Object value ) {
+		double number = ( Double ) value;
+		return number == Math.rint( number ) ? String.valueOf( ( long ) number ) : String.format( Locale.ROOT, "%.1f", number );
+	}
+
+	/**
+	 * @return The budget report: { route, passed, limits, measured, violations, unmeasured }
+	 */
+	public IStruct getReport() {
+		return this.report;
+	}
+}
@@ -0,0 +1,194 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.budget;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ortus.boxlang.runtime.dynamic.casters.DoubleCaster;
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * The limits one mock execution must stay within: wall time, CPU time, allocated bytes, response bytes and response
+ * flushes. A metric without a limit is not checked.
+ * <p>
+ * CPU time and allocated bytes are read from the executing thread, so work handed to other threads is not counted, and they
+ * cannot be measured at all on virtual threads. A limit on a metric that could not be measured is reported as unmeasured
+ * rather than failed.
+ */
+public class PerformanceBudget {
+
+	/**
+	 * The metrics a budget can limit
+	 */
+	public static final String			WALL_MS			= "wallMs";
+	public static final String			CPU_MS			= "cpuMs";
+	public static final String			ALLOCATED_BYTES	= "allocatedBytes";
+	public static final String			RESPONSE_BYTES	= "responseBytes";
+	public static final String			FLUSHES			= "flushes";
+	public static final List<String>	METRICS			= List.of( WALL_MS, CPU_MS, ALLOCATED_BYTES, RESPONSE_BYTES, FLUSHES );
+
+	/**
+	 * The limits by metric
+	 */
+	private final Map<String, Double>	limits			= new LinkedHashMap<>();
+
+	/**
+	 * Create a budget without limits
+	 */
+	public PerformanceBudget() {
+	}
+
+	/**
+	 * Create a budget from a BoxLang struct or a parsed JSON object of limits by metric: { wallMs, cpuMs, allocatedBytes,
+	 * responseBytes, flushes }
+	 *
+	 * @param config The limits
+	 *
+	 * @return The budget
+	 */
+	public static PerformanceBudget fromStruct( Map<?, ?> config ) {
+		PerformanceBudget budget = new PerformanceBudget();
+		config.forEach( ( metric, limit ) -> budget.setLimit( name( metric ), DoubleCaster.cast( limit ) ) );
+		return budget;
+	}
+
+	/**
+	 * @param key A key of a BoxLang struct or of a parsed JSON object
+	 *
+	 * @return The key name
+	 */
+	static String name( Object key ) {
+		return key instanceof Key boxKey ? boxKey.getName() : String.valueOf( key );
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Fluent setters
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * @param metric The metric: wallMs, cpuMs, allocatedBytes, responseBytes or flushes, case insensitive
+	 * @param limit  The highest value that passes
+	 *
+	 * @return This budget for chaining
+	 */
+	public PerformanceBudget setLimit( String metric, double limit ) {
+		String name = METRICS.stream().filter( candidate -> candidate.equalsIgnoreCase( metric ) ).findFirst()
+		    .orElseThrow( () -> new BoxRuntimeException( "Unknown performance budget metric [" + metric + "], expected one of " + METRICS ) );
+		if ( limit < 0 ) {
+			throw new BoxRuntimeException( "The performance budget limit of [" + name + "] must not be negative, found [" + limit + "]" );
+		}
+		this.limits.put( name, limit );
+		return this;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Checking
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Create the budget of a route: the limits of this budget, overridden by the ones of another
+	 *
+	 * @param override The budget whose limits win
+	 *
+	 * @return A new budget
+	 */
+	public PerformanceBudget merge( PerformanceBudget override ) {
+		PerformanceBudget merged = new PerformanceBudget();
+		merged.limits.putAll( this.limits );
+		merged.limits.putAll( override.limits );
+		return merged;
+	}
+
+	/**
+	 * Check measured values against the limits
+	 *
+	 * @param route    The name of the budget checked, reported as is
+	 * @param measured The measured values by metric, negative when a metric could not be measured
+	 *
+	 * @return The report: { route, passed, limits, measured, violations, unmeasured }, every violation being
+	 *         { metric, limit, actual, ratio }
+	 */
+	public IStruct check( String route, Map<String, Double> measured ) {
+		Array	violations	= new Array();
+		Array	unmeasured	= new Array();
+		IStruct	values		= new Struct( Struct.TYPES.LINKED );
+		measured.forEach( values::put );
+		this.limits.forEach( ( metric, limit ) -> {
+			double actual = measured.getOrDefault( metric, -1.0 );
+			if ( actual < 0 ) {
+				unmeasured.add( metric );
+			} else if ( actual > limit ) {
+				violations.add( Struct.linkedOf(
+				    "metric", metric,
+				    "limit", limit,
+				    "actual", actual,
+				    "ratio", limit == 0 ? Double.POSITIVE_INFINITY : actual / limit
+				) );
+			}
+		} );
+		return Struct.linkedOf(
+		    "route", route,
+		    "passed", violations.isEmpty(),
+		    "limits", toStruct(),
+		    "measured", values,
+		    "violations", violations,
+		    "unmeasured", unmeasured
+		);
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Getters
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * @param metric The metric
+	 *
+	 * @return The limit of the metric, or -1 if it is not limited
+	 */
+	public double getLimit( String metric ) {
+		return this.limits.getOrDefault( metric, -1.0 );
+	}
+
+	/**
+	 * @return True if no metric is limited
+	 */
+	public boolean isEmpty() {
+		return this.limits.isEmpty();
+	}
+
+	/**
+	 * @return The limits by metric
+	 */
+	public IStruct toStruct() {
+		IStruct result = new Struct( Struct.TYPES.LINKED );
+		this.limits.forEach( result::put );
+		return result;
+	}
+}
@@ -0,0 +1,292 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.budget;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.runtime.types.util.JSONUtil;
+
+/**
+ * The performance budgets of a webroot: a default budget and per-route budgets, whose limits override the default ones.
+ * <p>
+ * A route is a path, optionally preceded by a method ({@code GET /api/users/*}). The path is matched exactly, or as a prefix
+ * when it ends with {@code *}. When several routes match a request, an exact path wins over a prefix, a longer prefix over a
+ * shorter one, and a route with a method over one without.
+ * <p>
+ * Budgets are usually kept next to the code they guard, in a JSON file of the webroot:
+ *
+ * <pre>
+ * {
+ *   "default": { "wallMs": 500, "allocatedBytes": 50000000 },
+ *   "routes": {
+ *     "GET /api/users/*": { "wallMs": 100, "flushes": 1 },
+ *     "/reports/export.bxm": { "wallMs": 5000, "responseBytes": 10000000 }
+ *   }
+ * }
+ * </pre>
+ *
+ * Loaded files are cached until they change.
+ */
+public class PerformanceBudgets {
+
+	/**
+	 * The loaded budget files, by absolute path
+	 */
+	private static final Map<Path, LoadedFile>	FILES		= new ConcurrentHashMap<>();
+
+	/**
+	 * The budget of every request
+	 */
+	private volatile PerformanceBudget			defaults	= new PerformanceBudget();
+
+	/**
+	 * The route budgets, in the order they were added
+	 */
+	private final List<RouteBudget>				routes		= new CopyOnWriteArrayList<>();
+
+	/**
+	 * A budget file and the modification time it was loaded at
+	 *
+	 * @param modified The modification time of the file in milliseconds
+	 * @param budgets  The budgets of the file
+	 */
+	private record LoadedFile( long modified, PerformanceBudgets budgets ) {
+	}
+
+	/**
+	 * The budget of a route
+	 *
+	 * @param name   The route as declared
+	 * @param method The method matched, upper case, {@code *} for any
+	 * @param path   The path matched, without the trailing {@code *} of a prefix
+	 * @param prefix Whether the path is a prefix
+	 * @param budget The route limits
+	 */
+	private record RouteBudget( String name, String method, String path, boolean prefix, PerformanceBudget budget ) {
+
+		/**
+		 * @param requestMethod The request method
+		 * @param requestPath   The request path, without the query string
+		 *
+		 * @return True if the route covers the request
+		 */
+		boolean matches( String requestMethod, String requestPath ) {
+			if ( !this.method.equals( "*" ) && !this.method.equalsIgnoreCase( requestMethod ) ) {
+				return false;
+			}
+			return this.prefix ? requestPath.startsWith( this.path ) : requestPath.equals( this.path );
+		}
+
+		/**
+		 * @return How specific the route is, the most specific matching route wins
+		 */
+		int rank() {
+			return ( this.prefix ? 0 : 1 << 30 ) + this.path.length() * 2 + ( this.method.equals( "*" ) ? 0 : 1 );
+		}
+	}
+
+	/**
+	 * The budget a request is checked against
+	 *
+	 * @param route  The route the budget comes from, {@code default} without one
+	 * @param budget The default limits overridden by the ones of the route
+	 */
+	public record Resolved( String route, PerformanceBudget budget ) {
+	}
+
+	/**
+	 * Create budgets from a BoxLang struct or a parsed JSON object: { default, routes } with the limits of every route by route,
+	 * or the limits of the default budget alone, see {@link PerformanceBudget#fromStruct(Map)}
+	 *
+	 * @param config The budgets
+	 *
+	 * @return The budgets
+	 */
+	public static PerformanceBudgets fromStruct( Map<?, ?> config ) {
+		PerformanceBudgets	budgets		= new PerformanceBudgets();
+		Object				defaults	= value( config, "default" );
+		Object				routes		= value( config, "routes" );
+		if ( defaults == null && routes == null ) {
+			budgets.setDefault( PerformanceBudget.fromStruct( config ) );
+			return budgets;
+		}
+		if ( defaults instanceof Map<?, ?> limits ) {
+			budgets.setDefault( PerformanceBudget.fromStruct( limits ) );
+		}
+		if ( routes instanceof Map<?, ?> byRoute ) {
+			byRoute.forEach( ( route, limits ) -> {
+				if ( ! ( limits instanceof Map<?, ?> map ) ) {
+					throw new BoxRuntimeException( "The performance budget of the route [" + PerformanceBudget.name( route ) + "] must be a struct of limits" );
+				}
+				budgets.addRoute( PerformanceBudget.name( route ), PerformanceBudget.fromStruct( map ) );
+			} );
+		}
+		return budgets;
+	}
+
+	/**
+	 * Load budgets from a JSON file, see {@link #fromStruct(Map)}. The file is parsed again only when it changed.
+	 *
+	 * @param file The JSON file
+	 *
+	 * @return The budgets
+	 */
+	public static PerformanceBudgets load( Path file ) {
+		Path absolute = file.toAbsolutePath().normalize();
+		try {
+			long		modified	= Files.getLastModifiedTime( absolute ).toMillis();
+			LoadedFile	loaded		= FILES.get( absolute );
+			if ( loaded != null && loaded.modified() == modified ) {
+				return loaded.budgets();
+			}
+			Object parsed = JSONUtil.fromJSON( Files.readString( absolute, StandardCharsets.UTF_8 ) );
+			if ( ! ( parsed instanceof Map<?, ?> config ) ) {
+				throw new BoxRuntimeException( "The performance budget file [" + absolute + "] must contain a JSON object" );
+			}
+			PerformanceBudgets budgets = fromStruct( config );
+			FILES.put( absolute, new LoadedFile( modified, budgets ) );
+			return budgets;
+		} catch ( IOException e ) {
+			throw new BoxRuntimeException( "Unable to read the performance budget file [" + absolute + "]", e );
+		}
+	}
+
+	/**
+	 * Load the budget file of a webroot, if it has one
+	 *
+	 * @param webroot  The webroot
+	 * @param fileName The budget file name, relative to the webroot
+	 *
+	 * @return The budgets, or null if the file does not exist
+	 */
+	public static PerformanceBudgets forWebroot( String webroot, String fileName ) {
+		if ( webroot == null || fileName == null || fileName.isBlank() ) {
+			return null;
+		}
+		Path file = Path.of( webroot ).resolve( fileName );
+		return Files.isRegularFile( file ) ? load( file ) : null;
+	}
+
+	/**
+	 * Get a config entry whatever the case of its name
+	 *
+	 * @param config The config
+	 * @param name   The entry name
+	 *
+	 * @return The value, or null if there is no such entry
+	 */
+	private static Object value( Map<?, ?> config, String name ) {
+		return config.entrySet().stream().filter( entry -> PerformanceBudget.name( entry.getKey() ).equalsIgnoreCase( name ) )
+		    .map( Map.Entry::getValue ).findFirst().orElse( null );
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Fluent setters
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * @param budget The budget of every request, the route budgets override its limits
+	 *
+	 * @return These budgets for chaining
+	 */
+	public PerformanceBudgets setDefault( PerformanceBudget budget ) {
+		this.defaults = budget == null ? new PerformanceBudget() : budget;
+		return this;
+	}
+
+	/**
+	 * Add the budget of a route
+	 *
+	 * @param route  The route: a path, exact or a prefix ending with {@code *}, optionally preceded by a method
+	 * @param budget The route limits
+	 *
+	 * @return These budgets for chaining
+	 */
+	public PerformanceBudgets addRoute( String route, PerformanceBudget budget ) {
+		String	trimmed	= route.trim();
+		int		space	= trimmed.indexOf( ' ' );
+		String	method	= space < 0 ? "*" : trimmed.substring( 0, space ).toUpperCase();
+		String	path	= space < 0 ? trimmed : trimmed.substring( space + 1 ).trim();
+		path = path.startsWith( "/" ) ? path : "/" + path;
+		boolean prefix = path.endsWith( "*" );
+		this.routes.add( new RouteBudget( trimmed, method, prefix ? path.substring( 0, path.length() - 1 ) : path, prefix, budget ) );
+		return this;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Resolution
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Find the budget of a request
+	 *
+	 * @param method The request method
+	 * @param path   The request path, with or without its leading slash, a query string is ignored
+	 *
+	 * @return The budget, or null if nothing is limited for the request
+	 */
+	public Resolved resolve( String method, String path ) {
+		String		target	= normalize( path );
+		RouteBudget	best	= null;
+		for ( RouteBudget route : this.routes ) {
+			if ( route.matches( method, target ) && ( best == null || route.rank() > best.rank() ) ) {
+				best = route;
+			}
+		}
+		PerformanceBudget budget = best == null ? this.defaults : this.defaults.merge( best.budget() );
+		return budget.isEmpty() ? null : new Resolved( best == null ? "default" : best.name(), budget );
+	}
+
+	/**
+	 * Normalize a request path the way routes are declared: without the query string and with a leading slash. The mock
+	 * exchange keeps its request path without the leading slash.
+	 *
+	 * @param path The request path, may be null
+	 *
+	 * @return The normalized path
+	 */
+	private static String normalize( String path ) {
+		String	target	= path == null ? "" : path;
+		int		query	= target.indexOf( '?' );
+		target = query < 0 ? target : target.substring( 0, query );
+		return target.startsWith( "/" ) ? target : "/" + target;
+	}
+
+	/**
+	 * @return The budgets: { default, routes } as they are declared in a budget file
+	 */
+	public IStruct toStruct() {
+		IStruct routeLimits = new Struct( Struct.TYPES.LINKED );
+		this.routes.forEach( route -> routeLimits.put( route.name(), route.budget().toStruct() ) );
+		return Struct.linkedOf( "default", this.defaults.toStruct(), "routes", routeLimits );
+	}
+}
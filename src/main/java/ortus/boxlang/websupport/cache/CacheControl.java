@@ -0,0 +1,87 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The parsed directives of a {@code Cache-Control} header.
+ * Directive names are case-insensitive and quoted values are unquoted, e.g. {@code max-age=60, no-cache="Set-Cookie"}.
+ */
+public class CacheControl {
+
+	/**
+	 * The directives without a value map to an empty string
+	 */
+	private final Map<String, String>	directives	= new HashMap<>();
+
+	/**
+	 * Parse a {@code Cache-Control} header
+	 *
+	 * @param header The header value, may be null
+	 *
+	 * @return The parsed directives, empty if the header is null or blank
+	 */
+	public static CacheControl parse( String header ) {
+		CacheControl control = new CacheControl();
+		if ( header == null || header.isBlank() ) {
+			return control;
+		}
+		for ( String directive : header.split( "," ) ) {
+			int		equals	= directive.indexOf( '=' );
+			String	name	= ( equals < 0 ? directive : directive.substring( 0, equals ) ).trim().toLowerCase();
+			String	value	= equals < 0 ? "" : directive.substring( equals + 1 ).trim();
+			if ( value.length() >= 2 && value.startsWith( "\"" ) && value.endsWith( "\"" ) ) {
+				value = value.substring( 1, value.length() - 1 );
+			}
+			if ( !name.isEmpty() ) {
+				control.directives.put( name, value );
+			}
+		}
+		return control;
+	}
+
+	/**
+	 * @param directive The directive name, lower case
+	 *
+	 * @return Whether the directive is present
+	 */
+	public boolean has( String directive ) {
+		return this.directives.containsKey( directive );
+	}
+
+	/**
+	 * Get a delta-seconds directive like {@code max-age}
+	 *
+	 * @param directive The directive name, lower case
+	 *
+	 * @return The seconds, or -1 if the directive is missing or not a number
+	 */
+	public long seconds( String directive ) {
+		String value = this.directives.get( directive );
+		if ( value == null || value.isEmpty() ) {
+			return -1;
+		}
+		try {
+			return Math.max( 0, Long.parseLong( value ) );
+		} catch ( NumberFormatException e ) {
+			return -1;
+		}
+	}
+}
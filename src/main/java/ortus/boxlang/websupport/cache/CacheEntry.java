@@ -0,0 +1,224 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.cache;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+
+/**
+ * A response stored by the {@link HttpCache}: status, headers, body and the freshness it was stored with.
+ * The body is only kept when the storing exchange buffered it, otherwise its length and hash are replayed.
+ */
+class CacheEntry {
+
+	/**
+	 * The headers a 304 answer carries over from the stored response
+	 */
+	private static final String[]			NOT_MODIFIED_HEADERS	= { "Cache-Control", "Content-Location", "Date", "ETag", "Expires", "Last-Modified", "Vary" };
+
+	/**
+	 * The cache key and the request path it belongs to
+	 */
+	final String							key;
+	final String							path;
+
+	/**
+	 * The stored response
+	 */
+	private final int						status;
+	private final String					statusText;
+	private final String					body;
+	private final long						length;
+	private final String					hash;
+
+	/**
+	 * The request header values the response varies on
+	 */
+	private final Map<String, String>		vary;
+
+	/**
+	 * How long the origin took to produce the response
+	 */
+	final long								originNanos;
+
+	/**
+	 * The memory the entry is accounted for in the cache
+	 */
+	final long								size;
+
+	/**
+	 * The response headers, replaced as a whole when the entry is revalidated
+	 */
+	private volatile Map<String, String>	headers;
+
+	/**
+	 * When the entry was stored or last revalidated, on the cache clock
+	 */
+	private volatile long					storedAt;
+
+	/**
+	 * How long the entry is fresh for, in milliseconds
+	 */
+	private volatile long					freshness;
+
+	/**
+	 * Create a new entry
+	 *
+	 * @param key         The cache key
+	 * @param path        The request path
+	 * @param status      The response status
+	 * @param statusText  The response status text
+	 * @param headers     The response headers, case-insensitive
+	 * @param body        The response body, or null if it was not retained
+	 * @param length      The response body length in bytes
+	 * @param hash        The response body hash, may be empty
+	 * @param vary        The request header values the response varies on
+	 * @param storedAt    When the entry is stored, on the cache clock
+	 * @param freshness   How long the entry is fresh for, in milliseconds
+	 * @param originNanos How long the origin took to produce the response
+	 */
+	CacheEntry( String key, String path, int status, String statusText, Map<String, String> headers, String body, long length, String hash,
+	    Map<String, String> vary, long storedAt, long freshness, long originNanos ) {
+		this.key			= key;
+		this.path			= path;
+		this.status			= status;
+		this.statusText		= statusText;
+		this.headers		= headers;
+		this.body			= body;
+		this.length			= length;
+		this.hash			= hash;
+		this.vary			= vary;
+		this.storedAt		= storedAt;
+		this.freshness		= freshness;
+		this.originNanos	= originNanos;
+		this.size			= key.length() + length + headers.entrySet().stream().mapToLong( entry -> entry.getKey().length() + entry.getValue().length() ).sum();
+	}
+
+	/**
+	 * @param now The cache clock
+	 *
+	 * @return Whether the entry can be served without asking the origin
+	 */
+	boolean isFresh( long now ) {
+		return now - this.storedAt < this.freshness;
+	}
+
+	/**
+	 * @return Whether the entry can be revalidated with a conditional request
+	 */
+	boolean hasValidators() {
+		return getETag() != null || getLastModified() != null;
+	}
+
+	/**
+	 * @return The entity tag, or null
+	 */
+	String getETag() {
+		return this.headers.get( "ETag" );
+	}
+
+	/**
+	 * @return The raw Last-Modified header, or null
+	 */
+	String getLastModified() {
+		return this.headers.get( "Last-Modified" );
+	}
+
+	/**
+	 * @return The response body length in bytes
+	 */
+	long getLength() {
+		return this.length;
+	}
+
+	/**
+	 * @return The response headers
+	 */
+	Map<String, String> getHeaders() {
+		return this.headers;
+	}
+
+	/**
+	 * Whether a request selects this entry, comparing the request headers the response varies on
+	 *
+	 * @param exchange The request
+	 *
+	 * @return True if every varying header has the stored value
+	 */
+	boolean matchesVary( MockHTTPExchange exchange ) {
+		return this.vary.entrySet()
+		    .stream()
+		    .allMatch( entry -> Objects.equals( entry.getValue(), Objects.toString( exchange.getRequestHeader( entry.getKey() ), "" ) ) );
+	}
+
+	/**
+	 * Update the entry after the origin confirmed it with a 304
+	 *
+	 * @param headers   The stored headers updated with the ones of the 304 response
+	 * @param now       The cache clock
+	 * @param freshness The new freshness in milliseconds
+	 */
+	void refresh( Map<String, String> headers, long now, long freshness ) {
+		this.headers	= headers;
+		this.storedAt	= now;
+		this.freshness	= freshness;
+	}
+
+	/**
+	 * Answer a request with the full stored response
+	 *
+	 * @param exchange The exchange to answer
+	 * @param now      The cache clock
+	 */
+	void replay( MockHTTPExchange exchange, long now ) {
+		Map<String, String> replayed = new TreeMap<>( String.CASE_INSENSITIVE_ORDER );
+		replayed.putAll( this.headers );
+		replayed.put( "Age", String.valueOf( age( now ) ) );
+		exchange.replayResponse( this.status, this.statusText, replayed, this.body, this.length, this.hash );
+	}
+
+	/**
+	 * Answer a conditional request with a 304 and no body
+	 *
+	 * @param exchange The exchange to answer
+	 * @param now      The cache clock
+	 */
+	void replayNotModified( MockHTTPExchange exchange, long now ) {
+		Map<String, String>	source		= this.headers;
+		Map<String, String>	replayed	= new TreeMap<>( String.CASE_INSENSITIVE_ORDER );
+		for ( String name : NOT_MODIFIED_HEADERS ) {
+			if ( source.containsKey( name ) ) {
+				replayed.put( name, source.get( name ) );
+			}
+		}
+		replayed.put( "Age", String.valueOf( age( now ) ) );
+		exchange.replayResponse( 304, "Not Modified", replayed, "", 0, "" );
+	}
+
+	/**
+	 * @param now The cache clock
+	 *
+	 * @return The age of the entry in seconds
+	 */
+	private long age( long now ) {
+		return Math.max( 0, ( now - this.storedAt ) / 1000 );
+	}
+}
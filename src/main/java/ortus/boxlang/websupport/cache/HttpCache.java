@@ -0,0 +1,673 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.cache;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+import ortus.boxlang.websupport.exchange.ResponseMode;
+
+/**
+ * A simulated HTTP cache in front of mock executions, to measure what the {@code Cache-Control}, {@code ETag} and
+ * {@code Last-Modified} headers of an application actually save before they reach a CDN.
+ * <p>
+ * Attached to a {@link MockHTTPExchange}, every {@code GET} is looked up first. A fresh entry is replayed without executing
+ * the request. A stale entry with validators is revalidated with {@code If-None-Match} / {@code If-Modified-Since} and replayed
+ * when the application answers 304. Conditional requests of the client are answered with a 304 when the entry matches. Other
+ * methods pass through, and a successful unsafe method invalidates the entries of its path.
+ * <p>
+ * Responses are stored following the freshness rules of RFC 9111: {@code s-maxage} (shared caches only), {@code max-age},
+ * {@code Expires} and, unless disabled, the 10% of {@code Last-Modified} heuristic. A shared cache, like a CDN, also refuses
+ * {@code private} responses and responses setting cookies. Entries are kept in LRU order within a memory budget.
+ * <p>
+ * Per route it reports the hit ratio, the body bytes saved and the origin latency avoided, and why responses were not stored.
+ * Freshness runs on a clock that can be fast-forwarded with {@link #advance(long)}, so expiry can be tested offline.
+ */
+public class HttpCache {
+
+	/**
+	 * The default memory budget: 64MB
+	 */
+	public static final long						DEFAULT_MAX_BYTES		= 64L * 1024 * 1024;
+
+	/**
+	 * The outcomes of a cached execution
+	 */
+	public static final String						HIT						= "hit";
+	public static final String						REVALIDATED				= "revalidated";
+	public static final String						MISS					= "miss";
+	public static final String						BYPASS					= "bypass";
+
+	/**
+	 * The statuses that may be stored
+	 */
+	private static final Set<Integer>				CACHEABLE_STATUS		= Set.of( 200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501 );
+
+	/**
+	 * The methods that invalidate the entries of their path
+	 */
+	private static final Set<String>				UNSAFE_METHODS			= Set.of( "POST", "PUT", "PATCH", "DELETE" );
+
+	/**
+	 * The upper bound of the Last-Modified heuristic freshness
+	 */
+	private static final long						MAX_HEURISTIC_MILLIS	= Duration.ofDays( 1 ).toMillis();
+
+	/**
+	 * The memory budget in bytes
+	 */
+	private final long								maxBytes;
+
+	/**
+	 * Whether this is a shared cache, like a CDN or proxy, or a private browser cache
+	 */
+	private final boolean							shared;
+
+	/**
+	 * Whether responses without explicit freshness are fresh for 10% of their age since Last-Modified
+	 */
+	private final boolean							heuristic;
+
+	/**
+	 * The entries in LRU order, guarded by this cache
+	 */
+	private final LinkedHashMap<String, CacheEntry>	entries					= new LinkedHashMap<>( 16, 0.75f, true );
+
+	/**
+	 * The memory used by the entries and the entries evicted so far, guarded by this cache
+	 */
+	private long									bytes					= 0;
+	private long									evictions				= 0;
+
+	/**
+	 * How far the cache clock is ahead of the wall clock
+	 */
+	private final AtomicLong						clockOffset				= new AtomicLong();
+
+	/**
+	 * The outcomes per route
+	 */
+	private final Map<String, RouteCacheStats>		routes					= new ConcurrentHashMap<>();
+
+	/**
+	 * Create a new HTTP cache
+	 *
+	 * @param maxBytes  The memory budget in bytes, the least recently used entries are evicted beyond it
+	 * @param shared    Whether to behave like a shared cache (CDN, proxy) or a private browser cache
+	 * @param heuristic Whether to apply the Last-Modified heuristic to responses without explicit freshness
+	 */
+	public HttpCache( long maxBytes, boolean shared, boolean heuristic ) {
+		if ( maxBytes < 1 ) {
+			throw new BoxRuntimeException( "The cache size must be at least 1 byte" );
+		}
+		this.maxBytes	= maxBytes;
+		this.shared		= shared;
+		this.heuristic	= heuristic;
+	}
+
+	/**
+	 * Create a new shared HTTP cache of 64MB with the Last-Modified heuristic
+	 */
+	public HttpCache() {
+		this( DEFAULT_MAX_BYTES, true, true );
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Serving
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Serve the request of an exchange through the cache. The response of the exchange is cleared first, then either replayed
+	 * from the cache or produced by the origin.
+	 *
+	 * @param exchange The exchange holding the request
+	 * @param origin   Executes the request against the application
+	 *
+	 * @return The outcome: hit, revalidated, miss or bypass
+	 */
+	public String serve( MockHTTPExchange exchange, Runnable origin ) {
+		String			method	= exchange.getRequestMethod().toUpperCase();
+		String			path	= exchange.getRequestPath();
+		RouteCacheStats	stats	= this.routes.computeIfAbsent( method + " " + path, key -> new RouteCacheStats() );
+		stats.requests.increment();
+		exchange.clearResponseData();
+
+		CacheControl requestControl = CacheControl.parse( exchange.getRequestHeader( "Cache-Control" ) );
+		if ( !method.equals( "GET" ) || requestControl.has( "no-store" ) ) {
+			stats.originNanos.add( runOrigin( origin ) );
+			stats.bypassed.increment();
+			if ( UNSAFE_METHODS.contains( method ) && exchange.getResponseStatus() < 400 ) {
+				invalidate( path );
+			}
+			return BYPASS;
+		}
+
+		String		key		= keyOf( exchange );
+		CacheEntry	entry	= lookup( key, exchange );
+		boolean		mustAsk	= requestControl.has( "no-cache" ) || requestControl.seconds( "max-age" ) == 0;
+
+		// Fresh: answer without the origin
+		if ( entry != null && !mustAsk && entry.isFresh( now() ) ) {
+			stats.hits.increment();
+			stats.bytesSaved.add( entry.getLength() );
+			stats.avoidedNanos.add( entry.originNanos );
+			answer( exchange, entry, stats );
+			return HIT;
+		}
+
+		// Stale: ask the origin whether the stored response is still valid, otherwise fetch it
+		boolean	revalidating	= entry != null && entry.hasValidators();
+		long	elapsed			= revalidating ? revalidate( exchange, entry, origin ) : runOrigin( origin );
+		stats.originNanos.add( elapsed );
+		if ( revalidating && exchange.getResponseStatus() == 304 ) {
+			// The 304 headers update the stored ones
+			Map<String, String> merged = new TreeMap<>( String.CASE_INSENSITIVE_ORDER );
+			merged.putAll( entry.getHeaders() );
+			merged.putAll( responseHeaders( exchange ) );
+			merged.remove( "Content-Length" );
+			entry.refresh( merged, now(), freshness( CacheControl.parse( merged.get( "Cache-Control" ) ), merged ) );
+			stats.revalidated.increment();
+			stats.bytesSaved.add( entry.getLength() );
+			stats.avoidedNanos.add( Math.max( 0, entry.originNanos - elapsed ) );
+			answer( exchange, entry, stats );
+			return REVALIDATED;
+		}
+
+		stats.misses.increment();
+		CacheEntry stored = store( key, path, exchange, elapsed, stats );
+		if ( stored != null && matchesConditional( exchange, stored ) ) {
+			stored.replayNotModified( exchange, now() );
+			stats.notModified.increment();
+			stats.transferSaved.add( stored.getLength() );
+		}
+		return MISS;
+	}
+
+	/**
+	 * Drop every entry of a request path, whatever its query string
+	 *
+	 * @param path The request path
+	 *
+	 * @return The number of entries dropped
+	 */
+	public synchronized int invalidate( String path ) {
+		int						dropped	= 0;
+		Iterator<CacheEntry>	iterator	= this.entries.values().iterator();
+		while ( iterator.hasNext() ) {
+			CacheEntry entry = iterator.next();
+			if ( entry.path.equals( path ) ) {
+				iterator.remove();
+				this.bytes -= entry.size;
+				dropped++;
+			}
+		}
+		return dropped;
+	}
+
+	/**
+	 * Fast-forward the cache clock, so stored responses age without waiting
+	 *
+	 * @param millis The milliseconds to move the clock forward
+	 *
+	 * @return This cache for chaining
+	 */
+	public HttpCache advance( long millis ) {
+		this.clockOffset.addAndGet( Math.max( 0, millis ) );
+		return this;
+	}
+
+	/**
+	 * Drop every entry, the statistics are kept
+	 *
+	 * @return This cache for chaining
+	 */
+	public synchronized HttpCache clear() {
+		this.entries.clear();
+		this.bytes = 0;
+		return this;
+	}
+
+	/**
+	 * Discard the statistics, the entries are kept
+	 *
+	 * @return This cache for chaining
+	 */
+	public synchronized HttpCache reset() {
+		this.routes.clear();
+		this.evictions = 0;
+		return this;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Statistics
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Get the cache statistics: { entries, bytes, maxBytes, evictions, requests, hits, revalidated, misses, hitRatio,
+	 * bytesSaved, transferSaved, latencyAvoidedMs, routes }, where routes holds the same counters per {@code METHOD /path} along
+	 * with the mean origin time and the reasons responses were not stored.
+	 *
+	 * @return The statistics
+	 */
+	public IStruct getStats() {
+		IStruct	routeStats	= new Struct( Struct.TYPES.LINKED );
+		long[]	totals		= new long[ 7 ];
+		new TreeMap<>( this.routes ).forEach( ( route, stats ) -> {
+			routeStats.put( route, stats.toStruct() );
+			totals[ 0 ]	+= stats.requests.sum();
+			totals[ 1 ]	+= stats.hits.sum();
+			totals[ 2 ]	+= stats.revalidated.sum();
+			totals[ 3 ]	+= stats.misses.sum();
+			totals[ 4 ]	+= stats.bytesSaved.sum();
+			totals[ 5 ]	+= stats.transferSaved.sum();
+			totals[ 6 ]	+= stats.avoidedNanos.sum();
+		} );
+		IStruct result;
+		synchronized ( this ) {
+			result = Struct.linkedOf(
+			    "entries", this.entries.size(),
+			    "bytes", this.bytes,
+			    "maxBytes", this.maxBytes,
+			    "evictions", this.evictions
+			);
+		}
+		result.put( "requests", totals[ 0 ] );
+		result.put( "hits", totals[ 1 ] );
+		result.put( "revalidated", totals[ 2 ] );
+		result.put( "misses", totals[ 3 ] );
+		result.put( "hitRatio", totals[ 0 ] == 0 ? 0.0 : totals[ 1 ] / ( double ) totals[ 0 ] );
+		result.put( "bytesSaved", totals[ 4 ] );
+		result.put( "transferSaved", totals[ 5 ] );
+		result.put( "latencyAvoidedMs", totals[ 6 ] / 1_000_000.0 );
+		result.put( "routes", routeStats );
+		return result;
+	}
+
+	/**
+	 * Get the statistics of a single route
+	 *
+	 * @param route The route, the request method and path, e.g. {@code GET /products.bxm}
+	 *
+	 * @return The route statistics, empty if the route was never requested
+	 */
+	public IStruct getRouteStats( String route ) {
+		RouteCacheStats stats = this.routes.get( route );
+		return stats == null ? new Struct( Struct.TYPES.LINKED ) : stats.toStruct();
+	}
+
+	/**
+	 * @return The number of entries stored
+	 */
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * @return The memory used by the entries in bytes
+	 */
+	public synchronized long getBytes() {
+		return this.bytes;
+	}
+
+	/**
+	 * @return The memory budget in bytes
+	 */
+	public long getMaxBytes() {
+		return this.maxBytes;
+	}
+
+	/**
+	 * @return Whether this cache behaves like a shared cache
+	 */
+	public boolean isShared() {
+		return this.shared;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Helpers
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * @return The cache clock in milliseconds
+	 */
+	private long now() {
+		return System.currentTimeMillis() + this.clockOffset.get();
+	}
+
+	/**
+	 * Run the origin and time it
+	 *
+	 * @param origin Executes the request against the application
+	 *
+	 * @return The elapsed nanoseconds
+	 */
+	private static long runOrigin( Runnable origin ) {
+		long start = System.nanoTime();
+		origin.run();
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Run the origin with the validators of the entry in place of the ones of the client, which are put back afterwards
+	 *
+	 * @param exchange The exchange holding the request
+	 * @param entry    The stale entry
+	 * @param origin   Executes the request against the application
+	 *
+	 * @return The elapsed nanoseconds
+	 */
+	private static long revalidate( MockHTTPExchange exchange, CacheEntry entry, Runnable origin ) {
+		IStruct	requestHeaders	= exchange.getMockRequestHeaders();
+		Key		ifNoneMatch		= Key.of( "If-None-Match" );
+		Key		ifModifiedSince	= Key.of( "If-Modified-Since" );
+		Object	clientETag		= requestHeaders.remove( ifNoneMatch );
+		Object	clientDate		= requestHeaders.remove( ifModifiedSince );
+		if ( entry.getETag() != null ) {
+			requestHeaders.put( ifNoneMatch, entry.getETag() );
+		}
+		if ( entry.getLastModified() != null ) {
+			requestHeaders.put( ifModifiedSince, entry.getLastModified() );
+		}
+		try {
+			return runOrigin( origin );
+		} finally {
+			requestHeaders.remove( ifNoneMatch );
+			requestHeaders.remove( ifModifiedSince );
+			if ( clientETag != null ) {
+				requestHeaders.put( ifNoneMatch, clientETag );
+			}
+			if ( clientDate != null ) {
+				requestHeaders.put( ifModifiedSince, clientDate );
+			}
+		}
+	}
+
+	/**
+	 * Answer a request from an entry, with a 304 if the client already has it
+	 *
+	 * @param exchange The exchange to answer
+	 * @param entry    The entry
+	 * @param stats    The route statistics
+	 */
+	private void answer( MockHTTPExchange exchange, CacheEntry entry, RouteCacheStats stats ) {
+		if ( matchesConditional( exchange, entry ) ) {
+			entry.replayNotModified( exchange, now() );
+			stats.notModified.increment();
+			stats.transferSaved.add( entry.getLength() );
+		} else {
+			entry.replay( exchange, now() );
+		}
+	}
+
+	/**
+	 * Whether the conditional headers of the client match an entry. If-None-Match takes precedence over If-Modified-Since.
+	 *
+	 * @param exchange The exchange holding the request
+	 * @param entry    The entry
+	 *
+	 * @return True if the client copy is still valid
+	 */
+	private static boolean matchesConditional( MockHTTPExchange exchange, CacheEntry entry ) {
+		String ifNoneMatch = exchange.getRequestHeader( "If-None-Match" );
+		if ( ifNoneMatch != null && !ifNoneMatch.isBlank() ) {
+			String etag = entry.getETag();
+			if ( etag == null ) {
+				return false;
+			}
+			for ( String candidate : ifNoneMatch.split( "," ) ) {
+				String tag = candidate.trim();
+				if ( tag.equals( "*" ) || weak( tag ).equals( weak( etag ) ) ) {
+					return true;
+				}
+			}
+			return false;
+		}
+		Long	ifModifiedSince	= parseDate( exchange.getRequestHeader( "If-Modified-Since" ) );
+		Long	lastModified	= parseDate( entry.getLastModified() );
+		return ifModifiedSince != null && lastModified != null && lastModified <= ifModifiedSince;
+	}
+
+	/**
+	 * @param etag An entity tag
+	 *
+	 * @return The tag without its weak prefix, conditional GETs use the weak comparison
+	 */
+	private static String weak( String etag ) {
+		return etag.startsWith( "W/" ) ? etag.substring( 2 ) : etag;
+	}
+
+	/**
+	 * Find the entry of a key whose varying request headers match
+	 *
+	 * @param key      The cache key
+	 * @param exchange The exchange holding the request
+	 *
+	 * @return The entry, or null
+	 */
+	private synchronized CacheEntry lookup( String key, MockHTTPExchange exchange ) {
+		CacheEntry entry = this.entries.get( key );
+		return entry != null && entry.matchesVary( exchange ) ? entry : null;
+	}
+
+	/**
+	 * Store the response of an exchange if it is cacheable, evicting the least recently used entries beyond the budget
+	 *
+	 * @param key         The cache key
+	 * @param path        The request path
+	 * @param exchange    The exchange holding the response
+	 * @param originNanos How long the origin took
+	 * @param stats       The route statistics
+	 *
+	 * @return The stored entry, or null if the response is not cacheable
+	 */
+	private CacheEntry store( String key, String path, MockHTTPExchange exchange, long originNanos, RouteCacheStats stats ) {
+		Map<String, String>	headers		= responseHeaders( exchange );
+		CacheControl		control		= CacheControl.parse( headers.get( "Cache-Control" ) );
+		long				freshness	= freshness( control, headers );
+		String				reason		= uncacheableReason( exchange, headers, control, freshness );
+		if ( reason == null && exchange.getResponseLength() + key.length() > this.maxBytes ) {
+			reason = "too-large";
+		}
+		if ( reason != null ) {
+			stats.uncacheable( reason );
+			return null;
+		}
+
+		// Remember the request header values the response varies on
+		Map<String, String> vary = new TreeMap<>( String.CASE_INSENSITIVE_ORDER );
+		for ( String name : headers.getOrDefault( "Vary", "" ).split( "," ) ) {
+			if ( !name.isBlank() ) {
+				vary.put( name.trim(), Objects.toString( exchange.getRequestHeader( name.trim() ), "" ) );
+			}
+		}
+		headers.remove( "Content-Length" );
+		CacheEntry entry = new CacheEntry(
+		    key,
+		    path,
+		    exchange.getResponseStatus(),
+		    exchange.getResponseStatusText(),
+		    headers,
+		    exchange.getResponseMode() == ResponseMode.BUFFER ? exchange.getResponseBody() : null,
+		    exchange.getResponseLength(),
+		    exchange.getResponseHash(),
+		    vary,
+		    now(),
+		    freshness,
+		    originNanos
+		);
+		synchronized ( this ) {
+			CacheEntry previous = this.entries.put( key, entry );
+			if ( previous != null ) {
+				this.bytes -= previous.size;
+			}
+			this.bytes += entry.size;
+			Iterator<CacheEntry> eldest = this.entries.values().iterator();
+			while ( this.bytes > this.maxBytes && eldest.hasNext() ) {
+				CacheEntry evicted = eldest.next();
+				eldest.remove();
+				this.bytes -= evicted.size;
+				this.evictions++;
+			}
+			if ( !this.entries.containsKey( key ) ) {
+				stats.uncacheable( "too-large" );
+				return null;
+			}
+		}
+		stats.stored.increment();
+		return entry;
+	}
+
+	/**
+	 * Why a response cannot be stored
+	 *
+	 * @param exchange  The exchange holding the response
+	 * @param headers   The response headers
+	 * @param control   The response Cache-Control directives
+	 * @param freshness The response freshness in milliseconds
+	 *
+	 * @return The reason, or null if the response can be stored
+	 */
+	private String uncacheableReason( MockHTTPExchange exchange, Map<String, String> headers, CacheControl control, long freshness ) {
+		if ( !CACHEABLE_STATUS.contains( exchange.getResponseStatus() ) ) {
+			return "status";
+		}
+		if ( control.has( "no-store" ) ) {
+			return "no-store";
+		}
+		if ( this.shared && control.has( "private" ) ) {
+			return "private";
+		}
+		if ( this.shared && ( !exchange.getMockResponseCookies().isEmpty() || headers.containsKey( "Set-Cookie" ) ) ) {
+			return "set-cookie";
+		}
+		if ( headers.getOrDefault( "Vary", "" ).contains( "*" ) ) {
+			return "vary";
+		}
+		if ( this.shared
+		    && exchange.getRequestHeader( "Authorization" ) != null
+		    && !control.has( "public" )
+		    && !control.has( "s-maxage" )
+		    && !control.has( "must-revalidate" ) ) {
+			return "authorization";
+		}
+		if ( freshness <= 0 && headers.get( "ETag" ) == null && headers.get( "Last-Modified" ) == null ) {
+			return "no-freshness";
+		}
+		return null;
+	}
+
+	/**
+	 * Compute how long a response is fresh for
+	 *
+	 * @param control The response Cache-Control directives
+	 * @param headers The response headers
+	 *
+	 * @return The freshness in milliseconds, 0 if it must be revalidated on every use
+	 */
+	private long freshness( CacheControl control, Map<String, String> headers ) {
+		if ( control.has( "no-cache" ) ) {
+			return 0;
+		}
+		if ( this.shared && control.seconds( "s-maxage" ) >= 0 ) {
+			return control.seconds( "s-maxage" ) * 1000;
+		}
+		if ( control.seconds( "max-age" ) >= 0 ) {
+			return control.seconds( "max-age" ) * 1000;
+		}
+		if ( headers.containsKey( "Expires" ) ) {
+			Long	expires	= parseDate( headers.get( "Expires" ) );
+			Long	date	= parseDate( headers.get( "Date" ) );
+			// An invalid Expires, like 0, means already expired
+			return expires == null ? 0 : Math.max( 0, expires - ( date == null ? now() : date ) );
+		}
+		Long lastModified = parseDate( headers.get( "Last-Modified" ) );
+		if ( this.heuristic && lastModified != null ) {
+			return Math.min( MAX_HEURISTIC_MILLIS, Math.max( 0, ( now() - lastModified ) / 10 ) );
+		}
+		return 0;
+	}
+
+	/**
+	 * The key of a request: the path and the query string, or the sorted URL parameters when no query string is set
+	 *
+	 * @param exchange The exchange holding the request
+	 *
+	 * @return The cache key
+	 */
+	private static String keyOf( MockHTTPExchange exchange ) {
+		String query = exchange.getRequestQueryString();
+		if ( query == null || query.isBlank() ) {
+			StringBuilder params = new StringBuilder();
+			new TreeMap<>( exchange.getRequestURLMap() ).forEach( ( name, values ) -> {
+				params.append( params.isEmpty() ? "" : "&" ).append( name ).append( '=' ).append( values[ 0 ] );
+			} );
+			query = params.toString();
+		}
+		return exchange.getRequestPath() + "?" + query;
+	}
+
+	/**
+	 * @param exchange The exchange holding the response
+	 *
+	 * @return The response headers, case-insensitive
+	 */
+	private static Map<String, String> responseHeaders( MockHTTPExchange exchange ) {
+		Map<String, String> headers = new TreeMap<>( String.CASE_INSENSITIVE_ORDER );
+		exchange.getResponseHeaderMap().forEach( ( name, values ) -> headers.put( name, values[ 0 ] ) );
+		return headers;
+	}
+
+	/**
+	 * Parse an HTTP date
+	 *
+	 * @param value The header value, may be null
+	 *
+	 * @return The epoch milliseconds, or null if missing or invalid
+	 */
+	private static Long parseDate( String value ) {
+		if ( value == null || value.isBlank() ) {
+			return null;
+		}
+		try {
+			return ZonedDateTime.parse( value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME ).toInstant().toEpochMilli();
+		} catch ( DateTimeParseException e ) {
+			return null;
+		}
+	}
+}
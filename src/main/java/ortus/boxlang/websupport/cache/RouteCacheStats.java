@@ -0,0 +1,99 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.cache;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+
+/**
+ * The cache outcomes of one route, a request method and path.
+ */
+class RouteCacheStats {
+
+	/**
+	 * The outcome counters
+	 */
+	final LongAdder							requests		= new LongAdder();
+	final LongAdder							hits			= new LongAdder();
+	final LongAdder							revalidated		= new LongAdder();
+	final LongAdder							misses			= new LongAdder();
+	final LongAdder							bypassed		= new LongAdder();
+	final LongAdder							stored			= new LongAdder();
+	final LongAdder							notModified		= new LongAdder();
+
+	/**
+	 * The body bytes the origin did not have to produce
+	 */
+	final LongAdder							bytesSaved		= new LongAdder();
+
+	/**
+	 * The body bytes not sent to the client thanks to 304 answers
+	 */
+	final LongAdder							transferSaved	= new LongAdder();
+
+	/**
+	 * The origin time spent and the origin time avoided, in nanoseconds
+	 */
+	final LongAdder							originNanos		= new LongAdder();
+	final LongAdder							avoidedNanos	= new LongAdder();
+
+	/**
+	 * Why responses of this route could not be stored: reason -> count
+	 */
+	private final Map<String, LongAdder>	uncacheable		= new ConcurrentHashMap<>();
+
+	/**
+	 * Count a response that could not be stored
+	 *
+	 * @param reason The reason, e.g. no-store, private or set-cookie
+	 */
+	void uncacheable( String reason ) {
+		this.uncacheable.computeIfAbsent( reason, key -> new LongAdder() ).increment();
+	}
+
+	/**
+	 * @return { requests, hits, revalidated, misses, bypassed, stored, notModified, hitRatio, bytesSaved, transferSaved,
+	 *         latencyAvoidedMs, originMs, uncacheable }
+	 */
+	IStruct toStruct() {
+		long	total		= this.requests.sum();
+		long	originCalls	= this.revalidated.sum() + this.misses.sum() + this.bypassed.sum();
+		IStruct	reasons		= new Struct( Struct.TYPES.LINKED );
+		new TreeMap<>( this.uncacheable ).forEach( ( reason, count ) -> reasons.put( reason, count.sum() ) );
+		return Struct.linkedOf(
+		    "requests", total,
+		    "hits", this.hits.sum(),
+		    "revalidated", this.revalidated.sum(),
+		    "misses", this.misses.sum(),
+		    "bypassed", this.bypassed.sum(),
+		    "stored", this.stored.sum(),
+		    "notModified", this.notModified.sum(),
+		    "hitRatio", total == 0 ? 0.0 : this.hits.sum() / ( double ) total,
+		    "bytesSaved", this.bytesSaved.sum(),
+		    "transferSaved", this.transferSaved.sum(),
+		    "latencyAvoidedMs", this.avoidedNanos.sum() / 1_000_000.0,
+		    "originMs", originCalls == 0 ? 0.0 : this.originNanos.sum() / ( double ) originCalls / 1_000_000.0,
+		    "uncacheable", reasons
+		);
+	}
+}
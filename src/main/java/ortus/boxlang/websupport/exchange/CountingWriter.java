@@ -0,0 +1,246 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.exchange;
+
+import java.io.Writer;
+
+/**
+ * A response sink that retains nothing. It counts the UTF-8 encoded size of everything written to it
+ * and, optionally, keeps a rolling 64-bit FNV-1a hash of those bytes.
+ * <p>
+ * Characters are encoded on the fly, so counting or hashing a response never allocates.
+ * Character and binary writes are hashed over the same UTF-8 byte stream, so a body written as text
+ * hashes the same as the same body sent as bytes.
+ */
+public class CountingWriter extends Writer {
+
+	/**
+	 * FNV-1a 64-bit offset basis
+	 */
+	private static final long	FNV_OFFSET		= 0xcbf29ce484222325L;
+
+	/**
+	 * FNV-1a 64-bit prime
+	 */
+	private static final long	FNV_PRIME		= 0x100000001b3L;
+
+	/**
+	 * Whether we keep the rolling hash or only count
+	 */
+	private final boolean		hashing;
+
+	/**
+	 * The number of bytes written so far
+	 */
+	private long				byteCount		= 0;
+
+	/**
+	 * The rolling hash of the bytes written so far
+	 */
+	private long				hash			= FNV_OFFSET;
+
+	/**
+	 * A high surrogate waiting for its low surrogate, or 0 if none
+	 */
+	private char				pendingSurrogate	= 0;
+
+	/**
+	 * Create a new counting writer
+	 *
+	 * @param hashing Whether to keep a rolling hash of the bytes written
+	 */
+	public CountingWriter( boolean hashing ) {
+		this.hashing = hashing;
+	}
+
+	/**
+	 * Compute the UTF-8 byte length of a character sequence without encoding it
+	 *
+	 * @param content The content to measure
+	 *
+	 * @return The UTF-8 byte length
+	 */
+	public static long utf8Length( CharSequence content ) {
+		CountingWriter counter = new CountingWriter( false );
+		counter.append( content );
+		return counter.getByteCount();
+	}
+
+	/**
+	 * Compute the hash of a character sequence as it would be computed by a hashing counting writer
+	 *
+	 * @param content The content to hash
+	 *
+	 * @return The hash as a 16 character hex string
+	 */
+	public static String hashOf( CharSequence content ) {
+		CountingWriter counter = new CountingWriter( true );
+		counter.append( content );
+		return counter.getHash();
+	}
+
+	/**
+	 * Write raw bytes to the sink, used for binary responses
+	 *
+	 * @param data The bytes to write
+	 */
+	public void writeBytes( byte[] data ) {
+		this.byteCount += data.length;
+		if ( this.hashing ) {
+			long h = this.hash;
+			for ( byte b : data ) {
+				h	^= ( b & 0xff );
+				h	*= FNV_PRIME;
+			}
+			this.hash = h;
+		}
+	}
+
+	/**
+	 * @return The number of bytes written so far
+	 */
+	public long getByteCount() {
+		return this.byteCount;
+	}
+
+	/**
+	 * @return Whether this writer keeps a rolling hash
+	 */
+	public boolean isHashing() {
+		return this.hashing;
+	}
+
+	/**
+	 * @return The rolling hash as a 16 character hex string, or an empty string if not hashing
+	 */
+	public String getHash() {
+		if ( !this.hashing ) {
+			return "";
+		}
+		return String.format( "%016x", this.hash );
+	}
+
+	/**
+	 * Reset the counters so the writer can be reused
+	 */
+	public void reset() {
+		this.byteCount			= 0;
+		this.hash				= FNV_OFFSET;
+		this.pendingSurrogate	= 0;
+	}
+
+	/**
+	 * Restore the counters of a body written earlier, without its bytes. Used to replay a stored response.
+	 *
+	 * @param byteCount The number of bytes of the body
+	 * @param hash      The hash of the body as returned by {@link #getHash()}, ignored when empty or not hashing
+	 */
+	public void restore( long byteCount, String hash ) {
+		this.byteCount			= byteCount;
+		this.pendingSurrogate	= 0;
+		this.hash				= this.hashing && hash != null && !hash.isEmpty() ? Long.parseUnsignedLong( hash, 16 ) : FNV_OFFSET;
+	}
+
+	@Override
+	public void write( int c ) {
+		encode( ( char ) c );
+	}
+
+	@Override
+	public void write( char[] cbuf, int off, int len ) {
+		for ( int i = off; i < off + len; i++ ) {
+			encode( cbuf[ i ] );
+		}
+	}
+
+	@Override
+	public void write( String str, int off, int len ) {
+		for ( int i = off; i < off + len; i++ ) {
+			encode( str.charAt( i ) );
+		}
+	}
+
+	@Override
+	public Writer append( CharSequence csq ) {
+		CharSequence content = csq == null ? "null" : csq;
+		for ( int i = 0; i < content.length(); i++ ) {
+			encode( content.charAt( i ) );
+		}
+		return this;
+	}
+
+	@Override
+	public void flush() {
+		// Nothing is retained, nothing to flush
+	}
+
+	@Override
+	public void close() {
+		// Nothing to release
+	}
+
+	/**
+	 * Encode a single UTF-16 char as UTF-8 bytes into the counters
+	 *
+	 * @param c The char to encode
+	 */
+	private void encode( char c ) {
+		if ( this.pendingSurrogate != 0 ) {
+			char high = this.pendingSurrogate;
+			this.pendingSurrogate = 0;
+			if ( Character.isLowSurrogate( c ) ) {
+				int cp = Character.toCodePoint( high, c );
+				feed( 0xf0 | ( cp >>> 18 ) );
+				feed( 0x80 | ( ( cp >>> 12 ) & 0x3f ) );
+				feed( 0x80 | ( ( cp >>> 6 ) & 0x3f ) );
+				feed( 0x80 | ( cp & 0x3f ) );
+				return;
+			}
+			// Unpaired high surrogate, encoded as the replacement character '?' like String.getBytes()
+			feed( '?' );
+		}
+		if ( c < 0x80 ) {
+			feed( c );
+		} else if ( c < 0x800 ) {
+			feed( 0xc0 | ( c >>> 6 ) );
+			feed( 0x80 | ( c & 0x3f ) );
+		} else if ( Character.isHighSurrogate( c ) ) {
+			this.pendingSurrogate = c;
+		} else if ( Character.isLowSurrogate( c ) ) {
+			// Unpaired low surrogate
+			feed( '?' );
+		} else {
+			feed( 0xe0 | ( c >>> 12 ) );
+			feed( 0x80 | ( ( c >>> 6 ) & 0x3f ) );
+			feed( 0x80 | ( c & 0x3f ) );
+		}
+	}
+
+	/**
+	 * Feed a single encoded byte into the counters
+	 *
+	 * @param b The byte to feed
+	 */
+	private void feed( int b ) {
+		this.byteCount++;
+		if ( this.hashing ) {
+			this.hash	^= ( b & 0xff );
+			this.hash	*= FNV_PRIME;
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.exchange;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * The forward and include dispatches of one execution of a {@link MockHTTPExchange}.
+ * <p>
+ * Every dispatch is a hop with its depth, its inclusive time and its self time, the time left once the hops it dispatched
+ * itself are taken out. The self time of a forward that only hands over to the next one is the dispatch overhead of the
+ * framework. Hops nested deeper than {@link #MAX_DEPTH} are refused, as they are almost always a forward loop.
+ */
+public class DispatchTrace {
+
+	/**
+	 * The dispatch types
+	 */
+	public static final String	FORWARD		= "forward";
+	public static final String	INCLUDE		= "include";
+
+	/**
+	 * The deepest dispatch allowed
+	 */
+	public static final int		MAX_DEPTH	= 32;
+
+	/**
+	 * The hops in the order they started
+	 */
+	private final List<Hop>		hops		= new ArrayList<>();
+
+	/**
+	 * The hops still running, innermost first
+	 */
+	private final Deque<Hop>	open		= new ArrayDeque<>();
+
+	/**
+	 * The deepest dispatch so far
+	 */
+	private int					maxDepth	= 0;
+
+	/**
+	 * Start a hop
+	 *
+	 * @param type The dispatch type: forward or include
+	 * @param from The path dispatching
+	 * @param path The path dispatched to
+	 */
+	public synchronized void enter( String type, String from, String path ) {
+		if ( this.open.size() >= MAX_DEPTH ) {
+			throw new BoxRuntimeException(
+			    "Unable to " + type + " to [" + path + "], the dispatch depth exceeds " + MAX_DEPTH + ", check [" + from + "] for a loop" );
+		}
+		Hop hop = new Hop( type, from, path, this.open.size() + 1, System.nanoTime() );
+		this.maxDepth = Math.max( this.maxDepth, hop.depth );
+		this.hops.add( hop );
+		this.open.push( hop );
+	}
+
+	/**
+	 * End the innermost hop
+	 *
+	 * @param error The error it ended with, or null
+	 */
+	public synchronized void exit( Throwable error ) {
+		Hop hop = this.open.pop();
+		hop.nanos	= System.nanoTime() - hop.start;
+		hop.error	= error == null ? "" : String.valueOf( error.getMessage() );
+		if ( !this.open.isEmpty() ) {
+			this.open.peek().childNanos += hop.nanos;
+		}
+	}
+
+	/**
+	 * @return { count, forwards, includes, maxDepth, totalMs, hops }, where totalMs is the time spent in top level hops and
+	 *         every hop is { type, from, path, depth, durationMs, selfMs, error }
+	 */
+	public synchronized IStruct toStruct() {
+		Array	hopList		= new Array();
+		long	forwards	= 0;
+		long	totalNanos	= 0;
+		for ( Hop hop : this.hops ) {
+			forwards	+= hop.type.equals( FORWARD ) ? 1 : 0;
+			totalNanos	+= hop.depth == 1 ? hop.nanos : 0;
+			hopList.add( Struct.linkedOf(
+			    "type", hop.type,
+			    "from", hop.from,
+			    "path", hop.path,
+			    "depth", hop.depth,
+			    "durationMs", hop.nanos / 1_000_000.0,
+			    "selfMs", ( hop.nanos - hop.childNanos ) / 1_000_000.0,
+			    "error", hop.error
+			) );
+		}
+		return Struct.linkedOf(
+		    "count", this.hops.size(),
+		    "forwards", forwards,
+		    "includes", this.hops.size() - forwards,
+		    "maxDepth", this.maxDepth,
+		    "totalMs", totalNanos / 1_000_000.0,
+		    "hops", hopList
+		);
+	}
+
+	/**
+	 * One dispatch
+	 */
+	private static class Hop {
+
+		private final String	type;
+		private final String	from;
+		private final String	path;
+		private final int		depth;
+		private final long		start;
+		private long			nanos		= 0;
+		private long			childNanos	= 0;
+		private String			error		= "";
+
+		Hop( String type, String from, String path, int depth, long start ) {
+			this.type	= type;
+			this.from	= from;
+			this.path	= path;
+			this.depth	= depth;
+			this.start	= start;
+		}
+	}
+}
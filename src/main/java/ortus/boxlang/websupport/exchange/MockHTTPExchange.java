@@ -18,34 +18,61 @@
 package ortus.boxlang.websupport.exchange;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.nio.ByteBuffer;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.security.Principal;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ortus.boxlang.runtime.BoxRuntime;
 import ortus.boxlang.runtime.context.IBoxContext;
 import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.Array;
 import ortus.boxlang.runtime.types.IStruct;
 import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.AbortException;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
 import ortus.boxlang.web.WebRequestExecutor;
 import ortus.boxlang.web.context.WebRequestBoxContext;
 import ortus.boxlang.web.exchange.BoxCookie;
 import ortus.boxlang.web.exchange.IBoxHTTPExchange;
+import ortus.boxlang.websupport.budget.BudgetExceededException;
+import ortus.boxlang.websupport.budget.PerformanceBudget;
+import ortus.boxlang.websupport.budget.PerformanceBudgets;
+import ortus.boxlang.websupport.cache.HttpCache;
+import ortus.boxlang.websupport.profiling.ContentionMonitor;
+import ortus.boxlang.websupport.profiling.InterceptorTimer;
+import ortus.boxlang.websupport.profiling.QueryProfiler;
+import ortus.boxlang.websupport.profiling.StackSampler;
+import ortus.boxlang.websupport.profiling.ThreadMetrics;
+import ortus.boxlang.websupport.stub.DownstreamCalls;
+import ortus.boxlang.websupport.stub.RouteStubRegistry;
+import ortus.boxlang.websupport.stub.StubRoute;
+import ortus.boxlang.websupport.stub.StubServer;
 
 /**
  * A Testing class to test the HTTPExchange. Great for mocking, testing, and extending.
  * Mock the methods you need to test, and throw an UnsupportedOperationException for the rest.
  * Idea: Use the Request Scope to track data and simulate requests.
+ * <p>
+ * Like a real server exchange, it is safe to use from the threads a request spawns ({@code runAsync}, {@code thread},
+ * parallel {@code each()}): attributes live in a concurrent map, the mock scopes are concurrent structs, status updates
+ * are atomic and every write to the response sink is serialized on the sink lock. Uncontended, those cost about the same as
+ * the plain fields they replace.
  */
 public class MockHTTPExchange implements IBoxHTTPExchange {
 
@@ -65,7 +92,7 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 	/**
 	 * Request attributes
 	 */
-	protected Map<String, Object>	attributes			= new HashMap<>();
+	protected Map<String, Object>	attributes			= new ConcurrentHashMap<>();
 
 	/**
 	 * Form Data
@@ -80,12 +107,17 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 	/**
 	 * Response Status
 	 */
-	protected int					responseStatus		= 200;
+	protected volatile int			responseStatus		= 200;
 
 	/**
 	 * Response Text
 	 */
-	protected String				responseText		= "Ok";
+	protected volatile String		responseText		= "Ok";
+
+	/**
+	 * Guards the updates of the status and its text together
+	 */
+	protected final Object			statusLock			= new Object();
 
 	/**
 	 * Mock Response Cookies
@@ -107,18 +139,133 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 	 */
 	protected IStruct				mockResponseHeaders	= new Struct();
 
+	/**
+	 * How the response body is retained: buffered, discarded or checksummed
+	 */
+	protected ResponseMode			responseMode		= ResponseMode.BUFFER;
+
+	/**
+	 * The buffer that backs the response writer in BUFFER mode
+	 */
+	protected StringWriter			responseBuffer		= new StringWriter();
+
+	/**
+	 * The counting sink that backs the response writer in DISCARD and CHECKSUM modes
+	 */
+	protected CountingWriter		responseCounter		= null;
+
 	/**
 	 * PrintWriter for the response that wraps the channel
 	 */
-	protected PrintWriter			writer				= new PrintWriter( new StringWriter() );
+	protected volatile PrintWriter	writer				= new PrintWriter( responseBuffer );
+
+	/**
+	 * The lock every write to the response sink is serialized on, the lock of the writer
+	 */
+	protected volatile Object		sinkLock			= responseBuffer;
+
+	/**
+	 * The optional stack sampler that profiles executions of this exchange
+	 */
+	protected StackSampler			sampler				= null;
+
+	/**
+	 * The optional monitor that reports lock contention and thread states during executions of this exchange
+	 */
+	protected ContentionMonitor		contentionMonitor	= null;
+
+	/**
+	 * The optional timer that measures the interceptors fired during executions of this exchange
+	 */
+	protected InterceptorTimer		interceptorTimer	= null;
 
 	/**
-	 * The BoxLang context for this request
+	 * The interceptor timings of the last execution
+	 */
+	protected IStruct				interceptorTimings	= new Struct();
+
+	/**
+	 * The optional profiler that records the queries run during executions of this exchange
+	 */
+	protected QueryProfiler			queryProfiler		= null;
+
+	/**
+	 * The query profile of the last execution
+	 */
+	protected IStruct				queryProfile		= new Struct();
+
+	/**
+	 * The downstream stub calls of the last execution
+	 */
+	protected IStruct				downstreamCalls		= new Struct();
+
+	/**
+	 * The downstream stub call collector of the running execution, null between executions
+	 */
+	protected DownstreamCalls		activeCalls			= null;
+
+	/**
+	 * The optional slow client that throttles the request body and the response writes
+	 */
+	protected SlowClient			slowClient			= null;
+
+	/**
+	 * The client blocking of the last execution
+	 */
+	protected IStruct				clientTimings		= new Struct();
+
+	/**
+	 * The optional HTTP cache executions are served through
+	 */
+	protected HttpCache				httpCache			= null;
+
+	/**
+	 * The cache outcome of the last execution
+	 */
+	protected String				cacheStatus			= "";
+
+	/**
+	 * The dispatches of the running execution, null between executions
+	 */
+	protected DispatchTrace			dispatchTrace		= null;
+
+	/**
+	 * The forward and include dispatches of the last execution
+	 */
+	protected IStruct				dispatches			= new Struct();
+
+	/**
+	 * The optional route stubs of this exchange, looked up before the global ones
+	 */
+	protected RouteStubRegistry		routeStubs			= null;
+
+	/**
+	 * The routes answered by a stub during the last execution
+	 */
+	protected Array					stubbedRoutes		= new Array();
+
+	/**
+	 * The optional performance budgets executions are checked against
+	 */
+	protected PerformanceBudgets	budgets				= null;
+
+	/**
+	 * The budget report of the last execution
+	 */
+	protected IStruct				budgetReport		= new Struct();
+
+	/**
+	 * The response flushes of the running or last execution
+	 */
+	protected final AtomicInteger	flushCount			= new AtomicInteger();
+
+	/**
+	 * The BoxLang context for this request, created on first use
 	 */
 	protected WebRequestBoxContext	context;
 
 	/**
-	 * The caller request context
+	 * The caller request context the web context is attached to, null for a config only exchange
 	 */
 	protected IBoxContext			requestContext;
 
@@ -127,11 +274,6 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 	 */
 	protected List<FileUpload>		fileUploads			= new ArrayList<>();
 
-	/**
-	 * The Box Runtime
-	 */
-	private static final BoxRuntime	runtime				= BoxRuntime.getInstance();
-
 	/**
 	 * Create a new BoxLang Mock HTTP exchange
 	 *
@@ -139,7 +281,8 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 	 * @param host           The host of the application to mock
 	 * @param port           The port of the application to mock
 	 * @param secure         Whether the application is secure or not
-	 * @param requestContext The request context to associate with this mock exchange
+	 * @param requestContext The request context to associate with this mock exchange, its parent becomes the web context once
+	 *                       that is created, see {@link #initializeWebContext()}
 	 */
 	public MockHTTPExchange( String webroot, String host, int port, boolean secure, IBoxContext requestContext ) {
 		this.port			= port;
@@ -147,8 +290,21 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 		this.webroot		= webroot;
 		this.secure			= secure;
 		this.requestContext	= requestContext;
-		// Initialize the web context
-		initializeWebContext( requestContext );
+	}
+
+	/**
+	 * Create a config only exchange: it is not attached to a caller context, so configuring and executing it never builds
+	 * a web context or touches the runtime. A detached web context is created if something asks for it.
+	 *
+	 * @param webroot The webroot of the application to mock
+	 * @param host    The host of the application to mock
+	 * @param port    The port of the application to mock
+	 * @param secure  Whether the application is secure or not
+	 *
+	 * @return A new exchange
+	 */
+	public static MockHTTPExchange configOnly( String webroot, String host, int port, boolean secure ) {
+		return new MockHTTPExchange( webroot, host, port, secure, null );
 	}
 
 	/**
@@ -200,12 +356,55 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 	}
 
 	/**
-	 * Get the response body as a string
+	 * Get the response body as a string.
+	 * In DISCARD and CHECKSUM modes nothing is retained and this returns an empty string.
 	 *
 	 * @return The response body content
 	 */
 	public String getResponseBody() {
-		return this.writer.toString();
+		if ( this.responseMode != ResponseMode.BUFFER ) {
+			return "";
+		}
+		return this.responseBuffer.toString();
+	}
+
+	/**
+	 * Get the response mode of this exchange
+	 *
+	 * @return The response mode
+	 */
+	public ResponseMode getResponseMode() {
+		return this.responseMode;
+	}
+
+	/**
+	 * Get the size of the response body in bytes (UTF-8), regardless of the response mode
+	 *
+	 * @return The response body size in bytes
+	 */
+	public long getResponseLength() {
+		synchronized ( this.sinkLock ) {
+			if ( this.responseMode == ResponseMode.BUFFER ) {
+				return CountingWriter.utf8Length( this.responseBuffer.getBuffer() );
+			}
+			return this.responseCounter.getByteCount();
+		}
+	}
+
+	/**
+	 * Get the rolling hash of the response body as a 16 character hex string.
+	 * In BUFFER mode the hash is computed on demand from the buffered body.
+	 * In DISCARD mode no hash is kept and this returns an empty string.
+	 *
+	 * @return The response body hash
+	 */
+	public String getResponseHash() {
+		synchronized ( this.sinkLock ) {
+			if ( this.responseMode == ResponseMode.BUFFER ) {
+				return CountingWriter.hashOf( this.responseBuffer.getBuffer() );
+			}
+			return this.responseCounter.getHash();
+		}
 	}
 
 	/**
@@ -386,10 +585,315 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 	 * @param text the response text to set
 	 */
 	public IBoxHTTPExchange setResponseText( String text ) {
-		this.responseText = text;
+		synchronized ( this.statusLock ) {
+			this.responseText = text;
+		}
+		return this;
+	}
+
+	/**
+	 * Set how the response body is retained. Switching modes resets the response body.
+	 *
+	 * @param mode The response mode: buffer, discard or checksum
+	 *
+	 * @return This exchange for chaining
+	 */
+	public IBoxHTTPExchange setResponseMode( String mode ) {
+		return setResponseMode( ResponseMode.fromString( mode ) );
+	}
+
+	/**
+	 * Set how the response body is retained. Switching modes resets the response body.
+	 *
+	 * @param mode The response mode
+	 *
+	 * @return This exchange for chaining
+	 */
+	public IBoxHTTPExchange setResponseMode( ResponseMode mode ) {
+		this.responseMode = mode;
+		resetResponseSink();
+		return this;
+	}
+
+	/**
+	 * Attach a stack sampler that profiles every execution of this exchange.
+	 * Pass null to stop profiling.
+	 *
+	 * @param sampler The stack sampler
+	 *
+	 * @return This exchange for chaining
+	 */
+	public IBoxHTTPExchange setSampler( StackSampler sampler ) {
+		this.sampler = sampler;
+		return this;
+	}
+
+	/**
+	 * Get the stack sampler attached to this exchange, if any
+	 *
+	 * @return The stack sampler or null
+	 */
+	public StackSampler getSampler() {
+		return this.sampler;
+	}
+
+	/**
+	 * Attach a contention monitor that reports the locks and thread states of every execution of this exchange.
+	 * Pass null to stop monitoring.
+	 *
+	 * @param monitor The contention monitor
+	 *
+	 * @return This exchange for chaining
+	 */
+	public IBoxHTTPExchange setContentionMonitor( ContentionMonitor monitor ) {
+		this.contentionMonitor = monitor;
+		return this;
+	}
+
+	/**
+	 * Get the contention monitor attached to this exchange, if any
+	 *
+	 * @return The contention monitor or null
+	 */
+	public ContentionMonitor getContentionMonitor() {
+		return this.contentionMonitor;
+	}
+
+	/**
+	 * Attach a query profiler that records the queries of every execution of this exchange and flags the repeated ones.
+	 * Pass null to stop profiling.
+	 *
+	 * @param profiler The query profiler
+	 *
+	 * @return This exchange for chaining
+	 */
+	public IBoxHTTPExchange setQueryProfiler( QueryProfiler profiler ) {
+		this.queryProfiler = profiler;
+		return this;
+	}
+
+	/**
+	 * Get the query profiler attached to this exchange, if any
+	 *
+	 * @return The query profiler or null
+	 */
+	public QueryProfiler getQueryProfiler() {
+		return this.queryProfiler;
+	}
+
+	/**
+	 * Get the query profile of the last execution: { queries, totalMs, rows, shapes, nPlusOne, duplicates, log, truncated },
+	 * see {@link QueryProfiler}
+	 *
+	 * @return The query profile, empty if query profiling is off
+	 */
+	public IStruct getQueryProfile() {
+		return this.queryProfile;
+	}
+
+	/**
+	 * Attach route stubs that answer the matching executions, forwards and includes of this exchange with a canned response,
+	 * looked up before the global route stubs of the module. Pass null to only use the global ones.
+	 *
+	 * @param routeStubs The route stubs
+	 *
+	 * @return This exchange for chaining
+	 */
+	public IBoxHTTPExchange setRouteStubs( RouteStubRegistry routeStubs ) {
+		this.routeStubs = routeStubs;
+		return this;
+	}
+
+	/**
+	 * Get the route stubs attached to this exchange, if any
+	 *
+	 * @return The route stubs or null
+	 */
+	public RouteStubRegistry getRouteStubs() {
+		return this.routeStubs;
+	}
+
+	/**
+	 * Check every execution of this exchange against performance budgets: once it succeeded, an execution over the limits
+	 * of its route throws a {@link BudgetExceededException} with the measured values. Pass null to stop checking.
+	 *
+	 * @param budgets The performance budgets
+	 *
+	 * @return This exchange for chaining
+	 */
+	public IBoxHTTPExchange setBudgets( PerformanceBudgets budgets ) {
+		this.budgets = budgets;
+		return this;
+	}
+
+	/**
+	 * Get the performance budgets attached to this exchange, if any
+	 *
+	 * @return The performance budgets or null
+	 */
+	public PerformanceBudgets getBudgets() {
+		return this.budgets;
+	}
+
+	/**
+	 * Get the budget report of the last execution: { route, passed, limits, measured, violations, unmeasured }, see
+	 * {@link PerformanceBudget#check(String, Map)}
+	 *
+	 * @return The budget report, empty when the execution had no budget
+	 */
+	public IStruct getBudgetReport() {
+		return this.budgetReport;
+	}
+
+	/**
+	 * Get the number of times the response was flushed during the last execution
+	 *
+	 * @return The response flushes
+	 */
+	public int getFlushCount() {
+		return this.flushCount.get();
+	}
+
+	/**
+	 * Attach an interceptor timer that measures every interceptor fired during executions of this exchange.
+	 * Pass null to stop timing.
+	 *
+	 * @param timer The interceptor timer
+	 *
+	 * @return This exchange for chaining
+	 */
+	public IBoxHTTPExchange setInterceptorTimer( InterceptorTimer timer ) {
+		this.interceptorTimer = timer;
 		return this;
 	}
 
+	/**
+	 * Turn interceptor timing on or off using the module's shared interceptor timer
+	 *
+	 * @param enabled Whether to time interceptors
+	 *
+	 * @return This exchange for chaining
+	 */
+	public IBoxHTTPExchange setInterceptorProfiling( boolean enabled ) {
+		return setInterceptorTimer( enabled ? InterceptorTimer.getShared() : null );
+	}
+
+	/**
+	 * Get the interceptor timer attached to this exchange, if any
+	 *
+	 * @return The interceptor timer or null
+	 */
+	public InterceptorTimer getInterceptorTimer() {
+		return this.interceptorTimer;
+	}
+
+	/**
+	 * Get the interceptor timings of the last execution: interception point -> { count, totalMs, interceptors },
+	 * where interceptors maps each interceptor name to its { count, totalMs }. Slowest first.
+	 *
+	 * @return The interceptor timings, empty if interceptor timing is off
+	 */
+	public IStruct getInterceptorTimings() {
+		return this.interceptorTimings;
+	}
+
+	/**
+	 * Get the downstream stub calls of the last execution: stub route name -> { calls, errors, totalMs, meanMs, maxMs }.
+	 * Calls of the http component are attributed by their execution header; other calls made while other executions were
+	 * running at the same time are not attributed, see {@link StubServer}.
+	 *
+	 * @return The downstream calls, empty if no stub server was running
+	 */
+	public IStruct getDownstreamCalls() {
+		return this.downstreamCalls;
+	}
+
+	/**
+	 * @return The downstream stub call collector of the running execution, null between executions or without a stub server
+	 */
+	public DownstreamCalls getActiveDownstreamCalls() {
+		return this.activeCalls;
+	}
+
+	/**
+	 * Simulate a slow client: the request body is uploaded at a limited rate and the response is read at a limited rate
+	 * through a bounded send buffer, blocking the request thread like a real slow client would. Resets the response body.
+	 * Pass null to go back to an infinitely fast client.
+	 *
+	 * @param client The slow client
+	 *
+	 * @return This exchange for chaining
+	 */
+	public IBoxHTTPExchange setSlowClient( SlowClient client ) {
+		this.slowClient = client;
+		resetResponseSink();
+		return this;
+	}
+
+	/**
+	 * Simulate a slow client, see {@link #setSlowClient(SlowClient)}
+	 *
+	 * @param uploadRate The request body upload rate in bytes per second, 0 for unlimited
+	 * @param readRate   The response read rate in bytes per second, 0 for unlimited
+	 * @param sendBuffer The send buffer capacity in bytes
+	 *
+	 * @return This exchange for chaining
+	 */
+	public IBoxHTTPExchange setSlowClient( long uploadRate, long readRate, long sendBuffer ) {
+		return setSlowClient( new SlowClient( uploadRate, readRate, sendBuffer ) );
+	}
+
+	/**
+	 * Get the slow client attached to this exchange, if any
+	 *
+	 * @return The slow client or null
+	 */
+	public SlowClient getSlowClient() {
+		return this.slowClient;
+	}
+
+	/**
+	 * Get how long the last execution was blocked by the slow client, next to its CPU time:
+	 * { uploadBlockedMs, sendBlockedMs, blockedMs, cpuMs, wallMs, sentBytes }. The CPU time is -1 on virtual threads.
+	 *
+	 * @return The client timings, empty if no slow client is attached
+	 */
+	public IStruct getClientTimings() {
+		return this.clientTimings;
+	}
+
+	/**
+	 * Serve every execution through a simulated HTTP cache. Fresh stored responses are replayed without executing the request,
+	 * stale ones are revalidated, and the response is cleared before every execution so it can be stored.
+	 * Pass null to execute every request again.
+	 *
+	 * @param cache The HTTP cache, may be shared by many exchanges
+	 *
+	 * @return This exchange for chaining
+	 */
+	public IBoxHTTPExchange setHttpCache( HttpCache cache ) {
+		this.httpCache = cache;
+		return this;
+	}
+
+	/**
+	 * Get the HTTP cache attached to this exchange, if any
+	 *
+	 * @return The HTTP cache or null
+	 */
+	public HttpCache getHttpCache() {
+		return this.httpCache;
+	}
+
+	/**
+	 * Get the cache outcome of the last execution: hit, revalidated, miss or bypass
+	 *
+	 * @return The cache outcome, empty if no HTTP cache is attached
+	 */
+	public String getCacheStatus() {
+		return this.cacheStatus;
+	}
+
 	/**
 	 * Set the request path info
 	 *
@@ -518,6 +1022,7 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 
 	@Override
 	public void flushResponseBuffer() {
+		this.flushCount.incrementAndGet();
 		this.writer.flush();
 	}
 
@@ -552,16 +1057,22 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 
 	@Override
 	public void resetResponseBuffer() {
-		this.context.clearBuffer();
+		getWebContext().clearBuffer();
 	}
 
 	@Override
 	public void sendResponseBinary( byte[] data ) {
-		ByteBuffer bBuffer = ByteBuffer.wrap( data );
-		try {
-			this.writer.write( new String( bBuffer.array(), "UTF-8" ) );
-		} catch ( IOException e ) {
-			e.printStackTrace();
+		if ( this.responseMode == ResponseMode.BUFFER ) {
+			this.writer.write( new String( data, StandardCharsets.UTF_8 ) );
+			return;
+		}
+		// Counting sinks take the bytes as they are, no need to decode them
+		synchronized ( this.sinkLock ) {
+			this.writer.flush();
+			if ( this.slowClient != null ) {
+				this.slowClient.send( data.length );
+			}
+			this.responseCounter.writeBytes( data );
 		}
 	}
 
@@ -577,13 +1088,17 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 
 	@Override
 	public void setResponseStatus( int sc ) {
-		this.responseStatus = sc;
+		synchronized ( this.statusLock ) {
+			this.responseStatus = sc;
+		}
 	}
 
 	@Override
 	public void setResponseStatus( int sc, String sm ) {
-		this.responseStatus	= sc;
-		this.responseText	= sm;
+		synchronized ( this.statusLock ) {
+			this.responseStatus	= sc;
+			this.responseText	= sm;
+		}
 	}
 
 	/**
@@ -592,9 +1107,67 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 	 * ------------------------------------------------------------------------------------
 	 */
 
+	/**
+	 * Forward the request to another template of the webroot. During an execution the target runs in place, in the current
+	 * web context and response sink: what the source wrote is discarded, the request path and query string are the ones of
+	 * the target while it runs, and the parameters of its query string are added to the URL scope. Once the target is done
+	 * the request is aborted, like the {@code abort} component does, so nothing after the forward in the source runs.
+	 * Outside an execution it only sets the path the next one runs.
+	 *
+	 * @param URI The path of the target relative to the webroot, with an optional query string
+	 *
+	 * @throws AbortException Once the target is done, to end the request during an execution
+	 */
 	@Override
 	public void forward( String URI ) {
-		this.requestPath = URI;
+		if ( this.dispatchTrace == null ) {
+			this.requestPath = URI;
+			return;
+		}
+		if ( getResponseLength() > 0 ) {
+			throw new BoxRuntimeException( "Unable to forward to [" + URI + "], the response was already flushed" );
+		}
+		this.context.clearBuffer();
+		dispatch( DispatchTrace.FORWARD, URI );
+		throw new AbortException( "request", null );
+	}
+
+	/**
+	 * Include another template of the webroot during an execution: the target runs in place, in the current web context,
+	 * and its output is appended to the response. The parameters of its query string are added to the URL scope.
+	 * <p>
+	 * Unlike {@link #forward(String)}, this is not part of {@link IBoxHTTPExchange}: a template reaches it through
+	 * {@code getBoxContext().getHTTPExchange()} only when it runs in a mock exchange, a real server has no equivalent.
+	 *
+	 * @param URI The path of the target relative to the webroot, with an optional query string
+	 */
+	public void include( String URI ) {
+		if ( this.dispatchTrace == null ) {
+			throw new BoxRuntimeException( "Unable to include [" + URI + "], the exchange is not executing a request" );
+		}
+		dispatch( DispatchTrace.INCLUDE, URI );
+	}
+
+	/**
+	 * Get the forward and include dispatches of the last execution: { count, forwards, includes, maxDepth, totalMs, hops },
+	 * every hop being { type, from, path, depth, durationMs, selfMs, error } in the order they started. The self time of a
+	 * hop leaves out the hops it dispatched itself.
+	 *
+	 * @return The dispatches, empty before the first execution
+	 */
+	public IStruct getDispatches() {
+		return this.dispatches;
+	}
+
+	/**
+	 * Get the routes answered by a stub during the last execution, instead of running their template: every one is
+	 * { type, path, stub, params, status, durationMs } in the order they were answered, the type being request, forward or
+	 * include
+	 *
+	 * @return The stubbed routes, empty before the first execution
+	 */
+	public Array getStubbedRoutes() {
+		return this.stubbedRoutes;
 	}
 
 	@Override
@@ -614,6 +1187,9 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 
 	@Override
 	public Object getRequestBody() {
+		if ( this.slowClient != null && this.requestBody != null ) {
+			this.slowClient.deliverRequest( this.requestBody instanceof byte[] bytes ? bytes.length : CountingWriter.utf8Length( this.requestBody.toString() ) );
+		}
 		return this.requestBody;
 	}
 
@@ -653,6 +1229,11 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 		this.mockForm.forEach( ( key, value ) -> {
 			formMap.put( key.getName(), new String[] { value.toString() } );
 		} );
+		if ( this.slowClient != null && !formMap.isEmpty() ) {
+			// The size of the url-encoded form body, close enough for the upload time
+			long size = formMap.entrySet().stream().mapToLong( entry -> entry.getKey().length() + 2 + CountingWriter.utf8Length( entry.getValue()[ 0 ] ) ).sum();
+			this.slowClient.deliverRequest( size );
+		}
 		return formMap;
 	}
 
@@ -797,9 +1378,25 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 		return new FileUpload[ 0 ];
 	}
 
+	/**
+	 * Get the web context of the exchange: the one of the running execution, else the one web-aware BIFs of the caller
+	 * see, created on first use
+	 *
+	 * @return The web context
+	 */
 	@Override
 	public WebRequestBoxContext getWebContext() {
-		return this.context;
+		WebRequestBoxContext webContext = this.context;
+		return webContext != null ? webContext : initializeWebContext().context;
+	}
+
+	/**
+	 * Whether the web context was created yet, by an execution or on demand
+	 *
+	 * @return True if the exchange has a web context
+	 */
+	public boolean hasWebContext() {
+		return this.context != null;
 	}
 
 	@Override
@@ -814,6 +1411,11 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 
 	@Override
 	public void setRequestAttribute( String name, Object value ) {
+		// Concurrent maps take no null values, a null attribute is an absent one
+		if ( value == null ) {
+			this.attributes.remove( name );
+			return;
+		}
 		this.attributes.put( name, value );
 	}
 
@@ -822,21 +1424,39 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 		this.context = context;
 	}
 
+	/**
+	 * Initialize the web context for this mock exchange and attach it to the caller request context, unless it already is.
+	 * This allows web-aware BIFs like getHTTPRequestData() to work properly from the caller.
+	 * Executions do not need it, they build their own, so it is only created when asked for. A config only exchange gets a
+	 * detached web context.
+	 *
+	 * @return This exchange for chaining
+	 */
+	public synchronized MockHTTPExchange initializeWebContext() {
+		if ( this.requestContext != null && ( this.context == null || this.requestContext.getParent() != this.context ) ) {
+			return initializeWebContext( this.requestContext );
+		}
+		if ( this.context == null ) {
+			this.context = new WebRequestBoxContext( BoxRuntime.getInstance().getRuntimeContext(), this, this.webroot );
+		}
+		return this;
+	}
+
 	/**
 	 * Initialize the web context for this mock exchange.
 	 * This allows web-aware BIFs like getHTTPRequestData() to work properly.
 	 *
 	 * @param parentContext The parent context to attach this web context to
 	 */
-	public MockHTTPExchange initializeWebContext( ortus.boxlang.runtime.context.IBoxContext parentContext ) {
-		this.context = new WebRequestBoxContext( runtime.getRuntimeContext(), this, this.webroot );
+	public synchronized MockHTTPExchange initializeWebContext( ortus.boxlang.runtime.context.IBoxContext parentContext ) {
+		this.context = new WebRequestBoxContext( BoxRuntime.getInstance().getRuntimeContext(), this, this.webroot );
 		parentContext.setParent( this.context );
 		return this;
 	}
 
 	@Override
 	public void reset() {
-		this.context.clearBuffer();
+		getWebContext().clearBuffer();
 	}
 
 	/**
@@ -864,12 +1484,59 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 	public IBoxHTTPExchange clearResponseData() {
 		this.mockResponseHeaders.clear();
 		this.mockResponseCookies.clear();
-		this.responseStatus	= 200;
-		this.responseText	= "Ok";
-		this.writer			= new PrintWriter( new StringWriter() );
+		setResponseStatus( 200, "Ok" );
+		resetResponseSink();
 		return this;
 	}
 
+	/**
+	 * Create a fresh response sink for the current response mode
+	 */
+	protected void resetResponseSink() {
+		Writer sink;
+		if ( this.responseMode == ResponseMode.BUFFER ) {
+			this.responseBuffer		= new StringWriter();
+			this.responseCounter	= null;
+			sink					= this.responseBuffer;
+		} else {
+			this.responseBuffer		= null;
+			this.responseCounter	= new CountingWriter( this.responseMode == ResponseMode.CHECKSUM );
+			sink					= this.responseCounter;
+		}
+		Writer out = this.slowClient == null ? sink : new ThrottledWriter( sink, this.slowClient );
+		// PrintWriter serializes its writes on the writer it wraps, binary writes and reads share that lock
+		this.sinkLock	= out;
+		this.writer		= new PrintWriter( out );
+	}
+
+	/**
+	 * Replace the response with a stored one, used to answer a request without executing it.
+	 * Without a body, as stored from a counting response mode, only the length and hash of the body are restored.
+	 *
+	 * @param status     The response status
+	 * @param statusText The response status text
+	 * @param headers    The response headers
+	 * @param body       The response body, or null if it was not retained
+	 * @param length     The response body length in bytes
+	 * @param hash       The response body hash, may be empty
+	 */
+	public void replayResponse( int status, String statusText, Map<String, String> headers, String body, long length, String hash ) {
+		clearResponseData();
+		setResponseStatus( status, statusText );
+		headers.forEach( this::addResponseHeader );
+		if ( body != null && !body.isEmpty() ) {
+			this.writer.write( body );
+			this.writer.flush();
+		} else if ( body == null && this.responseCounter != null ) {
+			synchronized ( this.sinkLock ) {
+				if ( this.slowClient != null ) {
+					this.slowClient.send( length );
+				}
+				this.responseCounter.restore( length, hash );
+			}
+		}
+	}
+
 	/**
 	 * Clear all mock data (request and response)
 	 * Useful for resetting the mock between tests
@@ -882,6 +1549,119 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 		return this;
 	}
 
+	/**
+	 * Run a template of the webroot in place and trace the hop, the request path and query string point to the target
+	 * while it runs
+	 *
+	 * @param type The dispatch type: forward or include
+	 * @param URI  The path of the target relative to the webroot, with an optional query string
+	 */
+	protected void dispatch( String type, String URI ) {
+		DispatchTrace	trace	= this.dispatchTrace;
+		int				query	= URI.indexOf( '?' );
+		String			target	= query < 0 ? URI : URI.substring( 0, query );
+		target = target.startsWith( "/" ) ? target : "/" + target;
+		String	fromPath	= this.requestPath;
+		String	fromQuery	= this.requestQueryString;
+		if ( query >= 0 ) {
+			IStruct urlScope = this.context.getScopeNearby( Key.of( "url" ) );
+			for ( String pair : URI.substring( query + 1 ).split( "&" ) ) {
+				if ( pair.isEmpty() ) {
+					continue;
+				}
+				int equals = pair.indexOf( '=' );
+				urlScope.put(
+				    URLDecoder.decode( equals < 0 ? pair : pair.substring( 0, equals ), StandardCharsets.UTF_8 ),
+				    equals < 0 ? "" : URLDecoder.decode( pair.substring( equals + 1 ), StandardCharsets.UTF_8 )
+				);
+			}
+		}
+
+		trace.enter( type, fromPath, target );
+		Throwable error = null;
+		try {
+			if ( type.equals( DispatchTrace.FORWARD ) ) {
+				this.requestPath		= target;
+				this.requestQueryString	= query < 0 ? "" : URI.substring( query + 1 );
+			}
+			RouteStubRegistry.Match stub = matchStub( this.requestMethod, target );
+			if ( stub == null ) {
+				this.context.includeTemplate( target );
+			} else {
+				answerStub( type, target, stub );
+			}
+		} catch ( AbortException e ) {
+			// A nested forward or an abort in the target ends the request, the hop did not fail
+			throw e;
+		} catch ( RuntimeException | Error e ) {
+			error = e;
+			throw e;
+		} finally {
+			this.requestPath		= fromPath;
+			this.requestQueryString	= fromQuery;
+			trace.exit( error );
+		}
+	}
+
+	/**
+	 * Find the route stub answering a path, in the route stubs of this exchange then in the global ones
+	 *
+	 * @param method The request method
+	 * @param path   The path relative to the webroot
+	 *
+	 * @return The match, or null if the path runs its template
+	 */
+	protected RouteStubRegistry.Match matchStub( String method, String path ) {
+		RouteStubRegistry		local	= this.routeStubs;
+		RouteStubRegistry.Match	match	= local == null ? null : local.match( method, path );
+		return match != null ? match : RouteStubRegistry.global().match( method, path );
+	}
+
+	/**
+	 * Answer a route with its stub after the stub latency. A request or a forward gets the stub status, headers and body,
+	 * an include only appends the body to the response, like an included template.
+	 *
+	 * @param type  The route type: request, forward or include
+	 * @param path  The path answered
+	 * @param match The stub match
+	 */
+	protected void answerStub( String type, String path, RouteStubRegistry.Match match ) {
+		StubRoute			route	= match.route();
+		long				start	= System.nanoTime();
+		ThreadLocalRandom	random	= ThreadLocalRandom.current();
+		boolean				failed	= route.getErrorRate() > 0 && random.nextDouble() < route.getErrorRate();
+		long				delay	= ( long ) ( route.getLatency().sample( random ) * 1_000_000 ) - ( System.nanoTime() - start );
+		if ( delay > 0 ) {
+			try {
+				Thread.sleep( Duration.ofNanos( delay ) );
+			} catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				throw new BoxRuntimeException( "Interrupted while answering [" + path + "] with its route stub", e );
+			}
+		}
+		int		status	= failed ? route.getErrorStatus() : route.getStatus();
+		String	body	= failed ? "Injected route failure" : new String( route.getBody(), StandardCharsets.UTF_8 );
+		if ( type.equals( "request" ) ) {
+			replayResponse( status, "", route.getHeaders(), body, body.getBytes( StandardCharsets.UTF_8 ).length, "" );
+		} else {
+			if ( type.equals( DispatchTrace.FORWARD ) ) {
+				setResponseStatus( status );
+				route.getHeaders().forEach( this::setResponseHeader );
+			}
+			this.context.writeToBuffer( body );
+		}
+		long elapsed = System.nanoTime() - start;
+		match.record( elapsed, failed );
+		this.stubbedRoutes.add( Struct.linkedOf(
+		    "type", type,
+		    "path", path,
+		    "stub", route.getName(),
+		    "params", Struct.fromMap( match.params() ),
+		    "status", status,
+		    "durationMs", elapsed / 1_000_000.0
+		) );
+	}
+
 	/**
 	 * Execute a full life-cycle request using this exchange
 	 * and return itself for inspection
@@ -924,8 +1704,118 @@ public class MockHTTPExchange implements IBoxHTTPExchange {
 		if ( body != null ) {
 			this.requestBody = body;
 		}
-		// Use the WebRequestExecutor to process the request
-		WebRequestExecutor.execute( this, this.webroot, true );
+		// Opt-in profilers
+		StackSampler		activeSampler	= this.sampler;
+		InterceptorTimer	activeTimer		= this.interceptorTimer;
+		ContentionMonitor	activeMonitor	= this.contentionMonitor;
+		QueryProfiler		activeProfiler	= this.queryProfiler;
+		if ( activeSampler != null ) {
+			activeSampler.begin( path );
+		}
+		if ( activeMonitor != null ) {
+			activeMonitor.begin();
+		}
+		if ( activeProfiler != null ) {
+			activeProfiler.begin();
+		}
+		if ( activeTimer != null ) {
+			activeTimer.begin();
+		}
+		// The budget of the request, checked once it succeeded
+		PerformanceBudgets.Resolved budget = this.budgets == null ? null : this.budgets.resolve( method, path );
+		this.budgetReport = new Struct();
+		this.flushCount.set( 0 );
+		DownstreamCalls	calls		= StubServer.track();
+		this.activeCalls = calls;
+		SlowClient		client		= this.slowClient;
+		boolean			measure		= client != null || budget != null;
+		long			cpuStart	= 0;
+		long			wallStart	= 0;
+		long			allocStart	= 0;
+		long			cpuNanos	= -1;
+		long			wallNanos	= 0;
+		long			allocated	= -1;
+		if ( client != null ) {
+			client.begin();
+		}
+		if ( measure ) {
+			cpuStart	= ThreadMetrics.cpuTime();
+			wallStart	= System.nanoTime();
+			allocStart	= ThreadMetrics.allocatedBytes();
+		}
+		// Use the WebRequestExecutor to process the request, through the HTTP cache if any
+		HttpCache		cache	= this.httpCache;
+		DispatchTrace	trace	= new DispatchTrace();
+		this.dispatchTrace = trace;
+		this.stubbedRoutes = new Array();
+		try {
+			// A stubbed route answers before the cache, it never runs anything worth caching
+			RouteStubRegistry.Match stub = matchStub( method, path );
+			if ( stub != null ) {
+				this.cacheStatus = "";
+				answerStub( "request", path, stub );
+			} else if ( cache == null ) {
+				this.cacheStatus = "";
+				WebRequestExecutor.execute( this, this.webroot, true );
+			} else {
+				this.cacheStatus = cache.serve( this, () -> WebRequestExecutor.execute( this, this.webroot, true ) );
+			}
+		} finally {
+			this.dispatchTrace	= null;
+			this.dispatches		= trace.toStruct();
+			if ( measure ) {
+				cpuNanos	= ThreadMetrics.delta( cpuStart, ThreadMetrics.cpuTime() );
+				wallNanos	= System.nanoTime() - wallStart;
+				allocated	= ThreadMetrics.delta( allocStart, ThreadMetrics.allocatedBytes() );
+			}
+			if ( client != null ) {
+				this.clientTimings = client.getTimings( cpuNanos, wallNanos );
+			}
+			if ( calls != null ) {
+				this.activeCalls = null;
+				StubServer.untrack( calls );
+				this.downstreamCalls = calls.toStruct();
+			}
+			if ( activeTimer != null ) {
+				this.interceptorTimings = activeTimer.end();
+			}
+			if ( activeProfiler != null ) {
+				this.queryProfile = activeProfiler.end();
+			}
+			if ( activeMonitor != null ) {
+				activeMonitor.end();
+			}
+			if ( activeSampler != null ) {
+				activeSampler.end();
+			}
+		}
+		if ( budget != null ) {
+			checkBudget( method.toUpperCase() + " " + path, budget, wallNanos, cpuNanos, allocated );
+		}
 		return this;
 	}
+
+	/**
+	 * Check a successful execution against its budget and keep the report
+	 *
+	 * @param request   The method and path of the execution
+	 * @param budget    The budget of the execution
+	 * @param wallNanos The wall time of the execution
+	 * @param cpuNanos  The CPU time of the executing thread, -1 if it could not be measured
+	 * @param allocated The bytes allocated by the executing thread, -1 if they could not be measured
+	 *
+	 * @throws BudgetExceededException If the execution went over a limit
+	 */
+	protected void checkBudget( String request, PerformanceBudgets.Resolved budget, long wallNanos, long cpuNanos, long allocated ) {
+		Map<String, Double> measured = new LinkedHashMap<>();
+		measured.put( PerformanceBudget.WALL_MS, wallNanos / 1_000_000.0 );
+		measured.put( PerformanceBudget.CPU_MS, cpuNanos < 0 ? -1.0 : cpuNanos / 1_000_000.0 );
+		measured.put( PerformanceBudget.ALLOCATED_BYTES, ( double ) allocated );
+		measured.put( PerformanceBudget.RESPONSE_BYTES, ( double ) getResponseLength() );
+		measured.put( PerformanceBudget.FLUSHES, ( double ) this.flushCount.get() );
+		this.budgetReport = budget.budget().check( budget.route(), measured );
+		if ( Boolean.FALSE.equals( this.budgetReport.get( Key.of( "passed" ) ) ) ) {
+			throw new BudgetExceededException( request, this.budgetReport );
+		}
+	}
 }
@@ -0,0 +1,61 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.exchange;
+
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * How a {@link MockHTTPExchange} retains the response body it is sent.
+ */
+public enum ResponseMode {
+
+	/**
+	 * Keep the full response body in memory so it can be inspected via {@code getResponseBody()}
+	 */
+	BUFFER,
+
+	/**
+	 * Retain nothing, only count the bytes written
+	 */
+	DISCARD,
+
+	/**
+	 * Retain nothing, count the bytes written and keep a rolling hash of them
+	 */
+	CHECKSUM;
+
+	/**
+	 * Resolve a response mode from its name, case-insensitive
+	 *
+	 * @param mode The mode name: buffer, discard or checksum
+	 *
+	 * @throws BoxRuntimeException If the mode is not a valid response mode
+	 *
+	 * @return The response mode
+	 */
+	public static ResponseMode fromString( String mode ) {
+		if ( mode == null || mode.isBlank() ) {
+			return BUFFER;
+		}
+		try {
+			return ResponseMode.valueOf( mode.trim().toUpperCase() );
+		} catch ( IllegalArgumentException e ) {
+			throw new BoxRuntimeException( "Invalid response mode [" + mode + "]. Valid modes are: buffer, discard, checksum" );
+		}
+	}
+}
@@ -0,0 +1,265 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.exchange;
+
+import java.time.Duration;
+
+import ortus.boxlang.runtime.dynamic.casters.LongCaster;
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * A slow client on the other side of a {@link MockHTTPExchange}: it uploads the request body at a limited rate and reads
+ * the response at a limited rate through a bounded send buffer.
+ * <p>
+ * The request body is delivered the first time the application reads it, blocking for as long as the upload takes. Response
+ * bytes go into a send buffer of {@code sendBuffer} bytes that the client drains at {@code readRate} bytes per second; a
+ * write that does not fit blocks until the client has read enough, like a socket write against a full TCP send buffer. The
+ * request thread is released as soon as the last byte fits in the buffer, as in a real container.
+ * <p>
+ * The time the request thread spends blocked on the client is accumulated separately, so it can be compared with the CPU
+ * time of the execution. A rate of 0 means unlimited.
+ */
+public class SlowClient {
+
+	/**
+	 * The send buffer capacity used when none is given, a typical socket send buffer
+	 */
+	public static final long	DEFAULT_SEND_BUFFER	= 65_536;
+
+	/**
+	 * The request body upload rate in bytes per second, 0 for unlimited
+	 */
+	private final long		uploadRate;
+
+	/**
+	 * The response read rate in bytes per second, 0 for unlimited
+	 */
+	private final long		readRate;
+
+	/**
+	 * The send buffer capacity in bytes
+	 */
+	private final long		sendBuffer;
+
+	/**
+	 * The bytes waiting in the send buffer at {@link #lastDrain}
+	 */
+	private double			buffered			= 0;
+
+	/**
+	 * The last time the send buffer level was computed
+	 */
+	private long			lastDrain			= 0;
+
+	/**
+	 * Whether the request body was delivered in the current execution
+	 */
+	private boolean			delivered			= false;
+
+	/**
+	 * The nanoseconds blocked on the request body upload in the current execution
+	 */
+	private long			uploadBlocked		= 0;
+
+	/**
+	 * The nanoseconds blocked on a full send buffer in the current execution
+	 */
+	private long			sendBlocked			= 0;
+
+	/**
+	 * The response bytes sent in the current execution
+	 */
+	private long			sentBytes			= 0;
+
+	/**
+	 * Create a new slow client
+	 *
+	 * @param uploadRate The request body upload rate in bytes per second, 0 for unlimited
+	 * @param readRate   The response read rate in bytes per second, 0 for unlimited
+	 * @param sendBuffer The send buffer capacity in bytes, writes block once it is full
+	 */
+	public SlowClient( long uploadRate, long readRate, long sendBuffer ) {
+		if ( uploadRate < 0 || readRate < 0 ) {
+			throw new BoxRuntimeException( "The slow client rates must be 0 (unlimited) or a number of bytes per second" );
+		}
+		this.uploadRate	= uploadRate;
+		this.readRate	= readRate;
+		this.sendBuffer	= Math.max( 1, sendBuffer );
+	}
+
+	/**
+	 * Create a slow client from a BoxLang struct of { uploadRate, readRate, sendBuffer }, all optional
+	 *
+	 * @param config The slow client configuration
+	 *
+	 * @return The slow client
+	 */
+	public static SlowClient fromStruct( IStruct config ) {
+		return new SlowClient(
+		    config.get( Key.of( "uploadRate" ) ) == null ? 0 : LongCaster.cast( config.get( Key.of( "uploadRate" ) ) ),
+		    config.get( Key.of( "readRate" ) ) == null ? 0 : LongCaster.cast( config.get( Key.of( "readRate" ) ) ),
+		    config.get( Key.of( "sendBuffer" ) ) == null ? DEFAULT_SEND_BUFFER : LongCaster.cast( config.get( Key.of( "sendBuffer" ) ) )
+		);
+	}
+
+	/**
+	 * @return A new slow client with the same rates and buffer, for another exchange
+	 */
+	public SlowClient copy() {
+		return new SlowClient( this.uploadRate, this.readRate, this.sendBuffer );
+	}
+
+	/**
+	 * Start a new execution: the send buffer is empty and the request body not delivered yet
+	 */
+	public synchronized void begin() {
+		this.buffered		= 0;
+		this.lastDrain		= System.nanoTime();
+		this.delivered		= false;
+		this.uploadBlocked	= 0;
+		this.sendBlocked	= 0;
+		this.sentBytes		= 0;
+	}
+
+	/**
+	 * Deliver the request body, blocking for its upload time the first time it is read in an execution
+	 *
+	 * @param bytes The size of the request body in bytes
+	 */
+	public void deliverRequest( long bytes ) {
+		synchronized ( this ) {
+			if ( this.delivered ) {
+				return;
+			}
+			this.delivered = true;
+		}
+		if ( this.uploadRate == 0 || bytes <= 0 ) {
+			return;
+		}
+		long blocked = block( bytes * 1_000_000_000L / this.uploadRate );
+		synchronized ( this ) {
+			this.uploadBlocked += blocked;
+		}
+	}
+
+	/**
+	 * Put response bytes into the send buffer, blocking while it is full
+	 *
+	 * @param bytes The number of bytes written
+	 */
+	public void send( long bytes ) {
+		if ( bytes <= 0 ) {
+			return;
+		}
+		synchronized ( this ) {
+			this.sentBytes += bytes;
+		}
+		if ( this.readRate == 0 ) {
+			return;
+		}
+		long remaining = bytes;
+		while ( remaining > 0 ) {
+			long	chunk	= Math.min( remaining, this.sendBuffer );
+			long	wait;
+			synchronized ( this ) {
+				drain();
+				double overflow = this.buffered + chunk - this.sendBuffer;
+				wait			= overflow <= 0 ? 0 : ( long ) Math.ceil( overflow * 1_000_000_000L / this.readRate );
+			}
+			long blocked = block( wait );
+			synchronized ( this ) {
+				drain();
+				this.buffered		= Math.min( this.sendBuffer, this.buffered + chunk );
+				this.sendBlocked	+= blocked;
+			}
+			remaining -= chunk;
+		}
+	}
+
+	/**
+	 * Get the blocking of the current execution
+	 *
+	 * @param cpuNanos  The CPU time of the execution, -1 if it could not be measured
+	 * @param wallNanos The wall time of the execution
+	 *
+	 * @return The timings: uploadBlockedMs, sendBlockedMs, blockedMs, cpuMs, wallMs and sentBytes
+	 */
+	public synchronized IStruct getTimings( long cpuNanos, long wallNanos ) {
+		return Struct.linkedOf(
+		    "uploadBlockedMs", this.uploadBlocked / 1_000_000.0,
+		    "sendBlockedMs", this.sendBlocked / 1_000_000.0,
+		    "blockedMs", ( this.uploadBlocked + this.sendBlocked ) / 1_000_000.0,
+		    "cpuMs", cpuNanos < 0 ? -1.0 : cpuNanos / 1_000_000.0,
+		    "wallMs", wallNanos / 1_000_000.0,
+		    "sentBytes", this.sentBytes
+		);
+	}
+
+	/**
+	 * @return The request body upload rate in bytes per second, 0 for unlimited
+	 */
+	public long getUploadRate() {
+		return this.uploadRate;
+	}
+
+	/**
+	 * @return The response read rate in bytes per second, 0 for unlimited
+	 */
+	public long getReadRate() {
+		return this.readRate;
+	}
+
+	/**
+	 * @return The send buffer capacity in bytes
+	 */
+	public long getSendBuffer() {
+		return this.sendBuffer;
+	}
+
+	/**
+	 * Remove from the send buffer what the client read since the last drain
+	 */
+	private void drain() {
+		long now = System.nanoTime();
+		this.buffered	= Math.max( 0, this.buffered - ( now - this.lastDrain ) * ( double ) this.readRate / 1_000_000_000L );
+		this.lastDrain	= now;
+	}
+
+	/**
+	 * Block the calling thread
+	 *
+	 * @param nanos The time to block
+	 *
+	 * @return The time actually blocked
+	 */
+	private static long block( long nanos ) {
+		if ( nanos <= 0 ) {
+			return 0;
+		}
+		long start = System.nanoTime();
+		try {
+			Thread.sleep( Duration.ofNanos( nanos ) );
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+		return System.nanoTime() - start;
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.exchange;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * A response writer that pushes every character it writes through the send buffer of a {@link SlowClient} before handing
+ * it to the response sink, so the writing thread blocks like it would against a slow reader.
+ */
+public class ThrottledWriter extends Writer {
+
+	/**
+	 * The response sink
+	 */
+	private final Writer		delegate;
+
+	/**
+	 * The slow client reading the response
+	 */
+	private final SlowClient	client;
+
+	/**
+	 * Create a new throttled writer
+	 *
+	 * @param delegate The response sink
+	 * @param client   The slow client reading the response
+	 */
+	public ThrottledWriter( Writer delegate, SlowClient client ) {
+		this.delegate	= delegate;
+		this.client		= client;
+	}
+
+	@Override
+	public void write( int c ) throws IOException {
+		this.client.send( c < 0x80 ? 1 : c < 0x800 ? 2 : 3 );
+		this.delegate.write( c );
+	}
+
+	@Override
+	public void write( char[] cbuf, int off, int len ) throws IOException {
+		this.client.send( CountingWriter.utf8Length( CharBuffer.wrap( cbuf, off, len ) ) );
+		this.delegate.write( cbuf, off, len );
+	}
+
+	@Override
+	public void write( String str, int off, int len ) throws IOException {
+		this.client.send( CountingWriter.utf8Length( CharBuffer.wrap( str, off, off + len ) ) );
+		this.delegate.write( str, off, len );
+	}
+
+	@Override
+	public void flush() throws IOException {
+		this.delegate.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.delegate.close();
+	}
+}
@@ -0,0 +1,410 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import ortus.boxlang.runtime.application.Application;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+import ortus.boxlang.websupport.profiling.ApplicationProbe;
+import ortus.boxlang.websupport.profiling.ThreadMetrics;
+
+/**
+ * Compares two versions of an application, webroot A and webroot B, on the same request specs within one JVM.
+ * <p>
+ * Every round executes each spec once against A and once against B, back to back and in a random order, with the same
+ * feeder record. The two executions of a pair share the JIT state, GC pressure and thermal state of the machine, so drift
+ * over the run cancels out in their difference, and the random order cancels the advantage of running second.
+ * <p>
+ * Per route it reports the latency and allocation of both sides and the median of the paired differences (B minus A),
+ * tested with the Wilcoxon signed-rank test. The p-values are adjusted with Holm-Bonferroni across routes, so a change is
+ * only called faster or slower when it is unlikely to be noise. Pairs where either side failed are left out.
+ * <p>
+ * Both webroots run in the same runtime, so their applications must have different names or they would share one
+ * application scope and compare nothing: the run fails after the first pair if both sides ran in the same application.
+ * Allocations are measured on the calling thread and are -1 on virtual threads.
+ */
+public class ABBenchmark {
+
+	/**
+	 * The two webroots compared
+	 */
+	private final String			webrootA;
+	private final String			webrootB;
+
+	/**
+	 * The request specs executed against both webroots, their own webroot is ignored
+	 */
+	private final List<RequestSpec>	specs;
+
+	/**
+	 * The feeder for the spec placeholders, null if the specs have none
+	 */
+	private final IFeeder			feeder;
+
+	/**
+	 * The number of measured rounds
+	 */
+	private int						iterations	= 200;
+
+	/**
+	 * The number of rounds before measuring starts
+	 */
+	private int						warmup		= 20;
+
+	/**
+	 * The significance level
+	 */
+	private double					alpha		= 0.05;
+
+	/**
+	 * The random order of every pair
+	 */
+	private Random					random		= new Random();
+
+	/**
+	 * Create a new A/B benchmark
+	 *
+	 * @param webrootA The webroot of the baseline
+	 * @param webrootB The webroot of the candidate
+	 * @param specs    The request specs executed against both webroots
+	 * @param feeder   The feeder for the spec placeholders, or null if the specs have none
+	 */
+	public ABBenchmark( String webrootA, String webrootB, List<RequestSpec> specs, IFeeder feeder ) {
+		if ( !Files.isDirectory( Path.of( webrootA ) ) || !Files.isDirectory( Path.of( webrootB ) ) ) {
+			throw new BoxRuntimeException( "Both webroots must be existing directories: [" + webrootA + "] and [" + webrootB + "]" );
+		}
+		if ( specs.isEmpty() ) {
+			throw new BoxRuntimeException( "At least one request spec is required" );
+		}
+		this.webrootA	= webrootA;
+		this.webrootB	= webrootB;
+		this.specs		= List.copyOf( specs );
+		this.feeder		= feeder;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Fluent setters
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * @param iterations The number of measured rounds, every round executes each spec once per webroot
+	 *
+	 * @return This benchmark for chaining
+	 */
+	public ABBenchmark setIterations( int iterations ) {
+		this.iterations = Math.max( 1, iterations );
+		return this;
+	}
+
+	/**
+	 * @param warmup The number of rounds before measuring starts
+	 *
+	 * @return This benchmark for chaining
+	 */
+	public ABBenchmark setWarmup( int warmup ) {
+		this.warmup = Math.max( 0, warmup );
+		return this;
+	}
+
+	/**
+	 * @param alpha The significance level, between 0 and 1
+	 *
+	 * @return This benchmark for chaining
+	 */
+	public ABBenchmark setAlpha( double alpha ) {
+		if ( alpha <= 0 || alpha >= 1 ) {
+			throw new BoxRuntimeException( "The significance level must be between 0 and 1, got [" + alpha + "]" );
+		}
+		this.alpha = alpha;
+		return this;
+	}
+
+	/**
+	 * @param seed The seed of the random order of the pairs, for reproducible runs
+	 *
+	 * @return This benchmark for chaining
+	 */
+	public ABBenchmark setSeed( long seed ) {
+		this.random = new Random( seed );
+		return this;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Run
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Run the rounds and compare the two webroots
+	 *
+	 * @return The report: webrootA, webrootB, iterations, warmup, alpha, durationMs, routes, faster and slower
+	 *
+	 * @throws BoxRuntimeException If both webroots run in the same application
+	 */
+	public IStruct run() {
+		long						start	= System.nanoTime();
+		Map<String, RouteSamples>	routes	= new LinkedHashMap<>();
+		List<RouteSamples>			samples	= new ArrayList<>();
+		for ( RequestSpec spec : this.specs ) {
+			String route = spec.getRoute();
+			// The same route twice, e.g. with other headers, is reported apart
+			for ( int copy = 2; routes.containsKey( route ); copy++ ) {
+				route = spec.getRoute() + " #" + copy;
+			}
+			RouteSamples routeSamples = new RouteSamples();
+			routes.put( route, routeSamples );
+			samples.add( routeSamples );
+		}
+
+		rounds:
+		for ( int round = 0; round < this.warmup + this.iterations; round++ ) {
+			for ( int i = 0; i < this.specs.size(); i++ ) {
+				IStruct record = null;
+				if ( this.feeder != null ) {
+					record = this.feeder.next();
+					if ( record == null ) {
+						break rounds;
+					}
+				}
+				RequestSpec	spec	= this.specs.get( i );
+				boolean		aFirst	= this.random.nextBoolean();
+				Measurement	first	= measure( spec, record, aFirst ? this.webrootA : this.webrootB );
+				Measurement	second	= measure( spec, record, aFirst ? this.webrootB : this.webrootA );
+				if ( round == 0 && i == 0 ) {
+					checkApplications( first, second );
+				}
+				if ( round >= this.warmup ) {
+					samples.get( i ).add( aFirst ? first : second, aFirst ? second : first );
+				}
+			}
+		}
+
+		return analyze( routes, System.nanoTime() - start );
+	}
+
+	/**
+	 * Make sure both sides of a pair ran in their own application
+	 *
+	 * @param first  The first execution of the pair
+	 * @param second The second execution of the pair
+	 *
+	 * @throws BoxRuntimeException If both ran in the same application
+	 */
+	private void checkApplications( Measurement first, Measurement second ) {
+		Application application = first.application();
+		if ( application != null && application == second.application() ) {
+			throw new BoxRuntimeException(
+			    "Webroots [" + this.webrootA + "] and [" + this.webrootB + "] run in the same application [" + application.getName().getName()
+			        + "], give their applications different names so they do not share one application scope" );
+		}
+	}
+
+	/**
+	 * Build and execute one exchange
+	 *
+	 * @param spec    The request spec
+	 * @param record  The feeder record, may be null
+	 * @param webroot The webroot to execute against
+	 *
+	 * @return The measurement
+	 */
+	private static Measurement measure( RequestSpec spec, IStruct record, String webroot ) {
+		MockHTTPExchange	exchange	= spec.toExchange( record, webroot );
+		boolean				failed		= false;
+		long				allocated	= ThreadMetrics.allocatedBytes();
+		long				begin		= System.nanoTime();
+		try {
+			exchange.execute();
+			failed = exchange.getResponseStatus() >= 500;
+		} catch ( RuntimeException e ) {
+			failed = true;
+		}
+		long elapsed = System.nanoTime() - begin;
+		return new Measurement( elapsed, ThreadMetrics.delta( allocated, ThreadMetrics.allocatedBytes() ), failed, ApplicationProbe.applicationOf( exchange ) );
+	}
+
+	/**
+	 * Compare both sides of every route, adjusting the p-values across routes
+	 *
+	 * @param routes  The samples per route
+	 * @param elapsed The run duration in nanoseconds
+	 *
+	 * @return The report
+	 */
+	private IStruct analyze( Map<String, RouteSamples> routes, long elapsed ) {
+		List<String>			names		= new ArrayList<>( routes.keySet() );
+		List<SignedRankTest>	latency		= new ArrayList<>();
+		List<SignedRankTest>	allocation	= new ArrayList<>();
+		for ( String name : names ) {
+			RouteSamples route = routes.get( name );
+			latency.add( SignedRankTest.of( route.differences( route.nanosB, route.nanosA ) ) );
+			allocation.add( SignedRankTest.of( route.hasAllocations() ? route.differences( route.bytesB, route.bytesA ) : new double[ 0 ] ) );
+		}
+		double[]	latencyP	= SignedRankTest.holm( latency.stream().mapToDouble( SignedRankTest::pValue ).toArray() );
+		double[]	allocationP	= SignedRankTest.holm( allocation.stream().mapToDouble( SignedRankTest::pValue ).toArray() );
+
+		IStruct		results		= new Struct( Struct.TYPES.LINKED );
+		Array		faster		= new Array();
+		Array		slower		= new Array();
+		for ( int i = 0; i < names.size(); i++ ) {
+			RouteSamples	route			= routes.get( names.get( i ) );
+			SignedRankTest	latencyTest		= latency.get( i );
+			boolean			significant		= latencyP[ i ] <= this.alpha;
+			String			verdict			= !significant || latencyTest.median() == 0 ? "same" : latencyTest.median() < 0 ? "faster" : "slower";
+			double			medianA			= SignedRankTest.percentile( route.toArray( route.nanosA ), 50 );
+			if ( verdict.equals( "faster" ) ) {
+				faster.add( names.get( i ) );
+			} else if ( verdict.equals( "slower" ) ) {
+				slower.add( names.get( i ) );
+			}
+
+			SignedRankTest	allocationTest	= allocation.get( i );
+			double			allocationA		= SignedRankTest.percentile( route.toArray( route.bytesA ), 50 );
+			results.put( names.get( i ), Struct.linkedOf(
+			    "pairs", route.nanosA.size(),
+			    "a", route.side( route.nanosA, route.bytesA, route.errorsA ),
+			    "b", route.side( route.nanosB, route.bytesB, route.errorsB ),
+			    "latency", Struct.linkedOf(
+			        "deltaMs", latencyTest.median() / 1_000_000.0,
+			        "deltaPct", medianA == 0 ? 0.0 : latencyTest.median() / medianA * 100,
+			        "pValue", latencyP[ i ],
+			        "significant", significant
+			    ),
+			    "allocation", Struct.linkedOf(
+			        "deltaBytes", route.hasAllocations() ? allocationTest.median() : -1.0,
+			        "deltaPct", !route.hasAllocations() || allocationA == 0 ? 0.0 : allocationTest.median() / allocationA * 100,
+			        "pValue", allocationP[ i ],
+			        "significant", route.hasAllocations() && allocationP[ i ] <= this.alpha
+			    ),
+			    "verdict", verdict
+			) );
+		}
+
+		return Struct.linkedOf(
+		    "webrootA", this.webrootA,
+		    "webrootB", this.webrootB,
+		    "iterations", this.iterations,
+		    "warmup", this.warmup,
+		    "alpha", this.alpha,
+		    "durationMs", elapsed / 1_000_000.0,
+		    "routes", results,
+		    "faster", faster,
+		    "slower", slower
+		);
+	}
+
+	/**
+	 * One execution
+	 *
+	 * @param nanos       The latency in nanoseconds
+	 * @param allocated   The bytes allocated by the calling thread, -1 if unavailable
+	 * @param failed      Whether the execution threw or answered with a 5xx status
+	 * @param application The application the execution ran in, null if none
+	 */
+	private record Measurement( long nanos, long allocated, boolean failed, Application application ) {
+	}
+
+	/**
+	 * The paired measurements of one route
+	 */
+	private static class RouteSamples {
+
+		private final List<Long>	nanosA	= new ArrayList<>();
+		private final List<Long>	nanosB	= new ArrayList<>();
+		private final List<Long>	bytesA	= new ArrayList<>();
+		private final List<Long>	bytesB	= new ArrayList<>();
+		private long				errorsA	= 0;
+		private long				errorsB	= 0;
+
+		/**
+		 * Add a pair, unless either side failed
+		 */
+		void add( Measurement a, Measurement b ) {
+			if ( a.failed() ) {
+				this.errorsA++;
+			}
+			if ( b.failed() ) {
+				this.errorsB++;
+			}
+			if ( a.failed() || b.failed() ) {
+				return;
+			}
+			this.nanosA.add( a.nanos() );
+			this.nanosB.add( b.nanos() );
+			this.bytesA.add( a.allocated() );
+			this.bytesB.add( b.allocated() );
+		}
+
+		/**
+		 * @return Whether every allocation reading was available
+		 */
+		boolean hasAllocations() {
+			return !this.bytesA.isEmpty() && this.bytesA.stream().allMatch( bytes -> bytes >= 0 ) && this.bytesB.stream().allMatch( bytes -> bytes >= 0 );
+		}
+
+		/**
+		 * @return The pairwise differences of two series
+		 */
+		double[] differences( List<Long> minuend, List<Long> subtrahend ) {
+			double[] differences = new double[ minuend.size() ];
+			for ( int i = 0; i < differences.length; i++ ) {
+				differences[ i ] = minuend.get( i ) - subtrahend.get( i );
+			}
+			return differences;
+		}
+
+		/**
+		 * @return A series as an array
+		 */
+		double[] toArray( List<Long> values ) {
+			return values.stream().mapToDouble( Long::doubleValue ).toArray();
+		}
+
+		/**
+		 * @return The summary of one side: { meanMs, medianMs, p90Ms, stddevMs, allocatedBytes, errors }
+		 */
+		IStruct side( List<Long> nanos, List<Long> bytes, long errors ) {
+			double[]	values		= toArray( nanos );
+			double		mean		= values.length == 0 ? 0 : Arrays.stream( values ).average().orElse( 0 );
+			double		variance	= values.length < 2 ? 0 : Arrays.stream( values ).map( value -> ( value - mean ) * ( value - mean ) ).sum() / ( values.length - 1 );
+			return Struct.linkedOf(
+			    "meanMs", mean / 1_000_000.0,
+			    "medianMs", SignedRankTest.percentile( values, 50 ) / 1_000_000.0,
+			    "p90Ms", SignedRankTest.percentile( values, 90 ) / 1_000_000.0,
+			    "stddevMs", Math.sqrt( variance ) / 1_000_000.0,
+			    "allocatedBytes", hasAllocations() ? SignedRankTest.percentile( toArray( bytes ), 50 ) : -1.0,
+			    "errors", errors
+			);
+		}
+	}
+}
@@ -0,0 +1,617 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import ortus.boxlang.runtime.dynamic.casters.DoubleCaster;
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+import ortus.boxlang.websupport.profiling.ContentionMonitor;
+import ortus.boxlang.websupport.profiling.QueryProfiler;
+import ortus.boxlang.websupport.profiling.ThreadMetrics;
+
+/**
+ * An open-model load generator: requests arrive at a target rate whether or not earlier ones have finished.
+ * <p>
+ * The rate is described by stages, each ramping linearly from a start rate to an end rate (requests per second) over its
+ * duration. A single scheduler thread computes the intended start time of every request from the integrated rate and
+ * hands each request to its own thread, virtual by default, exactly at that time. Latency is measured from the intended
+ * start, not the actual start, so any time a request spent waiting because the system under test fell behind is part of
+ * the latency histogram (no coordinated omission). The pure execution time is recorded separately as service time.
+ * <p>
+ * Every request is built from the {@link RequestSpec} and the next feeder record and run through
+ * {@link MockHTTPExchange#execute()}. The run stops at the end of the last stage or when an EXHAUST feeder runs out.
+ * When {@code maxInFlight} requests are outstanding, new arrivals are dropped and counted rather than queued, so a
+ * saturated system cannot exhaust the memory of the harness. A dropped arrival never gets a response, so it has no latency
+ * and stays out of the histograms: the summary reports the drop ratio next to the percentiles instead, and the percentiles
+ * of a run that dropped arrivals only describe the requests that ran.
+ */
+public class ArrivalRateScheduler {
+
+	/**
+	 * The highest trackable latency, one hour in nanoseconds, well beyond any sane mock request
+	 */
+	private static final long				HIGHEST_LATENCY	= TimeUnit.HOURS.toNanos( 1 );
+
+	/**
+	 * The request description
+	 */
+	private final RequestSpec				spec;
+
+	/**
+	 * The feeder for the spec placeholders, may be null
+	 */
+	private final IFeeder					feeder;
+
+	/**
+	 * The rate stages, run in order
+	 */
+	private final List<Stage>				stages;
+
+	/**
+	 * The maximum number of outstanding requests before arrivals are dropped
+	 */
+	private int								maxInFlight		= 10_000;
+
+	/**
+	 * How long to wait for outstanding requests once the schedule is over, in milliseconds
+	 */
+	private long							drainTimeout	= 60_000;
+
+	/**
+	 * Whether requests run on virtual threads
+	 */
+	private boolean							virtualThreads	= true;
+
+	/**
+	 * Called with the result of every completed request, from the thread that executed it
+	 */
+	private final List<Consumer<RequestResult>>	resultListeners	= new ArrayList<>();
+
+	/**
+	 * The optional monitor attached to every exchange, its report is added to the summary
+	 */
+	private ContentionMonitor				monitor			= null;
+
+	/**
+	 * The optional query profiler attached to every exchange, its stats are added to the summary
+	 */
+	private QueryProfiler					queryProfiler	= null;
+
+	/**
+	 * Latency from the intended start, in nanoseconds
+	 */
+	private final Recorder					latency			= new Recorder( HIGHEST_LATENCY, 3 );
+
+	/**
+	 * Service time from the actual start, in nanoseconds
+	 */
+	private final Recorder					serviceTime		= new Recorder( HIGHEST_LATENCY, 3 );
+
+	/**
+	 * The latency and service time histograms of the finished run, null before
+	 */
+	private Histogram						latencyTotal	= null;
+	private Histogram						serviceTotal	= null;
+
+	/**
+	 * Response counts per status
+	 */
+	private final Map<Integer, LongAdder>	statusCounts	= new ConcurrentHashMap<>();
+
+	/**
+	 * Requests that threw
+	 */
+	private final LongAdder					errors			= new LongAdder();
+
+	/**
+	 * Requests that completed, successfully or not
+	 */
+	private final LongAdder					completed		= new LongAdder();
+
+	/**
+	 * Requests currently executing
+	 */
+	private final AtomicInteger				inFlight		= new AtomicInteger();
+
+	/**
+	 * Arrivals dropped because too many requests were outstanding
+	 */
+	private long							dropped			= 0;
+
+	/**
+	 * Arrivals dispatched
+	 */
+	private long							scheduled		= 0;
+
+	/**
+	 * Whether the run was asked to stop
+	 */
+	private volatile boolean				stopped			= false;
+
+	/**
+	 * A rate stage, ramping linearly from {@code startRate} to {@code endRate} requests per second
+	 *
+	 * @param durationMillis The stage duration in milliseconds
+	 * @param startRate      The rate at the start of the stage
+	 * @param endRate        The rate at the end of the stage
+	 */
+	public record Stage( long durationMillis, double startRate, double endRate ) {
+
+		/**
+		 * Validate the stage
+		 */
+		public Stage {
+			if ( durationMillis <= 0 ) {
+				throw new BoxRuntimeException( "A load stage duration must be positive" );
+			}
+			if ( startRate < 0 || endRate < 0 ) {
+				throw new BoxRuntimeException( "A load stage rate cannot be negative" );
+			}
+		}
+
+		/**
+		 * Build a stage from a struct with a {@code duration} in seconds, a {@code rate} and an optional {@code startRate}.
+		 * Without a start rate the stage ramps from the end rate of the previous stage, or holds the rate if it is the first.
+		 *
+		 * @param stage    The stage struct
+		 * @param previous The previous stage, or null
+		 *
+		 * @return The stage
+		 */
+		public static Stage fromStruct( IStruct stage, Stage previous ) {
+			if ( !stage.containsKey( Key.of( "duration" ) ) || !stage.containsKey( Key.of( "rate" ) ) ) {
+				throw new BoxRuntimeException( "A load stage needs a [duration] in seconds and a [rate] in requests per second" );
+			}
+			double	duration	= DoubleCaster.cast( stage.get( Key.of( "duration" ) ) );
+			double	rate		= DoubleCaster.cast( stage.get( Key.of( "rate" ) ) );
+			double	startRate	= stage.containsKey( Key.of( "startRate" ) )
+			    ? DoubleCaster.cast( stage.get( Key.of( "startRate" ) ) )
+			    : previous == null ? rate : previous.endRate();
+			return new Stage( Math.round( duration * 1000 ), startRate, rate );
+		}
+	}
+
+	/**
+	 * Create a new scheduler
+	 *
+	 * @param spec   The request description
+	 * @param feeder The feeder for the spec placeholders, may be null
+	 * @param stages The rate stages, run in order
+	 */
+	public ArrivalRateScheduler( RequestSpec spec, IFeeder feeder, List<Stage> stages ) {
+		if ( stages == null || stages.isEmpty() ) {
+			throw new BoxRuntimeException( "A load run needs at least one stage" );
+		}
+		this.spec	= spec;
+		this.feeder	= feeder;
+		this.stages	= List.copyOf( stages );
+	}
+
+	/**
+	 * Create a new scheduler from BoxLang stage structs
+	 *
+	 * @param spec   The request description
+	 * @param feeder The feeder for the spec placeholders, may be null
+	 * @param stages An array of stage structs, see {@link Stage#fromStruct(IStruct, Stage)}
+	 *
+	 * @return The scheduler
+	 */
+	public static ArrivalRateScheduler of( RequestSpec spec, IFeeder feeder, Array stages ) {
+		return new ArrivalRateScheduler( spec, feeder, parseStages( stages ) );
+	}
+
+	/**
+	 * Parse BoxLang stage structs
+	 *
+	 * @param stages An array of stage structs, see {@link Stage#fromStruct(IStruct, Stage)}
+	 *
+	 * @return The stages
+	 */
+	public static List<Stage> parseStages( Array stages ) {
+		List<Stage>	parsed		= new ArrayList<>();
+		Stage		previous	= null;
+		for ( Object stage : stages ) {
+			if ( ! ( stage instanceof IStruct struct ) ) {
+				throw new BoxRuntimeException( "Every load stage must be a struct" );
+			}
+			previous = Stage.fromStruct( struct, previous );
+			parsed.add( previous );
+		}
+		return parsed;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Fluent setters
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * @param maxInFlight The maximum number of outstanding requests before arrivals are dropped
+	 *
+	 * @return This scheduler for chaining
+	 */
+	public ArrivalRateScheduler setMaxInFlight( int maxInFlight ) {
+		this.maxInFlight = Math.max( 1, maxInFlight );
+		return this;
+	}
+
+	/**
+	 * @param drainTimeout How long to wait for outstanding requests once the schedule is over, in milliseconds
+	 *
+	 * @return This scheduler for chaining
+	 */
+	public ArrivalRateScheduler setDrainTimeout( long drainTimeout ) {
+		this.drainTimeout = Math.max( 0, drainTimeout );
+		return this;
+	}
+
+	/**
+	 * @param virtualThreads Whether requests run on virtual threads. Platform threads allow measuring CPU time and allocations.
+	 *
+	 * @return This scheduler for chaining
+	 */
+	public ArrivalRateScheduler setVirtualThreads( boolean virtualThreads ) {
+		this.virtualThreads = virtualThreads;
+		return this;
+	}
+
+	/**
+	 * Add a listener called with the result of every completed request, from the thread that executed it.
+	 * Listeners must be added before {@link #run()}.
+	 *
+	 * @param resultListener The listener
+	 *
+	 * @return This scheduler for chaining
+	 */
+	public ArrivalRateScheduler addResultListener( Consumer<RequestResult> resultListener ) {
+		this.resultListeners.add( resultListener );
+		return this;
+	}
+
+	/**
+	 * Attach a contention monitor to every exchange of the run, its report is added to the summary as {@code contention}.
+	 * Run with platform threads to get lock owners and blocked times.
+	 *
+	 * @param monitor The monitor, or null
+	 *
+	 * @return This scheduler for chaining
+	 */
+	public ArrivalRateScheduler setContentionMonitor( ContentionMonitor monitor ) {
+		this.monitor = monitor;
+		return this;
+	}
+
+	/**
+	 * Attach a query profiler to every exchange of the run, its stats are added to the summary as {@code queries}
+	 *
+	 * @param queryProfiler The profiler, or null
+	 *
+	 * @return This scheduler for chaining
+	 */
+	public ArrivalRateScheduler setQueryProfiler( QueryProfiler queryProfiler ) {
+		this.queryProfiler = queryProfiler;
+		return this;
+	}
+
+	/**
+	 * Ask a running schedule to stop dispatching. Outstanding requests still complete.
+	 */
+	public void stop() {
+		this.stopped = true;
+	}
+
+	/**
+	 * @return The latency histogram of the finished run in nanoseconds, from the intended start, null before
+	 */
+	public Histogram getLatencyHistogram() {
+		return this.latencyTotal;
+	}
+
+	/**
+	 * @return The service time histogram of the finished run in nanoseconds, from the actual start, null before
+	 */
+	public Histogram getServiceTimeHistogram() {
+		return this.serviceTotal;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Execution
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Run the schedule on the calling thread and wait for the outstanding requests
+	 *
+	 * @return The run summary
+	 */
+	public IStruct run() {
+		ExecutorService	executor		= this.virtualThreads
+		    ? Executors.newThreadPerTaskExecutor( Thread.ofVirtual().name( "bx-web-support-load-", 0 ).factory() )
+		    : Executors.newCachedThreadPool( Thread.ofPlatform().name( "bx-web-support-load-", 0 ).daemon( true ).factory() );
+		long			originNanos		= System.nanoTime();
+		long			originMillis	= System.currentTimeMillis();
+		boolean			drained;
+
+		try {
+			schedule( executor, originNanos, originMillis );
+		} finally {
+			executor.shutdown();
+			try {
+				drained = executor.awaitTermination( this.drainTimeout, TimeUnit.MILLISECONDS );
+			} catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				drained = false;
+			}
+			if ( !drained ) {
+				executor.shutdownNow();
+			}
+		}
+
+		return summarize( System.nanoTime() - originNanos, drained );
+	}
+
+	/**
+	 * Dispatch every arrival of every stage at its intended time.
+	 * <p>
+	 * Within a stage the rate is {@code r(t) = r0 + k t} with {@code k = (r1 - r0) / D}, so the number of arrivals by time t is
+	 * {@code A(t) = r0 t + k t^2 / 2}. The j-th arrival is at the t solving {@code A(t) = j}, carrying the fractional arrival
+	 * left over by the previous stage.
+	 *
+	 * @param executor     The executor running the requests
+	 * @param originNanos  The nano time the run started
+	 * @param originMillis The epoch time the run started
+	 */
+	private void schedule( ExecutorService executor, long originNanos, long originMillis ) {
+		long	stageOffset	= 0;
+		double	phase		= 0;
+		for ( Stage stage : this.stages ) {
+			double	duration	= stage.durationMillis() / 1000.0;
+			double	r0			= stage.startRate();
+			double	slope		= ( stage.endRate() - r0 ) / duration;
+			double	expected	= ( r0 + stage.endRate() ) * duration / 2;
+			long	arrivals	= ( long ) Math.floor( expected + phase );
+
+			for ( long j = 1; j <= arrivals; j++ ) {
+				double	target	= j - phase;
+				double	seconds	= slope == 0
+				    ? target / r0
+				    : ( -r0 + Math.sqrt( Math.max( 0, r0 * r0 + 2 * slope * target ) ) ) / slope;
+				long	offset	= stageOffset + ( long ) ( Math.min( seconds, duration ) * 1_000_000_000L );
+				if ( !dispatch( executor, originNanos + offset, originMillis + offset / 1_000_000 ) ) {
+					return;
+				}
+			}
+			phase		= expected + phase - arrivals;
+			stageOffset	+= TimeUnit.MILLISECONDS.toNanos( stage.durationMillis() );
+		}
+		// Hold the schedule until the end of the last stage so the achieved rate is measured over the full run
+		waitUntil( originNanos + stageOffset );
+	}
+
+	/**
+	 * Wait for the intended start of one arrival and hand it to the executor
+	 *
+	 * @param executor      The executor running the requests
+	 * @param intendedNanos The intended start in nano time
+	 * @param intendedEpoch The intended start in epoch milliseconds
+	 *
+	 * @return False if the run must stop
+	 */
+	private boolean dispatch( ExecutorService executor, long intendedNanos, long intendedEpoch ) {
+		if ( !waitUntil( intendedNanos ) ) {
+			return false;
+		}
+		IStruct record = null;
+		if ( this.feeder != null ) {
+			record = this.feeder.next();
+			if ( record == null ) {
+				return false;
+			}
+		}
+		if ( this.inFlight.get() >= this.maxInFlight ) {
+			this.dropped++;
+			return true;
+		}
+		this.inFlight.incrementAndGet();
+		this.scheduled++;
+		IStruct arrival = record;
+		executor.execute( () -> execute( arrival, intendedNanos, intendedEpoch ) );
+		return true;
+	}
+
+	/**
+	 * Park the scheduler thread until a point in nano time
+	 *
+	 * @param deadline The nano time to wait for
+	 *
+	 * @return False if the run was stopped or interrupted while waiting
+	 */
+	private boolean waitUntil( long deadline ) {
+		long remaining;
+		while ( ( remaining = deadline - System.nanoTime() ) > 0 ) {
+			if ( this.stopped || Thread.currentThread().isInterrupted() ) {
+				return false;
+			}
+			LockSupport.parkNanos( remaining );
+		}
+		return !this.stopped;
+	}
+
+	/**
+	 * Execute one request and record its outcome
+	 *
+	 * @param record        The feeder record, may be null
+	 * @param intendedNanos The intended start in nano time
+	 * @param intendedEpoch The intended start in epoch milliseconds
+	 */
+	private void execute( IStruct record, long intendedNanos, long intendedEpoch ) {
+		long	start			= System.nanoTime();
+		long	cpuBefore		= ThreadMetrics.cpuTime();
+		long	allocBefore		= ThreadMetrics.allocatedBytes();
+		String	path			= null;
+		int		status			= 0;
+		long	bytes			= 0;
+		String	error			= null;
+
+		try {
+			MockHTTPExchange exchange = this.spec.toExchange( record );
+			path = "/" + exchange.getRequestPath();
+			if ( this.monitor != null ) {
+				exchange.setContentionMonitor( this.monitor );
+			}
+			if ( this.queryProfiler != null ) {
+				exchange.setQueryProfiler( this.queryProfiler );
+			}
+			exchange.execute();
+			status	= exchange.getResponseStatus();
+			bytes	= exchange.getResponseLength();
+		} catch ( Throwable e ) {
+			error = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+			this.errors.increment();
+		} finally {
+			long	end			= System.nanoTime();
+			long	cpuNanos	= ThreadMetrics.delta( cpuBefore, ThreadMetrics.cpuTime() );
+			long	allocated	= ThreadMetrics.delta( allocBefore, ThreadMetrics.allocatedBytes() );
+			this.latency.recordValue( Math.min( end - intendedNanos, HIGHEST_LATENCY ) );
+			this.serviceTime.recordValue( Math.min( end - start, HIGHEST_LATENCY ) );
+			this.statusCounts.computeIfAbsent( status, key -> new LongAdder() ).increment();
+			this.completed.increment();
+
+			try {
+				if ( !this.resultListeners.isEmpty() ) {
+					RequestResult result = new RequestResult(
+					    intendedEpoch,
+					    this.spec.getMethod(),
+					    path == null ? this.spec.getPath() : path,
+					    status,
+					    end - intendedNanos,
+					    end - start,
+					    bytes,
+					    cpuNanos,
+					    allocated,
+					    error
+					);
+					this.resultListeners.forEach( listener -> listener.accept( result ) );
+				}
+			} finally {
+				this.inFlight.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Build the run summary
+	 *
+	 * @param elapsedNanos How long the run took
+	 * @param drained      Whether every outstanding request completed
+	 *
+	 * @return The summary
+	 */
+	private IStruct summarize( long elapsedNanos, boolean drained ) {
+		long	done		= this.completed.sum();
+		double	seconds		= elapsedNanos / 1_000_000_000.0;
+		IStruct	statuses	= new Struct( Struct.TYPES.LINKED );
+		new TreeMap<>( this.statusCounts ).forEach( ( status, count ) -> statuses.put( String.valueOf( status ), count.sum() ) );
+
+		Array stageList = new Array();
+		this.stages.forEach( stage -> stageList.add( Struct.linkedOf(
+		    "durationMs", stage.durationMillis(),
+		    "startRate", stage.startRate(),
+		    "endRate", stage.endRate()
+		) ) );
+
+		this.latencyTotal	= this.latency.getIntervalHistogram();
+		this.serviceTotal	= this.serviceTime.getIntervalHistogram();
+		IStruct summary = Struct.linkedOf(
+		    "route", this.spec.getRoute(),
+		    "stages", stageList,
+		    "scheduled", this.scheduled,
+		    "completed", done,
+		    "dropped", this.dropped,
+		    "dropRatio", dropRatio( this.scheduled, this.dropped ),
+		    "errors", this.errors.sum(),
+		    "drained", drained,
+		    "durationMs", elapsedNanos / 1_000_000.0,
+		    "achievedRate", seconds == 0 ? 0 : done / seconds,
+		    "virtualThreads", this.virtualThreads,
+		    "statusCodes", statuses,
+		    "latency", toStruct( this.latencyTotal ),
+		    "serviceTime", toStruct( this.serviceTotal )
+		);
+		if ( this.monitor != null ) {
+			summary.put( "contention", this.monitor.toStruct() );
+		}
+		if ( this.queryProfiler != null ) {
+			summary.put( "queries", this.queryProfiler.getStats() );
+		}
+		return summary;
+	}
+
+	/**
+	 * @param scheduled The arrivals that ran
+	 * @param dropped   The arrivals dropped because too many requests were outstanding
+	 *
+	 * @return The share of the arrivals that were dropped, from 0 to 1
+	 */
+	public static double dropRatio( long scheduled, long dropped ) {
+		return scheduled + dropped == 0 ? 0 : dropped / ( double ) ( scheduled + dropped );
+	}
+
+	/**
+	 * Summarize a nanosecond histogram in milliseconds
+	 *
+	 * @param histogram The histogram
+	 *
+	 * @return The count, min, mean, percentiles and max
+	 */
+	public static IStruct toStruct( Histogram histogram ) {
+		boolean empty = histogram.getTotalCount() == 0;
+		return Struct.linkedOf(
+		    "count", histogram.getTotalCount(),
+		    "min", empty ? 0 : histogram.getMinValue() / 1_000_000.0,
+		    "mean", empty ? 0 : histogram.getMean() / 1_000_000.0,
+		    "p50", histogram.getValueAtPercentile( 50 ) / 1_000_000.0,
+		    "p90", histogram.getValueAtPercentile( 90 ) / 1_000_000.0,
+		    "p99", histogram.getValueAtPercentile( 99 ) / 1_000_000.0,
+		    "p999", histogram.getValueAtPercentile( 99.9 ) / 1_000_000.0,
+		    "max", histogram.getMaxValue() / 1_000_000.0
+		);
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * Streams records from a CSV file whose first line holds the column names.
+ * Fields may be quoted with double quotes, with {@code ""} as an escaped quote. Quoted fields cannot span lines.
+ */
+public class CSVFeeder extends LineFeeder {
+
+	/**
+	 * The field delimiter
+	 */
+	private final char		delimiter;
+
+	/**
+	 * The column names from the header line
+	 */
+	private final String[]	columns;
+
+	/**
+	 * Open a new CSV feeder
+	 *
+	 * @param file      The CSV file
+	 * @param mode      How the file is walked
+	 * @param delimiter The field delimiter
+	 */
+	public CSVFeeder( String file, FeederMode mode, char delimiter ) {
+		super( file, mode, true );
+		this.delimiter	= delimiter;
+		this.columns	= split( getHeader(), delimiter ).stream().map( String::trim ).toArray( String[]::new );
+		if ( getHeader().isBlank() ) {
+			close();
+			throw new BoxRuntimeException( "The CSV feeder file [" + this.file + "] has no header line" );
+		}
+	}
+
+	/**
+	 * Open a new comma delimited CSV feeder
+	 *
+	 * @param file The CSV file
+	 * @param mode How the file is walked
+	 */
+	public CSVFeeder( String file, FeederMode mode ) {
+		this( file, mode, ',' );
+	}
+
+	/**
+	 * @return The column names
+	 */
+	public String[] getColumns() {
+		return this.columns.clone();
+	}
+
+	/**
+	 * @return The field delimiter
+	 */
+	public char getDelimiter() {
+		return this.delimiter;
+	}
+
+	@Override
+	protected IStruct parse( String line ) {
+		List<String>	values	= split( line, this.delimiter );
+		IStruct			record	= new Struct();
+		for ( int i = 0; i < this.columns.length; i++ ) {
+			record.put( this.columns[ i ], i < values.size() ? values.get( i ) : "" );
+		}
+		return record;
+	}
+
+	/**
+	 * Split a CSV line into fields
+	 *
+	 * @param line      The line
+	 * @param delimiter The field delimiter
+	 *
+	 * @return The fields, unquoted
+	 */
+	public static List<String> split( String line, char delimiter ) {
+		List<String>	fields	= new ArrayList<>();
+		StringBuilder	field	= new StringBuilder();
+		boolean			quoted	= false;
+		for ( int i = 0; i < line.length(); i++ ) {
+			char c = line.charAt( i );
+			if ( quoted ) {
+				if ( c == '"' ) {
+					if ( i + 1 < line.length() && line.charAt( i + 1 ) == '"' ) {
+						field.append( '"' );
+						i++;
+					} else {
+						quoted = false;
+					}
+				} else {
+					field.append( c );
+				}
+			} else if ( c == '"' ) {
+				quoted = true;
+			} else if ( c == delimiter ) {
+				fields.add( field.toString() );
+				field.setLength( 0 );
+			} else {
+				field.append( c );
+			}
+		}
+		fields.add( field.toString() );
+		return fields;
+	}
+}
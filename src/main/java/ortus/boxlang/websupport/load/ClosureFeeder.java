@@ -0,0 +1,79 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import ortus.boxlang.runtime.context.IBoxContext;
+import ortus.boxlang.runtime.types.Function;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * Feeds records produced by a BoxLang closure or lambda. The closure is called with no arguments for every record
+ * and returns a struct, or null to signal that the feeder is exhausted.
+ * <p>
+ * Calls are serialized so closures may keep state such as counters without their own locking.
+ */
+public class ClosureFeeder implements IFeeder {
+
+	/**
+	 * The closure producing records
+	 */
+	private final Function		producer;
+
+	/**
+	 * The context the closure is invoked in
+	 */
+	private final IBoxContext	context;
+
+	/**
+	 * Whether the closure returned null or the feeder was closed
+	 */
+	private boolean				exhausted	= false;
+
+	/**
+	 * Create a new closure feeder
+	 *
+	 * @param producer The closure producing records
+	 * @param context  The context the closure is invoked in
+	 */
+	public ClosureFeeder( Function producer, IBoxContext context ) {
+		this.producer	= producer;
+		this.context	= context;
+	}
+
+	@Override
+	public synchronized IStruct next() {
+		if ( this.exhausted ) {
+			return null;
+		}
+		Object result = this.context.invokeFunction( this.producer, new Object[] {} );
+		if ( result == null ) {
+			this.exhausted = true;
+			return null;
+		}
+		if ( result instanceof IStruct record ) {
+			return record;
+		}
+		throw new BoxRuntimeException( "A feeder closure must return a struct or null, but returned a [" + result.getClass().getSimpleName() + "]" );
+	}
+
+	@Override
+	public synchronized void close() {
+		this.exhausted = true;
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * How a feeder walks through its records
+ */
+public enum FeederMode {
+
+	/**
+	 * Records are returned in order, starting over when the end is reached
+	 */
+	CIRCULAR,
+
+	/**
+	 * Records are picked at random, forever
+	 */
+	RANDOM,
+
+	/**
+	 * Records are returned in order once, then the feeder is exhausted
+	 */
+	EXHAUST;
+
+	/**
+	 * Resolve a feeder mode from its name, case-insensitive
+	 *
+	 * @param mode The mode name: circular, random or exhaust
+	 *
+	 * @throws BoxRuntimeException If the mode is not a valid feeder mode
+	 *
+	 * @return The feeder mode
+	 */
+	public static FeederMode fromString( String mode ) {
+		if ( mode == null || mode.isBlank() ) {
+			return CIRCULAR;
+		}
+		try {
+			return FeederMode.valueOf( mode.trim().toUpperCase() );
+		} catch ( IllegalArgumentException e ) {
+			throw new BoxRuntimeException( "Invalid feeder mode [" + mode + "]. Valid modes are: circular, random, exhaust" );
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import ortus.boxlang.runtime.types.IStruct;
+
+/**
+ * A source of records used to parameterize mock requests, one record at a time.
+ * Implementations must be safe to share across concurrent workers.
+ */
+public interface IFeeder extends AutoCloseable {
+
+	/**
+	 * Get the next record
+	 *
+	 * @return The next record, or null when the feeder is exhausted
+	 */
+	public IStruct next();
+
+	/**
+	 * Release any resource held by the feeder
+	 */
+	@Override
+	public void close();
+}
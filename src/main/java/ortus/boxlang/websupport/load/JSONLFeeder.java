@@ -0,0 +1,53 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import java.util.Map;
+
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.runtime.types.util.JSONUtil;
+
+/**
+ * Streams records from a JSON Lines file, one JSON object per line.
+ */
+public class JSONLFeeder extends LineFeeder {
+
+	/**
+	 * Open a new JSON Lines feeder
+	 *
+	 * @param file The JSON Lines file
+	 * @param mode How the file is walked
+	 */
+	public JSONLFeeder( String file, FeederMode mode ) {
+		super( file, mode, false );
+	}
+
+	@Override
+	protected IStruct parse( String line ) {
+		Object parsed = JSONUtil.fromJSON( line );
+		if ( parsed instanceof IStruct struct ) {
+			return struct;
+		}
+		if ( parsed instanceof Map<?, ?> map ) {
+			return Struct.fromMap( map );
+		}
+		throw new BoxRuntimeException( "Every line of the JSON Lines feeder file [" + this.file + "] must be a JSON object, but found: " + line );
+	}
+}
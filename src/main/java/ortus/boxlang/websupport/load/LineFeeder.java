@@ -0,0 +1,324 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * Base class for feeders that stream one record per line from a UTF-8 file. The file is never loaded into memory.
+ * <ul>
+ * <li>CIRCULAR and EXHAUST modes read the file sequentially through a single buffered reader, guarded by a lock.
+ * Only the line read is locked, parsing happens outside of it.</li>
+ * <li>RANDOM mode seeks to a random byte offset with positional channel reads and returns the next whole line.
+ * Positional reads do not share a file pointer, so random feeders are not locked at all. Lines that follow long lines
+ * are slightly more likely to be picked, which is irrelevant for the id and user lists feeders are used for.</li>
+ * </ul>
+ */
+public abstract class LineFeeder implements IFeeder {
+
+	/**
+	 * The size of the chunks read when seeking lines in RANDOM mode
+	 */
+	private static final int	CHUNK_SIZE	= 8192;
+
+	/**
+	 * The file to feed from
+	 */
+	protected final Path		file;
+
+	/**
+	 * How the file is walked
+	 */
+	protected final FeederMode	mode;
+
+	/**
+	 * Whether the first line is a header
+	 */
+	private final boolean		hasHeader;
+
+	/**
+	 * The header line, or null if the file has none
+	 */
+	private final String		header;
+
+	/**
+	 * The channel used for positional reads
+	 */
+	private final FileChannel	channel;
+
+	/**
+	 * The byte offset of the first data line
+	 */
+	private final long			dataStart;
+
+	/**
+	 * The size of the file when the feeder was opened
+	 */
+	private final long			size;
+
+	/**
+	 * Guards the sequential reader
+	 */
+	private final Object		lock		= new Object();
+
+	/**
+	 * The sequential reader, opened lazily and reopened for every CIRCULAR pass
+	 */
+	private BufferedReader		reader;
+
+	/**
+	 * Whether an EXHAUST feeder reached the end
+	 */
+	private boolean				exhausted	= false;
+
+	/**
+	 * Open a new line feeder
+	 *
+	 * @param file      The file to feed from
+	 * @param mode      How the file is walked
+	 * @param hasHeader Whether the first line is a header, available to subclasses through {@link #getHeader()}
+	 */
+	protected LineFeeder( String file, FeederMode mode, boolean hasHeader ) {
+		this.file		= Path.of( file ).toAbsolutePath();
+		this.mode		= mode;
+		this.hasHeader	= hasHeader;
+		if ( !Files.isRegularFile( this.file ) ) {
+			throw new BoxRuntimeException( "The feeder file [" + this.file + "] does not exist" );
+		}
+		try {
+			this.channel	= FileChannel.open( this.file, StandardOpenOption.READ );
+			this.size		= this.channel.size();
+			long start = hasBom() ? 3 : 0;
+			Line headerLine = hasHeader ? readLineAt( start ) : null;
+			this.header		= headerLine == null ? null : headerLine.text() == null ? "" : headerLine.text();
+			this.dataStart	= headerLine == null ? start : headerLine.next();
+		} catch ( IOException e ) {
+			throw new BoxRuntimeException( "Unable to open the feeder file [" + this.file + "]", e );
+		}
+	}
+
+	/**
+	 * @return The header line, empty if the file is empty, or null if the feeder has no header
+	 */
+	protected String getHeader() {
+		return this.header;
+	}
+
+	/**
+	 * Parse a data line into a record
+	 *
+	 * @param line The line, never blank
+	 *
+	 * @return The record
+	 */
+	protected abstract IStruct parse( String line );
+
+	@Override
+	public IStruct next() {
+		String line = this.mode == FeederMode.RANDOM ? nextRandomLine() : nextSequentialLine();
+		return line == null ? null : parse( line );
+	}
+
+	@Override
+	public void close() {
+		synchronized ( this.lock ) {
+			this.exhausted = true;
+			try {
+				if ( this.reader != null ) {
+					this.reader.close();
+					this.reader = null;
+				}
+				this.channel.close();
+			} catch ( IOException e ) {
+				// Nothing left to release
+			}
+		}
+	}
+
+	/**
+	 * @return The file this feeder streams from
+	 */
+	public String getFile() {
+		return this.file.toString();
+	}
+
+	/**
+	 * @return How this feeder walks its file
+	 */
+	public FeederMode getMode() {
+		return this.mode;
+	}
+
+	/**
+	 * Read the next line in file order
+	 *
+	 * @return The next non blank line, or null when exhausted
+	 */
+	private String nextSequentialLine() {
+		synchronized ( this.lock ) {
+			try {
+				boolean readAny = true;
+				while ( !this.exhausted ) {
+					if ( this.reader == null ) {
+						this.reader	= openReader();
+						readAny		= false;
+					}
+					String line = this.reader.readLine();
+					if ( line == null ) {
+						this.reader.close();
+						this.reader = null;
+						// An empty pass means there is nothing to circle over
+						if ( this.mode == FeederMode.EXHAUST || !readAny ) {
+							this.exhausted = true;
+						}
+						continue;
+					}
+					if ( line.isBlank() ) {
+						continue;
+					}
+					readAny = true;
+					return line;
+				}
+				return null;
+			} catch ( IOException e ) {
+				throw new BoxRuntimeException( "Unable to read the feeder file [" + this.file + "]", e );
+			}
+		}
+	}
+
+	/**
+	 * Read the line following a random byte offset
+	 *
+	 * @return A random non blank line, or null if the file has no data
+	 */
+	private String nextRandomLine() {
+		long span = this.size - this.dataStart;
+		if ( span <= 0 ) {
+			return null;
+		}
+		try {
+			// A few attempts to skip blank lines, then give up on a file that is mostly blank
+			for ( int attempt = 0; attempt < 16; attempt++ ) {
+				long	offset	= this.dataStart + ThreadLocalRandom.current().nextLong( span );
+				long	start	= offset == this.dataStart ? offset : readLineAt( offset ).next();
+				if ( start >= this.size ) {
+					start = this.dataStart;
+				}
+				String line = readLineAt( start ).text();
+				if ( line != null && !line.isBlank() ) {
+					return line;
+				}
+			}
+			return null;
+		} catch ( IOException e ) {
+			throw new BoxRuntimeException( "Unable to read the feeder file [" + this.file + "]", e );
+		}
+	}
+
+	/**
+	 * Open a sequential reader positioned on the first data line
+	 *
+	 * @return The reader
+	 *
+	 * @throws IOException If the file cannot be read
+	 */
+	private BufferedReader openReader() throws IOException {
+		BufferedReader newReader = Files.newBufferedReader( this.file, StandardCharsets.UTF_8 );
+		newReader.mark( 1 );
+		if ( newReader.read() != '\uFEFF' ) {
+			newReader.reset();
+		}
+		if ( this.hasHeader ) {
+			newReader.readLine();
+		}
+		return newReader;
+	}
+
+	/**
+	 * Whether the file starts with a UTF-8 byte order mark
+	 *
+	 * @return True if it does
+	 *
+	 * @throws IOException If the file cannot be read
+	 */
+	private boolean hasBom() throws IOException {
+		ByteBuffer bom = ByteBuffer.allocate( 3 );
+		this.channel.read( bom, 0 );
+		return bom.position() == 3 && ( bom.get( 0 ) & 0xff ) == 0xef && ( bom.get( 1 ) & 0xff ) == 0xbb && ( bom.get( 2 ) & 0xff ) == 0xbf;
+	}
+
+	/**
+	 * Read the line starting at a byte offset using positional reads
+	 *
+	 * @param position The byte offset to start from
+	 *
+	 * @return The line text (null at end of file) and the offset of the following line
+	 *
+	 * @throws IOException If the file cannot be read
+	 */
+	private Line readLineAt( long position ) throws IOException {
+		ByteBuffer				buffer	= ByteBuffer.allocate( CHUNK_SIZE );
+		ByteArrayOutputStream	line	= new ByteArrayOutputStream();
+		long					offset	= position;
+		while ( true ) {
+			buffer.clear();
+			int read = this.channel.read( buffer, offset );
+			if ( read <= 0 ) {
+				return new Line( offset == position ? null : decode( line ), offset );
+			}
+			for ( int i = 0; i < read; i++ ) {
+				if ( buffer.get( i ) == '\n' ) {
+					line.write( buffer.array(), 0, i );
+					return new Line( decode( line ), offset + i + 1 );
+				}
+			}
+			line.write( buffer.array(), 0, read );
+			offset += read;
+		}
+	}
+
+	/**
+	 * Decode a line, dropping a trailing carriage return
+	 *
+	 * @param line The raw line bytes
+	 *
+	 * @return The line text
+	 */
+	private static String decode( ByteArrayOutputStream line ) {
+		String text = line.toString( StandardCharsets.UTF_8 );
+		return text.endsWith( "\r" ) ? text.substring( 0, text.length() - 1 ) : text;
+	}
+
+	/**
+	 * A line and the byte offset of the line that follows it
+	 */
+	private record Line( String text, long next ) {
+	}
+}
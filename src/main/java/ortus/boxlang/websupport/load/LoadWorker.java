@@ -0,0 +1,152 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import ortus.boxlang.runtime.BoxRuntime;
+import ortus.boxlang.runtime.dynamic.casters.BooleanCaster;
+import ortus.boxlang.runtime.dynamic.casters.DoubleCaster;
+import ortus.boxlang.runtime.dynamic.casters.LongCaster;
+import ortus.boxlang.runtime.modules.ModuleRecord;
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.websupport.load.WorkerProtocol.Job;
+import ortus.boxlang.websupport.load.WorkerProtocol.Result;
+
+/**
+ * The entry point of a load worker process started by a {@link WorkerCoordinator}.
+ * <p>
+ * The worker starts its own BoxLang runtime, connects back to the coordinator, runs its share of the load with an
+ * {@link ArrivalRateScheduler} and sends back its counters and histograms. It is not meant to be started by hand.
+ * <p>
+ * Arguments: the coordinator port, the token it was given and, optionally, the name and path of this module so it can be
+ * loaded when the runtime home of the worker does not have it installed.
+ */
+public final class LoadWorker {
+
+	private LoadWorker() {
+	}
+
+	/**
+	 * Run one worker
+	 *
+	 * @param args The coordinator port, the token, and optionally the module name and path
+	 */
+	public static void main( String[] args ) {
+		if ( args.length < 2 ) {
+			System.err.println( "Usage: LoadWorker <port> <token> [<moduleName> <modulePath>]" );
+			System.exit( 2 );
+		}
+		int status = 0;
+		try ( Socket socket = new Socket( InetAddress.getLoopbackAddress(), Integer.parseInt( args[ 0 ] ) ) ) {
+			socket.setTcpNoDelay( true );
+			DataInputStream		in	= new DataInputStream( new BufferedInputStream( socket.getInputStream() ) );
+			DataOutputStream	out	= new DataOutputStream( new BufferedOutputStream( socket.getOutputStream() ) );
+			out.writeInt( WorkerProtocol.VERSION );
+			WorkerProtocol.writeString( out, args[ 1 ] );
+			out.writeLong( ProcessHandle.current().pid() );
+			out.flush();
+
+			try {
+				run( in, out, args.length >= 4 ? args[ 2 ] : null, args.length >= 4 ? args[ 3 ] : null );
+			} catch ( Throwable e ) {
+				e.printStackTrace();
+				out.writeByte( WorkerProtocol.FAILED );
+				WorkerProtocol.writeString( out, e.getMessage() == null ? e.getClass().getName() : e.getMessage() );
+				status = 1;
+			}
+			out.flush();
+		} catch ( Throwable e ) {
+			// The coordinator is gone, nobody is left to report to
+			e.printStackTrace();
+			status = 1;
+		}
+		// The runtime keeps non daemon threads around, the result is delivered so the process can go
+		System.exit( status );
+	}
+
+	/**
+	 * Receive the job, start the runtime, wait for the signal and run
+	 *
+	 * @param in         The stream from the coordinator
+	 * @param out        The stream to the coordinator
+	 * @param moduleName The name of this module, or null
+	 * @param modulePath The path of this module, or null
+	 */
+	private static void run( DataInputStream in, DataOutputStream out, String moduleName, String modulePath ) throws Exception {
+		Job job = Job.readFrom( in );
+		// Start the runtime before reporting ready, its startup is not part of the load
+		BoxRuntime runtime = BoxRuntime.getInstance();
+		if ( moduleName != null && !runtime.getModuleService().hasModule( Key.of( moduleName ) ) ) {
+			ModuleRecord module = new ModuleRecord( Path.of( modulePath ).toAbsolutePath().toString() );
+			runtime.getModuleService().getRegistry().put( Key.of( moduleName ), module );
+			module
+			    .loadDescriptor( runtime.getRuntimeContext() )
+			    .register( runtime.getRuntimeContext() )
+			    .activate( runtime.getRuntimeContext() );
+		}
+
+		IFeeder feeder = job.openFeeder();
+		try {
+			ArrivalRateScheduler scheduler = new ArrivalRateScheduler( job.spec(), feeder, job.stages() )
+			    .setMaxInFlight( job.maxInFlight() )
+			    .setDrainTimeout( job.drainTimeout() )
+			    .setVirtualThreads( job.virtualThreads() );
+
+			out.writeByte( WorkerProtocol.READY );
+			out.flush();
+			byte signal = in.readByte();
+			if ( signal != WorkerProtocol.GO ) {
+				throw new BoxRuntimeException( "Unexpected message [" + signal + "] from the load coordinator" );
+			}
+			LockSupport.parkNanos( job.startDelay() );
+
+			IStruct				summary		= scheduler.run();
+			Map<String, Long>	statusCodes	= new LinkedHashMap<>();
+			IStruct				statuses	= ( IStruct ) summary.get( Key.of( "statusCodes" ) );
+			statuses.forEach( ( code, count ) -> statusCodes.put( code.getName(), LongCaster.cast( count ) ) );
+			new Result(
+			    ProcessHandle.current().pid(),
+			    LongCaster.cast( summary.get( Key.of( "scheduled" ) ) ),
+			    LongCaster.cast( summary.get( Key.of( "completed" ) ) ),
+			    LongCaster.cast( summary.get( Key.of( "dropped" ) ) ),
+			    LongCaster.cast( summary.get( Key.of( "errors" ) ) ),
+			    BooleanCaster.cast( summary.get( Key.of( "drained" ) ) ),
+			    DoubleCaster.cast( summary.get( Key.of( "durationMs" ) ) ),
+			    statusCodes,
+			    scheduler.getLatencyHistogram(),
+			    scheduler.getServiceTimeHistogram()
+			).writeTo( out );
+		} finally {
+			if ( feeder != null ) {
+				feeder.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+/**
+ * The outcome of one mock request executed by a load run
+ *
+ * @param timestamp      The intended start of the request, in epoch milliseconds
+ * @param method         The request method
+ * @param path           The rendered request path
+ * @param status         The response status, 0 if the execution failed before a status was set
+ * @param latencyNanos   The time from the intended start to completion, including any scheduling delay
+ * @param serviceNanos   The time from the actual start to completion
+ * @param bytes          The response size in bytes
+ * @param cpuNanos       The CPU time of the execution, -1 if it cannot be measured
+ * @param allocatedBytes The bytes allocated by the execution, -1 if they cannot be measured
+ * @param error          The error message if the execution threw, null otherwise
+ */
+public record RequestResult(
+    long timestamp,
+    String method,
+    String path,
+    int status,
+    long latencyNanos,
+    long serviceNanos,
+    long bytes,
+    long cpuNanos,
+    long allocatedBytes,
+    String error ) {
+
+	/**
+	 * @return Whether the execution threw
+	 */
+	public boolean failed() {
+		return this.error != null;
+	}
+}
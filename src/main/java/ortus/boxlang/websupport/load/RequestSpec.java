@@ -0,0 +1,401 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ortus.boxlang.runtime.dynamic.casters.StringCaster;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.websupport.cache.HttpCache;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+import ortus.boxlang.websupport.exchange.ResponseMode;
+import ortus.boxlang.websupport.exchange.SlowClient;
+
+/**
+ * A reusable description of a mock request whose path, query string, headers and body may contain {@code ${name}}
+ * placeholders. Placeholders are compiled once and filled from a feeder record for every exchange, so the same spec can
+ * drive thousands of distinct requests.
+ * <p>
+ * Values rendered into the path and query string are URL encoded, values rendered into headers and the body are used as is.
+ * Exchanges are built from the runtime configuration only, without a caller context. Each one creates its own web request
+ * context when it executes, so specs are safe to execute from many threads at once.
+ */
+public class RequestSpec {
+
+	/**
+	 * The webroot of the application to mock
+	 */
+	private final String				webroot;
+
+	/**
+	 * The host of the application to mock
+	 */
+	private final String				host;
+
+	/**
+	 * The port of the application to mock
+	 */
+	private final int					port;
+
+	/**
+	 * Whether the application is secure
+	 */
+	private final boolean				secure;
+
+	/**
+	 * The request method
+	 */
+	private String						method			= "GET";
+
+	/**
+	 * The request path template, without the query string
+	 */
+	private Template					path			= new Template( "/" );
+
+	/**
+	 * The query string template, null if there is none
+	 */
+	private Template					query			= null;
+
+	/**
+	 * The request body template
+	 */
+	private Template					body			= new Template( "" );
+
+	/**
+	 * The request content type
+	 */
+	private String						contentType		= "text/html";
+
+	/**
+	 * The request header templates
+	 */
+	private final Map<String, Template>	headers			= new LinkedHashMap<>();
+
+	/**
+	 * How the response body of every exchange is retained
+	 */
+	private ResponseMode				responseMode	= ResponseMode.BUFFER;
+
+	/**
+	 * The slow client every exchange gets a copy of, null for an infinitely fast client
+	 */
+	private SlowClient					slowClient		= null;
+
+	/**
+	 * The HTTP cache every exchange is served through, null to execute every request
+	 */
+	private HttpCache					httpCache		= null;
+
+	/**
+	 * Create a new request spec
+	 *
+	 * @param webroot The webroot of the application to mock
+	 * @param host    The host of the application to mock
+	 * @param port    The port of the application to mock
+	 * @param secure  Whether the application is secure
+	 */
+	public RequestSpec( String webroot, String host, int port, boolean secure ) {
+		this.webroot	= webroot;
+		this.host		= host;
+		this.port		= port;
+		this.secure		= secure;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Fluent setters
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * @param method The request method
+	 *
+	 * @return This spec for chaining
+	 */
+	public RequestSpec setMethod( String method ) {
+		this.method = method == null || method.isBlank() ? "GET" : method.trim().toUpperCase();
+		return this;
+	}
+
+	/**
+	 * Set the request path, optionally with a query string. Both may contain placeholders.
+	 *
+	 * @param path The request path template, e.g. {@code /users/${id}?tab=${tab}}
+	 *
+	 * @return This spec for chaining
+	 */
+	public RequestSpec setPath( String path ) {
+		String	source		= path == null || path.isBlank() ? "/" : path.trim();
+		int		question	= source.indexOf( '?' );
+		this.path	= new Template( question < 0 ? source : source.substring( 0, question ) );
+		this.query	= question < 0 ? null : new Template( source.substring( question + 1 ) );
+		return this;
+	}
+
+	/**
+	 * @param body The request body template
+	 *
+	 * @return This spec for chaining
+	 */
+	public RequestSpec setBody( String body ) {
+		this.body = new Template( body );
+		return this;
+	}
+
+	/**
+	 * @param contentType The request content type
+	 *
+	 * @return This spec for chaining
+	 */
+	public RequestSpec setContentType( String contentType ) {
+		this.contentType = contentType;
+		return this;
+	}
+
+	/**
+	 * @param name  The header name
+	 * @param value The header value template
+	 *
+	 * @return This spec for chaining
+	 */
+	public RequestSpec addHeader( String name, String value ) {
+		this.headers.put( name, new Template( value ) );
+		return this;
+	}
+
+	/**
+	 * @param headers The header value templates by name
+	 *
+	 * @return This spec for chaining
+	 */
+	public RequestSpec addHeaders( IStruct headers ) {
+		headers.forEach( ( name, value ) -> addHeader( name.getName(), StringCaster.cast( value ) ) );
+		return this;
+	}
+
+	/**
+	 * @param mode How the response body of every exchange is retained: buffer, discard or checksum
+	 *
+	 * @return This spec for chaining
+	 */
+	public RequestSpec setResponseMode( String mode ) {
+		this.responseMode = ResponseMode.fromString( mode );
+		return this;
+	}
+
+	/**
+	 * @param slowClient The slow client every exchange gets its own copy of, null for an infinitely fast client
+	 *
+	 * @return This spec for chaining
+	 */
+	public RequestSpec setSlowClient( SlowClient slowClient ) {
+		this.slowClient = slowClient;
+		return this;
+	}
+
+	/**
+	 * @param httpCache The HTTP cache every exchange is served through, shared by all of them, null to execute every request
+	 *
+	 * @return This spec for chaining
+	 */
+	public RequestSpec setHttpCache( HttpCache httpCache ) {
+		this.httpCache = httpCache;
+		return this;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Getters
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * @return The webroot of the application to mock
+	 */
+	public String getWebroot() {
+		return this.webroot;
+	}
+
+	/**
+	 * @return The request method
+	 */
+	public String getMethod() {
+		return this.method;
+	}
+
+	/**
+	 * @return The request path template, with the query string if any
+	 */
+	public String getPath() {
+		return this.query == null ? this.path.getSource() : this.path.getSource() + "?" + this.query.getSource();
+	}
+
+	/**
+	 * @return The route this spec exercises, the method and the unrendered path template, e.g. {@code GET /users/${id}}
+	 */
+	public String getRoute() {
+		return this.method + " " + this.path.getSource();
+	}
+
+	/**
+	 * @return How the response body of every exchange is retained
+	 */
+	public ResponseMode getResponseMode() {
+		return this.responseMode;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Exchange creation
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Build a ready to execute exchange from a feeder record
+	 *
+	 * @param record The record the placeholders are resolved from, may be null if the spec has none
+	 *
+	 * @return A new exchange
+	 */
+	public MockHTTPExchange toExchange( IStruct record ) {
+		return toExchange( record, this.webroot );
+	}
+
+	/**
+	 * Build a ready to execute exchange from a feeder record, against another webroot than the one of the spec.
+	 * Used to run the same request against two versions of an application.
+	 *
+	 * @param record  The record the placeholders are resolved from, may be null if the spec has none
+	 * @param webroot The webroot of the application to mock
+	 *
+	 * @return A new exchange
+	 */
+	public MockHTTPExchange toExchange( IStruct record, String webroot ) {
+		MockHTTPExchange exchange = MockHTTPExchange.configOnly( webroot, this.host, this.port, this.secure );
+		exchange.setResponseMode( this.responseMode );
+		if ( this.slowClient != null ) {
+			exchange.setSlowClient( this.slowClient.copy() );
+		}
+		exchange.setHttpCache( this.httpCache );
+		exchange.setRequestMethod( this.method );
+		exchange.setRequestPath( this.path.render( record, true ) );
+		exchange.setRequestContentType( this.contentType );
+		exchange.setRequestBody( this.body.render( record, false ) );
+		this.headers.forEach( ( name, value ) -> exchange.addRequestHeader( name, value.render( record, false ) ) );
+
+		if ( this.query != null ) {
+			String queryString = this.query.render( record, true );
+			exchange.setRequestQueryString( queryString );
+			for ( String pair : queryString.split( "&" ) ) {
+				if ( pair.isEmpty() ) {
+					continue;
+				}
+				int equals = pair.indexOf( '=' );
+				exchange.addURLParam(
+				    URLDecoder.decode( equals < 0 ? pair : pair.substring( 0, equals ), StandardCharsets.UTF_8 ),
+				    equals < 0 ? "" : URLDecoder.decode( pair.substring( equals + 1 ), StandardCharsets.UTF_8 )
+				);
+			}
+		}
+		return exchange;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Worker transfer
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Write the spec for a {@link LoadWorker} process. The templates travel as their sources and are compiled again there.
+	 *
+	 * @param out The stream to the worker
+	 */
+	void writeTo( DataOutput out ) throws IOException {
+		if ( this.httpCache != null ) {
+			throw new BoxRuntimeException( "A request spec served through an HTTP cache cannot be split across worker processes" );
+		}
+		WorkerProtocol.writeString( out, this.webroot );
+		WorkerProtocol.writeString( out, this.host );
+		out.writeInt( this.port );
+		out.writeBoolean( this.secure );
+		WorkerProtocol.writeString( out, this.method );
+		WorkerProtocol.writeString( out, getPath() );
+		WorkerProtocol.writeString( out, this.body.getSource() );
+		WorkerProtocol.writeString( out, this.contentType );
+		out.writeInt( this.headers.size() );
+		for ( Map.Entry<String, Template> header : this.headers.entrySet() ) {
+			WorkerProtocol.writeString( out, header.getKey() );
+			WorkerProtocol.writeString( out, header.getValue().getSource() );
+		}
+		WorkerProtocol.writeString( out, this.responseMode.name() );
+		out.writeBoolean( this.slowClient != null );
+		if ( this.slowClient != null ) {
+			out.writeLong( this.slowClient.getUploadRate() );
+			out.writeLong( this.slowClient.getReadRate() );
+			out.writeLong( this.slowClient.getSendBuffer() );
+		}
+	}
+
+	/**
+	 * Read a spec written by {@link #writeTo(DataOutput)}
+	 *
+	 * @param in The stream from the coordinator
+	 *
+	 * @return The spec
+	 */
+	static RequestSpec readFrom( DataInput in ) throws IOException {
+		RequestSpec spec = new RequestSpec( WorkerProtocol.readString( in ), WorkerProtocol.readString( in ), in.readInt(), in.readBoolean() );
+		spec.setMethod( WorkerProtocol.readString( in ) )
+		    .setPath( WorkerProtocol.readString( in ) )
+		    .setBody( WorkerProtocol.readString( in ) )
+		    .setContentType( WorkerProtocol.readString( in ) );
+		int headerCount = in.readInt();
+		for ( int i = 0; i < headerCount; i++ ) {
+			spec.addHeader( WorkerProtocol.readString( in ), WorkerProtocol.readString( in ) );
+		}
+		spec.setResponseMode( WorkerProtocol.readString( in ) );
+		if ( in.readBoolean() ) {
+			spec.setSlowClient( new SlowClient( in.readLong(), in.readLong(), in.readLong() ) );
+		}
+		return spec;
+	}
+
+	/**
+	 * Build an exchange from the next record of a feeder
+	 *
+	 * @param feeder The feeder, or null to build the exchange without a record
+	 *
+	 * @return A new exchange, or null if the feeder is exhausted
+	 */
+	public MockHTTPExchange nextExchange( IFeeder feeder ) {
+		if ( feeder == null ) {
+			return toExchange( null );
+		}
+		IStruct record = feeder.next();
+		return record == null ? null : toExchange( record );
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * The record formats a {@link ResultWriter} can stream
+ */
+public enum ResultFormat {
+
+	/**
+	 * One JSON object per line
+	 */
+	JSONL,
+
+	/**
+	 * Comma separated values with a header line
+	 */
+	CSV;
+
+	/**
+	 * Resolve a result format from its name, or from the extension of the output file when the name is blank
+	 *
+	 * @param format The format name: jsonl or csv
+	 * @param file   The output file, may be empty when only histograms are logged, then the format defaults to jsonl
+	 *
+	 * @throws BoxRuntimeException If the format is not a valid result format
+	 *
+	 * @return The result format
+	 */
+	public static ResultFormat fromString( String format, String file ) {
+		String name = format;
+		if ( name == null || name.isBlank() ) {
+			name = file == null || file.isBlank() ? "jsonl" : file.substring( file.lastIndexOf( '.' ) + 1 );
+		}
+		return switch ( name.trim().toLowerCase() ) {
+			case "jsonl", "ndjson", "json" -> JSONL;
+			case "csv" -> CSV;
+			default -> throw new BoxRuntimeException( "Invalid result format [" + name + "]. Valid formats are: jsonl, csv" );
+		};
+	}
+}
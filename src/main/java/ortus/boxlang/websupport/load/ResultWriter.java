@@ -0,0 +1,466 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * Streams the result of every request of a load run to disk, so multi-hour runs keep constant memory.
+ * <p>
+ * Each result is encoded as one JSONL or CSV line into a reusable builder, then into a fixed direct buffer that is written to
+ * a file channel whenever it fills up. Nothing is retained per request. Writes from concurrent workers are serialized.
+ * <p>
+ * Optionally, the latencies are also recorded into an HdrHistogram recorder and an interval histogram is appended to a
+ * histogram log every interval, in the standard HdrHistogram log format readable by {@code HistogramLogProcessor} and
+ * HdrHistogram plotting tools. Latencies are logged in nanoseconds with the default millisecond max value ratio. Without a
+ * records file, the writer only keeps the histogram log.
+ */
+public class ResultWriter implements Consumer<RequestResult>, AutoCloseable {
+
+	/**
+	 * The size of the write buffer
+	 */
+	private static final int				BUFFER_SIZE		= 64 * 1024;
+
+	/**
+	 * The CSV header line
+	 */
+	private static final String				CSV_HEADER		= "timestamp,method,path,status,latencyMs,serviceMs,bytes,cpuMs,allocatedBytes,error\n";
+
+	/**
+	 * The highest trackable latency in the interval histograms, one hour in nanoseconds
+	 */
+	private static final long				HIGHEST_LATENCY	= TimeUnit.HOURS.toNanos( 1 );
+
+	/**
+	 * The records file, null to only log histograms
+	 */
+	private final Path						file;
+
+	/**
+	 * The record format
+	 */
+	private final ResultFormat				format;
+
+	/**
+	 * The records channel, null to only log histograms
+	 */
+	private final FileChannel				channel;
+
+	/**
+	 * The write buffer
+	 */
+	private final ByteBuffer				buffer			= ByteBuffer.allocateDirect( BUFFER_SIZE );
+
+	/**
+	 * Encodes each line into the write buffer
+	 */
+	private final CharsetEncoder			encoder			= StandardCharsets.UTF_8.newEncoder();
+
+	/**
+	 * The reusable line builder
+	 */
+	private final StringBuilder				line			= new StringBuilder( 256 );
+
+	/**
+	 * The latency recorder feeding the histogram log, null without one
+	 */
+	private final Recorder					recorder;
+
+	/**
+	 * The histogram log writer, null without one
+	 */
+	private final HistogramLogWriter		histogramLog;
+
+	/**
+	 * The stream under the histogram log writer, null without one
+	 */
+	private final PrintStream				histogramStream;
+
+	/**
+	 * Writes the interval histograms, null without a histogram log
+	 */
+	private final ScheduledExecutorService	intervals;
+
+	/**
+	 * The interval histogram recycled by the recorder
+	 */
+	private Histogram						intervalHistogram;
+
+	/**
+	 * The number of records written
+	 */
+	private long							records			= 0;
+
+	/**
+	 * Whether the writer was closed
+	 */
+	private boolean							closed			= false;
+
+	/**
+	 * Open a new result writer
+	 *
+	 * @param file           The records file, created or truncated, or null to only log histograms
+	 * @param format         The record format
+	 * @param histogramLog   The histogram log file, created or truncated, or null for none
+	 * @param intervalMillis How often an interval histogram is logged, in milliseconds
+	 */
+	public ResultWriter( String file, ResultFormat format, String histogramLog, long intervalMillis ) {
+		this.file	= file == null || file.isBlank() ? null : Path.of( file ).toAbsolutePath();
+		this.format	= format;
+		if ( this.file == null && ( histogramLog == null || histogramLog.isBlank() ) ) {
+			throw new BoxRuntimeException( "A result writer needs a records file, a histogram log or both" );
+		}
+		try {
+			if ( this.file == null ) {
+				this.channel = null;
+			} else {
+				this.channel = FileChannel.open( createParents( this.file ), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				    StandardOpenOption.TRUNCATE_EXISTING );
+				if ( format == ResultFormat.CSV ) {
+					this.line.append( CSV_HEADER );
+					writeLine();
+				}
+			}
+
+			if ( histogramLog == null || histogramLog.isBlank() ) {
+				this.recorder			= null;
+				this.histogramLog		= null;
+				this.histogramStream	= null;
+				this.intervals			= null;
+				return;
+			}
+
+			long		startMillis	= System.currentTimeMillis();
+			FileChannel	logChannel	= FileChannel.open( createParents( Path.of( histogramLog ).toAbsolutePath() ), StandardOpenOption.CREATE,
+			    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+			this.histogramStream	= new PrintStream( new BufferedOutputStream( Channels.newOutputStream( logChannel ), 16 * 1024 ), false,
+			    StandardCharsets.UTF_8 );
+			this.histogramLog		= new HistogramLogWriter( this.histogramStream );
+			this.histogramLog.setBaseTime( startMillis );
+			this.histogramLog.outputLogFormatVersion();
+			this.histogramLog.outputStartTime( startMillis );
+			this.histogramLog.outputBaseTime( startMillis );
+			this.histogramLog.outputLegend();
+			this.recorder	= new Recorder( HIGHEST_LATENCY, 3 );
+			this.intervals	= Executors.newSingleThreadScheduledExecutor( runnable -> {
+				Thread thread = new Thread( runnable, "bx-web-support-histogram-log" );
+				thread.setDaemon( true );
+				return thread;
+			} );
+			long interval = Math.max( 1, intervalMillis );
+			this.intervals.scheduleAtFixedRate( this::logInterval, interval, interval, TimeUnit.MILLISECONDS );
+		} catch ( IOException e ) {
+			throw new BoxRuntimeException( "Unable to open the result file [" + this.file + "]", e );
+		}
+	}
+
+	/**
+	 * Open a new result writer without a histogram log
+	 *
+	 * @param file   The records file, created or truncated
+	 * @param format The record format
+	 */
+	public ResultWriter( String file, ResultFormat format ) {
+		this( file, format, null, 0 );
+	}
+
+	/**
+	 * Append one result
+	 *
+	 * @param result The result of a completed request
+	 */
+	@Override
+	public void accept( RequestResult result ) {
+		if ( this.recorder != null ) {
+			this.recorder.recordValue( Math.min( Math.max( 0, result.latencyNanos() ), HIGHEST_LATENCY ) );
+		}
+		synchronized ( this ) {
+			if ( this.closed || this.channel == null ) {
+				return;
+			}
+			if ( this.format == ResultFormat.CSV ) {
+				appendCSV( result );
+			} else {
+				appendJSON( result );
+			}
+			writeLine();
+			this.records++;
+		}
+	}
+
+	/**
+	 * @return The number of records written so far
+	 */
+	public synchronized long getRecordCount() {
+		return this.records;
+	}
+
+	/**
+	 * @return The records file, empty when only histograms are logged
+	 */
+	public String getFile() {
+		return this.file == null ? "" : this.file.toString();
+	}
+
+	/**
+	 * Write any buffered record to disk
+	 */
+	public synchronized void flush() {
+		try {
+			drain();
+		} catch ( IOException e ) {
+			throw new BoxRuntimeException( "Unable to write to the result file [" + this.file + "]", e );
+		}
+	}
+
+	/**
+	 * Log the last interval, flush everything and close the files
+	 */
+	@Override
+	public void close() {
+		if ( this.intervals != null ) {
+			this.intervals.shutdown();
+			try {
+				this.intervals.awaitTermination( 5, TimeUnit.SECONDS );
+			} catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+			logInterval();
+			this.histogramStream.close();
+		}
+		synchronized ( this ) {
+			if ( this.closed ) {
+				return;
+			}
+			this.closed = true;
+			if ( this.channel == null ) {
+				return;
+			}
+			try {
+				drain();
+				this.channel.close();
+			} catch ( IOException e ) {
+				throw new BoxRuntimeException( "Unable to close the result file [" + this.file + "]", e );
+			}
+		}
+	}
+
+	/**
+	 * Append the latencies recorded since the last interval to the histogram log
+	 */
+	private synchronized void logInterval() {
+		if ( this.closed ) {
+			return;
+		}
+		this.intervalHistogram = this.recorder.getIntervalHistogram( this.intervalHistogram );
+		this.histogramLog.outputIntervalHistogram( this.intervalHistogram );
+		this.histogramStream.flush();
+	}
+
+	/**
+	 * Encode the line builder into the write buffer, draining the buffer to the channel whenever it fills up
+	 */
+	private void writeLine() {
+		try {
+			CharBuffer chars = CharBuffer.wrap( this.line );
+			this.encoder.reset();
+			while ( true ) {
+				CoderResult result = this.encoder.encode( chars, this.buffer, true );
+				if ( result.isOverflow() ) {
+					drain();
+					continue;
+				}
+				if ( this.encoder.flush( this.buffer ).isOverflow() ) {
+					drain();
+					continue;
+				}
+				break;
+			}
+		} catch ( IOException e ) {
+			throw new BoxRuntimeException( "Unable to write to the result file [" + this.file + "]", e );
+		} finally {
+			this.line.setLength( 0 );
+		}
+	}
+
+	/**
+	 * Write the buffered bytes to the channel
+	 *
+	 * @throws IOException If the file cannot be written
+	 */
+	private void drain() throws IOException {
+		if ( this.channel == null ) {
+			return;
+		}
+		this.buffer.flip();
+		while ( this.buffer.hasRemaining() ) {
+			this.channel.write( this.buffer );
+		}
+		this.buffer.clear();
+	}
+
+	/**
+	 * Append a result as a JSON line
+	 *
+	 * @param result The result
+	 */
+	private void appendJSON( RequestResult result ) {
+		StringBuilder out = this.line;
+		out.append( "{\"timestamp\":" ).append( result.timestamp() );
+		out.append( ",\"method\":" );
+		appendJSONString( out, result.method() );
+		out.append( ",\"path\":" );
+		appendJSONString( out, result.path() );
+		out.append( ",\"status\":" ).append( result.status() );
+		out.append( ",\"latencyMs\":" ).append( result.latencyNanos() / 1_000_000.0 );
+		out.append( ",\"serviceMs\":" ).append( result.serviceNanos() / 1_000_000.0 );
+		out.append( ",\"bytes\":" ).append( result.bytes() );
+		out.append( ",\"cpuMs\":" );
+		appendMillis( out, result.cpuNanos() );
+		out.append( ",\"allocatedBytes\":" ).append( result.allocatedBytes() );
+		out.append( ",\"error\":" );
+		if ( result.error() == null ) {
+			out.append( "null" );
+		} else {
+			appendJSONString( out, result.error() );
+		}
+		out.append( "}\n" );
+	}
+
+	/**
+	 * Append a result as a CSV line
+	 *
+	 * @param result The result
+	 */
+	private void appendCSV( RequestResult result ) {
+		StringBuilder out = this.line;
+		out.append( result.timestamp() ).append( ',' );
+		appendCSVField( out, result.method() );
+		out.append( ',' );
+		appendCSVField( out, result.path() );
+		out.append( ',' ).append( result.status() );
+		out.append( ',' ).append( result.latencyNanos() / 1_000_000.0 );
+		out.append( ',' ).append( result.serviceNanos() / 1_000_000.0 );
+		out.append( ',' ).append( result.bytes() );
+		out.append( ',' );
+		appendMillis( out, result.cpuNanos() );
+		out.append( ',' ).append( result.allocatedBytes() );
+		out.append( ',' );
+		appendCSVField( out, result.error() );
+		out.append( '\n' );
+	}
+
+	/**
+	 * Append a nanosecond measure in milliseconds, or -1 when it was not measured
+	 *
+	 * @param out   The builder
+	 * @param nanos The measure in nanoseconds
+	 */
+	private static void appendMillis( StringBuilder out, long nanos ) {
+		if ( nanos < 0 ) {
+			out.append( -1 );
+		} else {
+			out.append( nanos / 1_000_000.0 );
+		}
+	}
+
+	/**
+	 * Append a JSON string literal
+	 *
+	 * @param out   The builder
+	 * @param value The string
+	 */
+	static void appendJSONString( StringBuilder out, String value ) {
+		out.append( '"' );
+		for ( int i = 0; i < value.length(); i++ ) {
+			char c = value.charAt( i );
+			switch ( c ) {
+				case '"' -> out.append( "\\\"" );
+				case '\\' -> out.append( "\\\\" );
+				case '\n' -> out.append( "\\n" );
+				case '\r' -> out.append( "\\r" );
+				case '\t' -> out.append( "\\t" );
+				default -> {
+					if ( c < 0x20 ) {
+						out.append( String.format( "\\u%04x", ( int ) c ) );
+					} else {
+						out.append( c );
+					}
+				}
+			}
+		}
+		out.append( '"' );
+	}
+
+	/**
+	 * Append a CSV field, quoted only when needed
+	 *
+	 * @param out   The builder
+	 * @param value The field, null is written empty
+	 */
+	static void appendCSVField( StringBuilder out, String value ) {
+		if ( value == null ) {
+			return;
+		}
+		boolean quote = value.indexOf( ',' ) >= 0 || value.indexOf( '"' ) >= 0 || value.indexOf( '\n' ) >= 0 || value.indexOf( '\r' ) >= 0;
+		if ( !quote ) {
+			out.append( value );
+			return;
+		}
+		out.append( '"' ).append( value.replace( "\"", "\"\"" ) ).append( '"' );
+	}
+
+	/**
+	 * Create the parent directories of a file
+	 *
+	 * @param file The file
+	 *
+	 * @return The file
+	 *
+	 * @throws IOException If the directories cannot be created
+	 */
+	private static Path createParents( Path file ) throws IOException {
+		if ( file.getParent() != null ) {
+			Files.createDirectories( file.getParent() );
+		}
+		return file;
+	}
+}
@@ -0,0 +1,445 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import ortus.boxlang.runtime.application.Application;
+import ortus.boxlang.runtime.cache.providers.ICacheProvider;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.web.exchange.BoxCookie;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+import ortus.boxlang.websupport.profiling.ApplicationProbe;
+import ortus.boxlang.websupport.profiling.HeapSampler;
+import ortus.boxlang.websupport.profiling.Trend;
+
+/**
+ * Simulates a large number of distinct clients, each holding its own session, to measure how the session scope scales.
+ * <p>
+ * Every simulated client is an identity with a cookie jar. Its first request runs without cookies, so the application
+ * creates a session, and the cookies the response sets are kept in the jar and sent with every later request of that
+ * identity, like a browser would. Identities are created in steps; after each step a random sample of the existing
+ * identities is revisited one at a time to measure the cost of a request that looks up an existing session, and the heap
+ * retained after a full collection is recorded. Heap per session and lookup cost are then fitted against the session
+ * count.
+ * <p>
+ * With an expiry timeout, the identities then stop visiting and the sessions are left to expire through the runtime: the
+ * sessions cache of the application is reaped every {@code reapInterval} until every session of the identities is gone or
+ * the timeout passes. The entries expire on the session timeout the application set, and the cache removal runs
+ * {@code onSessionEnd}, so the report measures how long after the last request the sessions were reclaimed, how long the
+ * reaps took and how much heap they freed. Expiry happens in real time, so give the application under test a short
+ * session timeout.
+ */
+public class SessionSimulator {
+
+	/**
+	 * The session-touching request every identity executes
+	 */
+	private final RequestSpec	spec;
+
+	/**
+	 * The feeder for the spec placeholders, one record per identity, may be null
+	 */
+	private final IFeeder		feeder;
+
+	/**
+	 * The number of identities created
+	 */
+	private int					sessions		= 1000;
+
+	/**
+	 * The number of steps the identities are created in
+	 */
+	private int					steps			= 10;
+
+	/**
+	 * The number of requests executed at once while creating identities
+	 */
+	private int					parallelism		= Math.max( 1, Runtime.getRuntime().availableProcessors() );
+
+	/**
+	 * The number of existing identities revisited after each step
+	 */
+	private int					lookupSample	= 100;
+
+	/**
+	 * The seconds to wait for the sessions to expire after the last request, 0 to skip the expiration
+	 */
+	private long				expiryTimeout	= 0;
+
+	/**
+	 * The milliseconds between two reaps of the sessions cache while waiting for the sessions to expire
+	 */
+	private long				reapInterval	= 250;
+
+	/**
+	 * Create a new session simulator
+	 *
+	 * @param spec   The session-touching request every identity executes
+	 * @param feeder The feeder for the spec placeholders, one record per identity, or null
+	 */
+	public SessionSimulator( RequestSpec spec, IFeeder feeder ) {
+		this.spec	= spec;
+		this.feeder	= feeder;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Fluent setters
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * @param sessions The number of identities created
+	 *
+	 * @return This simulator for chaining
+	 */
+	public SessionSimulator setSessions( int sessions ) {
+		this.sessions = Math.max( 1, sessions );
+		return this;
+	}
+
+	/**
+	 * @param steps The number of steps the identities are created in
+	 *
+	 * @return This simulator for chaining
+	 */
+	public SessionSimulator setSteps( int steps ) {
+		this.steps = Math.max( 1, steps );
+		return this;
+	}
+
+	/**
+	 * @param parallelism The number of requests executed at once while creating identities
+	 *
+	 * @return This simulator for chaining
+	 */
+	public SessionSimulator setParallelism( int parallelism ) {
+		this.parallelism = Math.max( 1, parallelism );
+		return this;
+	}
+
+	/**
+	 * @param lookupSample The number of existing identities revisited after each step
+	 *
+	 * @return This simulator for chaining
+	 */
+	public SessionSimulator setLookupSample( int lookupSample ) {
+		this.lookupSample = Math.max( 0, lookupSample );
+		return this;
+	}
+
+	/**
+	 * @param expiryTimeout The seconds to wait for the sessions to expire after the last request, 0 to skip the expiration
+	 *
+	 * @return This simulator for chaining
+	 */
+	public SessionSimulator setExpiryTimeout( long expiryTimeout ) {
+		this.expiryTimeout = Math.max( 0, expiryTimeout );
+		return this;
+	}
+
+	/**
+	 * @param reapInterval The milliseconds between two reaps of the sessions cache while waiting for the sessions to expire
+	 *
+	 * @return This simulator for chaining
+	 */
+	public SessionSimulator setReapInterval( long reapInterval ) {
+		this.reapInterval = Math.max( 1, reapInterval );
+		return this;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Simulation
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Create the identities step by step, measure each step, then wait for the sessions to expire if asked
+	 *
+	 * @return The report: one struct per step, the fitted heap per session and lookup cost, and the expiration
+	 */
+	public IStruct run() {
+		long						start		= System.nanoTime();
+		long						baseline	= HeapSampler.heapAfterGC();
+		Identity[]					identities	= new Identity[ this.sessions ];
+		AtomicReference<Application>	application	= new AtomicReference<>();
+		Array						stepResults	= new Array();
+		long						errors		= 0;
+		double[]					counts		= new double[ this.steps ];
+		double[]					heaps		= new double[ this.steps ];
+		double[]					lookups		= new double[ this.steps ];
+		ForkJoinPool				pool		= new ForkJoinPool( this.parallelism );
+		long						lastRequest	= start;
+
+		try {
+			int created = 0;
+			for ( int step = 0; step < this.steps; step++ ) {
+				int			from		= created;
+				int			to			= ( int ) ( ( long ) this.sessions * ( step + 1 ) / this.steps );
+				LongAdder	createNanos	= new LongAdder();
+				LongAdder	stepErrors	= new LongAdder();
+				submit( pool, () -> IntStream.range( from, to ).parallel().forEach( i -> {
+					Identity identity = new Identity( this.feeder == null ? null : this.feeder.next() );
+					identities[ i ] = identity;
+					long elapsed = visit( identity, application );
+					if ( elapsed < 0 ) {
+						stepErrors.increment();
+					}
+					createNanos.add( Math.abs( elapsed ) );
+				} ) );
+				created = to;
+
+				double[] lookup = lookup( identities, created, application );
+				stepErrors.add( ( long ) lookup[ 2 ] );
+				lastRequest = System.nanoTime();
+
+				long	heap		= HeapSampler.heapAfterGC();
+				long	stepCount	= to - from;
+				errors			+= stepErrors.sum();
+				counts[ step ]	= created;
+				heaps[ step ]	= heap;
+				lookups[ step ]	= lookup[ 0 ];
+				stepResults.add( Struct.linkedOf(
+				    "sessions", created,
+				    "trackedSessions", ApplicationProbe.sessionCount( application.get() ),
+				    "heapBytes", heap,
+				    "heapPerSession", ( heap - baseline ) / ( double ) created,
+				    "createMeanMs", stepCount == 0 ? 0.0 : createNanos.sum() / ( double ) stepCount / 1_000_000.0,
+				    "lookupMeanMs", lookup[ 0 ],
+				    "lookupP99Ms", lookup[ 1 ],
+				    "errors", stepErrors.sum()
+				) );
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		Trend	heapTrend	= Trend.fit( counts, heaps );
+		Trend	lookupTrend	= Trend.fit( counts, lookups );
+		IStruct	report		= Struct.linkedOf(
+		    "route", this.spec.getRoute(),
+		    "sessions", this.sessions,
+		    "errors", errors,
+		    "baselineHeapBytes", baseline,
+		    "heapPerSession", heapTrend.slope(),
+		    "lookupMsPer10kSessions", lookupTrend.slope() * 10_000,
+		    "heapTrend", heapTrend.toStruct(),
+		    "lookupTrend", lookupTrend.toStruct(),
+		    "steps", stepResults
+		);
+		if ( this.expiryTimeout > 0 ) {
+			report.put( "expiration", expire( identities, application.get(), lastRequest ) );
+		}
+		report.put( "durationMs", ( System.nanoTime() - start ) / 1_000_000.0 );
+		return report;
+	}
+
+	/**
+	 * Revisit a random sample of the existing identities, one at a time, so each request measures a session lookup
+	 * without contention
+	 *
+	 * @param identities  The identities
+	 * @param created     The number of identities created so far
+	 * @param application Receives the application of the first executed exchange
+	 *
+	 * @return The mean and p99 latency in ms, and the number of errors
+	 */
+	private double[] lookup( Identity[] identities, int created, AtomicReference<Application> application ) {
+		int count = Math.min( this.lookupSample, created );
+		if ( count == 0 ) {
+			return new double[] { 0, 0, 0 };
+		}
+		long[]	latencies	= new long[ count ];
+		long	total		= 0;
+		long	failed		= 0;
+		for ( int i = 0; i < count; i++ ) {
+			Identity identity = identities[ ThreadLocalRandom.current().nextInt( created ) ];
+			long elapsed = visit( identity, application );
+			if ( elapsed < 0 ) {
+				failed++;
+			}
+			latencies[ i ]	= Math.abs( elapsed );
+			total			+= latencies[ i ];
+		}
+		Arrays.sort( latencies );
+		return new double[] {
+		    total / ( double ) count / 1_000_000.0,
+		    latencies[ Math.min( count - 1, ( int ) Math.ceil( count * 0.99 ) - 1 ) ] / 1_000_000.0,
+		    failed
+		};
+	}
+
+	/**
+	 * Execute the spec as an identity: send its cookies and keep the cookies the response sets
+	 *
+	 * @param identity    The identity
+	 * @param application Receives the application of the first executed exchange
+	 *
+	 * @return The latency in nanoseconds, negated if the request failed
+	 */
+	private long visit( Identity identity, AtomicReference<Application> application ) {
+		long start = System.nanoTime();
+		try {
+			MockHTTPExchange exchange = this.spec.toExchange( identity.record );
+			synchronized ( identity ) {
+				identity.cookies.forEach( exchange::addRequestCookie );
+			}
+			exchange.execute();
+			synchronized ( identity ) {
+				exchange.getMockResponseCookies().values().forEach( value -> {
+					if ( value instanceof BoxCookie cookie ) {
+						identity.cookies.put( cookie.getName(), cookie.getValue() );
+					}
+				} );
+			}
+			if ( application.get() == null ) {
+				application.compareAndSet( null, ApplicationProbe.applicationOf( exchange ) );
+			}
+			long elapsed = Math.max( 1, System.nanoTime() - start );
+			return exchange.getResponseStatus() >= 500 ? -elapsed : elapsed;
+		} catch ( RuntimeException e ) {
+			return -Math.max( 1, System.nanoTime() - start );
+		}
+	}
+
+	/**
+	 * Stop visiting and let the sessions of the identities expire through the runtime: reap the sessions cache every reap
+	 * interval until none of them is left or the expiry timeout passes
+	 *
+	 * @param identities  The identities
+	 * @param application The application the sessions live in
+	 * @param lastRequest The nano time the last request of the identities ended
+	 *
+	 * @return The expiration report
+	 */
+	private IStruct expire( Identity[] identities, Application application, long lastRequest ) {
+		ICacheProvider cache = ApplicationProbe.sessionsOf( application );
+		if ( cache == null ) {
+			throw new BoxRuntimeException(
+			    "Unable to expire the sessions, the request did not run in an application with sessions enabled" );
+		}
+		// The sessions cache may be shared with other applications, only the sessions of the identities are followed
+		Map<String, String>	cacheKeys	= ApplicationProbe.sessionCacheKeys( application );
+		List<String>		pending		= new ArrayList<>();
+		for ( Identity identity : identities ) {
+			// The session id is one of the cookie values, whatever the session cookie is named
+			for ( String value : identity.cookies.values() ) {
+				String key = cacheKeys.remove( value );
+				if ( key != null ) {
+					pending.add( key );
+				}
+			}
+		}
+		long	sessions	= pending.size();
+		long	before		= HeapSampler.heapAfterGC();
+		long	deadline	= lastRequest + TimeUnit.SECONDS.toNanos( this.expiryTimeout );
+		long	reapNanos	= 0;
+		long	reaps		= 0;
+		long	expiredAt	= -1;
+		while ( true ) {
+			long reapStart = System.nanoTime();
+			cache.reap();
+			long now = System.nanoTime();
+			reapNanos += now - reapStart;
+			reaps++;
+			pending.removeIf( key -> !cache.lookup( key ) );
+			if ( pending.isEmpty() ) {
+				expiredAt = now;
+				break;
+			}
+			if ( now >= deadline ) {
+				break;
+			}
+			try {
+				Thread.sleep( Math.min( this.reapInterval, Math.max( 1, ( deadline - now ) / 1_000_000 ) ) );
+			} catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				throw new BoxRuntimeException( "The session simulation was interrupted", e );
+			}
+		}
+		long	reclaimed	= before - HeapSampler.heapAfterGC();
+		long	expired		= sessions - pending.size();
+		return Struct.linkedOf(
+		    "sessions", sessions,
+		    "expired", expired,
+		    "remainingSessions", ( long ) pending.size(),
+		    "timedOut", !pending.isEmpty(),
+		    "expiredAfterMs", expiredAt < 0 ? -1.0 : ( expiredAt - lastRequest ) / 1_000_000.0,
+		    "reaps", reaps,
+		    "reapMs", reapNanos / 1_000_000.0,
+		    "reclaimedBytes", reclaimed,
+		    "reclaimedPerSession", expired == 0 ? 0.0 : reclaimed / ( double ) expired
+		);
+	}
+
+	/**
+	 * Run a task on the creation pool and wait for it
+	 *
+	 * @param pool The pool
+	 * @param task The task
+	 */
+	private static void submit( ForkJoinPool pool, Runnable task ) {
+		try {
+			pool.submit( task ).get();
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new BoxRuntimeException( "The session simulation was interrupted", e );
+		} catch ( ExecutionException e ) {
+			throw new BoxRuntimeException( "The session simulation failed", e.getCause() );
+		}
+	}
+
+	/**
+	 * A simulated client
+	 */
+	private static final class Identity {
+
+		/**
+		 * The feeder record of this identity, may be null
+		 */
+		private final IStruct				record;
+
+		/**
+		 * The cookie jar: the cookies set by the responses, by name
+		 */
+		private final Map<String, String>	cookies	= new LinkedHashMap<>( 4 );
+
+		/**
+		 * @param record The feeder record of this identity, may be null
+		 */
+		private Identity( IStruct record ) {
+			this.record = record;
+		}
+	}
+}
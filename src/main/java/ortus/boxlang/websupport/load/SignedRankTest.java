@@ -0,0 +1,140 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The Wilcoxon signed-rank test of paired differences, with the normal approximation.
+ * <p>
+ * It tests whether the differences of paired measurements are centered on zero without assuming they are normally
+ * distributed, which latencies never are. Zero differences are dropped, tied absolute differences share their average rank
+ * and the variance is corrected for them. The approximation is good from about 20 non-zero pairs.
+ *
+ * @param pairs  The number of pairs, zero differences included
+ * @param median The median of the differences
+ * @param z      The standardized signed-rank statistic, positive when the differences tend to be positive
+ * @param pValue The two-sided p-value
+ */
+public record SignedRankTest( int pairs, double median, double z, double pValue ) {
+
+	/**
+	 * Run the test
+	 *
+	 * @param differences The paired differences, e.g. latency of B minus latency of A for every pair
+	 *
+	 * @return The test result, a p-value of 1 when there is nothing to test
+	 */
+	public static SignedRankTest of( double[] differences ) {
+		double		median	= percentile( differences, 50 );
+		double[]	nonZero	= Arrays.stream( differences ).filter( difference -> difference != 0 ).toArray();
+		int			n		= nonZero.length;
+		if ( n == 0 ) {
+			return new SignedRankTest( differences.length, median, 0, 1 );
+		}
+
+		// Rank the absolute differences, ties share their average rank
+		double[]	sorted			= Arrays.stream( nonZero ).boxed().sorted( Comparator.comparingDouble( Math::abs ) ).mapToDouble( Double::doubleValue ).toArray();
+		double		wPlus			= 0;
+		double		tieCorrection	= 0;
+		for ( int start = 0; start < n; ) {
+			int end = start;
+			while ( end + 1 < n && Math.abs( sorted[ end + 1 ] ) == Math.abs( sorted[ start ] ) ) {
+				end++;
+			}
+			double rank = ( start + end ) / 2.0 + 1;
+			for ( int i = start; i <= end; i++ ) {
+				if ( sorted[ i ] > 0 ) {
+					wPlus += rank;
+				}
+			}
+			int ties = end - start + 1;
+			tieCorrection	+= ( double ) ties * ties * ties - ties;
+			start			= end + 1;
+		}
+
+		double	mean		= n * ( n + 1 ) / 4.0;
+		double	variance	= n * ( n + 1 ) * ( 2.0 * n + 1 ) / 24.0 - tieCorrection / 48.0;
+		if ( variance <= 0 ) {
+			return new SignedRankTest( differences.length, median, 0, 1 );
+		}
+		// Continuity correction towards the mean
+		double	deviation	= wPlus - mean;
+		double	z			= ( deviation - Math.signum( deviation ) * Math.min( 0.5, Math.abs( deviation ) ) ) / Math.sqrt( variance );
+		double	pValue		= Math.min( 1, 2 * ( 1 - normalCdf( Math.abs( z ) ) ) );
+		return new SignedRankTest( differences.length, median, z, pValue );
+	}
+
+	/**
+	 * Adjust the p-values of a family of tests with the Holm-Bonferroni method, so testing many routes at once does not turn
+	 * noise into findings
+	 *
+	 * @param pValues The raw p-values
+	 *
+	 * @return The adjusted p-values, in the same order
+	 */
+	public static double[] holm( double[] pValues ) {
+		int			m			= pValues.length;
+		Integer[]	order		= new Integer[ m ];
+		double[]	adjusted	= new double[ m ];
+		for ( int i = 0; i < m; i++ ) {
+			order[ i ] = i;
+		}
+		Arrays.sort( order, ( left, right ) -> Double.compare( pValues[ left ], pValues[ right ] ) );
+		double running = 0;
+		for ( int k = 0; k < m; k++ ) {
+			running					= Math.max( running, Math.min( 1, ( m - k ) * pValues[ order[ k ] ] ) );
+			adjusted[ order[ k ] ]	= running;
+		}
+		return adjusted;
+	}
+
+	/**
+	 * Nearest-rank percentile
+	 *
+	 * @param values     The values, not modified
+	 * @param percentile The percentile, 0 to 100
+	 *
+	 * @return The percentile, 0 if there are no values
+	 */
+	public static double percentile( double[] values, double percentile ) {
+		if ( values.length == 0 ) {
+			return 0;
+		}
+		double[]	sorted	= values.clone();
+		Arrays.sort( sorted );
+		int			rank	= ( int ) Math.ceil( percentile / 100.0 * sorted.length );
+		return sorted[ Math.min( sorted.length - 1, Math.max( 0, rank - 1 ) ) ];
+	}
+
+	/**
+	 * The standard normal cumulative distribution, through the Abramowitz and Stegun 7.1.26 approximation of erf
+	 * (absolute error below 1.5e-7)
+	 *
+	 * @param x The value
+	 *
+	 * @return The probability of a standard normal value below x
+	 */
+	static double normalCdf( double x ) {
+		double	t	= 1 / ( 1 + 0.3275911 * Math.abs( x ) / Math.sqrt( 2 ) );
+		double	erf	= 1 - t * ( 0.254829592 + t * ( -0.284496736 + t * ( 1.421413741 + t * ( -1.453152027 + t * 1.061405429 ) ) ) )
+		    * Math.exp( -x * x / 2 );
+		return x >= 0 ? ( 1 + erf ) / 2 : ( 1 - erf ) / 2;
+	}
+}
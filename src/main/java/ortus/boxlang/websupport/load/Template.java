@@ -0,0 +1,124 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import ortus.boxlang.runtime.dynamic.casters.StringCaster;
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * A string with {@code ${name}} placeholders, compiled once and rendered against feeder records.
+ * A template without placeholders renders to its source without allocating.
+ */
+class Template {
+
+	/**
+	 * The original template source
+	 */
+	private final String	source;
+
+	/**
+	 * The literal parts, one more than the placeholders
+	 */
+	private final String[]	literals;
+
+	/**
+	 * The placeholder names, in order
+	 */
+	private final Key[]		names;
+
+	/**
+	 * Compile a template
+	 *
+	 * @param source The template source
+	 */
+	Template( String source ) {
+		this.source = source == null ? "" : source;
+		List<String>	parts	= new ArrayList<>();
+		List<Key>		keys	= new ArrayList<>();
+		int				from	= 0;
+		int				open	= this.source.indexOf( "${" );
+		while ( open >= 0 ) {
+			int close = this.source.indexOf( '}', open + 2 );
+			if ( close < 0 ) {
+				throw new BoxRuntimeException( "Unclosed placeholder in the request template [" + this.source + "]" );
+			}
+			String name = this.source.substring( open + 2, close ).trim();
+			if ( name.isEmpty() ) {
+				throw new BoxRuntimeException( "Empty placeholder in the request template [" + this.source + "]" );
+			}
+			parts.add( this.source.substring( from, open ) );
+			keys.add( Key.of( name ) );
+			from	= close + 1;
+			open	= this.source.indexOf( "${", from );
+		}
+		parts.add( this.source.substring( from ) );
+		this.literals	= parts.toArray( String[]::new );
+		this.names		= keys.toArray( Key[]::new );
+	}
+
+	/**
+	 * @return The template source
+	 */
+	String getSource() {
+		return this.source;
+	}
+
+	/**
+	 * @return Whether the template has placeholders
+	 */
+	boolean isDynamic() {
+		return this.names.length > 0;
+	}
+
+	/**
+	 * Render the template
+	 *
+	 * @param record    The record the placeholders are resolved from
+	 * @param urlEncode Whether to URL encode the values, used for paths and query strings
+	 *
+	 * @return The rendered string
+	 */
+	String render( IStruct record, boolean urlEncode ) {
+		if ( this.names.length == 0 ) {
+			return this.source;
+		}
+		if ( record == null ) {
+			throw new BoxRuntimeException( "The request template [" + this.source + "] has placeholders but no feeder record was given" );
+		}
+		StringBuilder out = new StringBuilder( this.source.length() + 16 * this.names.length );
+		for ( int i = 0; i < this.names.length; i++ ) {
+			out.append( this.literals[ i ] );
+			if ( !record.containsKey( this.names[ i ] ) ) {
+				throw new BoxRuntimeException(
+				    "The feeder record has no [" + this.names[ i ].getName() + "] value for the request template [" + this.source + "]" );
+			}
+			Object	value	= record.get( this.names[ i ] );
+			String	text	= value == null ? "" : StringCaster.cast( value );
+			out.append( urlEncode ? URLEncoder.encode( text, StandardCharsets.UTF_8 ).replace( "+", "%20" ) : text );
+		}
+		out.append( this.literals[ this.names.length ] );
+		return out.toString();
+	}
+}
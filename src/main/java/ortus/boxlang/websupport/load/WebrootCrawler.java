@@ -0,0 +1,372 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+import ortus.boxlang.websupport.exchange.ResponseMode;
+
+/**
+ * Discovers every routable template under a webroot and executes each one through a fresh {@link MockHTTPExchange},
+ * in parallel on a dedicated fork-join pool, to build an inventory of slow and broken pages.
+ * <p>
+ * Templates are matched with include and exclude globs relative to the webroot. A glob starting with {@code **}{@code /} also
+ * matches files at the root, so {@code **}{@code /*.cfm} matches {@code index.cfm}. The report lists the status, latency, bytes
+ * and exception of every template, slowest first. The first execution of a template includes its compilation; enable the
+ * warmup to measure steady state instead.
+ */
+public class WebrootCrawler {
+
+	/**
+	 * The templates crawled when no include glob is given
+	 */
+	public static final List<String>	DEFAULT_INCLUDES	= List.of( "**/*.bxm", "**/*.bxs", "**/*.cfm", "**/*.cfml" );
+
+	/**
+	 * The templates skipped when no exclude glob is given: application and request lifecycle templates are not routable
+	 */
+	public static final List<String>	DEFAULT_EXCLUDES	= List.of( "**/Application.*", "**/OnRequestEnd.*", "**/.*/**", "**/WEB-INF/**" );
+
+	/**
+	 * The webroot to crawl
+	 */
+	private final Path					webroot;
+
+	/**
+	 * The include matchers
+	 */
+	private final List<PathMatcher>		includes;
+
+	/**
+	 * The exclude matchers
+	 */
+	private final List<PathMatcher>		excludes;
+
+	/**
+	 * The number of templates executed at once
+	 */
+	private int							parallelism			= Math.max( 1, Runtime.getRuntime().availableProcessors() );
+
+	/**
+	 * The number of measured executions per template
+	 */
+	private int							iterations			= 1;
+
+	/**
+	 * Whether each template is executed once, unmeasured, before the measured executions
+	 */
+	private boolean						warmup				= false;
+
+	/**
+	 * The host of the mock server
+	 */
+	private String						host				= "localhost";
+
+	/**
+	 * The port of the mock server
+	 */
+	private int							port				= 8080;
+
+	/**
+	 * Whether the mock server is secure
+	 */
+	private boolean						secure				= false;
+
+	/**
+	 * Create a new crawler
+	 *
+	 * @param webroot  The webroot to crawl
+	 * @param includes The include globs, relative to the webroot, defaults to {@link #DEFAULT_INCLUDES} when empty
+	 * @param excludes The exclude globs, relative to the webroot, defaults to {@link #DEFAULT_EXCLUDES} when null
+	 */
+	public WebrootCrawler( String webroot, List<String> includes, List<String> excludes ) {
+		this.webroot = Path.of( webroot ).toAbsolutePath().normalize();
+		if ( !Files.isDirectory( this.webroot ) ) {
+			throw new BoxRuntimeException( "The webroot [" + this.webroot + "] is not a directory" );
+		}
+		this.includes	= compile( includes == null || includes.isEmpty() ? DEFAULT_INCLUDES : includes );
+		this.excludes	= compile( excludes == null ? DEFAULT_EXCLUDES : excludes );
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Fluent setters
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * @param parallelism The number of templates executed at once
+	 *
+	 * @return This crawler for chaining
+	 */
+	public WebrootCrawler setParallelism( int parallelism ) {
+		this.parallelism = Math.max( 1, parallelism );
+		return this;
+	}
+
+	/**
+	 * @param iterations The number of measured executions per template
+	 *
+	 * @return This crawler for chaining
+	 */
+	public WebrootCrawler setIterations( int iterations ) {
+		this.iterations = Math.max( 1, iterations );
+		return this;
+	}
+
+	/**
+	 * @param warmup Whether each template is executed once, unmeasured, before the measured executions
+	 *
+	 * @return This crawler for chaining
+	 */
+	public WebrootCrawler setWarmup( boolean warmup ) {
+		this.warmup = warmup;
+		return this;
+	}
+
+	/**
+	 * @param host   The host of the mock server
+	 * @param port   The port of the mock server
+	 * @param secure Whether the mock server is secure
+	 *
+	 * @return This crawler for chaining
+	 */
+	public WebrootCrawler setServer( String host, int port, boolean secure ) {
+		this.host	= host;
+		this.port	= port;
+		this.secure	= secure;
+		return this;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Crawling
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Discover the routable templates
+	 *
+	 * @return The request paths of the templates, sorted, e.g. {@code /admin/users.cfm}
+	 */
+	public List<String> discover() {
+		try ( Stream<Path> files = Files.walk( this.webroot ) ) {
+			return files
+			    .filter( Files::isRegularFile )
+			    .map( file -> this.webroot.relativize( file ) )
+			    .filter( relative -> matches( this.includes, relative ) && !matches( this.excludes, relative ) )
+			    .map( relative -> "/" + relative.toString().replace( '\\', '/' ) )
+			    .sorted()
+			    .toList();
+		} catch ( IOException e ) {
+			throw new BoxRuntimeException( "Unable to walk the webroot [" + this.webroot + "]", e );
+		}
+	}
+
+	/**
+	 * Discover and execute every routable template
+	 *
+	 * @return The report: the counts, the status code distribution and one result per template, slowest first
+	 */
+	public IStruct run() {
+		List<String>	paths	= discover();
+		long			start	= System.nanoTime();
+		List<IStruct>	results;
+		ForkJoinPool	pool	= new ForkJoinPool( this.parallelism );
+		try {
+			results = pool.submit( () -> paths.parallelStream().map( this::crawl ).toList() ).get();
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new BoxRuntimeException( "The webroot crawl was interrupted", e );
+		} catch ( ExecutionException e ) {
+			throw new BoxRuntimeException( "The webroot crawl failed", e.getCause() );
+		} finally {
+			pool.shutdown();
+		}
+		long					elapsed	= System.nanoTime() - start;
+
+		List<IStruct>			sorted	= new ArrayList<>( results );
+		sorted.sort( Comparator.comparingDouble( ( IStruct result ) -> ( double ) result.get( "latencyMs" ) ).reversed() );
+		Map<String, Integer>	codes	= new TreeMap<>();
+		long					errors	= 0;
+		for ( IStruct result : sorted ) {
+			codes.merge( String.valueOf( result.get( "status" ) ), 1, Integer::sum );
+			if ( result.get( "error" ) != null ) {
+				errors++;
+			}
+		}
+		IStruct statusCodes = new Struct( Struct.TYPES.LINKED );
+		codes.forEach( statusCodes::put );
+
+		return Struct.linkedOf(
+		    "webroot", this.webroot.toString(),
+		    "templates", sorted.size(),
+		    "errors", errors,
+		    "parallelism", this.parallelism,
+		    "iterations", this.iterations,
+		    "durationMs", elapsed / 1_000_000.0,
+		    "statusCodes", statusCodes,
+		    "results", Array.fromList( sorted )
+		);
+	}
+
+	/**
+	 * Execute one template, warming it up first if asked. With several iterations the result keeps the worst status and
+	 * its bytes, the first error and the number of iterations that failed, so a template failing once is not hidden by
+	 * the executions after it.
+	 *
+	 * @param path The request path
+	 *
+	 * @return The template result
+	 */
+	private IStruct crawl( String path ) {
+		if ( this.warmup ) {
+			execute( path );
+		}
+		double	total		= 0;
+		double	max			= 0;
+		long	errorCount	= 0;
+		IStruct	worst		= null;
+		IStruct	firstError	= null;
+		for ( int i = 0; i < this.iterations; i++ ) {
+			IStruct	result	= execute( path );
+			double	latency	= ( double ) result.get( "latencyMs" );
+			total	+= latency;
+			max		= Math.max( max, latency );
+			if ( result.get( "error" ) != null ) {
+				errorCount++;
+				if ( firstError == null ) {
+					firstError = result;
+				}
+			}
+			if ( worst == null || severity( result ) > severity( worst ) ) {
+				worst = result;
+			}
+		}
+		return Struct.linkedOf(
+		    "path", path,
+		    "status", worst.get( "status" ),
+		    "latencyMs", total / this.iterations,
+		    "maxLatencyMs", max,
+		    "bytes", worst.get( "bytes" ),
+		    "error", firstError == null ? null : firstError.get( "error" ),
+		    "errorType", firstError == null ? null : firstError.get( "errorType" ),
+		    "errorCount", errorCount
+		);
+	}
+
+	/**
+	 * Rank an execution for the crawl summary: an exception is worse than any response, then the higher status is worse
+	 *
+	 * @param result The execution result
+	 *
+	 * @return The rank, higher is worse
+	 */
+	private static int severity( IStruct result ) {
+		return result.get( "error" ) != null ? Integer.MAX_VALUE : ( int ) result.get( "status" );
+	}
+
+	/**
+	 * Execute one template through a fresh exchange
+	 *
+	 * @param path The request path
+	 *
+	 * @return The status, latency, bytes and exception of the execution
+	 */
+	private IStruct execute( String path ) {
+		int		status		= 0;
+		long	bytes		= 0;
+		String	error		= null;
+		String	errorType	= null;
+		long	start		= System.nanoTime();
+		try {
+			MockHTTPExchange exchange = MockHTTPExchange.configOnly( this.webroot.toString(), this.host, this.port, this.secure );
+			exchange.setResponseMode( ResponseMode.DISCARD );
+			exchange.setRequestMethod( "GET" );
+			exchange.setRequestPath( path );
+			exchange.execute();
+			status	= exchange.getResponseStatus();
+			bytes	= exchange.getResponseLength();
+		} catch ( Throwable e ) {
+			error		= e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+			errorType	= e.getClass().getName();
+		}
+		return Struct.linkedOf(
+		    "path", path,
+		    "status", status,
+		    "latencyMs", ( System.nanoTime() - start ) / 1_000_000.0,
+		    "bytes", bytes,
+		    "error", error,
+		    "errorType", errorType
+		);
+	}
+
+	/**
+	 * Whether a relative path matches any of the matchers
+	 *
+	 * @param matchers The matchers
+	 * @param relative The path relative to the webroot
+	 *
+	 * @return True if one matches
+	 */
+	private static boolean matches( List<PathMatcher> matchers, Path relative ) {
+		for ( PathMatcher matcher : matchers ) {
+			if ( matcher.matches( relative ) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compile globs into matchers. Globs starting with {@code **}{@code /} also get a matcher without that prefix so they
+	 * match files at the root of the webroot.
+	 *
+	 * @param globs The globs
+	 *
+	 * @return The matchers
+	 */
+	private static List<PathMatcher> compile( List<String> globs ) {
+		List<PathMatcher> matchers = new ArrayList<>();
+		for ( String glob : globs ) {
+			String trimmed = glob.trim().replaceFirst( "^/+", "" );
+			matchers.add( FileSystems.getDefault().getPathMatcher( "glob:" + trimmed ) );
+			if ( trimmed.startsWith( "**/" ) ) {
+				matchers.add( FileSystems.getDefault().getPathMatcher( "glob:" + trimmed.substring( 3 ) ) );
+			}
+		}
+		return matchers;
+	}
+}
@@ -0,0 +1,604 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+import ortus.boxlang.runtime.BoxRuntime;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.web.WebRequestExecutor;
+import ortus.boxlang.websupport.load.ArrivalRateScheduler.Stage;
+import ortus.boxlang.websupport.load.WorkerProtocol.Job;
+import ortus.boxlang.websupport.load.WorkerProtocol.Result;
+
+/**
+ * Runs a load schedule across several local worker JVMs and merges their results.
+ * <p>
+ * A single runtime shares one heap, one JIT, one set of caches and locks with the load it measures, so past a certain rate
+ * it measures its own contention rather than the application. The coordinator forks {@code workers} processes running
+ * {@link LoadWorker}, each with its own BoxLang runtime, and gives each of them the same request spec and
+ * {@code 1 / workers} of the target rate. Worker {@code i} starts {@code i / rate} seconds after the first one so their
+ * arrivals interleave instead of arriving in bursts of {@code workers}.
+ * <p>
+ * Workers talk to the coordinator over a loopback socket, authenticated with a random token. Their latency and service time
+ * histograms are merged without loss, so the percentiles of the merged report are the percentiles of every request, not an
+ * average of the percentiles of every worker. The per worker service times are kept in the report: when they grow with the
+ * number of workers the application is the bottleneck, when they shrink the single runtime was.
+ * <p>
+ * File feeders are opened again by every worker. Exhaust feeders are partitioned so every record is used once, circular
+ * feeders start at another record in every worker. Closure feeders and specs served through an HTTP cache cannot cross a
+ * process boundary and are refused.
+ */
+public class WorkerCoordinator {
+
+	/**
+	 * The lines of a worker log kept in the error of a failed worker
+	 */
+	private static final int		LOG_TAIL		= 40;
+
+	/**
+	 * The request description
+	 */
+	private final RequestSpec		spec;
+
+	/**
+	 * The feeder for the spec placeholders, may be null
+	 */
+	private final LineFeeder		feeder;
+
+	/**
+	 * The rate stages, for all the workers together
+	 */
+	private final List<Stage>		stages;
+
+	/**
+	 * The number of worker processes
+	 */
+	private final int				workers;
+
+	/**
+	 * The maximum number of outstanding requests across all the workers
+	 */
+	private int						maxInFlight		= 10_000;
+
+	/**
+	 * How long every worker waits for its outstanding requests, in milliseconds
+	 */
+	private long					drainTimeout	= 60_000;
+
+	/**
+	 * Whether the workers run requests on virtual threads
+	 */
+	private boolean					virtualThreads	= true;
+
+	/**
+	 * How long to wait for every worker to start its runtime, in milliseconds
+	 */
+	private long					startTimeout	= 120_000;
+
+	/**
+	 * Extra JVM arguments of the workers, e.g. heap or GC settings
+	 */
+	private final List<String>		jvmArgs			= new ArrayList<>();
+
+	/**
+	 * The name of this module, passed to workers whose runtime home does not have it installed
+	 */
+	private String					moduleName		= null;
+
+	/**
+	 * The path of this module
+	 */
+	private String					modulePath		= null;
+
+	/**
+	 * Create a new coordinator
+	 *
+	 * @param spec    The request description
+	 * @param feeder  The feeder for the spec placeholders, may be null. Only CSV and JSONL file feeders can be split.
+	 * @param stages  The rate stages, for all the workers together
+	 * @param workers The number of worker processes
+	 */
+	public WorkerCoordinator( RequestSpec spec, IFeeder feeder, List<Stage> stages, int workers ) {
+		if ( stages == null || stages.isEmpty() ) {
+			throw new BoxRuntimeException( "A load run needs at least one stage" );
+		}
+		if ( workers < 1 ) {
+			throw new BoxRuntimeException( "A load run needs at least one worker" );
+		}
+		if ( feeder != null && ! ( feeder instanceof CSVFeeder || feeder instanceof JSONLFeeder ) ) {
+			throw new BoxRuntimeException( "Only CSV and JSONL file feeders can be split across worker processes" );
+		}
+		this.spec		= spec;
+		this.feeder		= ( LineFeeder ) feeder;
+		this.stages		= List.copyOf( stages );
+		this.workers	= workers;
+	}
+
+	/**
+	 * Create a new coordinator from BoxLang stage structs
+	 *
+	 * @param spec    The request description
+	 * @param feeder  The feeder for the spec placeholders, may be null
+	 * @param stages  An array of stage structs, see {@link Stage#fromStruct(IStruct, Stage)}
+	 * @param workers The number of worker processes
+	 *
+	 * @return The coordinator
+	 */
+	public static WorkerCoordinator of( RequestSpec spec, IFeeder feeder, Array stages, int workers ) {
+		return new WorkerCoordinator( spec, feeder, ArrivalRateScheduler.parseStages( stages ), workers );
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Fluent setters
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * @param maxInFlight The maximum number of outstanding requests across all the workers, split evenly between them
+	 *
+	 * @return This coordinator for chaining
+	 */
+	public WorkerCoordinator setMaxInFlight( int maxInFlight ) {
+		this.maxInFlight = Math.max( 1, maxInFlight );
+		return this;
+	}
+
+	/**
+	 * @param drainTimeout How long every worker waits for its outstanding requests, in milliseconds
+	 *
+	 * @return This coordinator for chaining
+	 */
+	public WorkerCoordinator setDrainTimeout( long drainTimeout ) {
+		this.drainTimeout = Math.max( 0, drainTimeout );
+		return this;
+	}
+
+	/**
+	 * @param virtualThreads Whether the workers run requests on virtual threads
+	 *
+	 * @return This coordinator for chaining
+	 */
+	public WorkerCoordinator setVirtualThreads( boolean virtualThreads ) {
+		this.virtualThreads = virtualThreads;
+		return this;
+	}
+
+	/**
+	 * @param startTimeout How long to wait for every worker to start its runtime, in milliseconds
+	 *
+	 * @return This coordinator for chaining
+	 */
+	public WorkerCoordinator setStartTimeout( long startTimeout ) {
+		this.startTimeout = Math.max( 1, startTimeout );
+		return this;
+	}
+
+	/**
+	 * @param jvmArgs Extra JVM arguments of the workers, e.g. {@code -Xmx2g}
+	 *
+	 * @return This coordinator for chaining
+	 */
+	public WorkerCoordinator setJvmArgs( List<String> jvmArgs ) {
+		this.jvmArgs.clear();
+		jvmArgs.forEach( arg -> this.jvmArgs.add( String.valueOf( arg ) ) );
+		return this;
+	}
+
+	/**
+	 * @param moduleName The name of this module
+	 * @param modulePath The path of this module, loaded by workers whose runtime home does not have it installed
+	 *
+	 * @return This coordinator for chaining
+	 */
+	public WorkerCoordinator setModule( String moduleName, String modulePath ) {
+		this.moduleName	= moduleName;
+		this.modulePath	= modulePath;
+		return this;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Execution
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Start the workers, run the schedule on all of them at once and wait for their results
+	 *
+	 * @return The merged run summary, the shape of {@link ArrivalRateScheduler#run()} plus workers, startupMs and perWorker
+	 */
+	public IStruct run() {
+		String			token		= UUID.randomUUID().toString();
+		List<Process>	processes	= new ArrayList<>();
+		List<Path>		logs		= new ArrayList<>();
+		List<Socket>	sockets		= new ArrayList<>();
+		boolean			success		= false;
+		long			started		= System.nanoTime();
+
+		try ( ServerSocket server = new ServerSocket( 0, this.workers, InetAddress.getLoopbackAddress() ) ) {
+			for ( int i = 0; i < this.workers; i++ ) {
+				Path log = Files.createTempFile( "bx-web-support-worker-" + i + "-", ".log" );
+				logs.add( log );
+				processes.add( new ProcessBuilder( command( server.getLocalPort(), token ) )
+				    .redirectErrorStream( true )
+				    .redirectOutput( log.toFile() )
+				    .start() );
+			}
+
+			// Accept the workers in the order they connect, they are numbered by that order and found back by their pid
+			server.setSoTimeout( ( int ) Math.min( Integer.MAX_VALUE, this.startTimeout ) );
+			List<DataInputStream>	inputs		= new ArrayList<>();
+			List<DataOutputStream>	outputs		= new ArrayList<>();
+			List<Path>				workerLogs	= new ArrayList<>();
+			for ( int i = 0; i < this.workers; i++ ) {
+				Socket socket = accept( server, processes, logs );
+				sockets.add( socket );
+				DataInputStream		in	= new DataInputStream( new BufferedInputStream( socket.getInputStream() ) );
+				DataOutputStream	out	= new DataOutputStream( new BufferedOutputStream( socket.getOutputStream() ) );
+				if ( in.readInt() != WorkerProtocol.VERSION || !token.equals( WorkerProtocol.readString( in ) ) ) {
+					throw new BoxRuntimeException( "A load worker connected with another protocol version or token" );
+				}
+				workerLogs.add( logs.get( spawnIndex( processes, in.readLong() ) ) );
+				job( i ).writeTo( out );
+				out.flush();
+				inputs.add( in );
+				outputs.add( out );
+			}
+
+			// Every runtime is up before the first arrival, so worker startup does not leak into the latencies
+			for ( int i = 0; i < this.workers; i++ ) {
+				expect( inputs.get( i ), WorkerProtocol.READY, i, workerLogs );
+			}
+			double startupMs = ( System.nanoTime() - started ) / 1_000_000.0;
+			for ( DataOutputStream out : outputs ) {
+				out.writeByte( WorkerProtocol.GO );
+				out.flush();
+			}
+			// The schedule itself is the only time limit of a run
+			sockets.forEach( socket -> {
+				try {
+					socket.setSoTimeout( 0 );
+				} catch ( IOException e ) {
+					// The read below reports the broken socket
+				}
+			} );
+
+			List<Result> results = new ArrayList<>();
+			for ( int i = 0; i < this.workers; i++ ) {
+				expect( inputs.get( i ), WorkerProtocol.RESULT, i, workerLogs );
+				results.add( Result.readFrom( inputs.get( i ) ) );
+			}
+			success = true;
+			return merge( results, startupMs );
+		} catch ( IOException e ) {
+			throw new BoxRuntimeException( "The load workers could not be coordinated: " + e.getMessage(), e );
+		} finally {
+			for ( Socket socket : sockets ) {
+				try {
+					socket.close();
+				} catch ( IOException e ) {
+					// Closing
+				}
+			}
+			for ( Process process : processes ) {
+				if ( success ) {
+					waitFor( process );
+				} else {
+					process.destroyForcibly();
+				}
+			}
+			if ( success ) {
+				for ( Path log : logs ) {
+					try {
+						Files.deleteIfExists( log );
+					} catch ( IOException e ) {
+						// A leftover temp file
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Build the job of one worker: its share of the rate, of the in-flight limit and of an exhaust feeder
+	 *
+	 * @param index The worker index
+	 *
+	 * @return The job
+	 */
+	Job job( int index ) {
+		List<Stage> shares = new ArrayList<>();
+		for ( Stage stage : this.stages ) {
+			shares.add( new Stage( stage.durationMillis(), stage.startRate() / this.workers, stage.endRate() / this.workers ) );
+		}
+		// Interleave the arrivals of the workers with an offset of one worker period at the initial rate
+		double	rate		= this.stages.get( 0 ).startRate() > 0 ? this.stages.get( 0 ).startRate() : this.stages.get( 0 ).endRate();
+		long	startDelay	= rate <= 0 ? 0 : ( long ) ( index * 1_000_000_000L / rate );
+		return new Job(
+		    index,
+		    this.workers,
+		    this.spec,
+		    this.feeder == null ? WorkerProtocol.NO_FEEDER : this.feeder instanceof CSVFeeder ? WorkerProtocol.CSV_FEEDER : WorkerProtocol.JSONL_FEEDER,
+		    this.feeder == null ? "" : this.feeder.getFile(),
+		    this.feeder == null ? FeederMode.CIRCULAR : this.feeder.getMode(),
+		    this.feeder instanceof CSVFeeder csv ? csv.getDelimiter() : ',',
+		    shares,
+		    ( int ) Math.max( 1, this.maxInFlight / this.workers ),
+		    this.drainTimeout,
+		    this.virtualThreads,
+		    startDelay
+		);
+	}
+
+	/**
+	 * Build the command line of a worker: the same Java, the classes of the runtime and of this module, and the coordinator
+	 *
+	 * @param port  The coordinator port
+	 * @param token The token the worker answers with
+	 *
+	 * @return The command
+	 */
+	List<String> command( int port, String token ) {
+		List<String> command = new ArrayList<>();
+		command.add( Path.of( System.getProperty( "java.home" ), "bin", "java" ).toString() );
+		command.addAll( this.jvmArgs );
+		// Carry the runtime settings of this JVM over, e.g. a custom home
+		System.getProperties().forEach( ( name, value ) -> {
+			if ( String.valueOf( name ).startsWith( "boxlang." ) ) {
+				command.add( "-D" + name + "=" + value );
+			}
+		} );
+		command.add( "-cp" );
+		command.add( classPath() );
+		command.add( LoadWorker.class.getName() );
+		command.add( String.valueOf( port ) );
+		command.add( token );
+		if ( this.moduleName != null && this.modulePath != null ) {
+			command.add( this.moduleName );
+			command.add( this.modulePath );
+		}
+		return command;
+	}
+
+	/**
+	 * The class path of a worker. Modules are loaded by their own class loader, so the system class path alone misses this
+	 * module and sometimes the runtime: the locations of their classes are added first.
+	 *
+	 * @return The class path
+	 */
+	private static String classPath() {
+		Set<String> entries = new LinkedHashSet<>();
+		for ( Class<?> type : List.of( BoxRuntime.class, WorkerCoordinator.class, WebRequestExecutor.class, Histogram.class ) ) {
+			CodeSource source = type.getProtectionDomain().getCodeSource();
+			if ( source != null && source.getLocation() != null ) {
+				try {
+					entries.add( Path.of( source.getLocation().toURI() ).toString() );
+				} catch ( URISyntaxException | IllegalArgumentException e ) {
+					// Not a file location, the system class path has to do
+				}
+			}
+		}
+		for ( String entry : System.getProperty( "java.class.path", "" ).split( File.pathSeparator ) ) {
+			if ( !entry.isBlank() ) {
+				entries.add( entry );
+			}
+		}
+		return String.join( File.pathSeparator, entries );
+	}
+
+	/**
+	 * Accept the next worker, failing early if a worker died while starting. Reads on the worker socket are bounded by the
+	 * start timeout until the run begins, so a worker that hangs while starting its runtime does not block the coordinator.
+	 *
+	 * @param server    The coordinator socket
+	 * @param processes The worker processes
+	 * @param logs      The worker logs
+	 *
+	 * @return The worker socket
+	 */
+	private Socket accept( ServerSocket server, List<Process> processes, List<Path> logs ) throws IOException {
+		try {
+			Socket socket = server.accept();
+			socket.setTcpNoDelay( true );
+			socket.setSoTimeout( ( int ) Math.min( Integer.MAX_VALUE, this.startTimeout ) );
+			return socket;
+		} catch ( SocketTimeoutException e ) {
+			for ( int i = 0; i < processes.size(); i++ ) {
+				if ( !processes.get( i ).isAlive() ) {
+					throw new BoxRuntimeException( "Load worker " + i + " exited while starting:\n" + tail( logs.get( i ) ) );
+				}
+			}
+			throw new BoxRuntimeException( "The load workers did not connect within " + this.startTimeout + "ms" );
+		}
+	}
+
+	/**
+	 * Find the process a worker connected from. Workers connect in any order, the pid they announce leads to their log.
+	 *
+	 * @param processes The worker processes, in spawn order
+	 * @param pid       The pid announced by the worker
+	 *
+	 * @return The spawn index of the worker
+	 */
+	static int spawnIndex( List<Process> processes, long pid ) {
+		for ( int i = 0; i < processes.size(); i++ ) {
+			if ( processes.get( i ).pid() == pid ) {
+				return i;
+			}
+		}
+		throw new BoxRuntimeException( "A load worker connected from an unknown process [" + pid + "]" );
+	}
+
+	/**
+	 * Read the next message type of a worker
+	 *
+	 * @param in       The stream from the worker
+	 * @param expected The expected message type
+	 * @param index    The worker index
+	 * @param logs     The worker logs, by worker index
+	 */
+	private static void expect( DataInputStream in, byte expected, int index, List<Path> logs ) throws IOException {
+		byte type;
+		try {
+			type = in.readByte();
+		} catch ( SocketTimeoutException e ) {
+			throw new BoxRuntimeException( "Load worker " + index + " did not start in time:\n" + tail( logs.get( index ) ) );
+		}
+		if ( type == WorkerProtocol.FAILED ) {
+			throw new BoxRuntimeException( "Load worker " + index + " failed: " + WorkerProtocol.readString( in ) + "\n" + tail( logs.get( index ) ) );
+		}
+		if ( type != expected ) {
+			throw new BoxRuntimeException( "Unexpected message [" + type + "] from load worker " + index );
+		}
+	}
+
+	/**
+	 * Merge the worker results into one summary
+	 *
+	 * @param results   The results, by worker index
+	 * @param startupMs How long the workers took to start
+	 *
+	 * @return The summary
+	 */
+	private IStruct merge( List<Result> results, double startupMs ) {
+		Histogram			latency		= new Histogram( 3 );
+		Histogram			serviceTime	= new Histogram( 3 );
+		Map<Integer, Long>	statusCodes	= new TreeMap<>();
+		Array				perWorker	= new Array();
+		long				scheduled	= 0;
+		long				completed	= 0;
+		long				dropped		= 0;
+		long				errors		= 0;
+		boolean				drained		= true;
+		double				durationMs	= 0;
+
+		for ( int i = 0; i < results.size(); i++ ) {
+			Result result = results.get( i );
+			latency.add( result.latency() );
+			serviceTime.add( result.serviceTime() );
+			result.statusCodes().forEach( ( status, count ) -> statusCodes.merge( Integer.valueOf( status ), count, Long::sum ) );
+			scheduled	+= result.scheduled();
+			completed	+= result.completed();
+			dropped		+= result.dropped();
+			errors		+= result.errors();
+			drained		= drained && result.drained();
+			durationMs	= Math.max( durationMs, result.durationMs() );
+			perWorker.add( Struct.linkedOf(
+			    "worker", i,
+			    "pid", result.pid(),
+			    "scheduled", result.scheduled(),
+			    "completed", result.completed(),
+			    "dropped", result.dropped(),
+			    "dropRatio", ArrivalRateScheduler.dropRatio( result.scheduled(), result.dropped() ),
+			    "errors", result.errors(),
+			    "achievedRate", result.durationMs() == 0 ? 0 : result.completed() / ( result.durationMs() / 1000 ),
+			    "latency", ArrivalRateScheduler.toStruct( result.latency() ),
+			    "serviceTime", ArrivalRateScheduler.toStruct( result.serviceTime() )
+			) );
+		}
+
+		IStruct statuses = new Struct( Struct.TYPES.LINKED );
+		statusCodes.forEach( ( status, count ) -> statuses.put( String.valueOf( status ), count ) );
+		Array stageList = new Array();
+		this.stages.forEach( stage -> stageList.add( Struct.linkedOf(
+		    "durationMs", stage.durationMillis(),
+		    "startRate", stage.startRate(),
+		    "endRate", stage.endRate()
+		) ) );
+
+		return Struct.linkedOf(
+		    "route", this.spec.getRoute(),
+		    "stages", stageList,
+		    "scheduled", scheduled,
+		    "completed", completed,
+		    "dropped", dropped,
+		    "dropRatio", ArrivalRateScheduler.dropRatio( scheduled, dropped ),
+		    "errors", errors,
+		    "drained", drained,
+		    "durationMs", durationMs,
+		    "achievedRate", durationMs == 0 ? 0 : completed / ( durationMs / 1000 ),
+		    "virtualThreads", this.virtualThreads,
+		    "statusCodes", statuses,
+		    "latency", ArrivalRateScheduler.toStruct( latency ),
+		    "serviceTime", ArrivalRateScheduler.toStruct( serviceTime ),
+		    "workers", this.workers,
+		    "startupMs", startupMs,
+		    "perWorker", perWorker
+		);
+	}
+
+	/**
+	 * Wait for a worker that delivered its result to exit
+	 *
+	 * @param process The worker process
+	 */
+	private static void waitFor( Process process ) {
+		try {
+			if ( !process.waitFor( 10, TimeUnit.SECONDS ) ) {
+				process.destroyForcibly();
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			process.destroyForcibly();
+		}
+	}
+
+	/**
+	 * @param log A worker log
+	 *
+	 * @return The last lines of the log, kept in the errors of a failed worker
+	 */
+	private static String tail( Path log ) {
+		try {
+			List<String> lines = Files.readAllLines( log, StandardCharsets.UTF_8 );
+			return String.join( "\n", lines.subList( Math.max( 0, lines.size() - LOG_TAIL ), lines.size() ) )
+			    + "\n(full log: " + log + ")";
+		} catch ( IOException e ) {
+			return "(log unavailable: " + log + ")";
+		}
+	}
+}
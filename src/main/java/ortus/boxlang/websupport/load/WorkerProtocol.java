@@ -0,0 +1,340 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+import org.HdrHistogram.Histogram;
+
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.websupport.load.ArrivalRateScheduler.Stage;
+
+/**
+ * The messages between a {@link WorkerCoordinator} and its {@link LoadWorker} processes, over a loopback socket.
+ * <p>
+ * The coordinator listens and every worker connects with the protocol version, the token it was started with and its pid.
+ * The coordinator then sends each worker its {@link Job}, the worker answers {@link #READY} once its runtime is up, the
+ * coordinator sends {@link #GO} to all workers at once, and every worker answers with its {@link Result} or
+ * {@link #FAILED} and a message. Strings are length-prefixed UTF-8, histograms use the compressed HdrHistogram encoding.
+ */
+final class WorkerProtocol {
+
+	/**
+	 * The protocol version, a worker of another version is refused
+	 */
+	static final int	VERSION			= 1;
+
+	/**
+	 * The message types
+	 */
+	static final byte	READY			= 1;
+	static final byte	GO				= 2;
+	static final byte	RESULT			= 3;
+	static final byte	FAILED			= 4;
+
+	/**
+	 * The feeder types a job can carry
+	 */
+	static final byte	NO_FEEDER		= 0;
+	static final byte	CSV_FEEDER		= 1;
+	static final byte	JSONL_FEEDER	= 2;
+
+	private WorkerProtocol() {
+	}
+
+	/**
+	 * The share of a load run one worker executes
+	 *
+	 * @param index          The worker index, from 0
+	 * @param workers        The number of workers
+	 * @param spec           The request spec
+	 * @param feederType     The feeder type: {@link #NO_FEEDER}, {@link #CSV_FEEDER} or {@link #JSONL_FEEDER}
+	 * @param feederFile     The feeder file, empty without a feeder
+	 * @param feederMode     The feeder mode
+	 * @param delimiter      The CSV delimiter
+	 * @param stages         The stages, with the share of the rate of this worker
+	 * @param maxInFlight    The outstanding requests of this worker before arrivals are dropped
+	 * @param drainTimeout   How long to wait for outstanding requests, in milliseconds
+	 * @param virtualThreads Whether requests run on virtual threads
+	 * @param startDelay     The nanoseconds to wait after {@link #GO}, so the arrivals of the workers interleave
+	 */
+	record Job(
+	    int index,
+	    int workers,
+	    RequestSpec spec,
+	    byte feederType,
+	    String feederFile,
+	    FeederMode feederMode,
+	    char delimiter,
+	    List<Stage> stages,
+	    int maxInFlight,
+	    long drainTimeout,
+	    boolean virtualThreads,
+	    long startDelay ) {
+
+		/**
+		 * Write the job
+		 *
+		 * @param out The stream to the worker
+		 */
+		void writeTo( DataOutput out ) throws IOException {
+			out.writeInt( this.index );
+			out.writeInt( this.workers );
+			this.spec.writeTo( out );
+			out.writeByte( this.feederType );
+			writeString( out, this.feederFile );
+			writeString( out, this.feederMode.name() );
+			out.writeChar( this.delimiter );
+			out.writeInt( this.stages.size() );
+			for ( Stage stage : this.stages ) {
+				out.writeLong( stage.durationMillis() );
+				out.writeDouble( stage.startRate() );
+				out.writeDouble( stage.endRate() );
+			}
+			out.writeInt( this.maxInFlight );
+			out.writeLong( this.drainTimeout );
+			out.writeBoolean( this.virtualThreads );
+			out.writeLong( this.startDelay );
+		}
+
+		/**
+		 * Read a job
+		 *
+		 * @param in The stream from the coordinator
+		 *
+		 * @return The job
+		 */
+		static Job readFrom( DataInput in ) throws IOException {
+			int			index		= in.readInt();
+			int			workers		= in.readInt();
+			RequestSpec	spec		= RequestSpec.readFrom( in );
+			byte		feederType	= in.readByte();
+			String		feederFile	= readString( in );
+			FeederMode	feederMode	= FeederMode.valueOf( readString( in ) );
+			char		delimiter	= in.readChar();
+			int			count		= in.readInt();
+			List<Stage>	stages		= new ArrayList<>();
+			for ( int i = 0; i < count; i++ ) {
+				stages.add( new Stage( in.readLong(), in.readDouble(), in.readDouble() ) );
+			}
+			return new Job(
+			    index, workers, spec, feederType, feederFile, feederMode, delimiter, stages,
+			    in.readInt(), in.readLong(), in.readBoolean(), in.readLong()
+			);
+		}
+
+		/**
+		 * Open the feeder of this worker. Exhaust feeders are partitioned so every record is used once across the workers,
+		 * the others only start at another record.
+		 *
+		 * @return The feeder, or null
+		 */
+		IFeeder openFeeder() {
+			IFeeder feeder = switch ( this.feederType ) {
+				case CSV_FEEDER -> new CSVFeeder( this.feederFile, this.feederMode, this.delimiter );
+				case JSONL_FEEDER -> new JSONLFeeder( this.feederFile, this.feederMode );
+				default -> null;
+			};
+			if ( feeder == null || this.feederMode == FeederMode.RANDOM ) {
+				return feeder;
+			}
+			return new PartitionedFeeder( feeder, this.index, this.feederMode == FeederMode.EXHAUST ? this.workers : 1 );
+		}
+	}
+
+	/**
+	 * The outcome of one worker
+	 *
+	 * @param pid          The worker process id
+	 * @param scheduled    The arrivals dispatched
+	 * @param completed    The requests completed
+	 * @param dropped      The arrivals dropped
+	 * @param errors       The requests that threw
+	 * @param drained      Whether every outstanding request completed
+	 * @param durationMs   How long the run took
+	 * @param statusCodes  The response counts per status
+	 * @param latency      The latency histogram in nanoseconds
+	 * @param serviceTime  The service time histogram in nanoseconds
+	 */
+	record Result(
+	    long pid,
+	    long scheduled,
+	    long completed,
+	    long dropped,
+	    long errors,
+	    boolean drained,
+	    double durationMs,
+	    Map<String, Long> statusCodes,
+	    Histogram latency,
+	    Histogram serviceTime ) {
+
+		/**
+		 * Write the result, preceded by {@link #RESULT}
+		 *
+		 * @param out The stream to the coordinator
+		 */
+		void writeTo( DataOutput out ) throws IOException {
+			out.writeByte( RESULT );
+			out.writeLong( this.pid );
+			out.writeLong( this.scheduled );
+			out.writeLong( this.completed );
+			out.writeLong( this.dropped );
+			out.writeLong( this.errors );
+			out.writeBoolean( this.drained );
+			out.writeDouble( this.durationMs );
+			out.writeInt( this.statusCodes.size() );
+			for ( Map.Entry<String, Long> entry : this.statusCodes.entrySet() ) {
+				writeString( out, entry.getKey() );
+				out.writeLong( entry.getValue() );
+			}
+			writeHistogram( out, this.latency );
+			writeHistogram( out, this.serviceTime );
+		}
+
+		/**
+		 * Read a result, after its {@link #RESULT} type
+		 *
+		 * @param in The stream from the worker
+		 *
+		 * @return The result
+		 */
+		static Result readFrom( DataInput in ) throws IOException {
+			long				pid			= in.readLong();
+			long				scheduled	= in.readLong();
+			long				completed	= in.readLong();
+			long				dropped		= in.readLong();
+			long				errors		= in.readLong();
+			boolean				drained		= in.readBoolean();
+			double				durationMs	= in.readDouble();
+			int					count		= in.readInt();
+			Map<String, Long>	statusCodes	= new LinkedHashMap<>();
+			for ( int i = 0; i < count; i++ ) {
+				statusCodes.put( readString( in ), in.readLong() );
+			}
+			return new Result( pid, scheduled, completed, dropped, errors, drained, durationMs, statusCodes, readHistogram( in ), readHistogram( in ) );
+		}
+	}
+
+	/**
+	 * A sequential feeder that skips the records of the other workers: it starts at the record of its index and then takes
+	 * every {@code stride}-th record
+	 */
+	private static class PartitionedFeeder implements IFeeder {
+
+		private final IFeeder	feeder;
+		private final int		stride;
+		private int				skip;
+
+		PartitionedFeeder( IFeeder feeder, int index, int stride ) {
+			this.feeder	= feeder;
+			this.stride	= stride;
+			this.skip	= index;
+		}
+
+		@Override
+		public synchronized IStruct next() {
+			for ( ; this.skip > 0; this.skip-- ) {
+				if ( this.feeder.next() == null ) {
+					return null;
+				}
+			}
+			this.skip = this.stride - 1;
+			return this.feeder.next();
+		}
+
+		@Override
+		public void close() {
+			this.feeder.close();
+		}
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Encoding
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Write a length-prefixed UTF-8 string, unlike writeUTF it is not limited to 64KB
+	 *
+	 * @param out   The stream
+	 * @param value The string, null is written as empty
+	 */
+	static void writeString( DataOutput out, String value ) throws IOException {
+		byte[] bytes = value == null ? new byte[ 0 ] : value.getBytes( StandardCharsets.UTF_8 );
+		out.writeInt( bytes.length );
+		out.write( bytes );
+	}
+
+	/**
+	 * Read a length-prefixed UTF-8 string
+	 *
+	 * @param in The stream
+	 *
+	 * @return The string
+	 */
+	static String readString( DataInput in ) throws IOException {
+		int length = in.readInt();
+		if ( length < 0 ) {
+			throw new BoxRuntimeException( "Corrupt message from a load worker, negative string length" );
+		}
+		byte[] bytes = new byte[ length ];
+		in.readFully( bytes );
+		return new String( bytes, StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * Write a histogram in the compressed HdrHistogram encoding
+	 *
+	 * @param out       The stream
+	 * @param histogram The histogram
+	 */
+	static void writeHistogram( DataOutput out, Histogram histogram ) throws IOException {
+		ByteBuffer	buffer	= ByteBuffer.allocate( histogram.getNeededByteBufferCapacity() );
+		int			length	= histogram.encodeIntoCompressedByteBuffer( buffer );
+		out.writeInt( length );
+		out.write( buffer.array(), 0, length );
+	}
+
+	/**
+	 * Read a histogram in the compressed HdrHistogram encoding
+	 *
+	 * @param in The stream
+	 *
+	 * @return The histogram
+	 */
+	static Histogram readHistogram( DataInput in ) throws IOException {
+		byte[] bytes = new byte[ in.readInt() ];
+		in.readFully( bytes );
+		try {
+			return Histogram.decodeFromCompressedByteBuffer( ByteBuffer.wrap( bytes ), 0 );
+		} catch ( DataFormatException e ) {
+			throw new BoxRuntimeException( "Corrupt histogram from a load worker", e );
+		}
+	}
+}
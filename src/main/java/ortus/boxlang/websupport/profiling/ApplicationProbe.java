@@ -0,0 +1,135 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ortus.boxlang.runtime.application.Application;
+import ortus.boxlang.runtime.application.Session;
+import ortus.boxlang.runtime.cache.providers.ICacheProvider;
+import ortus.boxlang.runtime.context.ApplicationBoxContext;
+import ortus.boxlang.web.context.WebRequestBoxContext;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+
+/**
+ * Reads the size of the application and session state a mock exchange runs against.
+ * <p>
+ * The application is found through the {@link ApplicationBoxContext} the runtime injects above the web request context
+ * once an application is defined, so it is only available after the exchange executed. Every measure returns {@code -1}
+ * when there is no application.
+ */
+public final class ApplicationProbe {
+
+	private ApplicationProbe() {
+	}
+
+	/**
+	 * Find the application of an executed exchange
+	 *
+	 * @param exchange The exchange
+	 *
+	 * @return The application, or null if the exchange did not run in one
+	 */
+	public static Application applicationOf( MockHTTPExchange exchange ) {
+		WebRequestBoxContext context = exchange.getWebContext();
+		if ( context == null ) {
+			return null;
+		}
+		ApplicationBoxContext applicationContext = context.getParentOfType( ApplicationBoxContext.class );
+		return applicationContext == null ? null : applicationContext.getApplication();
+	}
+
+	/**
+	 * @param application The application, may be null
+	 *
+	 * @return The deep entry count of the application scope, see {@link ScopeMeter}
+	 */
+	public static long applicationEntries( Application application ) {
+		if ( application == null ) {
+			return -1;
+		}
+		return ScopeMeter.countEntries( application.getApplicationScope(), ScopeMeter.DEFAULT_LIMIT );
+	}
+
+	/**
+	 * @param application The application, may be null
+	 *
+	 * @return The number of sessions in the sessions cache
+	 */
+	public static long sessionCount( Application application ) {
+		ICacheProvider sessions = sessionsOf( application );
+		return sessions == null ? -1 : sessions.getSize();
+	}
+
+	/**
+	 * Count the entries of the session scopes, deeply
+	 *
+	 * @param application The application, may be null
+	 * @param maxSessions The maximum number of sessions walked, to bound the cost
+	 *
+	 * @return The deep entry count of the walked session scopes
+	 */
+	public static long sessionEntries( Application application, int maxSessions ) {
+		ICacheProvider sessions = sessionsOf( application );
+		if ( sessions == null ) {
+			return -1;
+		}
+		long	entries	= 0;
+		int		walked	= 0;
+		for ( Object key : sessions.getKeys() ) {
+			if ( walked++ >= maxSessions ) {
+				break;
+			}
+			if ( sessions.get( key.toString() ).orElse( null ) instanceof Session session ) {
+				entries += ScopeMeter.countEntries( session.getSessionScope(), ScopeMeter.DEFAULT_LIMIT );
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Map the sessions of an application to their key in the sessions cache
+	 *
+	 * @param application The application, may be null
+	 *
+	 * @return The cache key of every session, by session id. Empty if there is no application
+	 */
+	public static Map<String, String> sessionCacheKeys( Application application ) {
+		Map<String, String>	keys		= new HashMap<>();
+		ICacheProvider		sessions	= sessionsOf( application );
+		if ( sessions == null ) {
+			return keys;
+		}
+		for ( Object key : sessions.getKeys() ) {
+			if ( sessions.get( key.toString() ).orElse( null ) instanceof Session session ) {
+				keys.put( session.getID().getName(), key.toString() );
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * @param application The application, may be null
+	 *
+	 * @return The sessions cache of the application, or null if there is none
+	 */
+	public static ICacheProvider sessionsOf( Application application ) {
+		return application == null ? null : application.getSessionsCache();
+	}
+}
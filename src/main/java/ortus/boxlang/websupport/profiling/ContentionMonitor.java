@@ -0,0 +1,481 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * A lock contention and thread state monitor for concurrent mock requests.
+ * <p>
+ * While at least one {@code MockHTTPExchange.execute()} is active, thread contention monitoring of the platform
+ * {@link ThreadMXBean} is switched on, and it is restored once the last execution ends. Every execution on a platform thread
+ * reports the exact number of times and the time it was blocked on a monitor and waiting, per worker thread. A daemon thread
+ * also samples the state of every executing thread: a thread blocked on a monitor or parked on a lock is attributed to the
+ * class of that lock and its own stack, and to the stack of the thread owning the lock at that moment. The locks that
+ * serialize the requests are the ones with the most samples.
+ * <p>
+ * The JDK does not track virtual threads: their states and stacks are sampled, but their lock, owner and blocked times are
+ * not available. Run with platform threads for the full picture.
+ */
+public class ContentionMonitor {
+
+	/**
+	 * The platform thread bean
+	 */
+	private static final ThreadMXBean				THREADS				= ManagementFactory.getThreadMXBean();
+
+	/**
+	 * The lock reported for threads whose lock is unknown, virtual threads and parks without a blocker
+	 */
+	public static final String						UNKNOWN_LOCK		= "(unknown)";
+
+	/**
+	 * The most locks and workers reported
+	 */
+	private static final int						REPORT_LIMIT		= 20;
+
+	/**
+	 * The most owner stacks reported per lock
+	 */
+	private static final int						OWNER_LIMIT			= 5;
+
+	/**
+	 * The sampling interval in milliseconds
+	 */
+	private final long								intervalMillis;
+
+	/**
+	 * The number of frames kept per stack, innermost first
+	 */
+	private final int								maxDepth;
+
+	/**
+	 * Maps the raw stack frames to BoxLang templates and functions
+	 */
+	private final StackFrameMapper					mapper;
+
+	/**
+	 * The threads currently executing a mock request, mapped to their blocked and waited counters when they began
+	 */
+	private final Map<Thread, long[]>				activeThreads		= new ConcurrentHashMap<>();
+
+	/**
+	 * The contended locks: lock class and waiter stack -> samples
+	 */
+	private final Map<String, LockSite>				locks				= new ConcurrentHashMap<>();
+
+	/**
+	 * The thread state samples per state
+	 */
+	private final Map<Thread.State, LongAdder>		states				= new ConcurrentHashMap<>();
+
+	/**
+	 * The measured executions per worker thread name
+	 */
+	private final Map<String, Worker>				workers				= new ConcurrentHashMap<>();
+
+	/**
+	 * The sampling ticks taken
+	 */
+	private final LongAdder							ticks				= new LongAdder();
+
+	/**
+	 * The executions monitored, timed or not
+	 */
+	private final LongAdder							executions			= new LongAdder();
+
+	/**
+	 * The number of active executions, monitoring only runs while this is above zero
+	 */
+	private int										activeCount			= 0;
+
+	/**
+	 * Whether contention monitoring was enabled before this monitor switched it on
+	 */
+	private boolean									previouslyEnabled	= false;
+
+	/**
+	 * The scheduler driving the sampling while executions are active
+	 */
+	private ScheduledExecutorService				scheduler;
+
+	/**
+	 * The scheduled sampling task
+	 */
+	private ScheduledFuture<?>						task;
+
+	/**
+	 * Create a new contention monitor
+	 *
+	 * @param intervalMillis The sampling interval in milliseconds
+	 * @param maxDepth       The number of frames kept per stack, counted from the innermost frame
+	 */
+	public ContentionMonitor( long intervalMillis, int maxDepth ) {
+		if ( intervalMillis < 1 ) {
+			throw new BoxRuntimeException( "The sampling interval must be at least 1 millisecond" );
+		}
+		this.intervalMillis	= intervalMillis;
+		this.maxDepth		= Math.max( 1, maxDepth );
+		this.mapper			= new StackFrameMapper( false, this.maxDepth );
+	}
+
+	/**
+	 * Create a new contention monitor with a 10ms interval that keeps 16 frames per stack
+	 */
+	public ContentionMonitor() {
+		this( 10, 16 );
+	}
+
+	/**
+	 * Start monitoring the current thread. Must be paired with {@link #end()} on the same thread.
+	 */
+	public void begin() {
+		synchronized ( this ) {
+			if ( this.activeCount++ == 0 ) {
+				if ( THREADS.isThreadContentionMonitoringSupported() ) {
+					this.previouslyEnabled = THREADS.isThreadContentionMonitoringEnabled();
+					THREADS.setThreadContentionMonitoringEnabled( true );
+				}
+				if ( this.scheduler == null ) {
+					this.scheduler = Executors.newSingleThreadScheduledExecutor( runnable -> {
+						Thread thread = new Thread( runnable, "bx-web-support-contention" );
+						thread.setDaemon( true );
+						return thread;
+					} );
+				}
+				this.task = this.scheduler.scheduleAtFixedRate( this::sample, this.intervalMillis, this.intervalMillis, TimeUnit.MILLISECONDS );
+			}
+		}
+		// Read the counters once monitoring is on, their times are only kept from then
+		this.activeThreads.put( Thread.currentThread(), counters( Thread.currentThread() ) );
+	}
+
+	/**
+	 * Stop monitoring the current thread and record what it was blocked and waiting on during the execution
+	 */
+	public void end() {
+		Thread	thread	= Thread.currentThread();
+		long[]	before	= this.activeThreads.remove( thread );
+		long[]	after	= counters( thread );
+		this.executions.increment();
+		Worker worker = this.workers.computeIfAbsent( thread.getName(), Worker::new );
+		if ( before != null && before.length > 0 && after.length > 0 ) {
+			worker.record( after[ 0 ] - before[ 0 ], after[ 1 ] - before[ 1 ], after[ 2 ] - before[ 2 ], after[ 3 ] - before[ 3 ] );
+		} else {
+			worker.recordUntimed();
+		}
+		synchronized ( this ) {
+			if ( --this.activeCount == 0 ) {
+				if ( this.task != null ) {
+					this.task.cancel( false );
+					this.task = null;
+				}
+				if ( THREADS.isThreadContentionMonitoringSupported() ) {
+					THREADS.setThreadContentionMonitoringEnabled( this.previouslyEnabled );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Take one sample of every active thread. Called by the scheduler, but public so tests and tools can drive it directly.
+	 */
+	public void sample() {
+		this.ticks.increment();
+		this.activeThreads.keySet().forEach( thread -> {
+			if ( thread.isVirtual() ) {
+				Thread.State state = thread.getState();
+				this.states.computeIfAbsent( state, key -> new LongAdder() ).increment();
+				if ( state == Thread.State.BLOCKED ) {
+					site( UNKNOWN_LOCK, thread.getStackTrace() ).record( state, null );
+				}
+				return;
+			}
+			ThreadInfo info = THREADS.getThreadInfo( thread.threadId(), this.maxDepth );
+			if ( info == null ) {
+				return;
+			}
+			Thread.State state = info.getThreadState();
+			this.states.computeIfAbsent( state, key -> new LongAdder() ).increment();
+			LockInfo lock = info.getLockInfo();
+			// Only waits on something another thread holds or signals, a parked pool thread without a blocker is idle
+			if ( state == Thread.State.BLOCKED || ( lock != null && state != Thread.State.RUNNABLE ) ) {
+				String owner = null;
+				if ( info.getLockOwnerId() >= 0 ) {
+					ThreadInfo ownerInfo = THREADS.getThreadInfo( info.getLockOwnerId(), this.maxDepth );
+					owner = ownerInfo == null ? null : this.mapper.collapse( ownerInfo.getThreadName(), ownerInfo.getStackTrace() );
+				}
+				site( lock == null ? UNKNOWN_LOCK : lock.getClassName(), info.getStackTrace() ).record( state, owner );
+			}
+		} );
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Reports
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Get the report of everything monitored so far
+	 *
+	 * @return { intervalMs, samples, threadSamples, blockedRatio, states, executions, timedExecutions, blockedCount, blockedMs,
+	 *         waitedCount, waitedMs, locks, workers }. Locks are { lock, stack, samples, blocked, waiting, owners } with owners
+	 *         { stack, samples }, workers are { thread, executions, blockedCount, blockedMs, waitedCount, waitedMs }, both the
+	 *         {@value #REPORT_LIMIT} highest first.
+	 */
+	public IStruct toStruct() {
+		IStruct	stateCounts		= new Struct( Struct.TYPES.LINKED );
+		long	threadSamples	= 0;
+		for ( Map.Entry<Thread.State, LongAdder> entry : new TreeMap<>( this.states ).entrySet() ) {
+			stateCounts.put( entry.getKey().name(), entry.getValue().sum() );
+			threadSamples += entry.getValue().sum();
+		}
+		long blockedSamples = this.states.getOrDefault( Thread.State.BLOCKED, new LongAdder() ).sum();
+
+		Array lockList = new Array();
+		this.locks.values()
+		    .stream()
+		    .sorted( Comparator.comparingLong( ( LockSite site ) -> site.samples.sum() ).reversed() )
+		    .limit( REPORT_LIMIT )
+		    .forEach( site -> lockList.add( site.toStruct() ) );
+
+		Array	workerList		= new Array();
+		long	timed			= 0;
+		long	blockedCount	= 0;
+		long	blockedNanos	= 0;
+		long	waitedCount		= 0;
+		long	waitedNanos		= 0;
+		for ( Worker worker : this.workers.values() ) {
+			timed			+= worker.executions.sum() - worker.untimed.sum();
+			blockedCount	+= worker.blockedCount.sum();
+			blockedNanos	+= worker.blockedNanos.sum();
+			waitedCount		+= worker.waitedCount.sum();
+			waitedNanos		+= worker.waitedNanos.sum();
+		}
+		this.workers.values()
+		    .stream()
+		    .sorted( Comparator.comparingLong( ( Worker worker ) -> worker.blockedNanos.sum() ).reversed() )
+		    .limit( REPORT_LIMIT )
+		    .forEach( worker -> workerList.add( worker.toStruct() ) );
+
+		return Struct.linkedOf(
+		    "intervalMs", this.intervalMillis,
+		    "samples", this.ticks.sum(),
+		    "threadSamples", threadSamples,
+		    "blockedRatio", threadSamples == 0 ? 0 : ( double ) blockedSamples / threadSamples,
+		    "states", stateCounts,
+		    "executions", this.executions.sum(),
+		    "timedExecutions", timed,
+		    "blockedCount", blockedCount,
+		    "blockedMs", blockedNanos / 1_000_000.0,
+		    "waitedCount", waitedCount,
+		    "waitedMs", waitedNanos / 1_000_000.0,
+		    "locks", lockList,
+		    "workers", workerList
+		);
+	}
+
+	/**
+	 * Get the stacks of the threads waiting on locks in collapsed-stack format, the lock class as the root frame, ready for
+	 * flame graph tools
+	 *
+	 * @return The collapsed-stack text, most sampled first
+	 */
+	public String getCollapsedStacks() {
+		StringBuilder out = new StringBuilder();
+		this.locks.values()
+		    .stream()
+		    .sorted( Comparator.comparingLong( ( LockSite site ) -> site.samples.sum() ).reversed() )
+		    .forEach( site -> out.append( site.stack ).append( ' ' ).append( site.samples.sum() ).append( '\n' ) );
+		return out.toString();
+	}
+
+	/**
+	 * @return The sampling interval in milliseconds
+	 */
+	public long getInterval() {
+		return this.intervalMillis;
+	}
+
+	/**
+	 * Discard everything monitored so far
+	 *
+	 * @return This monitor for chaining
+	 */
+	public ContentionMonitor reset() {
+		this.locks.clear();
+		this.states.clear();
+		this.workers.clear();
+		this.ticks.reset();
+		this.executions.reset();
+		return this;
+	}
+
+	/**
+	 * Stop the sampling thread. The monitor restarts it on the next {@link #begin()}.
+	 */
+	public synchronized void shutdown() {
+		if ( this.scheduler != null ) {
+			this.scheduler.shutdownNow();
+			this.scheduler	= null;
+			this.task		= null;
+		}
+	}
+
+	/**
+	 * Read the blocked and waited counters of a platform thread
+	 *
+	 * @param thread The thread
+	 *
+	 * @return { blockedCount, blockedNanos, waitedCount, waitedNanos }, or an empty array for virtual threads and when
+	 *         contention monitoring is off
+	 */
+	private static long[] counters( Thread thread ) {
+		if ( thread.isVirtual() || !THREADS.isThreadContentionMonitoringEnabled() ) {
+			return new long[ 0 ];
+		}
+		ThreadInfo info = THREADS.getThreadInfo( thread.threadId(), 0 );
+		if ( info == null || info.getBlockedTime() < 0 ) {
+			return new long[ 0 ];
+		}
+		return new long[] {
+		    info.getBlockedCount(),
+		    TimeUnit.MILLISECONDS.toNanos( info.getBlockedTime() ),
+		    info.getWaitedCount(),
+		    TimeUnit.MILLISECONDS.toNanos( info.getWaitedTime() )
+		};
+	}
+
+	/**
+	 * Get the lock site of a lock class and waiter stack
+	 *
+	 * @param lock   The lock class
+	 * @param frames The waiter stack, innermost first
+	 *
+	 * @return The lock site
+	 */
+	private LockSite site( String lock, StackTraceElement[] frames ) {
+		String stack = this.mapper.collapse( StackFrameMapper.sanitize( lock ), frames );
+		return this.locks.computeIfAbsent( stack, key -> new LockSite( lock, stack ) );
+	}
+
+	/**
+	 * A lock and the stack of the threads waiting on it
+	 */
+	private static class LockSite {
+
+		private final String					lock;
+		private final String					stack;
+		private final LongAdder					samples	= new LongAdder();
+		private final LongAdder					blocked	= new LongAdder();
+		private final Map<String, LongAdder>	owners	= new ConcurrentHashMap<>();
+
+		LockSite( String lock, String stack ) {
+			this.lock	= lock;
+			this.stack	= stack;
+		}
+
+		void record( Thread.State state, String owner ) {
+			this.samples.increment();
+			if ( state == Thread.State.BLOCKED ) {
+				this.blocked.increment();
+			}
+			if ( owner != null ) {
+				this.owners.computeIfAbsent( owner, key -> new LongAdder() ).increment();
+			}
+		}
+
+		IStruct toStruct() {
+			Array ownerList = new Array();
+			this.owners.entrySet()
+			    .stream()
+			    .map( entry -> Map.entry( entry.getKey(), entry.getValue().sum() ) )
+			    .sorted( Map.Entry.<String, Long>comparingByValue().reversed() )
+			    .limit( OWNER_LIMIT )
+			    .forEach( entry -> ownerList.add( Struct.linkedOf( "stack", entry.getKey(), "samples", entry.getValue() ) ) );
+			return Struct.linkedOf(
+			    "lock", this.lock,
+			    "stack", this.stack,
+			    "samples", this.samples.sum(),
+			    "blocked", this.blocked.sum(),
+			    "waiting", this.samples.sum() - this.blocked.sum(),
+			    "owners", ownerList
+			);
+		}
+	}
+
+	/**
+	 * The executions of one worker thread
+	 */
+	private static class Worker {
+
+		private final String	thread;
+		private final LongAdder	executions		= new LongAdder();
+		private final LongAdder	untimed			= new LongAdder();
+		private final LongAdder	blockedCount	= new LongAdder();
+		private final LongAdder	blockedNanos	= new LongAdder();
+		private final LongAdder	waitedCount		= new LongAdder();
+		private final LongAdder	waitedNanos		= new LongAdder();
+
+		Worker( String thread ) {
+			this.thread = thread;
+		}
+
+		void record( long blockedCount, long blockedNanos, long waitedCount, long waitedNanos ) {
+			this.executions.increment();
+			this.blockedCount.add( blockedCount );
+			this.blockedNanos.add( blockedNanos );
+			this.waitedCount.add( waitedCount );
+			this.waitedNanos.add( waitedNanos );
+		}
+
+		void recordUntimed() {
+			this.executions.increment();
+			this.untimed.increment();
+		}
+
+		IStruct toStruct() {
+			return Struct.linkedOf(
+			    "thread", this.thread,
+			    "executions", this.executions.sum(),
+			    "blockedCount", this.blockedCount.sum(),
+			    "blockedMs", this.blockedNanos.sum() / 1_000_000.0,
+			    "waitedCount", this.waitedCount.sum(),
+			    "waitedMs", this.waitedNanos.sum() / 1_000_000.0
+			);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * Heap measurements for memory tests: retained heap after a full collection and live instance counts per class.
+ * <p>
+ * Both measurements force a full garbage collection, so they are meant to be sampled at intervals, not per request.
+ * Live instance counts come from the {@code gcClassHistogram} diagnostic command, the same data as {@code jmap -histo:live}.
+ */
+public final class HeapSampler {
+
+	/**
+	 * The diagnostic command MBean
+	 */
+	private static final String	DIAGNOSTIC_COMMAND	= "com.sun.management:type=DiagnosticCommand";
+
+	private HeapSampler() {
+	}
+
+	/**
+	 * Run a full collection and measure the heap retained after it
+	 *
+	 * @return The used heap after the collection, in bytes
+	 */
+	public static long heapAfterGC() {
+		System.gc();
+		long	used		= 0;
+		boolean	supported	= false;
+		for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() ) {
+			if ( pool.getType() != MemoryType.HEAP ) {
+				continue;
+			}
+			MemoryUsage afterGC = pool.getCollectionUsage();
+			if ( afterGC != null ) {
+				used		+= afterGC.getUsed();
+				supported	= true;
+			}
+		}
+		return supported ? used : ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * Count the live instances of classes. Runs a full collection.
+	 *
+	 * @param classNames The fully qualified class names. A name ending with {@code *} sums every class starting with the prefix
+	 *
+	 * @return The live instance count per requested name, 0 for classes with no instance
+	 */
+	public static Map<String, Long> liveInstances( List<String> classNames ) {
+		Map<String, Long> counts = new LinkedHashMap<>();
+		classNames.forEach( name -> counts.put( name, 0L ) );
+		if ( classNames.isEmpty() ) {
+			return counts;
+		}
+		for ( String line : classHistogram().split( "\n" ) ) {
+			// "   1:        123456      7890123  java.lang.String (java.base@21)"
+			String[] columns = line.trim().split( "\\s+" );
+			if ( columns.length < 4 || !columns[ 0 ].endsWith( ":" ) ) {
+				continue;
+			}
+			String className = columns[ 3 ];
+			for ( String name : classNames ) {
+				boolean matches = name.endsWith( "*" ) ? className.startsWith( name.substring( 0, name.length() - 1 ) ) : className.equals( name );
+				if ( matches ) {
+					counts.merge( name, Long.parseLong( columns[ 1 ] ), Long::sum );
+				}
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Run the class histogram diagnostic command
+	 *
+	 * @return The histogram text
+	 */
+	private static String classHistogram() {
+		try {
+			return ( String ) ManagementFactory.getPlatformMBeanServer().invoke(
+			    new ObjectName( DIAGNOSTIC_COMMAND ),
+			    "gcClassHistogram",
+			    new Object[] { new String[ 0 ] },
+			    new String[] { String[].class.getName() }
+			);
+		} catch ( Exception e ) {
+			throw new BoxRuntimeException( "Unable to take a class histogram, live instance counts need a HotSpot JVM", e );
+		}
+	}
+}
@@ -0,0 +1,493 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.UnaryOperator;
+
+import ortus.boxlang.runtime.BoxRuntime;
+import ortus.boxlang.runtime.events.InterceptorPool;
+import ortus.boxlang.runtime.events.InterceptorState;
+import ortus.boxlang.runtime.interop.DynamicObject;
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * Measures how much of a mock request goes to each interceptor of each interception point.
+ * <p>
+ * While a timed execution is running, a {@link TimingMarker} interceptor is registered between every observer of the timed
+ * interception points: one before the first observer, one after each observer. Each marker timestamps the announcement, so the
+ * time between two markers is the cost of the observer between them and the time between the first and last marker is the cost
+ * of the whole interception point. Markers are removed when the last concurrent timed execution ends.
+ * <p>
+ * The runtime has no public hook around individual observers, so the observer list of every timed point is rewritten
+ * reflectively: a copy with the markers is swapped in under the lock of the interception state, so threads announcing the
+ * point keep iterating the list they started with. If the list cannot be rewritten safely timing fails with an error
+ * rather than silently reporting nothing.
+ * <p>
+ * Any interception point can be timed, including custom ones: markers answer every point they are registered for, see
+ * {@link TimingMarker}. Points without observers are skipped.
+ * <p>
+ * Timings are recorded per thread, so concurrent executions are measured independently. Interceptors registered while a timed
+ * execution is already running are timed from the next execution on.
+ */
+public class InterceptorTimer {
+
+	/**
+	 * The interception points timed by default
+	 */
+	public static final List<String>		DEFAULT_POINTS	= List.of(
+	    "onApplicationStart",
+	    "onApplicationEnd",
+	    "onSessionStart",
+	    "onSessionEnd",
+	    "onRequestStart",
+	    "onRequest",
+	    "onRequestEnd",
+	    "preTemplateInvoke",
+	    "postTemplateInvoke",
+	    "preFunctionInvoke",
+	    "postFunctionInvoke",
+	    "onBIFInvocation",
+	    "preQueryExecute",
+	    "postQueryExecute",
+	    "onRequestFlushBuffer"
+	);
+
+	/**
+	 * The shared timer used by the module BIFs
+	 */
+	private static final InterceptorTimer	SHARED			= new InterceptorTimer( DEFAULT_POINTS );
+
+	/**
+	 * The interception points to time
+	 */
+	private final List<Key>					points			= new CopyOnWriteArrayList<>();
+
+	/**
+	 * The field holding the observers of an interception state, resolved on first use
+	 */
+	private static volatile Field			observersField;
+
+	/**
+	 * The recording of the execution running on the current thread
+	 */
+	private final ThreadLocal<Recording>	current			= new ThreadLocal<>();
+
+	/**
+	 * The timings aggregated across every timed execution
+	 */
+	private final Recording					aggregate		= new Recording();
+
+	/**
+	 * The interceptor pool the markers are installed into
+	 */
+	private InterceptorPool					pool;
+
+	/**
+	 * The number of timed executions currently running
+	 */
+	private int								activeCount		= 0;
+
+	/**
+	 * Create a new interceptor timer
+	 *
+	 * @param points The names of the interception points to time, runtime or custom points
+	 *
+	 * @throws BoxRuntimeException If a point name is empty
+	 */
+	public InterceptorTimer( List<String> points ) {
+		addPoints( points );
+	}
+
+	/**
+	 * Time more interception points, e.g. the custom points of a framework.
+	 * Points added while timed executions are running are timed from the next execution on.
+	 *
+	 * @param names The names of the interception points
+	 *
+	 * @return This timer for chaining
+	 *
+	 * @throws BoxRuntimeException If a point name is empty
+	 */
+	public InterceptorTimer addPoints( List<String> names ) {
+		for ( String name : names ) {
+			if ( name == null || name.isBlank() ) {
+				throw new BoxRuntimeException( "An interception point to time must have a name" );
+			}
+			Key point = Key.of( name.trim() );
+			if ( !this.points.contains( point ) ) {
+				this.points.add( point );
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @return The names of the interception points timed
+	 */
+	public List<String> getPoints() {
+		return this.points.stream().map( Key::getName ).toList();
+	}
+
+	/**
+	 * Get the timer shared by the module BIFs, timing the {@link #DEFAULT_POINTS}
+	 *
+	 * @return The shared timer
+	 */
+	public static InterceptorTimer getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Start timing the interceptors fired on the current thread.
+	 * Must be paired with {@link #end()} on the same thread.
+	 */
+	public void begin() {
+		synchronized ( this ) {
+			if ( this.activeCount++ == 0 ) {
+				this.pool = BoxRuntime.getInstance().getInterceptorService();
+				try {
+					install();
+				} catch ( RuntimeException e ) {
+					this.activeCount--;
+					uninstall();
+					throw e;
+				}
+			}
+		}
+		this.current.set( new Recording() );
+	}
+
+	/**
+	 * Stop timing the interceptors fired on the current thread
+	 *
+	 * @return The timings of this execution, see {@link Recording#toStruct()}
+	 */
+	public IStruct end() {
+		Recording recording = this.current.get();
+		this.current.remove();
+		synchronized ( this ) {
+			if ( --this.activeCount == 0 ) {
+				uninstall();
+			}
+			if ( recording != null ) {
+				this.aggregate.merge( recording );
+			}
+		}
+		return recording == null ? new Struct() : recording.toStruct();
+	}
+
+	/**
+	 * Get the timings aggregated across every timed execution so far
+	 *
+	 * @return A struct of interception point to its timings
+	 */
+	public synchronized IStruct getTimings() {
+		return this.aggregate.toStruct();
+	}
+
+	/**
+	 * Discard the aggregated timings
+	 *
+	 * @return This timer for chaining
+	 */
+	public synchronized InterceptorTimer reset() {
+		this.aggregate.clear();
+		return this;
+	}
+
+	/**
+	 * Called by the markers on every announcement of a timed interception point
+	 *
+	 * @param marker The marker that was announced
+	 */
+	void mark( TimingMarker marker ) {
+		Recording recording = this.current.get();
+		if ( recording != null ) {
+			recording.mark( marker, System.nanoTime() );
+		}
+	}
+
+	/**
+	 * Interleave markers with the observers of every timed interception point
+	 */
+	private void install() {
+		for ( Key point : this.points ) {
+			rewrite( point, observers -> {
+				if ( observers.isEmpty() ) {
+					return observers;
+				}
+				List<DynamicObject> instrumented = new ArrayList<>();
+				instrumented.add( DynamicObject.of( new TimingMarker( this, point, null, true, false ) ) );
+				for ( int i = 0; i < observers.size(); i++ ) {
+					DynamicObject observer = observers.get( i );
+					instrumented.add( observer );
+					instrumented.add( DynamicObject.of( new TimingMarker( this, point, nameOf( observer ), false, i == observers.size() - 1 ) ) );
+				}
+				return instrumented;
+			} );
+		}
+	}
+
+	/**
+	 * Remove this timer's markers from every timed interception point
+	 */
+	private void uninstall() {
+		for ( Key point : this.points ) {
+			rewrite( point, observers -> {
+				observers.removeIf( observer -> observer.getTargetInstance() instanceof TimingMarker marker && marker.getTimer() == this );
+				return observers;
+			} );
+		}
+		this.pool = null;
+	}
+
+	/**
+	 * Replace the observer list of an interception point with a rewritten copy.
+	 * The runtime does not expose the list publicly, so it is swapped reflectively under the lock of the interception state,
+	 * and threads announcing the point meanwhile keep iterating the list they started with.
+	 *
+	 * @param point   The interception point, skipped if it is not registered
+	 * @param rewrite Rewrites a copy of the observers
+	 *
+	 * @throws BoxRuntimeException If the observer list cannot be replaced
+	 */
+	@SuppressWarnings( "unchecked" )
+	private void rewrite( Key point, UnaryOperator<List<DynamicObject>> rewrite ) {
+		InterceptorState state = this.pool.getInterceptionState( point );
+		if ( state == null ) {
+			return;
+		}
+		Field field = observersField();
+		synchronized ( state ) {
+			try {
+				List<DynamicObject>	live		= ( List<DynamicObject> ) field.get( state );
+				List<DynamicObject>	rewritten	= rewrite.apply( new ArrayList<>( live ) );
+				if ( field.getType().isAssignableFrom( CopyOnWriteArrayList.class ) ) {
+					field.set( state, new CopyOnWriteArrayList<>( rewritten ) );
+				} else if ( live instanceof CopyOnWriteArrayList<DynamicObject> copyOnWrite ) {
+					// Every mutation is a new snapshot for the announcing threads: insert the new markers in place, then drop the
+					// old ones, so an observer is never missing
+					for ( int i = 0; i < rewritten.size(); i++ ) {
+						if ( !copyOnWrite.contains( rewritten.get( i ) ) ) {
+							copyOnWrite.add( Math.min( i, copyOnWrite.size() ), rewritten.get( i ) );
+						}
+					}
+					copyOnWrite.removeIf( observer -> !rewritten.contains( observer ) );
+				} else {
+					throw new BoxRuntimeException(
+					    "The observers of the interception point [" + point.getName() + "] are held in a " + field.getType().getName()
+					        + " that cannot be replaced safely, interceptor timing is not available on this runtime" );
+				}
+			} catch ( IllegalAccessException | ClassCastException e ) {
+				throw new BoxRuntimeException( "Unable to time the interceptors of the interception point [" + point.getName() + "]", e );
+			}
+		}
+	}
+
+	/**
+	 * Resolve the field of the interception states that holds their observers
+	 *
+	 * @return The accessible field
+	 *
+	 * @throws BoxRuntimeException If the runtime has no such field
+	 */
+	private static Field observersField() {
+		Field field = observersField;
+		if ( field == null ) {
+			try {
+				field = InterceptorState.class.getDeclaredField( "observers" );
+				field.setAccessible( true );
+			} catch ( ReflectiveOperationException | RuntimeException e ) {
+				throw new BoxRuntimeException(
+				    "Interceptor timing is not available on this runtime: the observers of an interception state cannot be accessed", e );
+			}
+			observersField = field;
+		}
+		return field;
+	}
+
+	/**
+	 * Get a readable name for an observer
+	 *
+	 * @param observer The observer
+	 *
+	 * @return The observer name: the class name, mapped back to the BoxLang class name for BoxLang interceptors
+	 */
+	static String nameOf( DynamicObject observer ) {
+		Object	target	= observer.getTargetInstance();
+		String	name	= target == null ? observer.getTargetClass().getName() : target.getClass().getName();
+		if ( name.startsWith( "boxgenerated." ) ) {
+			name = name.substring( "boxgenerated.".length() );
+			int dollar = name.indexOf( '$' );
+			if ( dollar > 0 ) {
+				name = name.substring( 0, dollar );
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * The timings recorded by one execution, or aggregated across executions
+	 */
+	static class Recording {
+
+		/**
+		 * Timings per interception point
+		 */
+		private final Map<Key, PointTiming>		timings	= new LinkedHashMap<>();
+
+		/**
+		 * The announcements in flight per point, a stack because points can nest (preFunctionInvoke)
+		 */
+		private final Map<Key, Deque<long[]>>	inFlight	= new HashMap<>();
+
+		/**
+		 * Record a marker announcement
+		 *
+		 * @param marker The marker
+		 * @param now    The current nano time
+		 */
+		void mark( TimingMarker marker, long now ) {
+			Deque<long[]> stack = this.inFlight.computeIfAbsent( marker.getPoint(), key -> new ArrayDeque<>() );
+			if ( marker.isHead() ) {
+				// { announcement start, current observer start }
+				stack.push( new long[] { now, now } );
+				return;
+			}
+			long[] frame = stack.peek();
+			if ( frame == null ) {
+				return;
+			}
+			PointTiming	timing		= this.timings.computeIfAbsent( marker.getPoint(), key -> new PointTiming() );
+			long[]		observer	= timing.observers.computeIfAbsent( marker.getObserver(), key -> new long[ 2 ] );
+			observer[ 0 ]++;
+			observer[ 1 ]	+= now - frame[ 1 ];
+			frame[ 1 ]		= now;
+			if ( marker.isTail() ) {
+				stack.pop();
+				timing.count++;
+				timing.nanos += now - frame[ 0 ];
+			}
+		}
+
+		/**
+		 * Merge another recording into this one
+		 *
+		 * @param other The recording to merge
+		 */
+		void merge( Recording other ) {
+			other.timings.forEach( ( point, timing ) -> {
+				PointTiming target = this.timings.computeIfAbsent( point, key -> new PointTiming() );
+				target.count	+= timing.count;
+				target.nanos	+= timing.nanos;
+				timing.observers.forEach( ( name, values ) -> {
+					long[] observer = target.observers.computeIfAbsent( name, key -> new long[ 2 ] );
+					observer[ 0 ]	+= values[ 0 ];
+					observer[ 1 ]	+= values[ 1 ];
+				} );
+			} );
+		}
+
+		/**
+		 * Discard everything recorded
+		 */
+		void clear() {
+			this.timings.clear();
+			this.inFlight.clear();
+		}
+
+		/**
+		 * Convert to a struct: point -> { count, totalMs, interceptors: { name -> { count, totalMs } } },
+		 * points and interceptors sorted by total time, slowest first
+		 *
+		 * @return The timings struct
+		 */
+		IStruct toStruct() {
+			IStruct result = new Struct( Struct.TYPES.LINKED );
+			this.timings.entrySet()
+			    .stream()
+			    .sorted( ( a, b ) -> Long.compare( b.getValue().nanos, a.getValue().nanos ) )
+			    .forEach( entry -> {
+				    IStruct interceptors = new Struct( Struct.TYPES.LINKED );
+				    entry.getValue().observers.entrySet()
+				        .stream()
+				        .sorted( ( a, b ) -> Long.compare( b.getValue()[ 1 ], a.getValue()[ 1 ] ) )
+				        .forEach( observer -> interceptors.put(
+				            observer.getKey(),
+				            Struct.linkedOf(
+				                "count", observer.getValue()[ 0 ],
+				                "totalMs", toMillis( observer.getValue()[ 1 ] )
+				            )
+				        ) );
+				    result.put(
+				        entry.getKey(),
+				        Struct.linkedOf(
+				            "count", entry.getValue().count,
+				            "totalMs", toMillis( entry.getValue().nanos ),
+				            "interceptors", interceptors
+				        )
+				    );
+			    } );
+			return result;
+		}
+
+		/**
+		 * Convert nanoseconds to fractional milliseconds
+		 *
+		 * @param nanos The nanoseconds
+		 *
+		 * @return The milliseconds
+		 */
+		private static double toMillis( long nanos ) {
+			return nanos / 1_000_000.0;
+		}
+	}
+
+	/**
+	 * The timing of one interception point
+	 */
+	static class PointTiming {
+
+		/**
+		 * The number of complete announcements
+		 */
+		long					count		= 0;
+
+		/**
+		 * The total time of the complete announcements
+		 */
+		long					nanos		= 0;
+
+		/**
+		 * Per observer name: { invocations, total nanos }
+		 */
+		final Map<String, long[]>	observers	= new LinkedHashMap<>();
+	}
+}
@@ -0,0 +1,344 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ortus.boxlang.runtime.application.Application;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.web.exchange.BoxCookie;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+import ortus.boxlang.websupport.load.IFeeder;
+import ortus.boxlang.websupport.load.RequestSpec;
+
+/**
+ * Executes the same request spec many times and watches what it leaves behind.
+ * <p>
+ * Without a feeder, a single exchange is built and re-executed, so the web request context and the application state are
+ * reused between calls exactly like the cached singletons of a long running server. The cookies every response sets are
+ * sent with the next request, like a browser would, so an application with session management keeps a single session
+ * instead of creating one per execution. Every {@code sampleEvery} executions
+ * the detector records the heap retained after a full collection, the deep entry counts of the application and session
+ * scopes, the number of sessions and the live instances of the tracked classes. Once the run is over, a line is fitted
+ * through every series and the series that keep growing are reported as suspects.
+ * <p>
+ * A series is growing when its slope is positive, the fit explains most of its variance ({@code minR2}) and it grew by more
+ * than a threshold over the measured range: {@code growthThreshold} bytes per execution for the heap, and one unit per
+ * sample for counts. Warmup executions are not sampled, so caches that fill once do not count as leaks.
+ */
+public class LeakDetector {
+
+	/**
+	 * The request spec executed
+	 */
+	private final RequestSpec	spec;
+
+	/**
+	 * The feeder for the spec placeholders, null to reuse a single exchange
+	 */
+	private final IFeeder		feeder;
+
+	/**
+	 * The number of measured executions
+	 */
+	private int					iterations			= 1000;
+
+	/**
+	 * The number of executions between two samples
+	 */
+	private int					sampleEvery			= 100;
+
+	/**
+	 * The number of executions before sampling starts
+	 */
+	private int					warmup				= 50;
+
+	/**
+	 * The classes whose live instances are counted
+	 */
+	private List<String>		trackedClasses		= List.of();
+
+	/**
+	 * The heap growth per execution, in bytes, above which the heap is flagged
+	 */
+	private double				growthThreshold		= 256;
+
+	/**
+	 * The minimum coefficient of determination of a growing series
+	 */
+	private double				minR2				= 0.8;
+
+	/**
+	 * The maximum number of sessions walked when counting session entries
+	 */
+	private int					maxSessions			= 10_000;
+
+	/**
+	 * Create a new leak detector
+	 *
+	 * @param spec   The request spec executed
+	 * @param feeder The feeder for the spec placeholders, or null to reuse a single exchange
+	 */
+	public LeakDetector( RequestSpec spec, IFeeder feeder ) {
+		this.spec	= spec;
+		this.feeder	= feeder;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Fluent setters
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * @param iterations The number of measured executions
+	 *
+	 * @return This detector for chaining
+	 */
+	public LeakDetector setIterations( int iterations ) {
+		this.iterations = Math.max( 1, iterations );
+		return this;
+	}
+
+	/**
+	 * @param sampleEvery The number of executions between two samples
+	 *
+	 * @return This detector for chaining
+	 */
+	public LeakDetector setSampleEvery( int sampleEvery ) {
+		this.sampleEvery = Math.max( 1, sampleEvery );
+		return this;
+	}
+
+	/**
+	 * @param warmup The number of executions before sampling starts
+	 *
+	 * @return This detector for chaining
+	 */
+	public LeakDetector setWarmup( int warmup ) {
+		this.warmup = Math.max( 0, warmup );
+		return this;
+	}
+
+	/**
+	 * @param trackedClasses The classes whose live instances are counted, a trailing {@code *} matches a prefix
+	 *
+	 * @return This detector for chaining
+	 */
+	public LeakDetector setTrackedClasses( List<String> trackedClasses ) {
+		this.trackedClasses = List.copyOf( trackedClasses );
+		return this;
+	}
+
+	/**
+	 * @param growthThreshold The heap growth per execution, in bytes, above which the heap is flagged
+	 *
+	 * @return This detector for chaining
+	 */
+	public LeakDetector setGrowthThreshold( double growthThreshold ) {
+		this.growthThreshold = Math.max( 0, growthThreshold );
+		return this;
+	}
+
+	/**
+	 * @param minR2 The minimum coefficient of determination of a growing series, between 0 and 1
+	 *
+	 * @return This detector for chaining
+	 */
+	public LeakDetector setMinR2( double minR2 ) {
+		this.minR2 = Math.min( 1, Math.max( 0, minR2 ) );
+		return this;
+	}
+
+	/**
+	 * @param maxSessions The maximum number of sessions walked when counting session entries
+	 *
+	 * @return This detector for chaining
+	 */
+	public LeakDetector setMaxSessions( int maxSessions ) {
+		this.maxSessions = Math.max( 0, maxSessions );
+		return this;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Execution
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Run the executions and analyze the samples
+	 *
+	 * @return The report: the samples, a trend per series, the suspects and whether a leak is suspected
+	 */
+	public IStruct run() {
+		long				start		= System.nanoTime();
+		MockHTTPExchange	shared		= this.feeder == null ? this.spec.toExchange( null ) : null;
+		MockHTTPExchange	last		= shared;
+		long				errors		= 0;
+		long				serverErrors	= 0;
+		List<Sample>		samples		= new ArrayList<>();
+		Map<String, String>	cookies		= new LinkedHashMap<>( 4 );
+
+		for ( int i = 1; i <= this.warmup + this.iterations; i++ ) {
+			MockHTTPExchange exchange = shared;
+			if ( exchange == null ) {
+				exchange = this.spec.nextExchange( this.feeder );
+				if ( exchange == null ) {
+					break;
+				}
+			} else {
+				exchange.clearResponseData();
+			}
+			cookies.forEach( exchange::addRequestCookie );
+			try {
+				exchange.execute();
+				if ( exchange.getResponseStatus() >= 500 ) {
+					serverErrors++;
+				}
+			} catch ( RuntimeException e ) {
+				errors++;
+			}
+			exchange.getMockResponseCookies().values().forEach( value -> {
+				if ( value instanceof BoxCookie cookie ) {
+					cookies.put( cookie.getName(), cookie.getValue() );
+				}
+			} );
+			last = exchange;
+
+			int measured = i - this.warmup;
+			if ( measured == 0 || ( measured > 0 && measured % this.sampleEvery == 0 ) ) {
+				samples.add( sample( measured, ApplicationProbe.applicationOf( last ) ) );
+			}
+		}
+
+		return analyze( samples, errors, serverErrors, System.nanoTime() - start );
+	}
+
+	/**
+	 * Take one sample
+	 *
+	 * @param iteration   The number of measured executions so far
+	 * @param application The application the exchange runs in, may be null
+	 *
+	 * @return The sample
+	 */
+	private Sample sample( int iteration, Application application ) {
+		Map<String, Long>	classes	= HeapSampler.liveInstances( this.trackedClasses );
+		long				heap	= HeapSampler.heapAfterGC();
+		return new Sample(
+		    iteration,
+		    heap,
+		    ApplicationProbe.applicationEntries( application ),
+		    ApplicationProbe.sessionCount( application ),
+		    ApplicationProbe.sessionEntries( application, this.maxSessions ),
+		    classes
+		);
+	}
+
+	/**
+	 * Fit a trend through every series and flag the growing ones
+	 *
+	 * @param samples      The samples
+	 * @param errors       The executions that threw
+	 * @param serverErrors The executions that answered with a 5xx status
+	 * @param elapsed      The run duration in nanoseconds
+	 *
+	 * @return The report
+	 */
+	private IStruct analyze( List<Sample> samples, long errors, long serverErrors, long elapsed ) {
+		Map<String, double[]> series = new LinkedHashMap<>();
+		series.put( "heap", samples.stream().mapToDouble( Sample::heapBytes ).toArray() );
+		series.put( "applicationEntries", samples.stream().mapToDouble( Sample::applicationEntries ).toArray() );
+		series.put( "sessions", samples.stream().mapToDouble( Sample::sessions ).toArray() );
+		series.put( "sessionEntries", samples.stream().mapToDouble( Sample::sessionEntries ).toArray() );
+		this.trackedClasses.forEach( name -> series.put( "class:" + name, samples.stream().mapToDouble( sample -> sample.classes().get( name ) ).toArray() ) );
+
+		double[]	x		= samples.stream().mapToDouble( Sample::iteration ).toArray();
+		double		span	= x.length == 0 ? 0 : x[ x.length - 1 ] - x[ 0 ];
+		IStruct		trends	= new Struct( Struct.TYPES.LINKED );
+		Array		suspects	= new Array();
+		series.forEach( ( name, values ) -> {
+			// Series the runtime could not measure are all -1
+			if ( values.length > 0 && values[ 0 ] < 0 ) {
+				return;
+			}
+			Trend	trend		= Trend.fit( x, values );
+			double	minGrowth	= name.equals( "heap" ) ? this.growthThreshold * span : Math.max( 1, values.length - 1 );
+			boolean	growing		= trend.isGrowing( span, minGrowth, this.minR2 );
+			IStruct	result		= trend.toStruct();
+			result.put( "growth", trend.slope() * span );
+			result.put( "growing", growing );
+			trends.put( name, result );
+			if ( growing ) {
+				suspects.add( name );
+			}
+		} );
+
+		Array sampleList = new Array();
+		samples.forEach( sample -> sampleList.add( sample.toStruct() ) );
+
+		return Struct.linkedOf(
+		    "route", this.spec.getRoute(),
+		    "iterations", this.iterations,
+		    "warmup", this.warmup,
+		    "sampleEvery", this.sampleEvery,
+		    "errors", errors,
+		    "serverErrors", serverErrors,
+		    "durationMs", elapsed / 1_000_000.0,
+		    "samples", sampleList,
+		    "trends", trends,
+		    "suspects", suspects,
+		    "leaking", !suspects.isEmpty()
+		);
+	}
+
+	/**
+	 * One sample of the retained state
+	 *
+	 * @param iteration          The number of measured executions so far
+	 * @param heapBytes          The heap retained after a full collection
+	 * @param applicationEntries The deep entry count of the application scope, -1 without an application
+	 * @param sessions           The number of sessions, -1 without an application
+	 * @param sessionEntries     The deep entry count of the session scopes, -1 without an application
+	 * @param classes            The live instances per tracked class
+	 */
+	private record Sample( int iteration, long heapBytes, long applicationEntries, long sessions, long sessionEntries, Map<String, Long> classes ) {
+
+		/**
+		 * @return The sample as a struct
+		 */
+		IStruct toStruct() {
+			IStruct liveInstances = new Struct( Struct.TYPES.LINKED );
+			this.classes.forEach( liveInstances::put );
+			return Struct.linkedOf(
+			    "iteration", this.iteration,
+			    "heapBytes", this.heapBytes,
+			    "applicationEntries", this.applicationEntries,
+			    "sessions", this.sessions,
+			    "sessionEntries", this.sessionEntries,
+			    "liveInstances", liveInstances
+			);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import ortus.boxlang.runtime.types.IStruct;
+
+/**
+ * The interceptor the {@link QueryProfiler} registers on the query interception points while a profiled execution runs.
+ */
+public class QueryListener {
+
+	/**
+	 * The profiler this listener reports to
+	 */
+	private final QueryProfiler profiler;
+
+	/**
+	 * Create a new query listener
+	 *
+	 * @param profiler The profiler to report to
+	 */
+	public QueryListener( QueryProfiler profiler ) {
+		this.profiler = profiler;
+	}
+
+	/**
+	 * @return The profiler this listener reports to
+	 */
+	public QueryProfiler getProfiler() {
+		return this.profiler;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Interception points, see QueryProfiler.POINTS
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	public void preQueryExecute( IStruct data ) {
+		this.profiler.started();
+	}
+
+	public void postQueryExecute( IStruct data ) {
+		this.profiler.executed( data );
+	}
+}
@@ -0,0 +1,681 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import ortus.boxlang.runtime.BoxRuntime;
+import ortus.boxlang.runtime.events.InterceptorPool;
+import ortus.boxlang.runtime.interop.DynamicObject;
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * Profiles the queries run by mock requests and flags probable N+1 patterns.
+ * <p>
+ * While a profiled execution is running, a {@link QueryListener} is registered on the {@code preQueryExecute} and
+ * {@code postQueryExecute} interception points of the runtime, and it is removed when the last concurrent profiled
+ * execution ends. Every query is recorded with its duration, its row count and its normalized SQL: literals and named
+ * parameters replaced with {@code ?}, {@code IN} lists collapsed, comments dropped, whitespace and case folded. Queries
+ * sharing a normalized SQL have the same shape.
+ * <p>
+ * A shape repeated at least {@code threshold} times in one execution is flagged: as a probable N+1 when it ran with
+ * different parameters, typically once per row of an earlier query, or as a duplicate when it ran with the same ones.
+ * <p>
+ * Queries are recorded per thread, so concurrent executions are profiled independently and queries run on threads an
+ * execution spawns are not counted.
+ */
+public class QueryProfiler {
+
+	/**
+	 * The repetitions of one shape in one execution flagged by default
+	 */
+	public static final int							DEFAULT_THRESHOLD	= 5;
+
+	/**
+	 * The queries listed per execution by default
+	 */
+	public static final int							DEFAULT_MAX_QUERIES	= 100;
+
+	/**
+	 * The interception points the listener is registered on
+	 */
+	private static final Key[]						POINTS				= new Key[] { Key.of( "preQueryExecute" ), Key.of( "postQueryExecute" ) };
+
+	/**
+	 * The keys read from the interception data
+	 */
+	private static final Key						SQL					= Key.of( "sql" );
+	private static final Key						BINDINGS			= Key.of( "bindings" );
+	private static final Key						EXECUTION_TIME		= Key.of( "executionTime" );
+	private static final Key						RESULT				= Key.of( "result" );
+	private static final Key						RECORD_COUNT		= Key.of( "recordCount" );
+	private static final Key						DATA				= Key.of( "data" );
+
+	/**
+	 * The most shapes reported by the aggregated stats
+	 */
+	private static final int						REPORT_LIMIT		= 20;
+
+	/**
+	 * The most distinct parameter sets counted per shape
+	 */
+	private static final int						PARAMETER_LIMIT		= 1_000;
+
+	/**
+	 * A list of placeholders, as left by an {@code IN} list once its literals are replaced
+	 */
+	private static final Pattern					PLACEHOLDER_LIST	= Pattern.compile( "\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)" );
+
+	/**
+	 * Maps the frame a query was run from
+	 */
+	private static final StackFrameMapper			FRAMES				= new StackFrameMapper( true, 1 );
+
+	/**
+	 * The repetitions of one shape in one execution that are flagged
+	 */
+	private final int								threshold;
+
+	/**
+	 * The queries listed per execution
+	 */
+	private final int								maxQueries;
+
+	/**
+	 * The recording of the execution running on the current thread
+	 */
+	private final ThreadLocal<Recording>			current				= new ThreadLocal<>();
+
+	/**
+	 * The queries aggregated across every profiled execution
+	 */
+	private final Recording							aggregate;
+
+	/**
+	 * The listener registered while executions are profiled, the same instance so it can be unregistered
+	 */
+	private final DynamicObject						listener			= DynamicObject.of( new QueryListener( this ) );
+
+	/**
+	 * The interceptor pool the listener is registered in
+	 */
+	private InterceptorPool							pool;
+
+	/**
+	 * The number of profiled executions currently running
+	 */
+	private int										activeCount			= 0;
+
+	/**
+	 * Create a new query profiler
+	 *
+	 * @param threshold  The repetitions of one query shape in one execution that are flagged, at least 2
+	 * @param maxQueries The queries listed per execution, the later ones are only counted
+	 *
+	 * @throws BoxRuntimeException If the threshold is below 2
+	 */
+	public QueryProfiler( int threshold, int maxQueries ) {
+		if ( threshold < 2 ) {
+			throw new BoxRuntimeException( "The N+1 threshold must be at least 2, found [" + threshold + "]" );
+		}
+		this.threshold	= threshold;
+		this.maxQueries	= Math.max( 0, maxQueries );
+		this.aggregate	= new Recording( threshold, 0 );
+	}
+
+	/**
+	 * Create a new query profiler with the default threshold and query list size
+	 */
+	public QueryProfiler() {
+		this( DEFAULT_THRESHOLD, DEFAULT_MAX_QUERIES );
+	}
+
+	/**
+	 * Start recording the queries run on the current thread.
+	 * Must be paired with {@link #end()} on the same thread.
+	 */
+	public void begin() {
+		synchronized ( this ) {
+			if ( this.activeCount++ == 0 ) {
+				this.pool = BoxRuntime.getInstance().getInterceptorService();
+				this.pool.register( this.listener, POINTS );
+			}
+		}
+		this.current.set( new Recording( this.threshold, this.maxQueries ) );
+	}
+
+	/**
+	 * Stop recording the queries run on the current thread
+	 *
+	 * @return The query profile of this execution, see {@link Recording#toStruct()}
+	 */
+	public IStruct end() {
+		Recording recording = this.current.get();
+		this.current.remove();
+		synchronized ( this ) {
+			if ( --this.activeCount == 0 ) {
+				this.pool.unregister( this.listener, POINTS );
+				this.pool = null;
+			}
+			if ( recording != null ) {
+				this.aggregate.merge( recording );
+			}
+		}
+		return recording == null ? new Struct() : recording.toStruct();
+	}
+
+	/**
+	 * Get the query shapes aggregated across every profiled execution so far
+	 *
+	 * @return The stats, see {@link Recording#toStats()}
+	 */
+	public synchronized IStruct getStats() {
+		return this.aggregate.toStats();
+	}
+
+	/**
+	 * Discard the aggregated stats
+	 *
+	 * @return This profiler for chaining
+	 */
+	public synchronized QueryProfiler reset() {
+		this.aggregate.clear();
+		return this;
+	}
+
+	/**
+	 * @return The repetitions of one query shape in one execution that are flagged
+	 */
+	public int getThreshold() {
+		return this.threshold;
+	}
+
+	/**
+	 * Called by the listener before a query runs
+	 */
+	void started() {
+		Recording recording = this.current.get();
+		if ( recording != null ) {
+			recording.starts.push( System.nanoTime() );
+		}
+	}
+
+	/**
+	 * Called by the listener once a query ran
+	 *
+	 * @param data The interception data: sql, bindings, executionTime, result and data
+	 */
+	void executed( IStruct data ) {
+		Recording recording = this.current.get();
+		if ( recording == null || data.get( SQL ) == null ) {
+			return;
+		}
+		// Queries do not nest, but a failed one leaves its start behind: the latest start is the one of this query
+		Long	start	= recording.starts.poll();
+		long	nanos	= start != null ? System.nanoTime() - start
+		    : data.get( EXECUTION_TIME ) instanceof Number millis ? millis.longValue() * 1_000_000 : 0;
+		recording.add( data.get( SQL ).toString(), data.get( BINDINGS ), nanos, rowCount( data ), QueryProfiler::origin );
+	}
+
+	/**
+	 * Get the number of rows of an executed query
+	 *
+	 * @param data The interception data
+	 *
+	 * @return The record count of the query result, or -1 if it is unknown
+	 */
+	static long rowCount( IStruct data ) {
+		if ( data.get( RESULT ) instanceof IStruct result && result.get( RECORD_COUNT ) instanceof Number count ) {
+			return count.longValue();
+		}
+		Object rows = data.get( DATA );
+		if ( rows instanceof Collection<?> collection ) {
+			return collection.size();
+		}
+		return rows instanceof Map<?, ?> map ? map.size() : -1;
+	}
+
+	/**
+	 * @return The innermost BoxLang template or function on the current stack, the code that ran the query
+	 */
+	static String origin() {
+		for ( StackTraceElement frame : Thread.currentThread().getStackTrace() ) {
+			if ( StackFrameMapper.isBoxLangFrame( frame ) ) {
+				return FRAMES.map( frame );
+			}
+		}
+		return "";
+	}
+
+	/**
+	 * Normalize a SQL statement into its shape: string and numeric literals and named parameters are replaced with
+	 * {@code ?}, lists of placeholders collapsed to {@code (?)}, comments dropped, whitespace collapsed and everything but
+	 * quoted identifiers lower cased.
+	 *
+	 * @param sql The SQL statement
+	 *
+	 * @return The normalized SQL
+	 */
+	public static String normalize( String sql ) {
+		StringBuilder	shape	= new StringBuilder( sql.length() );
+		int				length	= sql.length();
+		int				i		= 0;
+		while ( i < length ) {
+			char	c			= sql.charAt( i );
+			char	next		= i + 1 < length ? sql.charAt( i + 1 ) : '\0';
+			char	previous	= shape.isEmpty() ? ' ' : shape.charAt( shape.length() - 1 );
+			if ( c == '\'' ) {
+				// A string literal, quotes are escaped by doubling them
+				i = i + 1;
+				while ( i < length && ( sql.charAt( i ) != '\'' || i + 1 < length && sql.charAt( i + 1 ) == '\'' ) ) {
+					i += sql.charAt( i ) == '\'' ? 2 : 1;
+				}
+				shape.append( '?' );
+				i++;
+			} else if ( c == '"' || c == '`' ) {
+				// A quoted identifier, kept as is
+				int end = sql.indexOf( c, i + 1 );
+				end = end < 0 ? length : end + 1;
+				shape.append( sql, i, end );
+				i = end;
+			} else if ( c == '-' && next == '-' ) {
+				int end = sql.indexOf( '\n', i );
+				i = end < 0 ? length : end;
+			} else if ( c == '/' && next == '*' ) {
+				int end = sql.indexOf( "*/", i + 2 );
+				i = end < 0 ? length : end + 2;
+				appendSpace( shape );
+			} else if ( Character.isWhitespace( c ) ) {
+				appendSpace( shape );
+				i++;
+			} else if ( Character.isDigit( c ) && !isIdentifierPart( previous ) ) {
+				i = skipNumber( sql, i );
+				shape.append( '?' );
+			} else if ( c == ':' && Character.isLetter( next ) && previous != ':' ) {
+				i++;
+				while ( i < length && isIdentifierPart( sql.charAt( i ) ) ) {
+					i++;
+				}
+				shape.append( '?' );
+			} else {
+				shape.append( Character.toLowerCase( c ) );
+				i++;
+			}
+		}
+		return PLACEHOLDER_LIST.matcher( shape.toString().trim() ).replaceAll( "(?)" );
+	}
+
+	/**
+	 * Append a single space, unless the shape already ends with one
+	 *
+	 * @param shape The shape being built
+	 */
+	private static void appendSpace( StringBuilder shape ) {
+		if ( !shape.isEmpty() && shape.charAt( shape.length() - 1 ) != ' ' ) {
+			shape.append( ' ' );
+		}
+	}
+
+	/**
+	 * @param c A character
+	 *
+	 * @return True if the character can be part of an unquoted identifier
+	 */
+	private static boolean isIdentifierPart( char c ) {
+		return Character.isLetterOrDigit( c ) || c == '_' || c == '$';
+	}
+
+	/**
+	 * Skip a numeric literal: digits, a decimal point and an exponent
+	 *
+	 * @param sql   The SQL statement
+	 * @param start The index of the first digit
+	 *
+	 * @return The index after the literal
+	 */
+	private static int skipNumber( String sql, int start ) {
+		int i = start;
+		while ( i < sql.length() && ( Character.isDigit( sql.charAt( i ) ) || sql.charAt( i ) == '.' ) ) {
+			i++;
+		}
+		if ( i < sql.length() && ( sql.charAt( i ) == 'e' || sql.charAt( i ) == 'E' ) ) {
+			int exponent = i + 1;
+			if ( exponent < sql.length() && ( sql.charAt( exponent ) == '+' || sql.charAt( exponent ) == '-' ) ) {
+				exponent++;
+			}
+			if ( exponent < sql.length() && Character.isDigit( sql.charAt( exponent ) ) ) {
+				i = exponent;
+				while ( i < sql.length() && Character.isDigit( sql.charAt( i ) ) ) {
+					i++;
+				}
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * The queries recorded by one execution, or aggregated across executions
+	 */
+	static class Recording {
+
+		/**
+		 * The repetitions of one shape that are flagged
+		 */
+		private final int					threshold;
+
+		/**
+		 * The queries listed
+		 */
+		private final int					maxQueries;
+
+		/**
+		 * The start times of the queries in flight, latest first
+		 */
+		final Deque<Long>					starts		= new ArrayDeque<>();
+
+		/**
+		 * The shapes by normalized SQL, in the order they first ran
+		 */
+		private final Map<String, Shape>	shapes		= new LinkedHashMap<>();
+
+		/**
+		 * The first queries, in the order they ran
+		 */
+		private final List<IStruct>			queries		= new ArrayList<>();
+
+		/**
+		 * The number of executions merged, 0 for the recording of one execution
+		 */
+		private long						executions	= 0;
+
+		/**
+		 * The number of queries
+		 */
+		private long						count		= 0;
+
+		/**
+		 * The total query time
+		 */
+		private long						nanos		= 0;
+
+		/**
+		 * The total rows of the queries whose row count is known
+		 */
+		private long						rows		= 0;
+
+		/**
+		 * Create a new recording
+		 *
+		 * @param threshold  The repetitions of one shape that are flagged
+		 * @param maxQueries The queries listed
+		 */
+		Recording( int threshold, int maxQueries ) {
+			this.threshold	= threshold;
+			this.maxQueries	= maxQueries;
+		}
+
+		/**
+		 * Record a query
+		 *
+		 * @param sql      The SQL as run
+		 * @param bindings The parameter values, or null
+		 * @param nanos    The query time
+		 * @param rows     The row count, or -1 if it is unknown
+		 * @param origin   Supplies the code that ran the query, only called for the first query of a shape
+		 */
+		void add( String sql, Object bindings, long nanos, long rows, Supplier<String> origin ) {
+			String	normalized	= normalize( sql );
+			Shape	shape		= this.shapes.computeIfAbsent( normalized, key -> new Shape( key, origin.get() ) );
+			shape.count++;
+			shape.nanos += nanos;
+			shape.rows	+= Math.max( 0, rows );
+			if ( shape.parameterSets.size() < PARAMETER_LIMIT ) {
+				// The raw SQL too, literals make different parameters as well
+				shape.parameterSets.add( Objects.hash( sql, String.valueOf( bindings ) ) );
+			}
+			this.count++;
+			this.nanos	+= nanos;
+			this.rows	+= Math.max( 0, rows );
+			if ( this.queries.size() < this.maxQueries ) {
+				this.queries.add( Struct.linkedOf(
+				    "sql", normalized,
+				    "durationMs", toMillis( nanos ),
+				    "rows", rows
+				) );
+			}
+		}
+
+		/**
+		 * Merge the recording of one execution into this one
+		 *
+		 * @param execution The recording to merge
+		 */
+		void merge( Recording execution ) {
+			this.executions++;
+			this.count	+= execution.count;
+			this.nanos	+= execution.nanos;
+			this.rows	+= execution.rows;
+			execution.shapes.forEach( ( sql, shape ) -> {
+				Shape target = this.shapes.computeIfAbsent( sql, key -> new Shape( key, shape.origin ) );
+				target.count	+= shape.count;
+				target.nanos	+= shape.nanos;
+				target.rows		+= shape.rows;
+				if ( execution.isNPlusOne( shape ) ) {
+					target.nPlusOneExecutions++;
+				} else if ( execution.isDuplicate( shape ) ) {
+					target.duplicateExecutions++;
+				}
+			} );
+		}
+
+		/**
+		 * Discard everything recorded
+		 */
+		void clear() {
+			this.shapes.clear();
+			this.queries.clear();
+			this.starts.clear();
+			this.executions	= 0;
+			this.count		= 0;
+			this.nanos		= 0;
+			this.rows		= 0;
+		}
+
+		/**
+		 * @param shape A shape of this execution
+		 *
+		 * @return True if the shape repeated with different parameters
+		 */
+		boolean isNPlusOne( Shape shape ) {
+			return shape.count >= this.threshold && shape.parameterSets.size() > 1;
+		}
+
+		/**
+		 * @param shape A shape of this execution
+		 *
+		 * @return True if the shape repeated with the same parameters
+		 */
+		boolean isDuplicate( Shape shape ) {
+			return shape.count >= this.threshold && shape.parameterSets.size() == 1;
+		}
+
+		/**
+		 * Convert the recording of one execution to a struct: { queries, totalMs, rows, shapes, nPlusOne, duplicates, log,
+		 * truncated }. Every shape is { sql, origin, count, distinctParameters, totalMs, rows }, slowest first, nPlusOne and
+		 * duplicates are the flagged shapes and log lists the first queries with their { sql, durationMs, rows }.
+		 *
+		 * @return The query profile
+		 */
+		IStruct toStruct() {
+			Array	all			= new Array();
+			Array	nPlusOne	= new Array();
+			Array	duplicates	= new Array();
+			Array	log			= new Array();
+			this.queries.forEach( log::add );
+			this.shapes.values().stream().sorted( Comparator.comparingLong( ( Shape shape ) -> shape.nanos ).reversed() ).forEach( shape -> {
+				IStruct summary = Struct.linkedOf(
+				    "sql", shape.sql,
+				    "origin", shape.origin,
+				    "count", shape.count,
+				    "distinctParameters", shape.parameterSets.size(),
+				    "totalMs", toMillis( shape.nanos ),
+				    "rows", shape.rows
+				);
+				all.add( summary );
+				if ( isNPlusOne( shape ) ) {
+					nPlusOne.add( summary );
+				} else if ( isDuplicate( shape ) ) {
+					duplicates.add( summary );
+				}
+			} );
+			return Struct.linkedOf(
+			    "queries", this.count,
+			    "totalMs", toMillis( this.nanos ),
+			    "rows", this.rows,
+			    "shapes", all,
+			    "nPlusOne", nPlusOne,
+			    "duplicates", duplicates,
+			    "log", log,
+			    "truncated", this.count - this.queries.size()
+			);
+		}
+
+		/**
+		 * Convert the aggregated recording to a struct: { executions, queries, totalMs, rows, queriesPerExecution, shapes,
+		 * nPlusOne }. Shapes are the 20 slowest { sql, origin, count, totalMs, meanMs, rows, nPlusOneExecutions,
+		 * duplicateExecutions } and nPlusOne the shapes flagged as N+1 in at least one execution.
+		 *
+		 * @return The stats
+		 */
+		IStruct toStats() {
+			Array	all			= new Array();
+			Array	nPlusOne	= new Array();
+			this.shapes.values().stream().sorted( Comparator.comparingLong( ( Shape shape ) -> shape.nanos ).reversed() ).forEach( shape -> {
+				IStruct summary = Struct.linkedOf(
+				    "sql", shape.sql,
+				    "origin", shape.origin,
+				    "count", shape.count,
+				    "totalMs", toMillis( shape.nanos ),
+				    "meanMs", shape.count == 0 ? 0.0 : toMillis( shape.nanos ) / shape.count,
+				    "rows", shape.rows,
+				    "nPlusOneExecutions", shape.nPlusOneExecutions,
+				    "duplicateExecutions", shape.duplicateExecutions
+				);
+				if ( all.size() < REPORT_LIMIT ) {
+					all.add( summary );
+				}
+				if ( shape.nPlusOneExecutions > 0 ) {
+					nPlusOne.add( summary );
+				}
+			} );
+			return Struct.linkedOf(
+			    "executions", this.executions,
+			    "queries", this.count,
+			    "totalMs", toMillis( this.nanos ),
+			    "rows", this.rows,
+			    "queriesPerExecution", this.executions == 0 ? 0.0 : ( double ) this.count / this.executions,
+			    "shapes", all,
+			    "nPlusOne", nPlusOne
+			);
+		}
+
+		/**
+		 * Convert nanoseconds to fractional milliseconds
+		 *
+		 * @param nanos The nanoseconds
+		 *
+		 * @return The milliseconds
+		 */
+		private static double toMillis( long nanos ) {
+			return nanos / 1_000_000.0;
+		}
+	}
+
+	/**
+	 * The queries of one shape
+	 */
+	static class Shape {
+
+		/**
+		 * The normalized SQL
+		 */
+		final String		sql;
+
+		/**
+		 * The code that first ran the shape
+		 */
+		final String		origin;
+
+		/**
+		 * The number of queries
+		 */
+		long				count				= 0;
+
+		/**
+		 * The total query time
+		 */
+		long				nanos				= 0;
+
+		/**
+		 * The total rows of the queries whose row count is known
+		 */
+		long				rows				= 0;
+
+		/**
+		 * The hashes of the distinct SQL and parameters the shape ran with
+		 */
+		final Set<Integer>	parameterSets		= new HashSet<>();
+
+		/**
+		 * The executions the shape was flagged as N+1 in, aggregated only
+		 */
+		long				nPlusOneExecutions	= 0;
+
+		/**
+		 * The executions the shape was flagged as duplicate in, aggregated only
+		 */
+		long				duplicateExecutions	= 0;
+
+		/**
+		 * Create a new shape
+		 *
+		 * @param sql    The normalized SQL
+		 * @param origin The code that first ran the shape
+		 */
+		Shape( String sql, String origin ) {
+			this.sql	= sql;
+			this.origin	= origin;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Measures how much data a scope holds by counting its entries deeply: every map entry and collection or array element,
+ * following nested structs and arrays. Other objects are counted as one entry and not walked, so the count is
+ * cheap, stable across JVMs and grows with exactly the data a leaking cache accumulates.
+ */
+public final class ScopeMeter {
+
+	/**
+	 * The default maximum number of entries counted, to bound the cost on huge scopes
+	 */
+	public static final int DEFAULT_LIMIT = 1_000_000;
+
+	private ScopeMeter() {
+	}
+
+	/**
+	 * Count the entries of a value deeply
+	 *
+	 * @param root  The value, usually a scope
+	 * @param limit The maximum number of entries counted
+	 *
+	 * @return The number of entries, at most {@code limit}
+	 */
+	public static long countEntries( Object root, int limit ) {
+		if ( root == null ) {
+			return 0;
+		}
+		Set<Object>		seen	= Collections.newSetFromMap( new IdentityHashMap<>() );
+		Deque<Object>	pending	= new ArrayDeque<>();
+		long			count	= 0;
+		pending.push( root );
+		seen.add( root );
+		while ( !pending.isEmpty() && count < limit ) {
+			Object value = pending.pop();
+			if ( value instanceof Map<?, ?> map ) {
+				for ( Object child : map.values() ) {
+					count++;
+					visit( child, seen, pending );
+				}
+			} else if ( value instanceof Collection<?> collection ) {
+				for ( Object child : collection ) {
+					count++;
+					visit( child, seen, pending );
+				}
+			} else if ( value instanceof Object[] array ) {
+				for ( Object child : array ) {
+					count++;
+					visit( child, seen, pending );
+				}
+			}
+		}
+		return Math.min( count, limit );
+	}
+
+	/**
+	 * Queue a child container for walking, once
+	 *
+	 * @param child   The child value
+	 * @param seen    The containers already queued
+	 * @param pending The containers to walk
+	 */
+	private static void visit( Object child, Set<Object> seen, Deque<Object> pending ) {
+		if ( ( child instanceof Map || child instanceof Collection || child instanceof Object[] ) && seen.add( child ) ) {
+			pending.push( child );
+		}
+	}
+}
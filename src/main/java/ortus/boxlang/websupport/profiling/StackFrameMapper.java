@@ -0,0 +1,168 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import java.util.Set;
+
+/**
+ * Maps raw JVM stack frames to readable flame graph frames.
+ * <p>
+ * BoxLang compiles templates, classes and functions into classes under the {@code boxgenerated} package. Templates and classes
+ * keep their source extension after a {@code $} and functions, closures and lambdas are compiled into inner classes named
+ * {@code Func_name}, {@code Closure_name} and {@code Lambda_name}. Those frames are mapped back to
+ * {@code template.ext} or {@code template.ext:function()} so the hot BoxLang code is visible in the flame graph.
+ * Every other frame is kept as {@code SimpleClassName.method} unless only BoxLang frames are requested.
+ */
+public class StackFrameMapper {
+
+	/**
+	 * The package prefix of every class compiled by BoxLang
+	 */
+	private static final String			GENERATED_PREFIX	= "boxgenerated.";
+
+	/**
+	 * Source extensions BoxLang compiles
+	 */
+	private static final Set<String>	SOURCE_EXTENSIONS	= Set.of( "bx", "bxs", "bxm", "cfc", "cfm", "cfml", "cfs" );
+
+	/**
+	 * Whether to drop non BoxLang frames
+	 */
+	private final boolean				boxlangOnly;
+
+	/**
+	 * The maximum number of frames to keep, counted from the innermost frame
+	 */
+	private final int					maxDepth;
+
+	/**
+	 * Create a new frame mapper
+	 *
+	 * @param boxlangOnly Whether to drop all frames that are not BoxLang templates or functions
+	 * @param maxDepth    The maximum number of frames to keep, counted from the innermost frame
+	 */
+	public StackFrameMapper( boolean boxlangOnly, int maxDepth ) {
+		this.boxlangOnly	= boxlangOnly;
+		this.maxDepth		= Math.max( 1, maxDepth );
+	}
+
+	/**
+	 * Collapse a stack into a single flame graph line (without the count), root first.
+	 * Consecutive identical frames are merged, so the several JVM frames of one BoxLang function show once.
+	 *
+	 * @param root   The root frame, usually the request path
+	 * @param frames The stack as returned by {@code Thread.getStackTrace()}, innermost first
+	 *
+	 * @return The collapsed stack
+	 */
+	public String collapse( String root, StackTraceElement[] frames ) {
+		StringBuilder	stack	= new StringBuilder( root );
+		String			last	= null;
+		int				start	= Math.min( frames.length, this.maxDepth ) - 1;
+		for ( int i = start; i >= 0; i-- ) {
+			String frame = map( frames[ i ] );
+			if ( frame == null || frame.equals( last ) ) {
+				continue;
+			}
+			stack.append( ';' ).append( frame );
+			last = frame;
+		}
+		return stack.toString();
+	}
+
+	/**
+	 * Map a single frame
+	 *
+	 * @param frame The JVM stack frame
+	 *
+	 * @return The flame graph frame, or null if the frame should be dropped
+	 */
+	public String map( StackTraceElement frame ) {
+		String className = frame.getClassName();
+		if ( className.startsWith( GENERATED_PREFIX ) ) {
+			return sanitize( mapBoxLangFrame( frame ) );
+		}
+		if ( this.boxlangOnly ) {
+			return null;
+		}
+		int dot = className.lastIndexOf( '.' );
+		return sanitize( className.substring( dot + 1 ) + "." + frame.getMethodName() );
+	}
+
+	/**
+	 * Whether a frame belongs to code compiled by BoxLang
+	 *
+	 * @param frame The JVM stack frame
+	 *
+	 * @return True if it is a BoxLang frame
+	 */
+	public static boolean isBoxLangFrame( StackTraceElement frame ) {
+		return frame.getClassName().startsWith( GENERATED_PREFIX );
+	}
+
+	/**
+	 * Make a frame safe for the collapsed-stack format, which uses ';' between frames and the last space before the count
+	 *
+	 * @param frame The frame
+	 *
+	 * @return The sanitized frame
+	 */
+	public static String sanitize( String frame ) {
+		return frame.replace( ';', ':' ).replace( ' ', '_' );
+	}
+
+	/**
+	 * Map a frame of a BoxLang generated class to template and function names
+	 *
+	 * @param frame The JVM stack frame
+	 *
+	 * @return The BoxLang frame
+	 */
+	private String mapBoxLangFrame( StackTraceElement frame ) {
+		String		className	= frame.getClassName().substring( GENERATED_PREFIX.length() );
+		String[]	parts		= className.split( "\\$" );
+		String		outer		= parts[ 0 ];
+		String		template	= outer.substring( outer.lastIndexOf( '.' ) + 1 );
+		String		function	= null;
+
+		for ( int i = 1; i < parts.length; i++ ) {
+			String part = parts[ i ];
+			if ( part.startsWith( "Func_" ) ) {
+				function = part.substring( 5 ) + "()";
+			} else if ( part.startsWith( "Closure_" ) ) {
+				function = "closure:" + part.substring( 8 );
+			} else if ( part.startsWith( "Lambda_" ) ) {
+				function = "lambda:" + part.substring( 7 );
+			} else if ( SOURCE_EXTENSIONS.contains( part.toLowerCase() ) ) {
+				template = template + "." + part.toLowerCase();
+			}
+		}
+
+		// Prefer the real source file name when the compiler recorded one
+		String fileName = frame.getFileName();
+		if ( fileName != null ) {
+			int		dot			= fileName.lastIndexOf( '.' );
+			String	extension	= dot < 0 ? "" : fileName.substring( dot + 1 ).toLowerCase();
+			if ( SOURCE_EXTENSIONS.contains( extension ) ) {
+				template = fileName.substring( Math.max( fileName.lastIndexOf( '/' ), fileName.lastIndexOf( '\\' ) ) + 1 );
+			}
+		}
+
+		return function == null ? template : template + ":" + function;
+	}
+}
@@ -0,0 +1,284 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * An in-process sampling profiler for mock requests.
+ * <p>
+ * While at least one {@code MockHTTPExchange.execute()} is active, a daemon thread periodically captures the stack of every
+ * executing thread, maps the frames back to BoxLang templates and functions via {@link StackFrameMapper}, and aggregates the
+ * samples per request path. The result is exported as collapsed-stack text, one {@code frame;frame;frame count} line per
+ * unique stack, ready for flame graph tools. The request path is used as the root frame of every stack.
+ * <p>
+ * No agent or attach is needed, so it works in CI and on locked-down machines. Like any {@code Thread.getStackTrace()} based
+ * sampler it is safepoint biased, so treat the numbers as a guide to hot BoxLang code rather than exact CPU time.
+ */
+public class StackSampler {
+
+	/**
+	 * The sampling interval in milliseconds
+	 */
+	private final long										intervalMillis;
+
+	/**
+	 * Maps raw stack frames to flame graph frames
+	 */
+	private final StackFrameMapper							mapper;
+
+	/**
+	 * The threads currently executing a mock request, mapped to their request path
+	 */
+	private final Map<Thread, String>						activeThreads	= new ConcurrentHashMap<>();
+
+	/**
+	 * The aggregated samples: request path -> collapsed stack -> count
+	 */
+	private final Map<String, Map<String, LongAdder>>	samples			= new ConcurrentHashMap<>();
+
+	/**
+	 * The total samples taken per request path
+	 */
+	private final Map<String, LongAdder>					sampleCounts	= new ConcurrentHashMap<>();
+
+	/**
+	 * The number of active executions, the sampler only runs while this is above zero
+	 */
+	private int												activeCount		= 0;
+
+	/**
+	 * The scheduler driving the sampling while executions are active
+	 */
+	private ScheduledExecutorService						scheduler;
+
+	/**
+	 * The scheduled sampling task
+	 */
+	private ScheduledFuture<?>								task;
+
+	/**
+	 * Create a new stack sampler
+	 *
+	 * @param intervalMillis The sampling interval in milliseconds
+	 * @param boxlangOnly    Whether to drop all frames that are not BoxLang templates or functions
+	 * @param maxDepth       The maximum number of frames to keep per stack, counted from the innermost frame
+	 */
+	public StackSampler( long intervalMillis, boolean boxlangOnly, int maxDepth ) {
+		if ( intervalMillis < 1 ) {
+			throw new BoxRuntimeException( "The sampling interval must be at least 1 millisecond" );
+		}
+		this.intervalMillis	= intervalMillis;
+		this.mapper			= new StackFrameMapper( boxlangOnly, maxDepth );
+	}
+
+	/**
+	 * Create a new stack sampler with a 10ms interval that keeps all frames
+	 */
+	public StackSampler() {
+		this( 10, false, 256 );
+	}
+
+	/**
+	 * Start sampling the current thread under the given request path.
+	 * Must be paired with {@link #end()} on the same thread.
+	 *
+	 * @param path The request path the samples are attributed to
+	 */
+	public void begin( String path ) {
+		this.activeThreads.put( Thread.currentThread(), normalizePath( path ) );
+		synchronized ( this ) {
+			if ( this.activeCount++ == 0 ) {
+				if ( this.scheduler == null ) {
+					this.scheduler = Executors.newSingleThreadScheduledExecutor( runnable -> {
+						Thread thread = new Thread( runnable, "bx-web-support-sampler" );
+						thread.setDaemon( true );
+						return thread;
+					} );
+				}
+				this.task = this.scheduler.scheduleAtFixedRate( this::sample, this.intervalMillis, this.intervalMillis, TimeUnit.MILLISECONDS );
+			}
+		}
+	}
+
+	/**
+	 * Stop sampling the current thread
+	 */
+	public void end() {
+		this.activeThreads.remove( Thread.currentThread() );
+		synchronized ( this ) {
+			if ( --this.activeCount == 0 && this.task != null ) {
+				this.task.cancel( false );
+				this.task = null;
+			}
+		}
+	}
+
+	/**
+	 * Take one sample of every active thread. Called by the scheduler, but public so tests and tools can drive it directly.
+	 */
+	public void sample() {
+		this.activeThreads.forEach( ( thread, path ) -> {
+			StackTraceElement[] frames = thread.getStackTrace();
+			if ( frames.length == 0 ) {
+				return;
+			}
+			String stack = this.mapper.collapse( path, frames );
+			this.samples
+			    .computeIfAbsent( path, key -> new ConcurrentHashMap<>() )
+			    .computeIfAbsent( stack, key -> new LongAdder() )
+			    .increment();
+			this.sampleCounts.computeIfAbsent( path, key -> new LongAdder() ).increment();
+		} );
+	}
+
+	/**
+	 * Get the collapsed stacks of every sampled request path
+	 *
+	 * @return The collapsed-stack text
+	 */
+	public String getCollapsedStacks() {
+		StringBuilder out = new StringBuilder();
+		new TreeMap<>( this.samples ).keySet().forEach( path -> appendCollapsed( out, path ) );
+		return out.toString();
+	}
+
+	/**
+	 * Get the collapsed stacks of a single request path
+	 *
+	 * @param path The request path
+	 *
+	 * @return The collapsed-stack text, empty if the path was never sampled
+	 */
+	public String getCollapsedStacks( String path ) {
+		StringBuilder out = new StringBuilder();
+		appendCollapsed( out, normalizePath( path ) );
+		return out.toString();
+	}
+
+	/**
+	 * Write the collapsed stacks of every sampled request path to a file
+	 *
+	 * @param file The file to write to, it is created or truncated
+	 *
+	 * @return The path of the written file
+	 */
+	public String writeCollapsedStacks( String file ) {
+		Path target = Path.of( file ).toAbsolutePath();
+		try {
+			if ( target.getParent() != null ) {
+				Files.createDirectories( target.getParent() );
+			}
+			try ( Writer writer = Files.newBufferedWriter( target, StandardCharsets.UTF_8 ) ) {
+				writer.write( getCollapsedStacks() );
+			}
+		} catch ( IOException e ) {
+			throw new BoxRuntimeException( "Unable to write the collapsed stacks to [" + target + "]", e );
+		}
+		return target.toString();
+	}
+
+	/**
+	 * Get the number of samples taken per request path
+	 *
+	 * @return A struct of request path to sample count
+	 */
+	public IStruct getSampleCounts() {
+		IStruct counts = new Struct( Struct.TYPES.LINKED );
+		new TreeMap<>( this.sampleCounts ).forEach( ( path, count ) -> counts.put( path, count.sum() ) );
+		return counts;
+	}
+
+	/**
+	 * @return The sampling interval in milliseconds
+	 */
+	public long getInterval() {
+		return this.intervalMillis;
+	}
+
+	/**
+	 * Discard all samples taken so far
+	 *
+	 * @return This sampler for chaining
+	 */
+	public StackSampler reset() {
+		this.samples.clear();
+		this.sampleCounts.clear();
+		return this;
+	}
+
+	/**
+	 * Stop the sampling thread. The sampler restarts it on the next {@link #begin(String)}.
+	 */
+	public synchronized void shutdown() {
+		if ( this.scheduler != null ) {
+			this.scheduler.shutdownNow();
+			this.scheduler	= null;
+			this.task		= null;
+		}
+	}
+
+	/**
+	 * Append the collapsed lines of a path, most sampled first
+	 *
+	 * @param out  The builder to append to
+	 * @param path The request path
+	 */
+	private void appendCollapsed( StringBuilder out, String path ) {
+		Map<String, LongAdder> stacks = this.samples.get( path );
+		if ( stacks == null ) {
+			return;
+		}
+		stacks.entrySet()
+		    .stream()
+		    .map( entry -> Map.entry( entry.getKey(), entry.getValue().sum() ) )
+		    .sorted( Map.Entry.<String, Long>comparingByValue().reversed() )
+		    .forEach( entry -> out.append( entry.getKey() ).append( ' ' ).append( entry.getValue() ).append( '\n' ) );
+	}
+
+	/**
+	 * Normalize a request path so it is usable as the root frame
+	 *
+	 * @param path The request path
+	 *
+	 * @return The normalized path
+	 */
+	private static String normalizePath( String path ) {
+		String normalized = path == null || path.isBlank() ? "/" : path.trim();
+		if ( !normalized.startsWith( "/" ) ) {
+			normalized = "/" + normalized;
+		}
+		return StackFrameMapper.sanitize( normalized );
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Cheap per-thread CPU time and allocation counters for measuring a single execution.
+ * <p>
+ * Both counters are read from the platform {@link ThreadMXBean}. They return {@code -1} when the JVM does not support
+ * them, when they are disabled, and on virtual threads, for which the JDK does not track them.
+ */
+public final class ThreadMetrics {
+
+	/**
+	 * The platform thread bean
+	 */
+	private static final ThreadMXBean							THREADS		= ManagementFactory.getThreadMXBean();
+
+	/**
+	 * The HotSpot extension of the thread bean, null on JVMs without it
+	 */
+	private static final com.sun.management.ThreadMXBean	HOTSPOT		= THREADS instanceof com.sun.management.ThreadMXBean hotspot
+	    && hotspot.isThreadAllocatedMemorySupported() ? hotspot : null;
+
+	/**
+	 * Whether thread CPU time can be measured
+	 */
+	private static final boolean								CPU_TIME	= THREADS.isCurrentThreadCpuTimeSupported();
+
+	private ThreadMetrics() {
+	}
+
+	/**
+	 * @return The CPU time consumed by the current thread in nanoseconds, or -1 if it cannot be measured
+	 */
+	public static long cpuTime() {
+		if ( !CPU_TIME || Thread.currentThread().isVirtual() ) {
+			return -1;
+		}
+		return THREADS.getCurrentThreadCpuTime();
+	}
+
+	/**
+	 * @return The bytes allocated by the current thread so far, or -1 if they cannot be measured
+	 */
+	public static long allocatedBytes() {
+		if ( HOTSPOT == null || Thread.currentThread().isVirtual() ) {
+			return -1;
+		}
+		return HOTSPOT.getCurrentThreadAllocatedBytes();
+	}
+
+	/**
+	 * The difference between two readings of the same counter
+	 *
+	 * @param before The reading taken before the measured work
+	 * @param after  The reading taken after the measured work
+	 *
+	 * @return The difference, or -1 if either reading is unavailable
+	 */
+	public static long delta( long before, long after ) {
+		return before < 0 || after < 0 ? -1 : after - before;
+	}
+}
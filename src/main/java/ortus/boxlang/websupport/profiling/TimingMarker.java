@@ -0,0 +1,218 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import java.util.Map;
+
+import ortus.boxlang.runtime.context.IBoxContext;
+import ortus.boxlang.runtime.dynamic.IReferenceable;
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+
+/**
+ * The interceptor the {@link InterceptorTimer} registers between the observers of a timed interception point.
+ * Each marker is registered for exactly one point, so every listener method simply timestamps the announcement.
+ * <p>
+ * The runtime points have a listener method each. Custom points are answered through {@link IReferenceable}, the way
+ * the runtime invokes a point on dynamic objects, so a marker answers any point it is registered for.
+ */
+public class TimingMarker implements IReferenceable {
+
+	/**
+	 * The timer this marker reports to
+	 */
+	private final InterceptorTimer	timer;
+
+	/**
+	 * The interception point this marker is registered for
+	 */
+	private final Key				point;
+
+	/**
+	 * The name of the observer that runs right before this marker, null for the head marker
+	 */
+	private final String			observer;
+
+	/**
+	 * Whether this marker runs before every observer
+	 */
+	private final boolean			head;
+
+	/**
+	 * Whether this marker runs after every observer
+	 */
+	private final boolean			tail;
+
+	/**
+	 * Create a new timing marker
+	 *
+	 * @param timer    The timer to report to
+	 * @param point    The interception point
+	 * @param observer The name of the observer right before this marker, null for the head marker
+	 * @param head     Whether this marker runs before every observer
+	 * @param tail     Whether this marker runs after every observer
+	 */
+	public TimingMarker( InterceptorTimer timer, Key point, String observer, boolean head, boolean tail ) {
+		this.timer		= timer;
+		this.point		= point;
+		this.observer	= observer;
+		this.head		= head;
+		this.tail		= tail;
+	}
+
+	/**
+	 * @return The timer this marker reports to
+	 */
+	public InterceptorTimer getTimer() {
+		return this.timer;
+	}
+
+	/**
+	 * @return The interception point
+	 */
+	public Key getPoint() {
+		return this.point;
+	}
+
+	/**
+	 * @return The name of the observer right before this marker
+	 */
+	public String getObserver() {
+		return this.observer;
+	}
+
+	/**
+	 * @return Whether this marker runs before every observer
+	 */
+	public boolean isHead() {
+		return this.head;
+	}
+
+	/**
+	 * @return Whether this marker runs after every observer
+	 */
+	public boolean isTail() {
+		return this.tail;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * IReferenceable, any interception point
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	@Override
+	public Object dereference( IBoxContext context, Key name, Boolean safe ) {
+		return null;
+	}
+
+	@Override
+	public Object dereferenceAndInvoke( IBoxContext context, Key name, Object[] positionalArguments, Boolean safe ) {
+		return announced( name );
+	}
+
+	@Override
+	public Object dereferenceAndInvoke( IBoxContext context, Key name, Map<Key, Object> namedArguments, Boolean safe ) {
+		return announced( name );
+	}
+
+	@Override
+	public Object assign( IBoxContext context, Key name, Object value ) {
+		return value;
+	}
+
+	/**
+	 * Timestamp an announcement of the point of this marker
+	 *
+	 * @param name The invoked point
+	 *
+	 * @return Null, so the announcement is never cancelled
+	 */
+	private Object announced( Key name ) {
+		if ( this.point.equals( name ) ) {
+			this.timer.mark( this );
+		}
+		return null;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Interception points, see InterceptorTimer.DEFAULT_POINTS
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	public void onApplicationStart( IStruct data ) {
+		this.timer.mark( this );
+	}
+
+	public void onApplicationEnd( IStruct data ) {
+		this.timer.mark( this );
+	}
+
+	public void onSessionStart( IStruct data ) {
+		this.timer.mark( this );
+	}
+
+	public void onSessionEnd( IStruct data ) {
+		this.timer.mark( this );
+	}
+
+	public void onRequestStart( IStruct data ) {
+		this.timer.mark( this );
+	}
+
+	public void onRequest( IStruct data ) {
+		this.timer.mark( this );
+	}
+
+	public void onRequestEnd( IStruct data ) {
+		this.timer.mark( this );
+	}
+
+	public void preTemplateInvoke( IStruct data ) {
+		this.timer.mark( this );
+	}
+
+	public void postTemplateInvoke( IStruct data ) {
+		this.timer.mark( this );
+	}
+
+	public void preFunctionInvoke( IStruct data ) {
+		this.timer.mark( this );
+	}
+
+	public void postFunctionInvoke( IStruct data ) {
+		this.timer.mark( this );
+	}
+
+	public void onBIFInvocation( IStruct data ) {
+		this.timer.mark( this );
+	}
+
+	public void preQueryExecute( IStruct data ) {
+		this.timer.mark( this );
+	}
+
+	public void postQueryExecute( IStruct data ) {
+		this.timer.mark( this );
+	}
+
+	public void onRequestFlushBuffer( IStruct data ) {
+		this.timer.mark( this );
+	}
+}
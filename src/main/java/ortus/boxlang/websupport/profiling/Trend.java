@@ -0,0 +1,99 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+
+/**
+ * A least squares linear fit of a series of measurements, used to tell steady growth from noise
+ *
+ * @param slope     The growth per unit of x
+ * @param intercept The fitted value at x = 0
+ * @param r2        The coefficient of determination, 1 when every point is on the line, 0 when the line explains nothing
+ * @param points    The number of points fitted
+ */
+public record Trend( double slope, double intercept, double r2, int points ) {
+
+	/**
+	 * Fit a line through points
+	 *
+	 * @param x The x values
+	 * @param y The y values, same length as x
+	 *
+	 * @return The trend, flat with r2 of 0 for fewer than two distinct x values
+	 */
+	public static Trend fit( double[] x, double[] y ) {
+		int n = Math.min( x.length, y.length );
+		if ( n < 2 ) {
+			return new Trend( 0, n == 1 ? y[ 0 ] : 0, 0, n );
+		}
+		double	meanX	= 0;
+		double	meanY	= 0;
+		for ( int i = 0; i < n; i++ ) {
+			meanX	+= x[ i ];
+			meanY	+= y[ i ];
+		}
+		meanX	/= n;
+		meanY	/= n;
+
+		double	sxx	= 0;
+		double	sxy	= 0;
+		double	syy	= 0;
+		for ( int i = 0; i < n; i++ ) {
+			double	dx	= x[ i ] - meanX;
+			double	dy	= y[ i ] - meanY;
+			sxx	+= dx * dx;
+			sxy	+= dx * dy;
+			syy	+= dy * dy;
+		}
+		if ( sxx == 0 ) {
+			return new Trend( 0, meanY, 0, n );
+		}
+		double	slope	= sxy / sxx;
+		// A perfectly flat series is fully explained by a flat line
+		double	r2		= syy == 0 ? 1 : ( sxy * sxy ) / ( sxx * syy );
+		return new Trend( slope, meanY - slope * meanX, r2, n );
+	}
+
+	/**
+	 * Whether the series keeps growing: a positive slope that explains most of the variance, growing by more than
+	 * {@code minGrowth} over the fitted range
+	 *
+	 * @param span      The x range the series covers
+	 * @param minGrowth The minimum total growth over the span
+	 * @param minR2     The minimum coefficient of determination
+	 *
+	 * @return True if the series is growing
+	 */
+	public boolean isGrowing( double span, double minGrowth, double minR2 ) {
+		return this.points >= 3 && this.slope > 0 && this.r2 >= minR2 && this.slope * span > minGrowth;
+	}
+
+	/**
+	 * @return The trend as a struct
+	 */
+	public IStruct toStruct() {
+		return Struct.linkedOf(
+		    "slope", this.slope,
+		    "intercept", this.intercept,
+		    "r2", this.r2,
+		    "points", this.points
+		);
+	}
+}
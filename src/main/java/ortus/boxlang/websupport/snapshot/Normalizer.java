@@ -0,0 +1,97 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.snapshot;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * Replaces volatile parts of a response body, such as timestamps and generated ids, before it is hashed, so that
+ * snapshots only change when the meaningful output does.
+ *
+ * @param name        The normalizer name, used in reports
+ * @param pattern     The pattern of the volatile parts
+ * @param replacement The stable replacement, may use {@code $1} style group references
+ */
+public record Normalizer( String name, Pattern pattern, String replacement ) {
+
+	/**
+	 * ISO-8601 and SQL style date times, with optional fractions and offsets
+	 */
+	private static final Pattern	TIMESTAMPS	= Pattern.compile(
+	    "\\d{4}-\\d{2}-\\d{2}[T ]\\d{2}:\\d{2}(:\\d{2}(\\.\\d+)?)?(Z|[+-]\\d{2}:?\\d{2})?" );
+
+	/**
+	 * UUIDs and BoxLang/CF style 35 character UUIDs
+	 */
+	private static final Pattern	UUIDS		= Pattern.compile(
+	    "\\b[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-?[0-9a-fA-F]{12}\\b" );
+
+	/**
+	 * Numeric values of JSON properties named id or ending in Id / _id
+	 */
+	private static final Pattern	IDS			= Pattern.compile( "(\"(?:id|\\w+Id|\\w+_id)\"\\s*:\\s*)\\d+" );
+
+	/**
+	 * Create a normalizer from a regular expression
+	 *
+	 * @param name        The normalizer name
+	 * @param regex       The regular expression of the volatile parts
+	 * @param replacement The stable replacement
+	 *
+	 * @return The normalizer
+	 */
+	public static Normalizer of( String name, String regex, String replacement ) {
+		try {
+			return new Normalizer( name, Pattern.compile( regex ), replacement );
+		} catch ( PatternSyntaxException e ) {
+			throw new BoxRuntimeException( "Invalid normalizer pattern [" + regex + "] for [" + name + "]", e );
+		}
+	}
+
+	/**
+	 * Get a built-in normalizer
+	 *
+	 * @param name The built-in name: timestamps, uuids or ids
+	 *
+	 * @return The normalizer
+	 */
+	public static Normalizer builtIn( String name ) {
+		return switch ( name.trim().toLowerCase() ) {
+			case "timestamps" -> new Normalizer( "timestamps", TIMESTAMPS, "<timestamp>" );
+			case "uuids" -> new Normalizer( "uuids", UUIDS, "<uuid>" );
+			case "ids" -> new Normalizer( "ids", IDS, "$1<id>" );
+			default -> throw new BoxRuntimeException( "Unknown built-in normalizer [" + name + "]. Valid normalizers are: timestamps, uuids, ids" );
+		};
+	}
+
+	/**
+	 * Normalize a body
+	 *
+	 * @param body The body
+	 *
+	 * @return The normalized body, the same instance if nothing matched
+	 */
+	public String apply( String body ) {
+		Matcher matcher = this.pattern.matcher( body );
+		return matcher.find() ? matcher.replaceAll( this.replacement ) : body;
+	}
+}
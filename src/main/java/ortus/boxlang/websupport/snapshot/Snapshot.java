@@ -0,0 +1,106 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.snapshot;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The recorded fingerprint of one response: everything needed to detect a change without keeping the body
+ *
+ * @param key     The request key, method and path, e.g. {@code GET /users?id=1}
+ * @param status  The response status
+ * @param length  The normalized body length in UTF-8 bytes
+ * @param hash    The normalized body hash
+ * @param headers The snapshotted response headers, by lower case name
+ */
+public record Snapshot( String key, int status, long length, String hash, Map<String, String> headers ) {
+
+	/**
+	 * Encode the snapshot as one index line: tab separated key, status, length, hash and headers,
+	 * with tabs, line breaks and backslashes escaped
+	 *
+	 * @return The index line, without the line break
+	 */
+	String toIndexLine() {
+		StringBuilder line = new StringBuilder( 96 );
+		line.append( escape( this.key ) ).append( '\t' ).append( this.status ).append( '\t' ).append( this.length ).append( '\t' ).append( this.hash );
+		this.headers.forEach( ( name, value ) -> line.append( '\t' ).append( escape( name ) ).append( ':' ).append( escape( value ) ) );
+		return line.toString();
+	}
+
+	/**
+	 * Decode an index line
+	 *
+	 * @param line The index line
+	 *
+	 * @return The snapshot
+	 */
+	static Snapshot fromIndexLine( String line ) {
+		String[]				fields	= line.split( "\t" );
+		Map<String, String>	headers	= new TreeMap<>();
+		for ( int i = 4; i < fields.length; i++ ) {
+			int colon = fields[ i ].indexOf( ':' );
+			headers.put( unescape( fields[ i ].substring( 0, colon ) ), unescape( fields[ i ].substring( colon + 1 ) ) );
+		}
+		return new Snapshot( unescape( fields[ 0 ] ), Integer.parseInt( fields[ 1 ] ), Long.parseLong( fields[ 2 ] ), fields[ 3 ], headers );
+	}
+
+	/**
+	 * Escape a field
+	 *
+	 * @param value The field
+	 *
+	 * @return The escaped field
+	 */
+	private static String escape( String value ) {
+		if ( value.indexOf( '\\' ) < 0 && value.indexOf( '\t' ) < 0 && value.indexOf( '\n' ) < 0 && value.indexOf( '\r' ) < 0 ) {
+			return value;
+		}
+		return value.replace( "\\", "\\\\" ).replace( "\t", "\\t" ).replace( "\n", "\\n" ).replace( "\r", "\\r" );
+	}
+
+	/**
+	 * Unescape a field
+	 *
+	 * @param value The escaped field
+	 *
+	 * @return The field
+	 */
+	private static String unescape( String value ) {
+		if ( value.indexOf( '\\' ) < 0 ) {
+			return value;
+		}
+		StringBuilder out = new StringBuilder( value.length() );
+		for ( int i = 0; i < value.length(); i++ ) {
+			char c = value.charAt( i );
+			if ( c == '\\' && i + 1 < value.length() ) {
+				char next = value.charAt( ++i );
+				out.append( switch ( next ) {
+					case 't' -> '\t';
+					case 'n' -> '\n';
+					case 'r' -> '\r';
+					default -> next;
+				} );
+			} else {
+				out.append( c );
+			}
+		}
+		return out.toString();
+	}
+}
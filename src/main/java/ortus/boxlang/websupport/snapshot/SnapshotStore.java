@@ -0,0 +1,468 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.snapshot;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.websupport.exchange.CountingWriter;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+import ortus.boxlang.websupport.exchange.ResponseMode;
+
+/**
+ * A golden-response snapshot store for catching output changes across many endpoints.
+ * <p>
+ * The store keeps a compact index of request key (method and path) to the response status, the normalized body length and
+ * hash, and a few response headers. Verifying an exchange compares that fingerprint only, so no body is kept in memory.
+ * Bodies are written to disk only when needed: the actual body of every mismatch, and, when {@code storeBodies} is on, the
+ * recorded body of every snapshot so mismatches can be diffed line by line.
+ * <p>
+ * Hashes use the same FNV-1a function as the {@code checksum} response mode, so exchanges executed in that mode are verified
+ * without ever buffering their body, as long as no normalizer is configured. The index is a sorted, tab separated text file
+ * that loads in a single pass and diffs cleanly in version control. Verification is thread-safe.
+ */
+public class SnapshotStore {
+
+	/**
+	 * The index file name inside the snapshot directory
+	 */
+	public static final String			INDEX_FILE		= "snapshots.idx";
+
+	/**
+	 * The first line of every index file
+	 */
+	private static final String			INDEX_HEADER	= "# bx-web-support snapshots v1: key, status, length, hash, headers";
+
+	/**
+	 * The longest line excerpt reported in a diff
+	 */
+	private static final int			MAX_EXCERPT		= 200;
+
+	/**
+	 * The snapshot directory
+	 */
+	private final Path					directory;
+
+	/**
+	 * The directory bodies are written to
+	 */
+	private final Path					bodies;
+
+	/**
+	 * The normalizers applied to every body before hashing, in order
+	 */
+	private final List<Normalizer>		normalizers;
+
+	/**
+	 * The response headers to snapshot, lower case
+	 */
+	private final List<String>			headerNames;
+
+	/**
+	 * Whether recorded bodies are written to disk for diffing
+	 */
+	private final boolean				storeBodies;
+
+	/**
+	 * Whether every verification records the actual response instead of comparing
+	 */
+	private final boolean				update;
+
+	/**
+	 * The snapshots by key
+	 */
+	private final Map<String, Snapshot>	snapshots		= new ConcurrentHashMap<>();
+
+	/**
+	 * The mismatch reports of this run
+	 */
+	private final Queue<IStruct>		mismatches		= new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Run counters
+	 */
+	private final LongAdder				matched			= new LongAdder();
+	private final LongAdder				mismatched		= new LongAdder();
+	private final LongAdder				added			= new LongAdder();
+	private final LongAdder				updated			= new LongAdder();
+
+	/**
+	 * Whether the index changed since it was loaded or saved
+	 */
+	private volatile boolean			dirty			= false;
+
+	/**
+	 * Open a snapshot store, loading its index if it exists
+	 *
+	 * @param directory   The snapshot directory
+	 * @param normalizers The normalizers applied to every body before hashing, in order
+	 * @param headerNames The response headers to snapshot
+	 * @param storeBodies Whether recorded bodies are written to disk so mismatches can be diffed
+	 * @param update      Whether every verification records the actual response instead of comparing
+	 */
+	public SnapshotStore( String directory, List<Normalizer> normalizers, List<String> headerNames, boolean storeBodies, boolean update ) {
+		this.directory		= Path.of( directory ).toAbsolutePath();
+		this.bodies			= this.directory.resolve( "bodies" );
+		this.normalizers	= List.copyOf( normalizers );
+		this.headerNames	= headerNames.stream().map( name -> name.trim().toLowerCase() ).distinct().sorted().toList();
+		this.storeBodies	= storeBodies;
+		this.update			= update;
+		load();
+	}
+
+	/**
+	 * The key of an exchange: the method, the path and the query string if any
+	 *
+	 * @param exchange The exchange
+	 *
+	 * @return The key, e.g. {@code GET /users?id=1}
+	 */
+	public static String keyOf( MockHTTPExchange exchange ) {
+		String	query	= exchange.getRequestQueryString();
+		String	path	= exchange.getRequestPath();
+		return exchange.getRequestMethod().toUpperCase() + " " + ( path.startsWith( "/" ) ? path : "/" + path )
+		    + ( query == null || query.isEmpty() ? "" : "?" + query );
+	}
+
+	/**
+	 * Compare an executed exchange with its snapshot. Unknown keys, and every key in update mode, are recorded instead.
+	 *
+	 * @param exchange The executed exchange
+	 *
+	 * @return A struct with the {@code key} and the {@code result}: match, mismatch, new or updated. Mismatches also carry the
+	 *         {@code reasons}, the {@code actualFile} and, when the recorded body is on disk, the first differing line as {@code diff}.
+	 *         Any other result deletes the {@code actualFile} of an earlier mismatch
+	 */
+	public IStruct verify( MockHTTPExchange exchange ) {
+		String		key			= keyOf( exchange );
+		String		body		= null;
+		long		length;
+		String		hash;
+
+		if ( this.normalizers.isEmpty() && exchange.getResponseMode() == ResponseMode.CHECKSUM ) {
+			length	= exchange.getResponseLength();
+			hash	= exchange.getResponseHash();
+		} else if ( exchange.getResponseMode() == ResponseMode.BUFFER ) {
+			body	= normalize( exchange.getResponseBody() );
+			length	= CountingWriter.utf8Length( body );
+			hash	= CountingWriter.hashOf( body );
+		} else {
+			throw new BoxRuntimeException( "Snapshots of [" + key + "] need the buffer response mode, or the checksum mode without normalizers" );
+		}
+
+		Map<String, String> headers = new TreeMap<>();
+		for ( String name : this.headerNames ) {
+			String value = exchange.getResponseHeader( name );
+			headers.put( name, value == null ? "" : value );
+		}
+
+		Snapshot	actual		= new Snapshot( key, exchange.getResponseStatus(), length, hash, headers );
+		Snapshot	expected	= this.snapshots.get( key );
+
+		if ( expected == null || this.update ) {
+			record( actual, body );
+			deleteBody( bodyFile( key, ".actual" ) );
+			( expected == null ? this.added : this.updated ).increment();
+			return Struct.linkedOf( "key", key, "result", expected == null ? "new" : "updated" );
+		}
+		if ( expected.equals( actual ) ) {
+			this.matched.increment();
+			// The actual body of an earlier mismatch is stale once the response matches again
+			deleteBody( bodyFile( key, ".actual" ) );
+			return Struct.linkedOf( "key", key, "result", "match" );
+		}
+
+		this.mismatched.increment();
+		IStruct report = Struct.linkedOf( "key", key, "result", "mismatch", "reasons", reasons( expected, actual ) );
+		if ( body != null ) {
+			Path actualFile = bodyFile( key, ".actual" );
+			writeBody( actualFile, body );
+			report.put( "actualFile", actualFile.toString() );
+			Path expectedFile = bodyFile( key, ".body" );
+			if ( Files.exists( expectedFile ) ) {
+				report.put( "expectedFile", expectedFile.toString() );
+				report.put( "diff", diff( expectedFile, body ) );
+			}
+		}
+		this.mismatches.add( report );
+		return report;
+	}
+
+	/**
+	 * Write the index if it changed. The index is written to a temporary file first and moved into place.
+	 *
+	 * @return This store for chaining
+	 */
+	public synchronized SnapshotStore save() {
+		if ( !this.dirty ) {
+			return this;
+		}
+		Path	index	= this.directory.resolve( INDEX_FILE );
+		Path	temp	= this.directory.resolve( INDEX_FILE + ".tmp" );
+		try {
+			Files.createDirectories( this.directory );
+			try ( BufferedWriter writer = Files.newBufferedWriter( temp, StandardCharsets.UTF_8 ) ) {
+				writer.write( INDEX_HEADER );
+				writer.write( '\n' );
+				for ( Snapshot snapshot : new TreeMap<>( this.snapshots ).values() ) {
+					writer.write( snapshot.toIndexLine() );
+					writer.write( '\n' );
+				}
+			}
+			Files.move( temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		} catch ( IOException e ) {
+			throw new BoxRuntimeException( "Unable to save the snapshot index [" + index + "]", e );
+		}
+		this.dirty = false;
+		return this;
+	}
+
+	/**
+	 * @return The counts of this run and every mismatch report
+	 */
+	public IStruct getSummary() {
+		return Struct.linkedOf(
+		    "snapshots", this.snapshots.size(),
+		    "matched", this.matched.sum(),
+		    "mismatched", this.mismatched.sum(),
+		    "added", this.added.sum(),
+		    "updated", this.updated.sum(),
+		    "mismatches", Array.fromList( new ArrayList<>( this.mismatches ) )
+		);
+	}
+
+	/**
+	 * @return Whether this run found no mismatch
+	 */
+	public boolean isClean() {
+		return this.mismatched.sum() == 0;
+	}
+
+	/**
+	 * @param key The request key
+	 *
+	 * @return The snapshot of a key, or null if there is none
+	 */
+	public Snapshot get( String key ) {
+		return this.snapshots.get( key );
+	}
+
+	/**
+	 * @return The number of snapshots
+	 */
+	public int size() {
+		return this.snapshots.size();
+	}
+
+	/**
+	 * @return The snapshot directory
+	 */
+	public String getDirectory() {
+		return this.directory.toString();
+	}
+
+	/**
+	 * Apply the normalizers to a body
+	 *
+	 * @param body The body
+	 *
+	 * @return The normalized body
+	 */
+	public String normalize( String body ) {
+		String normalized = body;
+		for ( Normalizer normalizer : this.normalizers ) {
+			normalized = normalizer.apply( normalized );
+		}
+		return normalized;
+	}
+
+	/**
+	 * Load the index, if there is one
+	 */
+	private void load() {
+		Path index = this.directory.resolve( INDEX_FILE );
+		if ( !Files.exists( index ) ) {
+			return;
+		}
+		try ( BufferedReader reader = Files.newBufferedReader( index, StandardCharsets.UTF_8 ) ) {
+			String line;
+			while ( ( line = reader.readLine() ) != null ) {
+				if ( line.isEmpty() || line.startsWith( "#" ) ) {
+					continue;
+				}
+				Snapshot snapshot = Snapshot.fromIndexLine( line );
+				this.snapshots.put( snapshot.key(), snapshot );
+			}
+		} catch ( IOException | RuntimeException e ) {
+			throw new BoxRuntimeException( "Unable to load the snapshot index [" + index + "]", e );
+		}
+	}
+
+	/**
+	 * Record a snapshot, and its body if bodies are stored
+	 *
+	 * @param snapshot The snapshot
+	 * @param body     The normalized body, null if it was not buffered
+	 */
+	private void record( Snapshot snapshot, String body ) {
+		this.snapshots.put( snapshot.key(), snapshot );
+		this.dirty = true;
+		if ( this.storeBodies && body != null ) {
+			writeBody( bodyFile( snapshot.key(), ".body" ), body );
+		}
+	}
+
+	/**
+	 * Describe what differs between two snapshots. A snapshot recorded with other header names than the ones configured now
+	 * reports that as its own reason, since no single header value differs.
+	 *
+	 * @param expected The recorded snapshot
+	 * @param actual   The actual snapshot
+	 *
+	 * @return The reasons
+	 */
+	private static Array reasons( Snapshot expected, Snapshot actual ) {
+		Array reasons = new Array();
+		if ( expected.status() != actual.status() ) {
+			reasons.add( "status " + expected.status() + " != " + actual.status() );
+		}
+		if ( expected.length() != actual.length() ) {
+			reasons.add( "length " + expected.length() + " != " + actual.length() );
+		}
+		if ( !expected.hash().equals( actual.hash() ) ) {
+			reasons.add( "body hash " + expected.hash() + " != " + actual.hash() );
+		}
+		actual.headers().forEach( ( name, value ) -> {
+			String recorded = expected.headers().get( name );
+			if ( recorded != null && !recorded.equals( value ) ) {
+				reasons.add( "header " + name + " [" + recorded + "] != [" + value + "]" );
+			}
+		} );
+		if ( !expected.headers().keySet().equals( actual.headers().keySet() ) ) {
+			reasons.add( "headers recorded " + new TreeSet<>( expected.headers().keySet() ) + " != configured " + new TreeSet<>( actual.headers().keySet() )
+			    + ", record again with update mode" );
+		}
+		return reasons;
+	}
+
+	/**
+	 * Find the first line that differs between a recorded body and the actual one
+	 *
+	 * @param expectedFile The recorded body
+	 * @param actual       The actual normalized body
+	 *
+	 * @return The 1-based line number and both lines, or an empty struct if the lines are equal
+	 */
+	private static IStruct diff( Path expectedFile, String actual ) {
+		try {
+			List<String>	expectedLines	= Files.readAllLines( expectedFile, StandardCharsets.UTF_8 );
+			List<String>	actualLines		= actual.lines().toList();
+			int				max				= Math.max( expectedLines.size(), actualLines.size() );
+			for ( int i = 0; i < max; i++ ) {
+				String	expectedLine	= i < expectedLines.size() ? expectedLines.get( i ) : null;
+				String	actualLine		= i < actualLines.size() ? actualLines.get( i ) : null;
+				if ( expectedLine == null || !expectedLine.equals( actualLine ) ) {
+					return Struct.linkedOf(
+					    "line", i + 1,
+					    "expected", excerpt( expectedLine ),
+					    "actual", excerpt( actualLine )
+					);
+				}
+			}
+			return new Struct();
+		} catch ( IOException e ) {
+			throw new BoxRuntimeException( "Unable to read the recorded body [" + expectedFile + "]", e );
+		}
+	}
+
+	/**
+	 * Shorten a line for a report
+	 *
+	 * @param line The line, null past the end of a body
+	 *
+	 * @return The excerpt
+	 */
+	private static String excerpt( String line ) {
+		if ( line == null ) {
+			return "<end of body>";
+		}
+		return line.length() > MAX_EXCERPT ? line.substring( 0, MAX_EXCERPT ) + "..." : line;
+	}
+
+	/**
+	 * The file a body of a key is written to: a readable slug of the key plus a short hash to keep it unique
+	 *
+	 * @param key       The request key
+	 * @param extension The file extension
+	 *
+	 * @return The file
+	 */
+	private Path bodyFile( String key, String extension ) {
+		String slug = key.replaceAll( "[^A-Za-z0-9._-]+", "_" );
+		if ( slug.length() > 100 ) {
+			slug = slug.substring( 0, 100 );
+		}
+		return this.bodies.resolve( slug + "-" + CountingWriter.hashOf( key ).substring( 0, 8 ) + extension );
+	}
+
+	/**
+	 * Delete a body file, if there is one
+	 *
+	 * @param file The file
+	 */
+	private void deleteBody( Path file ) {
+		try {
+			Files.deleteIfExists( file );
+		} catch ( IOException e ) {
+			throw new BoxRuntimeException( "Unable to delete the snapshot body [" + file + "]", e );
+		}
+	}
+
+	/**
+	 * Write a body file
+	 *
+	 * @param file The file
+	 * @param body The body
+	 */
+	private void writeBody( Path file, String body ) {
+		try {
+			Files.createDirectories( file.getParent() );
+			Files.writeString( file, body, StandardCharsets.UTF_8 );
+		} catch ( IOException e ) {
+			throw new BoxRuntimeException( "Unable to write the snapshot body [" + file + "]", e );
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.stub;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+
+/**
+ * The downstream stub calls made during one mock execution, per stub route.
+ * Collected by the {@link StubServer} and attached to the exchange that triggered them.
+ */
+public class DownstreamCalls {
+
+	/**
+	 * The source of the collector ids
+	 */
+	private static final AtomicLong		IDS		= new AtomicLong();
+
+	/**
+	 * The id of this collector, sent by the calls of its execution in the {@link StubServer#EXECUTION_HEADER} header
+	 */
+	private final String				id		= Long.toString( IDS.incrementAndGet() );
+
+	/**
+	 * Per route name: calls, errors, total nanoseconds, max nanoseconds
+	 */
+	private final Map<String, long[]>	routes	= new LinkedHashMap<>();
+
+	/**
+	 * @return The id of this collector
+	 */
+	public String getId() {
+		return this.id;
+	}
+
+	/**
+	 * Record a call
+	 *
+	 * @param route  The route name
+	 * @param nanos  The call latency in nanoseconds
+	 * @param failed Whether the call failed on purpose
+	 */
+	synchronized void record( String route, long nanos, boolean failed ) {
+		long[] stats = this.routes.computeIfAbsent( route, key -> new long[ 4 ] );
+		stats[ 0 ]++;
+		if ( failed ) {
+			stats[ 1 ]++;
+		}
+		stats[ 2 ]	+= nanos;
+		stats[ 3 ]	= Math.max( stats[ 3 ], nanos );
+	}
+
+	/**
+	 * @return The calls per route name: { calls, errors, totalMs, meanMs, maxMs }
+	 */
+	public synchronized IStruct toStruct() {
+		IStruct result = new Struct( Struct.TYPES.LINKED );
+		this.routes.forEach( ( route, stats ) -> result.put( route, Struct.linkedOf(
+		    "calls", stats[ 0 ],
+		    "errors", stats[ 1 ],
+		    "totalMs", stats[ 2 ] / 1_000_000.0,
+		    "meanMs", stats[ 2 ] / ( double ) stats[ 0 ] / 1_000_000.0,
+		    "maxMs", stats[ 3 ] / 1_000_000.0
+		) ) );
+		return result;
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.stub;
+
+import java.util.random.RandomGenerator;
+
+import ortus.boxlang.runtime.dynamic.casters.DoubleCaster;
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * The latency a stub adds before answering, drawn from a distribution for every call.
+ * <p>
+ * The {@link #percentiles(double, double)} distribution is a log-normal fitted through a median and a 99th percentile, the
+ * usual shape of service latency: most calls are close to the median and a long tail reaches the p99. Moving the p99 of a
+ * stub from 50ms to 2s is how a slow dependency is simulated.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+	/**
+	 * The z-score of the 99th percentile of a standard normal distribution
+	 */
+	double				Z_99	= 2.3263478740408408;
+
+	/**
+	 * No latency
+	 */
+	LatencyDistribution	NONE	= random -> 0;
+
+	/**
+	 * Draw a latency
+	 *
+	 * @param random The random generator of the calling thread
+	 *
+	 * @return The latency in milliseconds, never negative
+	 */
+	double sample( RandomGenerator random );
+
+	/**
+	 * @param millis The latency in milliseconds
+	 *
+	 * @return A distribution that always returns the same latency
+	 */
+	static LatencyDistribution fixed( double millis ) {
+		double value = Math.max( 0, millis );
+		return random -> value;
+	}
+
+	/**
+	 * @param min The minimum latency in milliseconds
+	 * @param max The maximum latency in milliseconds
+	 *
+	 * @return A uniform distribution between min and max
+	 */
+	static LatencyDistribution uniform( double min, double max ) {
+		double	low		= Math.max( 0, Math.min( min, max ) );
+		double	high	= Math.max( low, Math.max( min, max ) );
+		return random -> low + random.nextDouble() * ( high - low );
+	}
+
+	/**
+	 * @param mean   The mean latency in milliseconds
+	 * @param stddev The standard deviation in milliseconds
+	 *
+	 * @return A normal distribution, clamped at 0
+	 */
+	static LatencyDistribution normal( double mean, double stddev ) {
+		return random -> Math.max( 0, mean + random.nextGaussian() * stddev );
+	}
+
+	/**
+	 * @param p50 The median latency in milliseconds
+	 * @param p99 The 99th percentile latency in milliseconds, at least the median
+	 *
+	 * @return A log-normal distribution with the given median and 99th percentile
+	 */
+	static LatencyDistribution percentiles( double p50, double p99 ) {
+		if ( p50 <= 0 ) {
+			throw new BoxRuntimeException( "The p50 latency of a stub must be greater than 0" );
+		}
+		if ( p99 < p50 ) {
+			throw new BoxRuntimeException( "The p99 latency of a stub [" + p99 + "] must be at least its p50 [" + p50 + "]" );
+		}
+		double	mu		= Math.log( p50 );
+		double	sigma	= ( Math.log( p99 ) - mu ) / Z_99;
+		return random -> Math.exp( mu + sigma * random.nextGaussian() );
+	}
+
+	/**
+	 * Build a distribution from a BoxLang value: a number is a fixed latency, a struct is one of
+	 * {@code { p50, p99 }}, {@code { min, max }}, {@code { mean, stddev }} or {@code { fixed }}, all in milliseconds
+	 *
+	 * @param value The value, null for no latency
+	 *
+	 * @return The distribution
+	 */
+	static LatencyDistribution of( Object value ) {
+		if ( value == null ) {
+			return NONE;
+		}
+		if ( value instanceof LatencyDistribution distribution ) {
+			return distribution;
+		}
+		if ( ! ( value instanceof IStruct struct ) ) {
+			return fixed( DoubleCaster.cast( value ) );
+		}
+		if ( struct.containsKey( Key.of( "p50" ) ) && struct.containsKey( Key.of( "p99" ) ) ) {
+			return percentiles( number( struct, "p50" ), number( struct, "p99" ) );
+		}
+		if ( struct.containsKey( Key.of( "min" ) ) && struct.containsKey( Key.of( "max" ) ) ) {
+			return uniform( number( struct, "min" ), number( struct, "max" ) );
+		}
+		if ( struct.containsKey( Key.of( "mean" ) ) ) {
+			return normal( number( struct, "mean" ), struct.containsKey( Key.of( "stddev" ) ) ? number( struct, "stddev" ) : 0 );
+		}
+		if ( struct.containsKey( Key.of( "fixed" ) ) ) {
+			return fixed( number( struct, "fixed" ) );
+		}
+		throw new BoxRuntimeException( "A stub latency must be a number of milliseconds or a struct of { p50, p99 }, { min, max }, { mean, stddev } or { fixed }" );
+	}
+
+	/**
+	 * @param struct The struct
+	 * @param name   The key
+	 *
+	 * @return The value of the key as a double
+	 */
+	private static double number( IStruct struct, String name ) {
+		return DoubleCaster.cast( struct.get( Key.of( name ) ) );
+	}
+}
@@ -0,0 +1,422 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.stub;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * Canned responses for the routes of the webroot under test: a mock execution, a forward or an include whose path matches a
+ * stub is answered with the stub response, after the stub latency, instead of running its template. Stubs are
+ * {@link StubRoute}s, so they share their configuration and stats with the downstream stubs of a {@link StubServer};
+ * the bandwidth of a route is not applied here, use a slow client instead.
+ * <p>
+ * A pattern is a path whose segments are either literal, a parameter ({@code :id} or {@code {id}}) capturing one segment, a
+ * {@code *} matching one segment, or a trailing {@code *} matching the rest of the path, possibly empty. The method
+ * {@code *} matches any method. Patterns are compiled into a trie of segments when they are added, and a path is matched by
+ * walking the trie one segment at a time: a literal child first, then a parameter, then the rest of the path, and an exact
+ * method before {@code *}. When a branch has no route for the rest of the path or the method, the walk backtracks to the
+ * next branch, so {@code /users/me/posts} still reaches {@code /users/:id/posts} next to {@code /users/me/settings}.
+ * <p>
+ * The cost of a match does not depend on the number of stubs, so stubs generated for a whole API stay cheap. Without
+ * overlapping patterns it is one pass over the segments of the path. Every segment where a literal and a parameter
+ * branch both lead somewhere can double the walk, so k such segments cost up to 2^k passes in the worst case. Paths are
+ * matched without their query string and trailing slash.
+ * <p>
+ * The module keeps a global registry, loaded from the {@code routeStubs} setting, that every exchange looks up after its
+ * own one.
+ */
+public class RouteStubRegistry {
+
+	/**
+	 * The registry every exchange falls back to
+	 */
+	private static final RouteStubRegistry	GLOBAL		= new RouteStubRegistry();
+
+	/**
+	 * The root of the trie, matching the path {@code /}
+	 */
+	private final Node						root		= new Node();
+
+	/**
+	 * The routes, by method and trie position
+	 */
+	private final Map<String, StubRoute>	routes		= new ConcurrentHashMap<>();
+
+	/**
+	 * The most parameters a pattern captures
+	 */
+	private volatile int					maxParams	= 0;
+
+	/**
+	 * A match: the route answering a path and the parameters it captured
+	 *
+	 * @param route  The route
+	 * @param params The captured segments by parameter name, in path order
+	 */
+	public record Match( StubRoute route, Map<String, String> params ) {
+
+		/**
+		 * Record an answered call in the route stats
+		 *
+		 * @param nanos  The time from the match to the end of the response
+		 * @param failed Whether the call failed on purpose
+		 */
+		public void record( long nanos, boolean failed ) {
+			this.route.record( nanos, failed );
+		}
+	}
+
+	/**
+	 * A route and the names of the parameters its pattern captures, null for a {@code *}
+	 */
+	private record Entry( StubRoute route, String[] params ) {
+	}
+
+	/**
+	 * A trie node: one segment of the patterns going through it
+	 */
+	private static final class Node {
+
+		/**
+		 * The children matching a literal segment
+		 */
+		private final Map<String, Node>		literals	= new ConcurrentHashMap<>();
+
+		/**
+		 * The child matching any segment, shared by the parameters and {@code *} at this depth
+		 */
+		private volatile Node				param		= null;
+
+		/**
+		 * The routes whose pattern ends here, by method
+		 */
+		private final Map<String, Entry>	entries		= new ConcurrentHashMap<>();
+
+		/**
+		 * The routes whose pattern ends here with a trailing {@code *}, by method
+		 */
+		private final Map<String, Entry>	tails		= new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * @return The registry of the module, looked up by every exchange
+	 */
+	public static RouteStubRegistry global() {
+		return GLOBAL;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Routes
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Add a route from a BoxLang struct, see {@link StubRoute#fromStruct(IStruct)}
+	 *
+	 * @param config The route configuration
+	 *
+	 * @return The added route, to tune it or read its stats
+	 */
+	public StubRoute stub( IStruct config ) {
+		return addRoute( StubRoute.fromStruct( config ) );
+	}
+
+	/**
+	 * Add a route, replacing the one with the same method and pattern, parameter names aside
+	 *
+	 * @param route The route
+	 *
+	 * @return The added route
+	 */
+	public synchronized StubRoute addRoute( StubRoute route ) {
+		String[]		segments	= segments( route.getPattern() );
+		boolean			tail		= segments.length > 0 && segments[ segments.length - 1 ].equals( "*" );
+		List<String>	params		= new ArrayList<>();
+		Node			node		= walk( segments, tail ? segments.length - 1 : segments.length, params, true );
+		( tail ? node.tails : node.entries ).put( route.getMethod(), new Entry( route, params.toArray( String[]::new ) ) );
+		this.routes.put( key( route.getMethod(), segments ), route );
+		this.maxParams = Math.max( this.maxParams, params.size() );
+		return route;
+	}
+
+	/**
+	 * Remove a route
+	 *
+	 * @param method  The method of the route, {@code *} for any
+	 * @param pattern The pattern of the route, parameter names aside
+	 *
+	 * @return The removed route, or null if there was none
+	 */
+	public synchronized StubRoute removeRoute( String method, String pattern ) {
+		StubRoute	route		= new StubRoute( method, pattern );
+		String[]	segments	= segments( route.getPattern() );
+		if ( this.routes.remove( key( route.getMethod(), segments ) ) == null ) {
+			return null;
+		}
+		boolean	tail	= segments.length > 0 && segments[ segments.length - 1 ].equals( "*" );
+		Node	node	= walk( segments, tail ? segments.length - 1 : segments.length, new ArrayList<>(), false );
+		return ( tail ? node.tails : node.entries ).remove( route.getMethod() ).route();
+	}
+
+	/**
+	 * Find a route by name
+	 *
+	 * @param routeName The route name
+	 *
+	 * @return The route, or null if there is none
+	 */
+	public StubRoute getRoute( String routeName ) {
+		return this.routes.values().stream().filter( route -> route.getName().equals( routeName ) ).findFirst().orElse( null );
+	}
+
+	/**
+	 * Remove every route
+	 *
+	 * @return This registry for chaining
+	 */
+	public synchronized RouteStubRegistry clearRoutes() {
+		this.routes.clear();
+		this.root.literals.clear();
+		this.root.param = null;
+		this.root.entries.clear();
+		this.root.tails.clear();
+		this.maxParams = 0;
+		return this;
+	}
+
+	/**
+	 * @return The number of routes
+	 */
+	public int size() {
+		return this.routes.size();
+	}
+
+	/**
+	 * @return True if there are no routes
+	 */
+	public boolean isEmpty() {
+		return this.routes.isEmpty();
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Matching
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Find the route answering a call
+	 *
+	 * @param method The call method
+	 * @param path   The call path, a query string is ignored
+	 *
+	 * @return The match, or null if no route answers the call
+	 */
+	public Match match( String method, String path ) {
+		if ( this.routes.isEmpty() ) {
+			return null;
+		}
+		String	target	= normalize( path );
+		int[]	bounds	= new int[ 2 * this.maxParams ];
+		Entry	entry	= find( this.root, target, 0, method == null ? "GET" : method.toUpperCase(), bounds, 0 );
+		if ( entry == null ) {
+			return null;
+		}
+		if ( entry.params().length == 0 ) {
+			return new Match( entry.route(), Collections.emptyMap() );
+		}
+		Map<String, String> params = new LinkedHashMap<>();
+		for ( int i = 0; i < entry.params().length; i++ ) {
+			if ( entry.params()[ i ] != null ) {
+				params.put( entry.params()[ i ], target.substring( bounds[ 2 * i ], bounds[ 2 * i + 1 ] ) );
+			}
+		}
+		return new Match( entry.route(), params );
+	}
+
+	/**
+	 * Walk the trie from a node to the route answering the rest of a path, backtracking to the parameter branch, then to
+	 * the rest of the path, when the literal branch has no route for the rest of the path or the method. Segments are
+	 * captured by position, so the bounds written by an abandoned branch are overwritten by the one that matches.
+	 *
+	 * @param node   The node matching the path so far
+	 * @param path   The normalized path
+	 * @param pos    The position of the slash before the next segment, the path length once every segment is matched
+	 * @param method The call method, upper case
+	 * @param bounds The start and end of the segments captured on the way down
+	 * @param depth  The number of segments captured so far
+	 *
+	 * @return The route and its parameter names, or null if there is none
+	 */
+	private static Entry find( Node node, String path, int pos, String method, int[] bounds, int depth ) {
+		if ( pos >= path.length() ) {
+			Entry entry = lookup( node.entries, method );
+			return entry != null ? entry : lookup( node.tails, method );
+		}
+		int	start	= pos + 1;
+		int	end		= path.indexOf( '/', start );
+		end = end < 0 ? path.length() : end;
+
+		Node literal = node.literals.isEmpty() ? null : node.literals.get( path.substring( start, end ) );
+		if ( literal != null ) {
+			Entry entry = find( literal, path, end, method, bounds, depth );
+			if ( entry != null ) {
+				return entry;
+			}
+		}
+		Node param = node.param;
+		// A route added while matching may capture more than the bounds hold, it is matched from the next call on
+		if ( param != null && 2 * depth < bounds.length ) {
+			bounds[ 2 * depth ]		= start;
+			bounds[ 2 * depth + 1 ]	= end;
+			Entry entry = find( param, path, end, method, bounds, depth + 1 );
+			if ( entry != null ) {
+				return entry;
+			}
+		}
+		return lookup( node.tails, method );
+	}
+
+	/**
+	 * Get the route of a method, or the one of any method
+	 *
+	 * @param entries The routes by method
+	 * @param method  The method, upper case
+	 *
+	 * @return The route, or null if there is none
+	 */
+	private static Entry lookup( Map<String, Entry> entries, String method ) {
+		if ( entries.isEmpty() ) {
+			return null;
+		}
+		Entry entry = entries.get( method );
+		return entry != null ? entry : entries.get( "*" );
+	}
+
+	/**
+	 * Walk the trie along the segments of a pattern
+	 *
+	 * @param segments The pattern segments
+	 * @param count    The number of segments to walk
+	 * @param params   Collects the parameter names on the way, null for a {@code *}
+	 * @param create   Whether to create the missing nodes
+	 *
+	 * @return The node of the last segment, or null if it is missing
+	 */
+	private Node walk( String[] segments, int count, List<String> params, boolean create ) {
+		Node node = this.root;
+		for ( int i = 0; i < count && node != null; i++ ) {
+			String segment = segments[ i ];
+			if ( segment.equals( "*" ) || segment.startsWith( ":" ) || ( segment.startsWith( "{" ) && segment.endsWith( "}" ) ) ) {
+				params.add( segment.equals( "*" ) ? null : segment.substring( 1, segment.length() - ( segment.startsWith( ":" ) ? 0 : 1 ) ) );
+				if ( node.param == null && create ) {
+					node.param = new Node();
+				}
+				node = node.param;
+			} else if ( segment.contains( "*" ) ) {
+				throw new BoxRuntimeException( "A route stub pattern can only use [*] as a whole segment, found [" + segment + "]" );
+			} else {
+				node = create ? node.literals.computeIfAbsent( segment, key -> new Node() ) : node.literals.get( segment );
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Get the key of a route: its method and its trie position, every parameter and inner {@code *} written as {@code {}}
+	 *
+	 * @param method   The route method
+	 * @param segments The pattern segments
+	 *
+	 * @return The key
+	 */
+	private static String key( String method, String[] segments ) {
+		StringBuilder key = new StringBuilder( method ).append( ' ' );
+		for ( int i = 0; i < segments.length; i++ ) {
+			String	segment	= segments[ i ];
+			boolean	param	= segment.startsWith( ":" ) || ( segment.startsWith( "{" ) && segment.endsWith( "}" ) )
+			    || ( segment.equals( "*" ) && i < segments.length - 1 );
+			key.append( '/' ).append( param ? "{}" : segment );
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Split a pattern in segments
+	 *
+	 * @param pattern The pattern
+	 *
+	 * @return The segments, none for {@code /}
+	 */
+	private static String[] segments( String pattern ) {
+		String path = normalize( pattern );
+		return path.isEmpty() ? new String[ 0 ] : path.substring( 1 ).split( "/", -1 );
+	}
+
+	/**
+	 * Drop the query string and the trailing slash of a path, and make it start with a slash
+	 *
+	 * @param path The path
+	 *
+	 * @return The normalized path, empty for {@code /}
+	 */
+	private static String normalize( String path ) {
+		String	target	= path == null ? "" : path;
+		int		query	= target.indexOf( '?' );
+		target = query < 0 ? target : target.substring( 0, query );
+		if ( target.endsWith( "/" ) ) {
+			target = target.substring( 0, target.length() - 1 );
+		}
+		return target.isEmpty() || target.startsWith( "/" ) ? target : "/" + target;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Stats
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * @return The stats of every route, by name
+	 */
+	public IStruct getStats() {
+		IStruct routeStats = new Struct( Struct.TYPES.LINKED );
+		this.routes.values().forEach( route -> routeStats.put( route.getName(), route.getStats() ) );
+		return routeStats;
+	}
+
+	/**
+	 * Clear the stats of every route
+	 *
+	 * @return This registry for chaining
+	 */
+	public RouteStubRegistry reset() {
+		this.routes.values().forEach( StubRoute::reset );
+		return this;
+	}
+}
@@ -0,0 +1,173 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.stub;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.http.HttpRequest;
+import java.util.Map;
+
+import ortus.boxlang.runtime.context.IBoxContext;
+import ortus.boxlang.runtime.dynamic.IReferenceable;
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.web.context.WebRequestBoxContext;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+
+/**
+ * The interceptor the module registers on the request interception point of the http component, so every downstream call
+ * made by a mock execution carries the id of that execution in the {@link StubServer#EXECUTION_HEADER} header.
+ * <p>
+ * The execution is found from the context of the announcement: its web request context leads to the exchange, whatever
+ * thread the template spawned the call from. The header is added to the request of the announcement when it can still take
+ * headers, either a {@link HttpRequest.Builder} or a fluent request with a {@code header( name, value )} method. Calls
+ * without the header fall back to the attribution of {@link StubServer}.
+ * <p>
+ * The announcement is answered through {@link IReferenceable}, the way the runtime invokes a point on dynamic objects, so
+ * the listener receives the context along with the data.
+ */
+public class StubCorrelator implements IReferenceable {
+
+	/**
+	 * The interception point of the http component announced before a call is sent
+	 */
+	public static final Key		POINT			= Key.of( "onHTTPRequest" );
+
+	/**
+	 * The announcement data keys that may hold the request, in order
+	 */
+	private static final Key[]	REQUEST_KEYS	= new Key[] { Key.of( "requestBuilder" ), Key.of( "httpRequest" ) };
+
+	/**
+	 * The name of the data argument of an announcement
+	 */
+	private static final Key	DATA			= Key.of( "data" );
+
+	/**
+	 * Tag the request of an announcement with the execution running in a context
+	 *
+	 * @param context The context of the announcement, may be null
+	 * @param data    The announcement data
+	 *
+	 * @return True if the request was tagged
+	 */
+	public static boolean correlate( IBoxContext context, IStruct data ) {
+		DownstreamCalls calls = callsOf( context );
+		return calls != null && tag( data, calls );
+	}
+
+	/**
+	 * Add the execution header of a call collector to the request of an announcement
+	 *
+	 * @param data  The announcement data
+	 * @param calls The call collector of the execution
+	 *
+	 * @return True if a request that takes headers was found and tagged
+	 */
+	static boolean tag( IStruct data, DownstreamCalls calls ) {
+		for ( Key key : REQUEST_KEYS ) {
+			if ( addHeader( data.get( key ), StubServer.EXECUTION_HEADER, calls.getId() ) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The call collector of the mock execution a context runs in
+	 *
+	 * @param context The context, may be null
+	 *
+	 * @return The collector, or null outside of a tracked mock execution
+	 */
+	private static DownstreamCalls callsOf( IBoxContext context ) {
+		WebRequestBoxContext webContext = context == null ? null : context.getParentOfType( WebRequestBoxContext.class );
+		if ( webContext != null && webContext.getHTTPExchange() instanceof MockHTTPExchange exchange ) {
+			return exchange.getActiveDownstreamCalls();
+		}
+		return null;
+	}
+
+	/**
+	 * Add a header to a request that still takes headers
+	 *
+	 * @param request The request, may be null
+	 * @param name    The header name
+	 * @param value   The header value
+	 *
+	 * @return True if the header was added
+	 *
+	 * @throws BoxRuntimeException If the request refused the header
+	 */
+	private static boolean addHeader( Object request, String name, String value ) {
+		if ( request instanceof HttpRequest.Builder builder ) {
+			builder.setHeader( name, value );
+			return true;
+		}
+		if ( request == null || request instanceof HttpRequest ) {
+			return false;
+		}
+		Method header;
+		try {
+			header = request.getClass().getMethod( "header", String.class, String.class );
+		} catch ( NoSuchMethodException e ) {
+			return false;
+		}
+		try {
+			header.invoke( request, name, value );
+			return true;
+		} catch ( IllegalAccessException e ) {
+			return false;
+		} catch ( InvocationTargetException e ) {
+			throw new BoxRuntimeException( "Unable to add the [" + name + "] header to the downstream call", e.getCause() );
+		}
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * IReferenceable, the interception point
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	@Override
+	public Object dereference( IBoxContext context, Key name, Boolean safe ) {
+		return null;
+	}
+
+	@Override
+	public Object dereferenceAndInvoke( IBoxContext context, Key name, Object[] positionalArguments, Boolean safe ) {
+		if ( POINT.equals( name ) && positionalArguments.length > 0 && positionalArguments[ 0 ] instanceof IStruct data ) {
+			correlate( context, data );
+		}
+		return null;
+	}
+
+	@Override
+	public Object dereferenceAndInvoke( IBoxContext context, Key name, Map<Key, Object> namedArguments, Boolean safe ) {
+		if ( POINT.equals( name ) && namedArguments.get( DATA ) instanceof IStruct data ) {
+			correlate( context, data );
+		}
+		return null;
+	}
+
+	@Override
+	public Object assign( IBoxContext context, Key name, Object value ) {
+		return value;
+	}
+}
@@ -0,0 +1,418 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.stub;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import ortus.boxlang.runtime.dynamic.casters.DoubleCaster;
+import ortus.boxlang.runtime.dynamic.casters.IntegerCaster;
+import ortus.boxlang.runtime.dynamic.casters.LongCaster;
+import ortus.boxlang.runtime.dynamic.casters.StringCaster;
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.websupport.load.ArrivalRateScheduler;
+
+/**
+ * A canned downstream response: what a {@link StubServer} answers to the calls matching a method and a path, after how long,
+ * how often it fails and how fast the body is sent.
+ * <p>
+ * The path is matched exactly, or as a prefix when it ends with {@code *}. The method {@code *} matches any method. Every
+ * route keeps its own call count, failure count and latency histogram, measured from the arrival of the call to the last
+ * byte of the response.
+ */
+public class StubRoute {
+
+	/**
+	 * The method matched, upper case, {@code *} for any
+	 */
+	private final String				method;
+
+	/**
+	 * The path matched, without the trailing {@code *} of a prefix
+	 */
+	private final String				path;
+
+	/**
+	 * Whether the path is a prefix
+	 */
+	private final boolean				prefix;
+
+	/**
+	 * The name the route is reported under
+	 */
+	private String						name;
+
+	/**
+	 * The response status
+	 */
+	private int							status		= 200;
+
+	/**
+	 * The response body
+	 */
+	private byte[]						body		= new byte[ 0 ];
+
+	/**
+	 * The response headers
+	 */
+	private final Map<String, String>	headers		= new LinkedHashMap<>();
+
+	/**
+	 * The latency added before answering
+	 */
+	private LatencyDistribution			latency		= LatencyDistribution.NONE;
+
+	/**
+	 * The probability, between 0 and 1, that a call fails
+	 */
+	private double						errorRate	= 0;
+
+	/**
+	 * The status of a failed call
+	 */
+	private int							errorStatus	= 503;
+
+	/**
+	 * The maximum body transfer rate in bytes per second, 0 for unlimited
+	 */
+	private long						bandwidth	= 0;
+
+	/**
+	 * The number of calls answered
+	 */
+	private final LongAdder				calls		= new LongAdder();
+
+	/**
+	 * The number of calls failed on purpose
+	 */
+	private final LongAdder				errors		= new LongAdder();
+
+	/**
+	 * The call latencies, in nanoseconds
+	 */
+	private final Recorder				recorder	= new Recorder( 3 );
+
+	/**
+	 * The call latencies collected from the recorder so far, in nanoseconds
+	 */
+	private final Histogram				latencies	= new Histogram( 3 );
+
+	/**
+	 * Create a new route
+	 *
+	 * @param method The method matched, {@code *} for any
+	 * @param path   The path matched, a prefix when it ends with {@code *}
+	 */
+	public StubRoute( String method, String path ) {
+		String trimmed = path == null || path.isBlank() ? "/" : path.trim();
+		if ( !trimmed.startsWith( "/" ) && !trimmed.equals( "*" ) ) {
+			trimmed = "/" + trimmed;
+		}
+		this.method	= method == null || method.isBlank() ? "*" : method.trim().toUpperCase();
+		this.prefix	= trimmed.endsWith( "*" );
+		this.path	= this.prefix ? trimmed.substring( 0, trimmed.length() - 1 ) : trimmed;
+		this.name	= this.method + " " + trimmed;
+	}
+
+	/**
+	 * Create a route from a BoxLang struct of { method, path, name, status, body, headers, contentType, latency, errorRate,
+	 * errorStatus, bandwidth }
+	 *
+	 * @param config The route configuration, {@code path} is required
+	 *
+	 * @return The route
+	 */
+	public static StubRoute fromStruct( IStruct config ) {
+		if ( !config.containsKey( Key.of( "path" ) ) ) {
+			throw new BoxRuntimeException( "A downstream stub needs a [path]" );
+		}
+		StubRoute route = new StubRoute(
+		    config.containsKey( Key.of( "method" ) ) ? StringCaster.cast( config.get( Key.of( "method" ) ) ) : "*",
+		    StringCaster.cast( config.get( Key.of( "path" ) ) )
+		);
+		if ( config.get( Key.of( "name" ) ) != null ) {
+			route.setName( StringCaster.cast( config.get( Key.of( "name" ) ) ) );
+		}
+		if ( config.get( Key.of( "status" ) ) != null ) {
+			route.setStatus( IntegerCaster.cast( config.get( Key.of( "status" ) ) ) );
+		}
+		if ( config.get( Key.of( "body" ) ) != null ) {
+			route.setBody( config.get( Key.of( "body" ) ) );
+		}
+		if ( config.get( Key.of( "headers" ) ) instanceof IStruct headers ) {
+			headers.forEach( ( header, value ) -> route.addHeader( header.getName(), StringCaster.cast( value ) ) );
+		}
+		if ( config.get( Key.of( "contentType" ) ) != null ) {
+			route.setContentType( StringCaster.cast( config.get( Key.of( "contentType" ) ) ) );
+		}
+		route.setLatency( LatencyDistribution.of( config.get( Key.of( "latency" ) ) ) );
+		if ( config.get( Key.of( "errorRate" ) ) != null ) {
+			route.setErrorRate( DoubleCaster.cast( config.get( Key.of( "errorRate" ) ) ) );
+		}
+		if ( config.get( Key.of( "errorStatus" ) ) != null ) {
+			route.setErrorStatus( IntegerCaster.cast( config.get( Key.of( "errorStatus" ) ) ) );
+		}
+		if ( config.get( Key.of( "bandwidth" ) ) != null ) {
+			route.setBandwidth( LongCaster.cast( config.get( Key.of( "bandwidth" ) ) ) );
+		}
+		return route;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Fluent setters
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * @param name The name the route is reported under, defaults to the method and path
+	 *
+	 * @return This route for chaining
+	 */
+	public StubRoute setName( String name ) {
+		this.name = name;
+		return this;
+	}
+
+	/**
+	 * @param status The response status
+	 *
+	 * @return This route for chaining
+	 */
+	public StubRoute setStatus( int status ) {
+		this.status = status;
+		return this;
+	}
+
+	/**
+	 * @param body The response body: a string, sent as UTF-8, or a byte array
+	 *
+	 * @return This route for chaining
+	 */
+	public StubRoute setBody( Object body ) {
+		this.body = body instanceof byte[] bytes ? bytes : StringCaster.cast( body ).getBytes( StandardCharsets.UTF_8 );
+		return this;
+	}
+
+	/**
+	 * @param name  The header name
+	 * @param value The header value
+	 *
+	 * @return This route for chaining
+	 */
+	public StubRoute addHeader( String name, String value ) {
+		this.headers.put( name, value );
+		return this;
+	}
+
+	/**
+	 * @param contentType The response content type
+	 *
+	 * @return This route for chaining
+	 */
+	public StubRoute setContentType( String contentType ) {
+		return addHeader( "Content-Type", contentType );
+	}
+
+	/**
+	 * @param latency The latency added before answering
+	 *
+	 * @return This route for chaining
+	 */
+	public StubRoute setLatency( LatencyDistribution latency ) {
+		this.latency = latency == null ? LatencyDistribution.NONE : latency;
+		return this;
+	}
+
+	/**
+	 * @param errorRate The probability, between 0 and 1, that a call fails with the error status
+	 *
+	 * @return This route for chaining
+	 */
+	public StubRoute setErrorRate( double errorRate ) {
+		this.errorRate = Math.min( 1, Math.max( 0, errorRate ) );
+		return this;
+	}
+
+	/**
+	 * @param errorStatus The status of a failed call
+	 *
+	 * @return This route for chaining
+	 */
+	public StubRoute setErrorStatus( int errorStatus ) {
+		this.errorStatus = errorStatus;
+		return this;
+	}
+
+	/**
+	 * @param bandwidth The maximum body transfer rate in bytes per second, 0 for unlimited
+	 *
+	 * @return This route for chaining
+	 */
+	public StubRoute setBandwidth( long bandwidth ) {
+		this.bandwidth = Math.max( 0, bandwidth );
+		return this;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Matching and stats
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Whether the route answers a call
+	 *
+	 * @param requestMethod The call method
+	 * @param requestPath   The call path, without the query string
+	 *
+	 * @return True if the route matches
+	 */
+	public boolean matches( String requestMethod, String requestPath ) {
+		if ( !this.method.equals( "*" ) && !this.method.equalsIgnoreCase( requestMethod ) ) {
+			return false;
+		}
+		if ( this.path.equals( "*" ) ) {
+			return true;
+		}
+		return this.prefix ? requestPath.startsWith( this.path ) : requestPath.equals( this.path );
+	}
+
+	/**
+	 * Record an answered call
+	 *
+	 * @param nanos  The time from the arrival of the call to the last byte of the response
+	 * @param failed Whether the call failed on purpose
+	 */
+	void record( long nanos, boolean failed ) {
+		this.calls.increment();
+		if ( failed ) {
+			this.errors.increment();
+		}
+		this.recorder.recordValue( Math.max( 0, nanos ) );
+	}
+
+	/**
+	 * Get the stats of the calls answered since the route was created or {@link #reset()}
+	 *
+	 * @return The calls, errors and latency percentiles in ms
+	 */
+	public synchronized IStruct getStats() {
+		this.latencies.add( this.recorder.getIntervalHistogram() );
+		return Struct.linkedOf(
+		    "name", this.name,
+		    "calls", this.calls.sum(),
+		    "errors", this.errors.sum(),
+		    "latency", ArrivalRateScheduler.toStruct( this.latencies )
+		);
+	}
+
+	/**
+	 * Clear the stats
+	 */
+	public synchronized void reset() {
+		this.calls.reset();
+		this.errors.reset();
+		this.recorder.reset();
+		this.latencies.reset();
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Getters
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * @return The method matched, upper case, {@code *} for any
+	 */
+	public String getMethod() {
+		return this.method;
+	}
+
+	/**
+	 * @return The path matched, with the trailing {@code *} of a prefix
+	 */
+	public String getPattern() {
+		return this.prefix ? this.path + "*" : this.path;
+	}
+
+	/**
+	 * @return The name the route is reported under
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * @return The response status
+	 */
+	public int getStatus() {
+		return this.status;
+	}
+
+	/**
+	 * @return The response body
+	 */
+	public byte[] getBody() {
+		return this.body;
+	}
+
+	/**
+	 * @return The response headers
+	 */
+	public Map<String, String> getHeaders() {
+		return this.headers;
+	}
+
+	/**
+	 * @return The latency added before answering
+	 */
+	public LatencyDistribution getLatency() {
+		return this.latency;
+	}
+
+	/**
+	 * @return The probability that a call fails
+	 */
+	public double getErrorRate() {
+		return this.errorRate;
+	}
+
+	/**
+	 * @return The status of a failed call
+	 */
+	public int getErrorStatus() {
+		return this.errorStatus;
+	}
+
+	/**
+	 * @return The maximum body transfer rate in bytes per second, 0 for unlimited
+	 */
+	public long getBandwidth() {
+		return this.bandwidth;
+	}
+}
@@ -0,0 +1,483 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.stub;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ortus.boxlang.runtime.events.InterceptorPool;
+import ortus.boxlang.runtime.interop.DynamicObject;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+/**
+ * A loopback HTTP server answering the downstream calls of the application under test with canned responses.
+ * <p>
+ * The server binds to the loopback address only and serves every call on its own virtual thread, so slow stubs never
+ * starve each other. Each call is matched against the {@link StubRoute}s in the order they were added, waits for the
+ * latency drawn from the route distribution, optionally fails with the route error status, then sends the body at the
+ * route bandwidth. Calls no route matches are answered with a 404 and counted as unmatched.
+ * <p>
+ * Running servers are registered by name so the module BIFs can find them. While a server is running, every
+ * {@code MockHTTPExchange} execution collects the stub calls it triggers. The {@link StubCorrelator} tags the calls of the
+ * http component with the id of their execution in the {@link #EXECUTION_HEADER} header, so they are attributed exactly
+ * even when many executions run at once. A call without the header, e.g. from another HTTP client, is attributed to the
+ * execution running when it arrives; when several executions run at once the caller cannot be told apart, so the call is
+ * only counted in the route stats and as unattributed. Calls without the header are also counted as untagged, so calls
+ * the correlator could not tag show up in the stats.
+ */
+public class StubServer {
+
+	/**
+	 * The request header carrying the id of the mock execution that made a call, see {@link DownstreamCalls#getId()}
+	 */
+	public static final String							EXECUTION_HEADER	= "X-BoxLang-Mock-Execution";
+
+	/**
+	 * The running servers, by name
+	 */
+	private static final Map<String, StubServer>		SERVERS				= new ConcurrentHashMap<>();
+
+	/**
+	 * The call collectors of the mock executions running right now, by id
+	 */
+	private static final Map<String, DownstreamCalls>	ACTIVE				= new ConcurrentHashMap<>();
+
+	/**
+	 * The listener tagging the calls of the http component, the same instance so it can be unregistered
+	 */
+	private static final DynamicObject					CORRELATOR			= DynamicObject.of( new StubCorrelator() );
+
+	/**
+	 * The bandwidth limited bodies are sent in slices of this many milliseconds of transfer
+	 */
+	private static final int							SLICE_MILLIS		= 50;
+
+	/**
+	 * The server name
+	 */
+	private final String								name;
+
+	/**
+	 * The HTTP server
+	 */
+	private final HttpServer							server;
+
+	/**
+	 * The virtual thread executor serving the calls
+	 */
+	private final ExecutorService						executor;
+
+	/**
+	 * The routes, matched in order
+	 */
+	private final List<StubRoute>						routes				= new CopyOnWriteArrayList<>();
+
+	/**
+	 * The calls no route matched
+	 */
+	private final LongAdder								unmatched			= new LongAdder();
+
+	/**
+	 * The calls that could not be attributed to a single mock execution
+	 */
+	private final LongAdder								unattributed		= new LongAdder();
+
+	/**
+	 * The matched calls that arrived without the execution header, attributed by the single running execution rule
+	 */
+	private final LongAdder								untagged			= new LongAdder();
+
+	/**
+	 * Create and start a server
+	 *
+	 * @param name The server name
+	 * @param port The port to listen on, 0 for a free port
+	 */
+	private StubServer( String name, int port ) {
+		this.name = name;
+		try {
+			this.server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), port ), 0 );
+		} catch ( IOException e ) {
+			throw new BoxRuntimeException( "Unable to start the downstream stub server [" + name + "] on port [" + port + "]", e );
+		}
+		this.executor = Executors.newVirtualThreadPerTaskExecutor();
+		this.server.setExecutor( this.executor );
+		this.server.createContext( "/", this::handle );
+		this.server.start();
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Registry
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Start a named server
+	 *
+	 * @param name The server name
+	 * @param port The port to listen on, 0 for a free port
+	 *
+	 * @return The started server
+	 */
+	public static StubServer start( String name, int port ) {
+		return SERVERS.compute( name, ( key, existing ) -> {
+			if ( existing != null ) {
+				throw new BoxRuntimeException( "The downstream stub server [" + name + "] is already running on port [" + existing.getPort() + "]" );
+			}
+			return new StubServer( name, port );
+		} );
+	}
+
+	/**
+	 * @param name The server name
+	 *
+	 * @return The running server, or null if there is none with that name
+	 */
+	public static StubServer get( String name ) {
+		return SERVERS.get( name );
+	}
+
+	/**
+	 * Stop a named server
+	 *
+	 * @param name The server name
+	 *
+	 * @return True if a server was running under that name
+	 */
+	public static boolean stop( String name ) {
+		StubServer server = SERVERS.remove( name );
+		if ( server == null ) {
+			return false;
+		}
+		server.shutdown();
+		return true;
+	}
+
+	/**
+	 * Stop every running server
+	 */
+	public static void stopAll() {
+		List.copyOf( SERVERS.keySet() ).forEach( StubServer::stop );
+	}
+
+	/**
+	 * Start collecting the stub calls of a mock execution on the current thread
+	 *
+	 * @return The collector, or null if no server is running
+	 */
+	public static DownstreamCalls track() {
+		if ( SERVERS.isEmpty() ) {
+			return null;
+		}
+		DownstreamCalls calls = new DownstreamCalls();
+		ACTIVE.put( calls.getId(), calls );
+		return calls;
+	}
+
+	/**
+	 * Stop collecting the stub calls of a mock execution
+	 *
+	 * @param calls The collector returned by {@link #track()}, may be null
+	 */
+	public static void untrack( DownstreamCalls calls ) {
+		if ( calls != null ) {
+			ACTIVE.remove( calls.getId() );
+		}
+	}
+
+	/**
+	 * Register the {@link StubCorrelator} on the request interception point of the http component
+	 *
+	 * @param pool The interceptor pool of the runtime
+	 */
+	public static void correlate( InterceptorPool pool ) {
+		pool.register( CORRELATOR, StubCorrelator.POINT );
+	}
+
+	/**
+	 * Unregister the {@link StubCorrelator}
+	 *
+	 * @param pool The interceptor pool of the runtime
+	 */
+	public static void uncorrelate( InterceptorPool pool ) {
+		pool.unregister( CORRELATOR, StubCorrelator.POINT );
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Routes
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Add a route from a BoxLang struct, see {@link StubRoute#fromStruct(IStruct)}
+	 *
+	 * @param config The route configuration
+	 *
+	 * @return The added route, to tune it or read its stats
+	 */
+	public StubRoute stub( IStruct config ) {
+		return addRoute( StubRoute.fromStruct( config ) );
+	}
+
+	/**
+	 * Add a route, matched after the routes already added
+	 *
+	 * @param route The route
+	 *
+	 * @return The added route
+	 */
+	public StubRoute addRoute( StubRoute route ) {
+		this.routes.add( route );
+		return route;
+	}
+
+	/**
+	 * Find a route by name
+	 *
+	 * @param routeName The route name
+	 *
+	 * @return The route, or null if there is none
+	 */
+	public StubRoute getRoute( String routeName ) {
+		return this.routes.stream().filter( route -> route.getName().equals( routeName ) ).findFirst().orElse( null );
+	}
+
+	/**
+	 * Remove every route
+	 *
+	 * @return This server for chaining
+	 */
+	public StubServer clearRoutes() {
+		this.routes.clear();
+		return this;
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Stats
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * @return The stats of the server and of every route
+	 */
+	public IStruct getStats() {
+		IStruct routeStats = new Struct( Struct.TYPES.LINKED );
+		this.routes.forEach( route -> routeStats.put( route.getName(), route.getStats() ) );
+		return Struct.linkedOf(
+		    "name", this.name,
+		    "baseURL", getBaseURL(),
+		    "unmatched", this.unmatched.sum(),
+		    "unattributed", this.unattributed.sum(),
+		    "untagged", this.untagged.sum(),
+		    "routes", routeStats
+		);
+	}
+
+	/**
+	 * Clear the stats of the server and of every route
+	 *
+	 * @return This server for chaining
+	 */
+	public StubServer reset() {
+		this.unmatched.reset();
+		this.unattributed.reset();
+		this.untagged.reset();
+		this.routes.forEach( StubRoute::reset );
+		return this;
+	}
+
+	/**
+	 * @return The server name
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * @return The port the server listens on
+	 */
+	public int getPort() {
+		return this.server.getAddress().getPort();
+	}
+
+	/**
+	 * @return The base URL of the server, e.g. {@code http://127.0.0.1:54321}
+	 */
+	public String getBaseURL() {
+		return "http://" + this.server.getAddress().getAddress().getHostAddress() + ":" + getPort();
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Serving
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Answer one call
+	 *
+	 * @param exchange The call
+	 *
+	 * @throws IOException If the client went away
+	 */
+	private void handle( HttpExchange exchange ) throws IOException {
+		long start = System.nanoTime();
+		try ( exchange; InputStream body = exchange.getRequestBody() ) {
+			body.transferTo( OutputStream.nullOutputStream() );
+			String		method	= exchange.getRequestMethod();
+			String		path	= exchange.getRequestURI().getPath();
+			String		caller	= exchange.getRequestHeaders().getFirst( EXECUTION_HEADER );
+			StubRoute	route	= this.routes.stream().filter( candidate -> candidate.matches( method, path ) ).findFirst().orElse( null );
+			if ( route == null ) {
+				this.unmatched.increment();
+				send( exchange, 404, ( "No downstream stub matches [" + method + " " + path + "]" ).getBytes( StandardCharsets.UTF_8 ), 0, null );
+				return;
+			}
+
+			ThreadLocalRandom	random	= ThreadLocalRandom.current();
+			boolean				failed	= route.getErrorRate() > 0 && random.nextDouble() < route.getErrorRate();
+			// Recorded before the last byte goes out, so the call is attributed before the caller moves on
+			LongConsumer		record	= remainingNanos -> {
+											long elapsed = System.nanoTime() - start + remainingNanos;
+											route.record( elapsed, failed );
+											attribute( caller, route.getName(), elapsed, failed );
+										};
+			sleepUntil( start + ( long ) ( route.getLatency().sample( random ) * 1_000_000 ) );
+			route.getHeaders().forEach( ( header, value ) -> exchange.getResponseHeaders().set( header, value ) );
+			if ( failed ) {
+				send( exchange, route.getErrorStatus(), "Injected downstream failure".getBytes( StandardCharsets.UTF_8 ), 0, record );
+			} else {
+				send( exchange, route.getStatus(), route.getBody(), route.getBandwidth(), record );
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Attribute a call to the mock execution its header names or, without the header, to the single mock execution running
+	 * if there is exactly one
+	 *
+	 * @param caller    The execution id of the {@link #EXECUTION_HEADER} header, may be null
+	 * @param routeName The route name
+	 * @param nanos     The call latency
+	 * @param failed    Whether the call failed on purpose
+	 */
+	private void attribute( String caller, String routeName, long nanos, boolean failed ) {
+		DownstreamCalls calls;
+		if ( caller != null ) {
+			// A call that outlived its execution is not attributed to another one
+			calls = ACTIVE.get( caller );
+		} else {
+			this.untagged.increment();
+			Iterator<DownstreamCalls> active = ACTIVE.values().iterator();
+			calls = active.hasNext() ? active.next() : null;
+			if ( active.hasNext() ) {
+				calls = null;
+			}
+		}
+		if ( calls == null ) {
+			this.unattributed.increment();
+			return;
+		}
+		calls.record( routeName, nanos, failed );
+	}
+
+	/**
+	 * Send a response, throttled to a bandwidth
+	 *
+	 * @param exchange  The call
+	 * @param status    The status
+	 * @param body      The body
+	 * @param bandwidth The maximum transfer rate in bytes per second, 0 for unlimited
+	 * @param complete  Called right before the last bytes are written with the nanoseconds their transfer is expected to take,
+	 *                  may be null
+	 *
+	 * @throws IOException          If the client went away
+	 * @throws InterruptedException If the server is stopping
+	 */
+	private static void send( HttpExchange exchange, int status, byte[] body, long bandwidth, LongConsumer complete )
+	    throws IOException, InterruptedException {
+		boolean	head	= exchange.getRequestMethod().equalsIgnoreCase( "HEAD" );
+		int		length	= head ? 0 : body.length;
+		int		slice	= bandwidth <= 0 ? Math.max( 1, length ) : ( int ) Math.max( 1, Math.min( length, bandwidth * SLICE_MILLIS / 1000 ) );
+		long	start	= System.nanoTime();
+		if ( length == 0 && complete != null ) {
+			complete.accept( 0 );
+		}
+		exchange.sendResponseHeaders( status, length == 0 ? -1 : length );
+		OutputStream out = exchange.getResponseBody();
+		for ( int offset = 0; offset < length; offset += slice ) {
+			int		count	= Math.min( slice, length - offset );
+			boolean	last	= offset + count >= length;
+			if ( last && complete != null ) {
+				complete.accept( bandwidth <= 0 ? 0 : count * 1_000_000_000L / bandwidth );
+			}
+			out.write( body, offset, count );
+			out.flush();
+			if ( bandwidth > 0 && !last ) {
+				sleepUntil( start + ( offset + count ) * 1_000_000_000L / bandwidth );
+			}
+		}
+	}
+
+	/**
+	 * Sleep until a point in time
+	 *
+	 * @param deadline The {@link System#nanoTime()} to wake up at
+	 *
+	 * @throws InterruptedException If the server is stopping
+	 */
+	private static void sleepUntil( long deadline ) throws InterruptedException {
+		long remaining = deadline - System.nanoTime();
+		if ( remaining > 0 ) {
+			Thread.sleep( Duration.ofNanos( remaining ) );
+		}
+	}
+
+	/**
+	 * Stop the server, dropping the calls in flight
+	 */
+	private void shutdown() {
+		this.server.stop( 0 );
+		this.executor.shutdownNow();
+	}
+}
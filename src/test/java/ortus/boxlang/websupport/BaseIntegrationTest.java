@@ -28,6 +28,7 @@ import ortus.boxlang.runtime.scopes.IScope;
 import ortus.boxlang.runtime.scopes.Key;
 import ortus.boxlang.runtime.scopes.VariablesScope;
 import ortus.boxlang.runtime.services.ModuleService;
+import ortus.boxlang.websupport.junit.BoxWebExtension;
 
 /**
  * Use this as a base integration test for your non web-support package
@@ -60,20 +61,8 @@ public abstract class BaseIntegrationTest {
 	}
 
 	protected static void loadModule( IBoxContext context ) {
-		if ( !runtime.getModuleService().hasModule( moduleName ) ) {
-			System.out.println( "Loading module: " + moduleName );
-			String physicalPath = Paths.get( "./build/module" ).toAbsolutePath().toString();
-			moduleRecord = new ModuleRecord( physicalPath );
-
-			moduleService.getRegistry().put( moduleName, moduleRecord );
-
-			moduleRecord
-			    .loadDescriptor( context )
-			    .register( context )
-			    .activate( context );
-		} else {
-			System.out.println( "Module already loaded: " + moduleName );
-		}
+		// Loaded through the JUnit extension so test classes of both kinds share one guard
+		moduleRecord = BoxWebExtension.loadModule( runtime, Paths.get( "./build/module" ).toString() );
 	}
 
 }
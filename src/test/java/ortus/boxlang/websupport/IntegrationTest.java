@@ -1,11 +1,15 @@
 package ortus.boxlang.websupport;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
 import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.websupport.budget.BudgetExceededException;
 
 /**
  * This loads the module and runs an integration test on the module.
@@ -207,4 +211,115 @@ public class IntegrationTest extends BaseIntegrationTest {
 		assertThat( resultStruct.getAsString( Key.of( "testHeaderValue" ) ) ).isEqualTo( "TestValue" );
 	}
 
+	@DisplayName( "Test the checksum response mode counts and hashes the body without retaining it" )
+	@Test
+	public void testChecksumResponseMode() {
+		variables.put( Key.of( "webroot" ), Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString() );
+
+		// @formatter:off
+		runtime.executeSource(
+		    """
+			buffered = mockRequestNew( webroot: webroot, path: "index.bxm" ).execute();
+			counted = mockRequestNew( webroot: webroot, path: "index.bxm", responseMode: "checksum" ).execute();
+
+			result = {
+				"bufferedBody": buffered.getResponseBody(),
+				"bufferedLength": buffered.getResponseLength(),
+				"bufferedHash": buffered.getResponseHash(),
+				"countedBody": counted.getResponseBody(),
+				"countedLength": counted.getResponseLength(),
+				"countedHash": counted.getResponseHash()
+			};
+			""",
+		    context
+		);
+		// @formatter:on
+
+		var resultStruct = variables.getAsStruct( result );
+		assertThat( resultStruct.getAsString( Key.of( "bufferedBody" ) ) ).contains( "Hello from the BoxLang mock webroot" );
+		assertThat( resultStruct.getAsString( Key.of( "countedBody" ) ) ).isEmpty();
+		assertThat( resultStruct.get( Key.of( "countedLength" ) ) ).isEqualTo( resultStruct.get( Key.of( "bufferedLength" ) ) );
+		assertThat( resultStruct.getAsString( Key.of( "countedHash" ) ) ).isEqualTo( resultStruct.getAsString( Key.of( "bufferedHash" ) ) );
+	}
+
+	@DisplayName( "Test mockRequestRun() fails an execution over the budget of its route" )
+	@Test
+	public void testRouteBudgetExceeded() {
+		variables.put( Key.of( "webroot" ), Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString() );
+
+		// @formatter:off
+		BudgetExceededException failure = assertThrows( BudgetExceededException.class, () -> runtime.executeSource(
+		    """
+			mockRequestRun(
+				webroot: webroot,
+				path: "/load/slow.bxm",
+				budget: { "routes": { "/load/*": { "wallMs": 10 } } }
+			);
+			""",
+		    context
+		) );
+		// @formatter:on
+
+		assertThat( failure.getMessage() ).startsWith( "The performance budget [/load/*] was exceeded" );
+		assertThat( failure.getMessage() ).contains( "load/slow.bxm" );
+		assertThat( failure.getReport().get( Key.of( "route" ) ) ).isEqualTo( "/load/*" );
+	}
+
+	@DisplayName( "Test mockRequestRun() detaches a stack sampler left on the shared mock server" )
+	@Test
+	public void testDetachSampler() {
+		variables.put( Key.of( "webroot" ), Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString() );
+
+		// @formatter:off
+		runtime.executeSource(
+		    """
+			attached = !isNull( mockRequestRun( webroot: webroot, path: "index.bxm", sampler: mockSamplerNew() ).getSampler() );
+			detached = isNull( mockRequestRun( webroot: webroot, path: "index.bxm" ).getSampler() );
+			""",
+		    context
+		);
+		// @formatter:on
+
+		assertThat( variables.get( Key.of( "attached" ) ) ).isEqualTo( true );
+		assertThat( variables.get( Key.of( "detached" ) ) ).isEqualTo( true );
+	}
+
+	@DisplayName( "Test mockRequestRun() detaches a contention monitor left on the shared mock server" )
+	@Test
+	public void testDetachContentionMonitor() {
+		variables.put( Key.of( "webroot" ), Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString() );
+
+		// @formatter:off
+		runtime.executeSource(
+		    """
+			attached = !isNull( mockRequestRun( webroot: webroot, path: "index.bxm", contentionMonitor: mockContentionMonitorNew() ).getContentionMonitor() );
+			detached = isNull( mockRequestRun( webroot: webroot, path: "index.bxm" ).getContentionMonitor() );
+			""",
+		    context
+		);
+		// @formatter:on
+
+		assertThat( variables.get( Key.of( "attached" ) ) ).isEqualTo( true );
+		assertThat( variables.get( Key.of( "detached" ) ) ).isEqualTo( true );
+	}
+
+	@DisplayName( "Test mockRequestRun() detaches a query profiler left on the shared mock server" )
+	@Test
+	public void testDetachQueryProfiler() {
+		variables.put( Key.of( "webroot" ), Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString() );
+
+		// @formatter:off
+		runtime.executeSource(
+		    """
+			attached = !isNull( mockRequestRun( webroot: webroot, path: "index.bxm", queryProfiler: mockQueryProfilerNew() ).getQueryProfiler() );
+			detached = isNull( mockRequestRun( webroot: webroot, path: "index.bxm" ).getQueryProfiler() );
+			""",
+		    context
+		);
+		// @formatter:on
+
+		assertThat( variables.get( Key.of( "attached" ) ) ).isEqualTo( true );
+		assertThat( variables.get( Key.of( "detached" ) ) ).isEqualTo( true );
+	}
+
 }
@@ -0,0 +1,119 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.budget;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+public class PerformanceBudgetsTest {
+
+	@TempDir
+	Path tempDir;
+
+	private static Map<String, Double> measured( double wallMs, double cpuMs, double flushes ) {
+		return Map.of(
+		    PerformanceBudget.WALL_MS, wallMs,
+		    PerformanceBudget.CPU_MS, cpuMs,
+		    PerformanceBudget.ALLOCATED_BYTES, 1_000.0,
+		    PerformanceBudget.RESPONSE_BYTES, 2_000.0,
+		    PerformanceBudget.FLUSHES, flushes
+		);
+	}
+
+	@DisplayName( "It resolves the most specific route and overrides the default limits" )
+	@Test
+	public void testResolve() {
+		PerformanceBudgets budgets = PerformanceBudgets.fromStruct( Map.of(
+		    "default", Map.of( "wallMs", 500, "allocatedBytes", 50_000_000 ),
+		    "routes", Map.of(
+		        "/api/*", Map.of( "wallMs", 200 ),
+		        "GET /api/users/*", Map.of( "wallMs", 100, "flushes", 1 ),
+		        "/api/users/export", Map.of( "wallMs", 5_000 )
+		    )
+		) );
+
+		PerformanceBudgets.Resolved users = budgets.resolve( "get", "/api/users/1?tab=orders" );
+		assertThat( users.route() ).isEqualTo( "GET /api/users/*" );
+		assertThat( users.budget().getLimit( PerformanceBudget.WALL_MS ) ).isEqualTo( 100.0 );
+		assertThat( users.budget().getLimit( PerformanceBudget.ALLOCATED_BYTES ) ).isEqualTo( 50_000_000.0 );
+		assertThat( users.budget().getLimit( PerformanceBudget.CPU_MS ) ).isEqualTo( -1.0 );
+
+		assertThat( budgets.resolve( "POST", "/api/users/1" ).route() ).isEqualTo( "/api/*" );
+		assertThat( budgets.resolve( "GET", "/api/users/export" ).route() ).isEqualTo( "/api/users/export" );
+		assertThat( budgets.resolve( "GET", "api/users/1" ).route() ).isEqualTo( "GET /api/users/*" );
+		assertThat( budgets.resolve( "GET", "/index.bxm" ).route() ).isEqualTo( "default" );
+		assertThat( new PerformanceBudgets().resolve( "GET", "/index.bxm" ) ).isNull();
+	}
+
+	@DisplayName( "It reports the violated limits and the ones it could not measure" )
+	@Test
+	public void testCheck() {
+		PerformanceBudget	budget	= new PerformanceBudget().setLimit( "wallMs", 100 ).setLimit( "CPUMS", 50 ).setLimit( "flushes", 1 );
+
+		IStruct				passed	= budget.check( "default", measured( 80, -1, 1 ) );
+		assertThat( passed.get( Key.of( "passed" ) ) ).isEqualTo( true );
+		assertThat( ( Array ) passed.get( Key.of( "unmeasured" ) ) ).containsExactly( "cpuMs" );
+
+		IStruct report = budget.check( "GET /api/users/*", measured( 250.5, 20, 3 ) );
+		assertThat( report.get( Key.of( "passed" ) ) ).isEqualTo( false );
+		Array violations = ( Array ) report.get( Key.of( "violations" ) );
+		assertThat( violations ).hasSize( 2 );
+		IStruct wall = ( IStruct ) violations.get( 0 );
+		assertThat( wall.get( Key.of( "metric" ) ) ).isEqualTo( "wallMs" );
+		assertThat( wall.get( Key.of( "ratio" ) ) ).isEqualTo( 2.505 );
+
+		BudgetExceededException failure = new BudgetExceededException( "GET /api/users/1", report );
+		assertThat( failure.getMessage() ).isEqualTo(
+		    "The performance budget [GET /api/users/*] was exceeded by [GET /api/users/1]: wallMs 250.5 > 100, flushes 3 > 1" );
+		assertThat( failure.getReport() ).isSameInstanceAs( report );
+
+		assertThrows( BoxRuntimeException.class, () -> budget.setLimit( "heapMs", 1 ) );
+		assertThrows( BoxRuntimeException.class, () -> budget.setLimit( "wallMs", -1 ) );
+	}
+
+	@DisplayName( "It loads the budget file of a webroot and reloads it when it changes" )
+	@Test
+	public void testBudgetFile() throws IOException {
+		assertThat( PerformanceBudgets.forWebroot( this.tempDir.toString(), "perf-budgets.json" ) ).isNull();
+
+		Path file = Files.writeString( this.tempDir.resolve( "perf-budgets.json" ),
+		    "{ \"default\": { \"wallMs\": 500 }, \"routes\": { \"/health.bxm\": { \"wallMs\": 10 } } }", StandardCharsets.UTF_8 );
+		PerformanceBudgets budgets = PerformanceBudgets.forWebroot( this.tempDir.toString(), "perf-budgets.json" );
+		assertThat( budgets.resolve( "GET", "/health.bxm" ).budget().getLimit( "wallMs" ) ).isEqualTo( 10.0 );
+		assertThat( PerformanceBudgets.forWebroot( this.tempDir.toString(), "perf-budgets.json" ) ).isSameInstanceAs( budgets );
+
+		Files.writeString( file, "{ \"wallMs\": 250 }", StandardCharsets.UTF_8 );
+		Files.setLastModifiedTime( file, FileTime.fromMillis( System.currentTimeMillis() + 10_000 ) );
+		PerformanceBudgets reloaded = PerformanceBudgets.load( file );
+		assertThat( reloaded ).isNotSameInstanceAs( budgets );
+		assertThat( reloaded.resolve( "GET", "/health.bxm" ).route() ).isEqualTo( "default" );
+	}
+}
@@ -0,0 +1,163 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.websupport.BaseIntegrationTest;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+
+public class HttpCacheTest extends BaseIntegrationTest {
+
+	private static final String WEBROOT = Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString();
+
+	private MockHTTPExchange newExchange( HttpCache cache ) {
+		MockHTTPExchange exchange = new MockHTTPExchange( WEBROOT, "localhost", 8080, false, context );
+		exchange.setHttpCache( cache );
+		return exchange;
+	}
+
+	@DisplayName( "It parses Cache-Control directives" )
+	@Test
+	public void testCacheControl() {
+		CacheControl control = CacheControl.parse( "Public, MAX-AGE=60, s-maxage=\"120\", no-cache=\"Set-Cookie\", max-stale=abc" );
+
+		assertThat( control.has( "public" ) ).isTrue();
+		assertThat( control.seconds( "max-age" ) ).isEqualTo( 60 );
+		assertThat( control.seconds( "s-maxage" ) ).isEqualTo( 120 );
+		assertThat( control.has( "no-cache" ) ).isTrue();
+		assertThat( control.seconds( "max-stale" ) ).isEqualTo( -1 );
+		assertThat( CacheControl.parse( null ).has( "no-store" ) ).isFalse();
+	}
+
+	@DisplayName( "It replays fresh responses and fetches them again once stale" )
+	@Test
+	public void testFreshness() {
+		HttpCache			cache		= new HttpCache();
+		MockHTTPExchange	exchange	= newExchange( cache );
+
+		String				body		= exchange.execute( "/cache/fresh.bxm", "GET" ).getResponseBody();
+		assertThat( exchange.getCacheStatus() ).isEqualTo( HttpCache.MISS );
+
+		exchange.execute( "/cache/fresh.bxm", "GET" );
+		assertThat( exchange.getCacheStatus() ).isEqualTo( HttpCache.HIT );
+		assertThat( exchange.getResponseStatus() ).isEqualTo( 200 );
+		assertThat( exchange.getResponseBody() ).isEqualTo( body );
+		assertThat( exchange.getResponseHeader( "Age" ) ).isEqualTo( "0" );
+
+		// The page does not answer conditional requests, so the stale entry is fetched again
+		cache.advance( 61_000 );
+		exchange.execute( "/cache/fresh.bxm", "GET" );
+		assertThat( exchange.getCacheStatus() ).isEqualTo( HttpCache.MISS );
+
+		IStruct route = cache.getRouteStats( "GET /cache/fresh.bxm" );
+		assertThat( route.get( Key.of( "requests" ) ) ).isEqualTo( 3L );
+		assertThat( route.get( Key.of( "hits" ) ) ).isEqualTo( 1L );
+		assertThat( route.get( Key.of( "misses" ) ) ).isEqualTo( 2L );
+		assertThat( route.get( Key.of( "bytesSaved" ) ) ).isEqualTo( exchange.getResponseLength() );
+		assertThat( ( double ) route.get( Key.of( "latencyAvoidedMs" ) ) ).isGreaterThan( 0.0 );
+	}
+
+	@DisplayName( "It revalidates stale responses with their validators" )
+	@Test
+	public void testRevalidation() {
+		HttpCache			cache		= new HttpCache();
+		MockHTTPExchange	exchange	= newExchange( cache );
+
+		exchange.execute( "/cache/validated.bxm", "GET" );
+		assertThat( exchange.getCacheStatus() ).isEqualTo( HttpCache.MISS );
+
+		exchange.execute( "/cache/validated.bxm", "GET" );
+		assertThat( exchange.getCacheStatus() ).isEqualTo( HttpCache.REVALIDATED );
+		assertThat( exchange.getResponseStatus() ).isEqualTo( 200 );
+		assertThat( exchange.getResponseBody() ).contains( "Always revalidated" );
+		// The validators the cache added are not left on the request
+		assertThat( exchange.getRequestHeader( "If-None-Match" ) ).isNull();
+	}
+
+	@DisplayName( "It answers conditional requests of the client with a 304" )
+	@Test
+	public void testClientConditional() {
+		HttpCache cache = new HttpCache();
+		newExchange( cache ).execute( "/cache/fresh.bxm", "GET" );
+
+		MockHTTPExchange exchange = newExchange( cache );
+		exchange.addRequestHeader( "If-None-Match", "W/\"fresh-v1\"" );
+		exchange.execute( "/cache/fresh.bxm", "GET" );
+
+		assertThat( exchange.getCacheStatus() ).isEqualTo( HttpCache.HIT );
+		assertThat( exchange.getResponseStatus() ).isEqualTo( 304 );
+		assertThat( exchange.getResponseLength() ).isEqualTo( 0L );
+		assertThat( cache.getRouteStats( "GET /cache/fresh.bxm" ).get( Key.of( "notModified" ) ) ).isEqualTo( 1L );
+	}
+
+	@DisplayName( "It refuses private responses in a shared cache only" )
+	@Test
+	public void testPrivate() {
+		HttpCache shared = new HttpCache();
+		newExchange( shared ).execute( "/cache/private.bxm", "GET" );
+		newExchange( shared ).execute( "/cache/private.bxm", "GET" );
+
+		IStruct route = shared.getRouteStats( "GET /cache/private.bxm" );
+		assertThat( route.get( Key.of( "hits" ) ) ).isEqualTo( 0L );
+		assertThat( ( ( IStruct ) route.get( Key.of( "uncacheable" ) ) ).get( Key.of( "private" ) ) ).isEqualTo( 2L );
+
+		HttpCache browser = new HttpCache( HttpCache.DEFAULT_MAX_BYTES, false, true );
+		newExchange( browser ).execute( "/cache/private.bxm", "GET" );
+		assertThat( newExchange( browser ).execute( "/cache/private.bxm", "GET" ).getCacheStatus() ).isEqualTo( HttpCache.HIT );
+	}
+
+	@DisplayName( "It invalidates a path after a successful unsafe method" )
+	@Test
+	public void testInvalidation() {
+		HttpCache cache = new HttpCache();
+		newExchange( cache ).execute( "/cache/fresh.bxm", "GET" );
+		assertThat( cache.size() ).isEqualTo( 1 );
+
+		assertThat( newExchange( cache ).execute( "/cache/fresh.bxm", "POST" ).getCacheStatus() ).isEqualTo( HttpCache.BYPASS );
+		assertThat( cache.size() ).isEqualTo( 0 );
+	}
+
+	@DisplayName( "It evicts the least recently used entries beyond the memory budget" )
+	@Test
+	public void testEviction() {
+		HttpCache cache = new HttpCache( 400, true, true );
+		for ( int page = 1; page <= 10; page++ ) {
+			MockHTTPExchange exchange = newExchange( cache );
+			exchange.addURLParam( "page", page );
+			exchange.execute( "/cache/fresh.bxm", "GET" );
+		}
+
+		IStruct stats = cache.getStats();
+		assertThat( cache.getBytes() ).isAtMost( 400L );
+		assertThat( cache.size() ).isLessThan( 10 );
+		assertThat( ( long ) stats.get( Key.of( "evictions" ) ) ).isGreaterThan( 0L );
+
+		// The last page is still there, the first one is gone
+		MockHTTPExchange last = newExchange( cache );
+		last.addURLParam( "page", 10 );
+		assertThat( last.execute( "/cache/fresh.bxm", "GET" ).getCacheStatus() ).isEqualTo( HttpCache.HIT );
+		MockHTTPExchange first = newExchange( cache );
+		first.addURLParam( "page", 1 );
+		assertThat( first.execute( "/cache/fresh.bxm", "GET" ).getCacheStatus() ).isEqualTo( HttpCache.MISS );
+	}
+}
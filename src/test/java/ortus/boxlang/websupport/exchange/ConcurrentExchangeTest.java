@@ -0,0 +1,150 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.exchange;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ortus.boxlang.websupport.BaseIntegrationTest;
+
+public class ConcurrentExchangeTest extends BaseIntegrationTest {
+
+	private static final String	WEBROOT		= Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString();
+
+	private static final int	THREADS		= 256;
+
+	private static final int	OPERATIONS	= 200;
+
+	private static final String	CHUNK		= "abcd";
+
+	/**
+	 * Run a task on many threads released at once
+	 */
+	private void hammer( ThreadTask task ) throws InterruptedException {
+		CountDownLatch	start	= new CountDownLatch( 1 );
+		List<Thread>	threads	= new ArrayList<>();
+		for ( int i = 0; i < THREADS; i++ ) {
+			int thread = i;
+			threads.add( Thread.ofPlatform().start( () -> {
+				try {
+					start.await();
+					for ( int j = 0; j < OPERATIONS; j++ ) {
+						task.run( thread, j );
+					}
+				} catch ( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+				}
+			} ) );
+		}
+		start.countDown();
+		for ( Thread thread : threads ) {
+			thread.join();
+		}
+	}
+
+	@FunctionalInterface
+	private interface ThreadTask {
+
+		void run( int thread, int operation );
+	}
+
+	@DisplayName( "It loses no attribute or header written from many threads" )
+	@Test
+	public void testAttributesAndHeaders() throws InterruptedException {
+		MockHTTPExchange exchange = new MockHTTPExchange( WEBROOT, "localhost", 8080, false, context );
+
+		hammer( ( thread, operation ) -> {
+			exchange.setRequestAttribute( "attr-" + thread + "-" + operation, operation );
+			exchange.addResponseHeader( "X-Thread-" + thread + "-" + ( operation % 10 ), String.valueOf( operation ) );
+			exchange.addURLParam( "p" + thread, operation );
+		} );
+
+		assertThat( exchange.getRequestAttributeMap() ).hasSize( THREADS * OPERATIONS );
+		assertThat( exchange.getResponseHeaderMap() ).hasSize( THREADS * 10 );
+		assertThat( exchange.getMockURL() ).hasSize( THREADS );
+
+		exchange.setRequestAttribute( "attr-0-0", null );
+		assertThat( exchange.getRequestAttribute( "attr-0-0" ) ).isNull();
+	}
+
+	@DisplayName( "It keeps the output and headers a template writes from spawned threads" )
+	@Test
+	public void testSpawnedThreads() {
+		MockHTTPExchange exchange = new MockHTTPExchange( WEBROOT, "localhost", 8080, false, context );
+		exchange.execute( "/concurrent/spawn.bxm", "GET" );
+
+		String body = exchange.getResponseBody();
+		assertThat( exchange.getResponseStatus() ).isEqualTo( 200 );
+		assertThat( body.split( "\\[async\\]", -1 ) ).hasLength( 17 );
+		assertThat( body.split( "\\[each\\]", -1 ) ).hasLength( 17 );
+		assertThat( body.trim() ).endsWith( "[done]" );
+		for ( int id = 1; id <= 16; id++ ) {
+			assertThat( exchange.getResponseHeader( "X-Async-" + id ) ).isEqualTo( String.valueOf( id ) );
+			assertThat( exchange.getResponseHeader( "X-Each-" + id ) ).isEqualTo( String.valueOf( id ) );
+			assertThat( exchange.getResponseHeader( "X-Thread-" + id ) ).isEqualTo( String.valueOf( id ) );
+		}
+	}
+
+	@DisplayName( "It never tears the status code from its text" )
+	@Test
+	public void testAtomicStatus() throws InterruptedException {
+		MockHTTPExchange exchange = new MockHTTPExchange( WEBROOT, "localhost", 8080, false, context );
+
+		hammer( ( thread, operation ) -> {
+			int status = 200 + thread % 300;
+			exchange.setResponseStatus( status, "Status " + status );
+		} );
+
+		assertThat( exchange.getResponseStatusText() ).isEqualTo( "Status " + exchange.getResponseStatus() );
+	}
+
+	@DisplayName( "It serializes text and binary writes to the response sink" )
+	@Test
+	public void testSerializedWrites() throws InterruptedException {
+		for ( ResponseMode mode : ResponseMode.values() ) {
+			MockHTTPExchange	exchange	= new MockHTTPExchange( WEBROOT, "localhost", 8080, false, context );
+			byte[]				binary		= CHUNK.getBytes( StandardCharsets.UTF_8 );
+			exchange.setResponseMode( mode );
+
+			hammer( ( thread, operation ) -> {
+				if ( operation % 2 == 0 ) {
+					exchange.getResponseWriter().print( CHUNK );
+				} else {
+					exchange.sendResponseBinary( binary );
+				}
+			} );
+			exchange.flushResponseBuffer();
+
+			// Identical chunks only hash the same in any order if no write was torn or lost
+			String expected = CHUNK.repeat( THREADS * OPERATIONS );
+			assertThat( exchange.getResponseLength() ).isEqualTo( ( long ) expected.length() );
+			if ( mode != ResponseMode.DISCARD ) {
+				assertThat( exchange.getResponseHash() ).isEqualTo( CountingWriter.hashOf( expected ) );
+			}
+			if ( mode == ResponseMode.BUFFER ) {
+				assertThat( exchange.getResponseBody() ).isEqualTo( expected );
+			}
+		}
+	}
+
+}
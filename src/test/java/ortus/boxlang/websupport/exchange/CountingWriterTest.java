@@ -0,0 +1,87 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.exchange;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class CountingWriterTest {
+
+	private static final String CONTENT = "Hello BoxLang: café ✓ 😀";
+
+	@DisplayName( "It counts the UTF-8 size of what is written" )
+	@Test
+	public void testCountsUtf8Bytes() {
+		CountingWriter counter = new CountingWriter( false );
+		try ( PrintWriter writer = new PrintWriter( counter ) ) {
+			writer.print( CONTENT );
+			writer.print( 'x' );
+		}
+
+		assertThat( counter.getByteCount() ).isEqualTo( ( CONTENT + "x" ).getBytes( StandardCharsets.UTF_8 ).length );
+		assertThat( counter.getHash() ).isEmpty();
+	}
+
+	@DisplayName( "It hashes text and binary writes over the same byte stream" )
+	@Test
+	public void testTextAndBinaryHashesMatch() {
+		CountingWriter text = new CountingWriter( true );
+		text.write( CONTENT, 0, CONTENT.length() );
+
+		CountingWriter binary = new CountingWriter( true );
+		binary.writeBytes( CONTENT.getBytes( StandardCharsets.UTF_8 ) );
+
+		assertThat( text.getHash() ).hasLength( 16 );
+		assertThat( text.getHash() ).isEqualTo( binary.getHash() );
+		assertThat( text.getByteCount() ).isEqualTo( binary.getByteCount() );
+		assertThat( CountingWriter.hashOf( CONTENT ) ).isEqualTo( text.getHash() );
+	}
+
+	@DisplayName( "It can be reset and reused" )
+	@Test
+	public void testReset() {
+		CountingWriter counter = new CountingWriter( true );
+		String emptyHash = counter.getHash();
+		counter.append( CONTENT );
+		assertThat( counter.getHash() ).isNotEqualTo( emptyHash );
+
+		counter.reset();
+		assertThat( counter.getByteCount() ).isEqualTo( 0 );
+		assertThat( counter.getHash() ).isEqualTo( emptyHash );
+	}
+
+	@DisplayName( "It restores the counters of a body without its bytes" )
+	@Test
+	public void testRestore() {
+		CountingWriter written = new CountingWriter( true );
+		written.append( CONTENT );
+
+		CountingWriter restored = new CountingWriter( true );
+		restored.restore( written.getByteCount(), written.getHash() );
+		assertThat( restored.getByteCount() ).isEqualTo( written.getByteCount() );
+		assertThat( restored.getHash() ).isEqualTo( written.getHash() );
+
+		CountingWriter discarding = new CountingWriter( false );
+		discarding.restore( 42, written.getHash() );
+		assertThat( discarding.getByteCount() ).isEqualTo( 42 );
+		assertThat( discarding.getHash() ).isEmpty();
+	}
+
+}
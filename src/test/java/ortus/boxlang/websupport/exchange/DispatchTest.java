@@ -0,0 +1,104 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.exchange;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.websupport.BaseIntegrationTest;
+
+public class DispatchTest extends BaseIntegrationTest {
+
+	private static final String WEBROOT = Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString();
+
+	@DisplayName( "It runs forwarded and included templates in place and traces every hop" )
+	@Test
+	public void testForwardAndInclude() {
+		MockHTTPExchange exchange = new MockHTTPExchange( WEBROOT, "localhost", 8080, false, context );
+		exchange.addURLParam( "event", "users" );
+		exchange.execute( "/dispatch/index.bxm", "GET" );
+
+		String body = exchange.getResponseBody();
+		assertThat( exchange.getResponseStatus() ).isEqualTo( 200 );
+		assertThat( body ).contains( "[layout]" );
+		assertThat( body ).contains( "Handled users with event=users" );
+		assertThat( body ).doesNotContain( "Discarded" );
+		// The dispatch path is only in effect while the target runs
+		assertThat( exchange.getRequestQueryString() ).isEmpty();
+
+		IStruct	dispatches	= exchange.getDispatches();
+		Array	hops		= ( Array ) dispatches.get( Key.of( "hops" ) );
+		IStruct	forward		= ( IStruct ) hops.get( 0 );
+		IStruct	include		= ( IStruct ) hops.get( 1 );
+		assertThat( dispatches.get( Key.of( "forwards" ) ) ).isEqualTo( 1L );
+		assertThat( dispatches.get( Key.of( "includes" ) ) ).isEqualTo( 1L );
+		assertThat( dispatches.get( Key.of( "maxDepth" ) ) ).isEqualTo( 2 );
+		assertThat( forward.get( Key.of( "from" ) ) ).isEqualTo( "/dispatch/index.bxm" );
+		assertThat( forward.get( Key.of( "path" ) ) ).isEqualTo( "/dispatch/handler.bxm" );
+		assertThat( include.get( Key.of( "from" ) ) ).isEqualTo( "/dispatch/handler.bxm" );
+		assertThat( include.get( Key.of( "depth" ) ) ).isEqualTo( 2 );
+		assertThat( ( double ) forward.get( Key.of( "selfMs" ) ) ).isAtMost( ( double ) forward.get( Key.of( "durationMs" ) ) );
+	}
+
+	@DisplayName( "It aborts the source once the forward is done" )
+	@Test
+	public void testForwardAbortsSource() {
+		MockHTTPExchange exchange = new MockHTTPExchange( WEBROOT, "localhost", 8080, false, context );
+		exchange.execute( "/dispatch/after.bxm", "GET" );
+
+		String body = exchange.getResponseBody();
+		assertThat( exchange.getResponseStatus() ).isEqualTo( 200 );
+		assertThat( body ).contains( "[layout]" );
+		assertThat( body ).doesNotContain( "Discarded" );
+		assertThat( body ).doesNotContain( "Ran after the forward" );
+
+		IStruct forward = ( IStruct ) ( ( Array ) exchange.getDispatches().get( Key.of( "hops" ) ) ).get( 0 );
+		assertThat( forward.get( Key.of( "path" ) ) ).isEqualTo( "/dispatch/layout.bxm" );
+		assertThat( forward.get( Key.of( "error" ) ) ).isEqualTo( "" );
+	}
+
+	@DisplayName( "It stops forward loops at the maximum depth" )
+	@Test
+	public void testForwardLoop() {
+		MockHTTPExchange exchange = new MockHTTPExchange( WEBROOT, "localhost", 8080, false, context );
+		try {
+			exchange.execute( "/dispatch/loop.bxm", "GET" );
+		} catch ( BoxRuntimeException e ) {
+			// Depending on the error handling of the runtime, the error is rendered or rethrown
+		}
+
+		assertThat( exchange.getDispatches().get( Key.of( "maxDepth" ) ) ).isEqualTo( DispatchTrace.MAX_DEPTH );
+	}
+
+	@DisplayName( "It only sets the path of the next execution outside an execution" )
+	@Test
+	public void testOutsideExecution() {
+		MockHTTPExchange exchange = new MockHTTPExchange( WEBROOT, "localhost", 8080, false, context );
+		exchange.forward( "/dispatch/layout.bxm" );
+
+		assertThat( exchange.execute().getResponseBody() ).contains( "[layout]" );
+		assertThat( exchange.getDispatches().get( Key.of( "count" ) ) ).isEqualTo( 0 );
+		assertThrows( BoxRuntimeException.class, () -> exchange.include( "/dispatch/layout.bxm" ) );
+	}
+}
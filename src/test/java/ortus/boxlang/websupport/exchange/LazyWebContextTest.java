@@ -0,0 +1,75 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.exchange;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.websupport.BaseIntegrationTest;
+
+public class LazyWebContextTest extends BaseIntegrationTest {
+
+	private static final String WEBROOT = Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString();
+
+	@DisplayName( "It creates the web context on first use and attaches it to the caller" )
+	@Test
+	public void testLazyContext() {
+		MockHTTPExchange exchange = new MockHTTPExchange( WEBROOT, "localhost", 8080, false, context );
+		exchange.addRequestHeader( "X-Test", "lazy" );
+		assertThat( exchange.hasWebContext() ).isFalse();
+
+		assertThat( exchange.getWebContext() ).isNotNull();
+		assertThat( exchange.hasWebContext() ).isTrue();
+		assertThat( context.getParent() ).isSameInstanceAs( exchange.getWebContext() );
+	}
+
+	@DisplayName( "It executes a config only exchange without a caller context" )
+	@Test
+	public void testConfigOnly() {
+		MockHTTPExchange exchange = MockHTTPExchange.configOnly( WEBROOT, "localhost", 8080, false );
+		assertThat( exchange.hasWebContext() ).isFalse();
+
+		exchange.execute( "/index.bxm", "GET" );
+		assertThat( exchange.getResponseStatus() ).isEqualTo( 200 );
+		assertThat( exchange.getResponseBody() ).contains( "Hello from the BoxLang mock webroot" );
+	}
+
+	@DisplayName( "It skips the web context of the caller in config only mock servers until asked for" )
+	@Test
+	public void testConfigOnlyBIF() {
+		// @formatter:off
+		runtime.executeSource(
+		    """
+			mockServer = mockServerGet( force: true, configOnly: true ).setRequestMethod( "PUT" );
+			before = mockServer.hasWebContext();
+			mockServer.initializeWebContext();
+			result = { before: before, after: mockServer.hasWebContext(), method: getHTTPRequestData().method };
+			""",
+		    context
+		);
+		// @formatter:on
+
+		IStruct resultStruct = variables.getAsStruct( result );
+		assertThat( resultStruct.getAsBoolean( Key.of( "before" ) ) ).isFalse();
+		assertThat( resultStruct.getAsBoolean( Key.of( "after" ) ) ).isTrue();
+		assertThat( resultStruct.getAsString( Key.of( "method" ) ) ).isEqualTo( "PUT" );
+	}
+}
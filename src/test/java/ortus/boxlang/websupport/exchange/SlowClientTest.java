@@ -0,0 +1,72 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.exchange;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+
+public class SlowClientTest {
+
+	@DisplayName( "It blocks once for the upload of the request body" )
+	@Test
+	public void testUpload() {
+		SlowClient client = new SlowClient( 50_000, 0, SlowClient.DEFAULT_SEND_BUFFER );
+		client.begin();
+		client.deliverRequest( 5_000 );
+		client.deliverRequest( 5_000 );
+
+		IStruct timings = client.getTimings( -1, 0 );
+		assertThat( ( double ) timings.get( Key.of( "uploadBlockedMs" ) ) ).isAtLeast( 100.0 );
+		assertThat( ( double ) timings.get( Key.of( "uploadBlockedMs" ) ) ).isLessThan( 190.0 );
+		assertThat( timings.get( Key.of( "sendBlockedMs" ) ) ).isEqualTo( 0.0 );
+		assertThat( timings.get( Key.of( "cpuMs" ) ) ).isEqualTo( -1.0 );
+	}
+
+	@DisplayName( "It blocks response writes once the send buffer is full" )
+	@Test
+	public void testBackpressure() throws Exception {
+		SlowClient		client	= new SlowClient( 0, 100_000, 8_192 );
+		StringWriter	sink	= new StringWriter();
+		ThrottledWriter	writer	= new ThrottledWriter( sink, client );
+		client.begin();
+
+		// The first 8KB fit in the buffer, the remaining 32KB are read by the client at 100KB/s
+		long start = System.nanoTime();
+		for ( int i = 0; i < 40; i++ ) {
+			writer.write( "x".repeat( 1_024 ) );
+		}
+		long	elapsedMs	= ( System.nanoTime() - start ) / 1_000_000;
+
+		IStruct	timings		= client.getTimings( -1, 0 );
+		assertThat( sink.toString() ).hasLength( 40 * 1_024 );
+		assertThat( timings.get( Key.of( "sentBytes" ) ) ).isEqualTo( 40L * 1_024 );
+		assertThat( elapsedMs ).isAtLeast( 300L );
+		assertThat( ( double ) timings.get( Key.of( "sendBlockedMs" ) ) ).isAtLeast( 300.0 );
+
+		// A new execution starts with an empty buffer
+		client.begin();
+		start = System.nanoTime();
+		writer.write( "y".repeat( 4_096 ) );
+		assertThat( ( System.nanoTime() - start ) / 1_000_000 ).isLessThan( 20L );
+	}
+
+}
@@ -0,0 +1,105 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.junit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+import org.junit.jupiter.api.parallel.Isolated;
+
+import ortus.boxlang.runtime.BoxRuntime;
+import ortus.boxlang.runtime.context.IBoxContext;
+import ortus.boxlang.web.context.WebRequestBoxContext;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+
+@BoxWebTest( webroot = "src/test/resources/webroot" )
+@Execution( ExecutionMode.CONCURRENT )
+// The methods run concurrently, but never alongside the classes that share the runtime singletons
+@Isolated
+public class BoxWebExtensionTest {
+
+	@DisplayName( "It injects the shared runtime" )
+	@Test
+	public void testRuntime( BoxRuntime runtime ) {
+		assertThat( runtime ).isSameInstanceAs( BoxRuntime.getInstance() );
+	}
+
+	@DisplayName( "It injects an initialized exchange configured by the annotation" )
+	@Test
+	public void testExchange( @MockWebRequest( path = "/index.bxm", method = "POST" ) MockHTTPExchange exchange ) {
+		assertThat( exchange.getRequestPath() ).isEqualTo( "index.bxm" );
+		assertThat( exchange.getRequestMethod() ).isEqualTo( "POST" );
+		assertThat( exchange.getWebContext() ).isNotNull();
+		assertThat( exchange.getWebroot() ).endsWith( "webroot" );
+	}
+
+	@DisplayName( "It attaches the web context before the test touches the exchange" )
+	@Test
+	public void testAttachedContext( IBoxContext context, @MockWebRequest MockHTTPExchange exchange ) {
+		// Read the parent first, getWebContext() would attach a lazy web context on its own
+		IBoxContext parent = context.getParent();
+		assertThat( parent ).isInstanceOf( WebRequestBoxContext.class );
+		assertThat( parent ).isSameInstanceAs( exchange.getWebContext() );
+	}
+
+	@DisplayName( "It gives every parameter its own exchange" )
+	@Test
+	public void testOwnExchanges( @MockWebRequest MockHTTPExchange first, @MockWebRequest MockHTTPExchange second, IBoxContext context ) {
+		assertThat( first ).isNotSameInstanceAs( second );
+		assertThat( first.getWebContext() ).isNotSameInstanceAs( second.getWebContext() );
+		// The injected context is the caller context of the first exchange
+		assertThat( context.getParent() ).isSameInstanceAs( first.getWebContext() );
+		assertThat( context.getParent() ).isNotSameInstanceAs( second.getWebContext() );
+	}
+
+	@DisplayName( "It injects the caller context of the exchange, whatever the parameter order" )
+	@Test
+	public void testCallerContext( IBoxContext context, @MockWebRequest( path = "/index.bxm" ) MockHTTPExchange exchange ) {
+		IBoxContext attached = exchange.getWebContext();
+		assertThat( context.getParent() ).isSameInstanceAs( attached );
+
+		exchange.execute();
+
+		// The execution runs in a web context of its own, the caller context keeps the one it was injected with
+		assertThat( exchange.getResponseStatus() ).isEqualTo( 200 );
+		assertThat( context.getParent() ).isSameInstanceAs( attached );
+		assertThat( exchange.getWebContext() ).isNotSameInstanceAs( attached );
+	}
+
+	@DisplayName( "It executes isolated requests in parallel" )
+	@RepeatedTest( 20 )
+	public void testParallelRequests( @MockWebRequest( path = "/index.bxm" ) MockHTTPExchange exchange ) {
+		exchange.addURLParam( "thread", Thread.currentThread().getName() );
+
+		exchange.execute();
+
+		assertThat( exchange.getResponseStatus() ).isEqualTo( 200 );
+		assertThat( exchange.getResponseBody() ).contains( "Hello from the BoxLang mock webroot" );
+		assertThat( exchange.getRequestURLMap().get( "thread" ) ).asList().containsExactly( Thread.currentThread().getName() );
+	}
+
+	@DisplayName( "It applies the response mode" )
+	@Test
+	public void testResponseMode( @MockWebRequest( path = "/index.bxm", responseMode = "checksum" ) MockHTTPExchange exchange ) {
+		exchange.execute();
+
+		assertThat( exchange.getResponseLength() ).isGreaterThan( 0L );
+		assertThat( exchange.getResponseHash() ).isNotEmpty();
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.websupport.BaseIntegrationTest;
+
+public class ABBenchmarkTest extends BaseIntegrationTest {
+
+	private static final String	WEBROOT		= Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString();
+
+	private static final String	WEBROOT_A	= Path.of( "src/test/resources/webroot/ab/a" ).toAbsolutePath().toString();
+
+	private static final String	WEBROOT_B	= Path.of( "src/test/resources/webroot/ab/b" ).toAbsolutePath().toString();
+
+	@DisplayName( "It pairs the executions of both webroots per route" )
+	@Test
+	public void testCompare() {
+		RequestSpec	index	= new RequestSpec( WEBROOT, "localhost", 8080, false ).setPath( "/index.bxm" );
+		RequestSpec	list	= new RequestSpec( WEBROOT, "localhost", 8080, false ).setPath( "/list.bxm" );
+
+		IStruct		report	= new ABBenchmark( WEBROOT_A, WEBROOT_B, List.of( index, list, index ), null )
+		    .setIterations( 30 )
+		    .setWarmup( 5 )
+		    .setSeed( 7 )
+		    .run();
+
+		IStruct		routes	= ( IStruct ) report.get( Key.of( "routes" ) );
+		assertThat( routes.keySet().stream().map( Key::getName ).toList() )
+		    .containsExactly( "GET /index.bxm", "GET /list.bxm", "GET /index.bxm #2" )
+		    .inOrder();
+
+		IStruct	route	= ( IStruct ) routes.get( Key.of( "GET /index.bxm" ) );
+		IStruct	a		= ( IStruct ) route.get( Key.of( "a" ) );
+		IStruct	latency	= ( IStruct ) route.get( Key.of( "latency" ) );
+		assertThat( route.get( Key.of( "pairs" ) ) ).isEqualTo( 30 );
+		assertThat( a.get( Key.of( "errors" ) ) ).isEqualTo( 0L );
+		assertThat( ( double ) a.get( Key.of( "medianMs" ) ) ).isGreaterThan( 0.0 );
+		assertThat( ( double ) latency.get( Key.of( "pValue" ) ) ).isAtMost( 1.0 );
+		assertThat( route.get( Key.of( "verdict" ) ) ).isAnyOf( "faster", "slower", "same" );
+	}
+
+	@DisplayName( "It refuses webroots that run in the same application" )
+	@Test
+	public void testSharedApplication() {
+		RequestSpec	spec	= new RequestSpec( WEBROOT, "localhost", 8080, false ).setPath( "/index.bxm" );
+		String		clash	= Path.of( "src/test/resources/webroot/ab/clash" ).toAbsolutePath().toString();
+
+		BoxRuntimeException error = assertThrows( BoxRuntimeException.class, () -> new ABBenchmark( WEBROOT_A, clash, List.of( spec ), null ).run() );
+		assertThat( error.getMessage() ).contains( "same application [bx-web-support-ab-a]" );
+	}
+
+	@DisplayName( "It refuses a missing webroot" )
+	@Test
+	public void testMissingWebroot() {
+		RequestSpec spec = new RequestSpec( WEBROOT, "localhost", 8080, false ).setPath( "/index.bxm" );
+
+		assertThrows( BoxRuntimeException.class, () -> new ABBenchmark( WEBROOT, WEBROOT + "/missing", List.of( spec ), null ) );
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.websupport.BaseIntegrationTest;
+import ortus.boxlang.websupport.load.ArrivalRateScheduler.Stage;
+
+public class ArrivalRateSchedulerTest extends BaseIntegrationTest {
+
+	@DisplayName( "It ramps stages from the previous end rate" )
+	@Test
+	public void testStagesFromStructs() {
+		Stage	ramp	= Stage.fromStruct( Struct.of( "duration", 2, "startRate", 0, "rate", 50 ), null );
+		Stage	hold	= Stage.fromStruct( Struct.of( "duration", 0.5, "rate", 50 ), ramp );
+		Stage	first	= Stage.fromStruct( Struct.of( "duration", 1, "rate", 10 ), null );
+
+		assertThat( ramp ).isEqualTo( new Stage( 2000, 0, 50 ) );
+		assertThat( hold ).isEqualTo( new Stage( 500, 50, 50 ) );
+		assertThat( first ).isEqualTo( new Stage( 1000, 10, 10 ) );
+		assertThrows( BoxRuntimeException.class, () -> Stage.fromStruct( Struct.of( "rate", 10 ), null ) );
+		assertThrows( BoxRuntimeException.class, () -> new Stage( 0, 1, 1 ) );
+	}
+
+	@DisplayName( "It dispatches every arrival of a ramp and measures latency from the intended start" )
+	@Test
+	public void testRun() {
+		RequestSpec							spec	= new RequestSpec( Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString(), "localhost", 8080, false )
+		    .setPath( "/index.bxm" )
+		    .setResponseMode( "discard" );
+		ConcurrentLinkedQueue<RequestResult>	results	= new ConcurrentLinkedQueue<>();
+
+		// 0 to 40 req/s over 1s is 20 arrivals, then 40 req/s for 0.5s is 20 more
+		IStruct									summary	= new ArrivalRateScheduler( spec, null, List.of( new Stage( 1000, 0, 40 ), new Stage( 500, 40, 40 ) ) )
+		    .addResultListener( results::add )
+		    .run();
+
+		long								scheduled	= ( long ) summary.get( Key.of( "scheduled" ) );
+		assertThat( scheduled + ( long ) summary.get( Key.of( "dropped" ) ) ).isEqualTo( 40 );
+		assertThat( summary.get( Key.of( "completed" ) ) ).isEqualTo( scheduled );
+		assertThat( summary.get( Key.of( "drained" ) ) ).isEqualTo( true );
+		assertThat( ( double ) summary.get( Key.of( "durationMs" ) ) ).isAtLeast( 1500.0 );
+		assertThat( results ).hasSize( ( int ) scheduled );
+
+		IStruct	latency	= ( IStruct ) summary.get( Key.of( "latency" ) );
+		IStruct	service	= ( IStruct ) summary.get( Key.of( "serviceTime" ) );
+		assertThat( latency.get( Key.of( "count" ) ) ).isEqualTo( scheduled );
+		assertThat( ( double ) latency.get( Key.of( "max" ) ) ).isAtLeast( ( double ) service.get( Key.of( "max" ) ) );
+		results.forEach( result -> assertThat( result.latencyNanos() ).isAtLeast( result.serviceNanos() ) );
+	}
+
+	@DisplayName( "It keeps dropped arrivals out of the latency percentiles and reports their ratio" )
+	@Test
+	public void testDropped() {
+		RequestSpec	spec	= new RequestSpec( Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString(), "localhost", 8080, false )
+		    .setPath( "/load/slow.bxm" )
+		    .setResponseMode( "discard" );
+
+		// 20 arrivals 25ms apart against a 100ms template, one at a time
+		IStruct		summary	= new ArrivalRateScheduler( spec, null, List.of( new Stage( 500, 40, 40 ) ) )
+		    .setMaxInFlight( 1 )
+		    .run();
+
+		long		dropped	= ( long ) summary.get( Key.of( "dropped" ) );
+		IStruct		latency	= ( IStruct ) summary.get( Key.of( "latency" ) );
+		assertThat( dropped ).isGreaterThan( 0L );
+		assertThat( latency.get( Key.of( "count" ) ) ).isEqualTo( 20L - dropped );
+		assertThat( ( double ) latency.get( Key.of( "max" ) ) ).isLessThan( 60_000.0 );
+		assertThat( summary.get( Key.of( "dropRatio" ) ) ).isEqualTo( dropped / 20.0 );
+		assertThat( ArrivalRateScheduler.dropRatio( 0, 0 ) ).isEqualTo( 0.0 );
+	}
+
+}
@@ -0,0 +1,140 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+public class FeederTest {
+
+	@TempDir
+	Path tempDir;
+
+	private Path write( String name, String content ) throws IOException {
+		return Files.writeString( this.tempDir.resolve( name ), content, StandardCharsets.UTF_8 );
+	}
+
+	@DisplayName( "It splits quoted CSV fields" )
+	@Test
+	public void testSplit() {
+		assertThat( CSVFeeder.split( "1,\"Doe, John\",\"say \"\"hi\"\"\",", ',' ) )
+		    .containsExactly( "1", "Doe, John", "say \"hi\"", "" )
+		    .inOrder();
+		assertThat( CSVFeeder.split( "a;b", ';' ) ).containsExactly( "a", "b" ).inOrder();
+	}
+
+	@DisplayName( "It streams CSV records in order and circles back" )
+	@Test
+	public void testCircularCSV() throws IOException {
+		Path file = write( "users.csv", "\uFEFFid, name\r\n1,Luis\r\n\r\n2,\"Majano, Jr\"\r\n" );
+		try ( CSVFeeder feeder = new CSVFeeder( file.toString(), FeederMode.CIRCULAR ) ) {
+			assertThat( feeder.getColumns() ).asList().containsExactly( "id", "name" ).inOrder();
+			assertThat( feeder.next().get( Key.of( "name" ) ) ).isEqualTo( "Luis" );
+			assertThat( feeder.next().get( Key.of( "name" ) ) ).isEqualTo( "Majano, Jr" );
+			assertThat( feeder.next().get( Key.of( "id" ) ) ).isEqualTo( "1" );
+		}
+	}
+
+	@DisplayName( "It stops an exhaust feeder at the end of the file" )
+	@Test
+	public void testExhaust() throws IOException {
+		Path file = write( "ids.csv", "id\n1\n2" );
+		try ( CSVFeeder feeder = new CSVFeeder( file.toString(), FeederMode.EXHAUST ) ) {
+			assertThat( feeder.next().get( Key.of( "id" ) ) ).isEqualTo( "1" );
+			assertThat( feeder.next().get( Key.of( "id" ) ) ).isEqualTo( "2" );
+			assertThat( feeder.next() ).isNull();
+			assertThat( feeder.next() ).isNull();
+		}
+	}
+
+	@DisplayName( "It never circles forever over a file without records" )
+	@Test
+	public void testEmptyCircular() throws IOException {
+		Path file = write( "empty.csv", "id\n" );
+		try ( CSVFeeder feeder = new CSVFeeder( file.toString(), FeederMode.CIRCULAR ) ) {
+			assertThat( feeder.next() ).isNull();
+		}
+		try ( CSVFeeder feeder = new CSVFeeder( file.toString(), FeederMode.RANDOM ) ) {
+			assertThat( feeder.next() ).isNull();
+		}
+	}
+
+	@DisplayName( "It picks whole random lines" )
+	@Test
+	public void testRandom() throws IOException {
+		StringBuilder content = new StringBuilder( "id,padding\n" );
+		for ( int i = 0; i < 50; i++ ) {
+			content.append( i ).append( ',' ).append( "x".repeat( i ) ).append( '\n' );
+		}
+		Path		file	= write( "random.csv", content.toString() );
+		Set<String>	seen	= new HashSet<>();
+		try ( CSVFeeder feeder = new CSVFeeder( file.toString(), FeederMode.RANDOM ) ) {
+			for ( int i = 0; i < 2000; i++ ) {
+				IStruct	record	= feeder.next();
+				String	id		= ( String ) record.get( Key.of( "id" ) );
+				assertThat( ( String ) record.get( Key.of( "padding" ) ) ).hasLength( Integer.parseInt( id ) );
+				seen.add( id );
+			}
+		}
+		assertThat( seen.size() ).isGreaterThan( 40 );
+	}
+
+	@DisplayName( "It rejects CSV files without a header and unknown modes" )
+	@Test
+	public void testInvalid() throws IOException {
+		Path file = write( "blank.csv", "" );
+		assertThrows( BoxRuntimeException.class, () -> new CSVFeeder( file.toString(), FeederMode.CIRCULAR ) );
+		assertThrows( BoxRuntimeException.class, () -> new CSVFeeder( this.tempDir.resolve( "missing.csv" ).toString(), FeederMode.CIRCULAR ) );
+		assertThrows( BoxRuntimeException.class, () -> FeederMode.fromString( "shuffle" ) );
+		assertThat( FeederMode.fromString( "" ) ).isEqualTo( FeederMode.CIRCULAR );
+	}
+
+	@DisplayName( "It renders placeholders, URL encoding on demand" )
+	@Test
+	public void testTemplate() {
+		IStruct record = new Struct();
+		record.put( Key.of( "id" ), "a b/c" );
+		record.put( Key.of( "tab" ), 2 );
+
+		Template template = new Template( "/users/${id}/tabs/${ tab }" );
+		assertThat( template.isDynamic() ).isTrue();
+		assertThat( template.render( record, false ) ).isEqualTo( "/users/a b/c/tabs/2" );
+		assertThat( template.render( record, true ) ).isEqualTo( "/users/a%20b%2Fc/tabs/2" );
+
+		Template plain = new Template( "/static" );
+		assertThat( plain.isDynamic() ).isFalse();
+		assertThat( plain.render( null, true ) ).isSameInstanceAs( plain.getSource() );
+
+		assertThrows( BoxRuntimeException.class, () -> new Template( "/users/${id" ) );
+		assertThrows( BoxRuntimeException.class, () -> new Template( "/users/${missing}" ).render( record, false ) );
+	}
+
+}
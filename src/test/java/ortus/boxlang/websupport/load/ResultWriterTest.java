@@ -0,0 +1,128 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.HdrHistogram.EncodableHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+public class ResultWriterTest {
+
+	@TempDir
+	Path tempDir;
+
+	private static RequestResult result( int i, String error ) {
+		return new RequestResult( 1_700_000_000_000L + i, "GET", "/users/" + i, error == null ? 200 : 0, 2_500_000L + i, 1_000_000L, 512, -1,
+		    4096, error );
+	}
+
+	@DisplayName( "It streams JSON lines past the buffer size" )
+	@Test
+	public void testJSONL() throws IOException {
+		Path file = this.tempDir.resolve( "out/results.jsonl" );
+		try ( ResultWriter writer = new ResultWriter( file.toString(), ResultFormat.fromString( "", file.toString() ) ) ) {
+			for ( int i = 0; i < 5000; i++ ) {
+				writer.accept( result( i, i == 7 ? "Boom \"quoted\"\n" : null ) );
+			}
+			assertThat( writer.getRecordCount() ).isEqualTo( 5000 );
+		}
+
+		List<String> lines = Files.readAllLines( file );
+		assertThat( lines ).hasSize( 5000 );
+		assertThat( lines.get( 0 ) ).isEqualTo(
+		    "{\"timestamp\":1700000000000,\"method\":\"GET\",\"path\":\"/users/0\",\"status\":200,\"latencyMs\":2.5,\"serviceMs\":1.0,"
+		        + "\"bytes\":512,\"cpuMs\":-1,\"allocatedBytes\":4096,\"error\":null}" );
+		assertThat( lines.get( 7 ) ).contains( "\"error\":\"Boom \\\"quoted\\\"\\n\"" );
+		assertThat( lines.get( 4999 ) ).contains( "\"path\":\"/users/4999\"" );
+	}
+
+	@DisplayName( "It writes CSV with a header and quotes fields when needed" )
+	@Test
+	public void testCSV() throws IOException {
+		Path file = this.tempDir.resolve( "results.csv" );
+		try ( ResultWriter writer = new ResultWriter( file.toString(), ResultFormat.CSV ) ) {
+			writer.accept( result( 1, null ) );
+			writer.accept( result( 2, "Failed, badly" ) );
+		}
+
+		List<String> lines = Files.readAllLines( file );
+		assertThat( lines ).containsExactly(
+		    "timestamp,method,path,status,latencyMs,serviceMs,bytes,cpuMs,allocatedBytes,error",
+		    "1700000000001,GET,/users/1,200,2.500001,1.0,512,-1,4096,",
+		    "1700000000002,GET,/users/2,0,2.500002,1.0,512,-1,4096,\"Failed, badly\""
+		).inOrder();
+	}
+
+	@DisplayName( "It logs interval histograms in HdrHistogram log format" )
+	@Test
+	public void testHistogramLog() throws IOException, InterruptedException {
+		Path	file	= this.tempDir.resolve( "results.jsonl" );
+		Path	log		= this.tempDir.resolve( "latency.hlog" );
+		try ( ResultWriter writer = new ResultWriter( file.toString(), ResultFormat.JSONL, log.toString(), 50 ) ) {
+			for ( int i = 0; i < 100; i++ ) {
+				writer.accept( result( i, null ) );
+			}
+			Thread.sleep( 120 );
+			writer.accept( result( 100, null ) );
+		}
+
+		long				total	= 0;
+		int					intervals	= 0;
+		HistogramLogReader	reader	= new HistogramLogReader( log.toFile() );
+		EncodableHistogram	interval;
+		while ( ( interval = reader.nextIntervalHistogram() ) != null ) {
+			total += ( ( Histogram ) interval ).getTotalCount();
+			intervals++;
+		}
+		assertThat( total ).isEqualTo( 101 );
+		assertThat( intervals ).isAtLeast( 2 );
+	}
+
+	@DisplayName( "It logs interval histograms without a records file" )
+	@Test
+	public void testHistogramLogOnly() throws IOException {
+		Path log = this.tempDir.resolve( "only.hlog" );
+		try ( ResultWriter writer = new ResultWriter( "", ResultFormat.fromString( "", "" ), log.toString(), 1_000 ) ) {
+			for ( int i = 0; i < 10; i++ ) {
+				writer.accept( result( i, null ) );
+			}
+			assertThat( writer.getFile() ).isEmpty();
+			assertThat( writer.getRecordCount() ).isEqualTo( 0L );
+		}
+
+		long				total	= 0;
+		HistogramLogReader	reader	= new HistogramLogReader( log.toFile() );
+		EncodableHistogram	interval;
+		while ( ( interval = reader.nextIntervalHistogram() ) != null ) {
+			total += ( ( Histogram ) interval ).getTotalCount();
+		}
+		assertThat( total ).isEqualTo( 10 );
+		assertThrows( BoxRuntimeException.class, () -> new ResultWriter( "", ResultFormat.JSONL, "", 1_000 ) );
+	}
+
+}
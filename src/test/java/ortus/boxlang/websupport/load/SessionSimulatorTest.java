@@ -0,0 +1,85 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.websupport.BaseIntegrationTest;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+
+public class SessionSimulatorTest extends BaseIntegrationTest {
+
+	@DisplayName( "It creates one session per identity and replays the cookies" )
+	@Test
+	public void testSimulateSessions() {
+		RequestSpec	spec	= new RequestSpec( Path.of( "src/test/resources/webroot" ).toString(), "localhost", 8080, false )
+		    .setPath( "/sessions/touch.bxm" );
+
+		IStruct		report	= new SessionSimulator( spec, null )
+		    .setSessions( 20 )
+		    .setSteps( 2 )
+		    .setParallelism( 2 )
+		    .setLookupSample( 5 )
+		    .run();
+
+		assertThat( report.get( Key.of( "errors" ) ) ).isEqualTo( 0L );
+		Array	steps	= ( Array ) report.get( Key.of( "steps" ) );
+		IStruct	last	= ( IStruct ) steps.get( 1 );
+		assertThat( steps ).hasSize( 2 );
+		assertThat( last.get( Key.of( "sessions" ) ) ).isEqualTo( 20 );
+		// Revisits send the cookies back, so they do not create sessions
+		assertThat( last.get( Key.of( "trackedSessions" ) ) ).isEqualTo( 20L );
+		assertThat( report.containsKey( Key.of( "expiration" ) ) ).isFalse();
+	}
+
+	@DisplayName( "It lets the sessions expire through the runtime and reports when they were reclaimed" )
+	@Test
+	public void testExpireSessions() {
+		String		webroot	= Path.of( "src/test/resources/webroot" ).toString();
+		RequestSpec	spec	= new RequestSpec( webroot, "localhost", 8080, false ).setPath( "/sessions/expiry/touch.bxm" );
+
+		// The application expires its sessions after 2 idle seconds
+		IStruct		report	= new SessionSimulator( spec, null )
+		    .setSessions( 10 )
+		    .setSteps( 1 )
+		    .setParallelism( 2 )
+		    .setLookupSample( 0 )
+		    .setExpiryTimeout( 30 )
+		    .setReapInterval( 100 )
+		    .run();
+
+		IStruct expiration = ( IStruct ) report.get( Key.of( "expiration" ) );
+		assertThat( expiration.get( Key.of( "sessions" ) ) ).isEqualTo( 10L );
+		assertThat( expiration.get( Key.of( "expired" ) ) ).isEqualTo( 10L );
+		assertThat( expiration.get( Key.of( "remainingSessions" ) ) ).isEqualTo( 0L );
+		assertThat( expiration.get( Key.of( "timedOut" ) ) ).isEqualTo( false );
+		assertThat( ( double ) expiration.get( Key.of( "expiredAfterMs" ) ) ).isAtLeast( 1_500.0 );
+		assertThat( ( long ) expiration.get( Key.of( "reaps" ) ) ).isGreaterThan( 1L );
+
+		// The removal went through the runtime, which ran onSessionEnd for every session
+		MockHTTPExchange ended = new RequestSpec( webroot, "localhost", 8080, false ).setPath( "/sessions/expiry/ended.bxm" ).toExchange( null );
+		ended.execute();
+		assertThat( ended.getResponseBody().trim() ).isEqualTo( "10" );
+	}
+
+}
@@ -0,0 +1,91 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class SignedRankTestTest {
+
+	@DisplayName( "It finds no difference between identical samples" )
+	@Test
+	public void testIdentical() {
+		SignedRankTest test = SignedRankTest.of( new double[ 50 ] );
+
+		assertThat( test.pairs() ).isEqualTo( 50 );
+		assertThat( test.median() ).isEqualTo( 0.0 );
+		assertThat( test.pValue() ).isEqualTo( 1.0 );
+	}
+
+	@DisplayName( "It detects a consistent shift in noisy pairs" )
+	@Test
+	public void testShift() {
+		Random		random		= new Random( 42 );
+		double[]	shifted		= new double[ 100 ];
+		double[]	noise		= new double[ 100 ];
+		for ( int i = 0; i < 100; i++ ) {
+			shifted[ i ]	= 2 + random.nextGaussian();
+			noise[ i ]		= random.nextGaussian();
+		}
+
+		SignedRankTest	slower	= SignedRankTest.of( shifted );
+		SignedRankTest	same	= SignedRankTest.of( noise );
+		assertThat( slower.pValue() ).isLessThan( 0.001 );
+		assertThat( slower.z() ).isGreaterThan( 0.0 );
+		assertThat( slower.median() ).isWithin( 0.5 ).of( 2.0 );
+		assertThat( same.pValue() ).isGreaterThan( 0.05 );
+	}
+
+	@DisplayName( "It matches the exact signed-rank statistic on a small sample with ties" )
+	@Test
+	public void testTies() {
+		// Ranks of |d|: 1 -> 1.5, 1 -> 1.5, 2 -> 3, 3 -> 4.5, 3 -> 4.5, W+ = 1.5 + 3 + 4.5 + 4.5 = 13.5 of 15
+		SignedRankTest	test		= SignedRankTest.of( new double[] { 1, -1, 2, 3, 3, 0 } );
+		double			mean		= 5 * 6 / 4.0;
+		double			variance	= 5 * 6 * 11 / 24.0 - ( 6 + 6 ) / 48.0;
+
+		assertThat( test.pairs() ).isEqualTo( 6 );
+		assertThat( test.z() ).isWithin( 1e-9 ).of( ( 13.5 - mean - 0.5 ) / Math.sqrt( variance ) );
+	}
+
+	@DisplayName( "It adjusts a family of p-values with Holm-Bonferroni" )
+	@Test
+	public void testHolm() {
+		double[] adjusted = SignedRankTest.holm( new double[] { 0.04, 0.01, 0.03, 0.5 } );
+
+		assertThat( adjusted[ 1 ] ).isWithin( 1e-12 ).of( 0.04 );
+		assertThat( adjusted[ 2 ] ).isWithin( 1e-12 ).of( 0.09 );
+		// 2 x 0.04 is below the previous step, so the adjusted values stay monotonic
+		assertThat( adjusted[ 0 ] ).isWithin( 1e-12 ).of( 0.09 );
+		assertThat( adjusted[ 3 ] ).isWithin( 1e-12 ).of( 0.5 );
+	}
+
+	@DisplayName( "It computes nearest-rank percentiles and the normal distribution" )
+	@Test
+	public void testPercentileAndNormal() {
+		double[] values = { 5, 1, 4, 2, 3 };
+
+		assertThat( SignedRankTest.percentile( values, 50 ) ).isEqualTo( 3.0 );
+		assertThat( SignedRankTest.percentile( values, 90 ) ).isEqualTo( 5.0 );
+		assertThat( SignedRankTest.percentile( new double[ 0 ], 50 ) ).isEqualTo( 0.0 );
+		assertThat( values[ 0 ] ).isEqualTo( 5.0 );
+		assertThat( SignedRankTest.normalCdf( 0 ) ).isWithin( 1e-7 ).of( 0.5 );
+		assertThat( SignedRankTest.normalCdf( 1.959964 ) ).isWithin( 1e-6 ).of( 0.975 );
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.websupport.BaseIntegrationTest;
+
+public class WebrootCrawlerTest extends BaseIntegrationTest {
+
+	@TempDir
+	Path tempDir;
+
+	private void touch( String... files ) throws IOException {
+		for ( String file : files ) {
+			Path path = this.tempDir.resolve( file );
+			Files.createDirectories( path.getParent() );
+			Files.writeString( path, "" );
+		}
+	}
+
+	@DisplayName( "It discovers routable templates with include and exclude globs" )
+	@Test
+	public void testDiscover() throws IOException {
+		touch( "index.cfm", "Application.cfc", "Application.cfm", "admin/users.cfm", "admin/report.bxm", "lib/Service.bx", ".git/hooks/x.cfm",
+		    "legacy/old.cfml" );
+
+		assertThat( new WebrootCrawler( this.tempDir.toString(), List.of(), null ).discover() )
+		    .containsExactly( "/admin/report.bxm", "/admin/users.cfm", "/index.cfm", "/legacy/old.cfml" )
+		    .inOrder();
+
+		assertThat( new WebrootCrawler( this.tempDir.toString(), List.of( "admin/**" ), List.of( "**/*.bxm" ) ).discover() )
+		    .containsExactly( "/admin/users.cfm" );
+	}
+
+	@DisplayName( "It executes every template and reports slowest first" )
+	@Test
+	public void testRun() {
+		IStruct report = new WebrootCrawler( Path.of( "src/test/resources/webroot" ).toString(), List.of(), null )
+		    .setParallelism( 2 )
+		    .setWarmup( true )
+		    .run();
+
+		Array results = ( Array ) report.get( Key.of( "results" ) );
+		assertThat( report.get( Key.of( "templates" ) ) ).isEqualTo( results.size() );
+		assertThat( results ).isNotEmpty();
+		double previous = Double.MAX_VALUE;
+		for ( Object entry : results ) {
+			IStruct	result	= ( IStruct ) entry;
+			double	latency	= ( double ) result.get( Key.of( "latencyMs" ) );
+			assertThat( latency ).isAtMost( previous );
+			previous = latency;
+		}
+		IStruct index = ( IStruct ) results.stream().filter( entry -> "/index.bxm".equals( ( ( IStruct ) entry ).get( Key.of( "path" ) ) ) ).findFirst().get();
+		assertThat( index.get( Key.of( "status" ) ) ).isEqualTo( 200 );
+		assertThat( ( long ) index.get( Key.of( "bytes" ) ) ).isGreaterThan( 0L );
+	}
+
+	@DisplayName( "It keeps the worst status across iterations" )
+	@Test
+	public void testWorstIteration() throws IOException {
+		// Only the second execution fails, the last one succeeds again
+		String counter = "crawler" + UUID.randomUUID().toString().replace( "-", "" );
+		Files.writeString( this.tempDir.resolve( "flaky.bxm" ), """
+		    <bx:script>
+		    	server.%1$s = ( server.%1$s ?: 0 ) + 1;
+		    	if ( server.%1$s == 2 ) {
+		    		throw( "flaky" );
+		    	}
+		    </bx:script>ok""".formatted( counter ) );
+
+		IStruct	report	= new WebrootCrawler( this.tempDir.toString(), List.of(), null )
+		    .setIterations( 3 )
+		    .run();
+
+		IStruct	result	= ( IStruct ) ( ( Array ) report.get( Key.of( "results" ) ) ).get( 0 );
+		assertThat( result.get( Key.of( "path" ) ) ).isEqualTo( "/flaky.bxm" );
+		assertThat( result.get( Key.of( "status" ) ) ).isEqualTo( 500 );
+		assertThat( ( ( IStruct ) report.get( Key.of( "statusCodes" ) ) ).get( Key.of( "500" ) ) ).isEqualTo( 1 );
+	}
+
+}
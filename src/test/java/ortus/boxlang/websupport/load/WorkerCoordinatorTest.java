@@ -0,0 +1,77 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.websupport.BaseIntegrationTest;
+
+public class WorkerCoordinatorTest extends BaseIntegrationTest {
+
+	@DisplayName( "It splits a run across worker processes and merges their results" )
+	@Test
+	public void testWorkers() {
+		variables.put( Key.of( "webroot" ), Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString() );
+
+		// @formatter:off
+		runtime.executeSource(
+		    """
+			result = mockLoadRun(
+				spec: mockRequestSpecNew( webroot: webroot, path: "/index.bxm", responseMode: "discard" ),
+				rate: 20,
+				duration: 2,
+				workers: 2
+			);
+			""",
+		    context
+		);
+		// @formatter:on
+
+		// 20 req/s for 2s is 40 arrivals, 20 in each worker
+		IStruct	result		= variables.getAsStruct( Key.of( "result" ) );
+		Array	perWorker	= ( Array ) result.get( Key.of( "perWorker" ) );
+		long	scheduled	= ( long ) result.get( Key.of( "scheduled" ) );
+		assertThat( result.get( Key.of( "workers" ) ) ).isEqualTo( 2 );
+		assertThat( perWorker ).hasSize( 2 );
+		assertThat( scheduled + ( long ) result.get( Key.of( "dropped" ) ) ).isEqualTo( 40L );
+		assertThat( result.get( Key.of( "completed" ) ) ).isEqualTo( scheduled );
+		assertThat( result.get( Key.of( "errors" ) ) ).isEqualTo( 0L );
+		assertThat( result.get( Key.of( "drained" ) ) ).isEqualTo( true );
+		assertThat( ( ( IStruct ) result.get( Key.of( "statusCodes" ) ) ).get( Key.of( "200" ) ) ).isEqualTo( scheduled );
+		assertThat( ( double ) result.get( Key.of( "startupMs" ) ) ).isGreaterThan( 0.0 );
+
+		// The merged histograms hold every request of every worker
+		long	latencyCount	= 0;
+		long	completed		= 0;
+		for ( Object worker : perWorker ) {
+			IStruct stats = ( IStruct ) worker;
+			assertThat( stats.get( Key.of( "scheduled" ) ) ).isEqualTo( 20L - ( long ) stats.get( Key.of( "dropped" ) ) );
+			latencyCount	+= ( long ) ( ( IStruct ) stats.get( Key.of( "latency" ) ) ).get( Key.of( "count" ) );
+			completed		+= ( long ) stats.get( Key.of( "completed" ) );
+		}
+		assertThat( ( ( IStruct ) result.get( Key.of( "latency" ) ) ).get( Key.of( "count" ) ) ).isEqualTo( latencyCount );
+		assertThat( completed ).isEqualTo( scheduled );
+		assertThat( ( ( IStruct ) perWorker.get( 0 ) ).get( Key.of( "pid" ) ) )
+		    .isNotEqualTo( ( ( IStruct ) perWorker.get( 1 ) ).get( Key.of( "pid" ) ) );
+	}
+}
@@ -0,0 +1,180 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.load;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.websupport.cache.HttpCache;
+import ortus.boxlang.websupport.exchange.ResponseMode;
+import ortus.boxlang.websupport.exchange.SlowClient;
+import ortus.boxlang.websupport.load.ArrivalRateScheduler.Stage;
+import ortus.boxlang.websupport.load.WorkerProtocol.Job;
+import ortus.boxlang.websupport.load.WorkerProtocol.Result;
+
+public class WorkerProtocolTest {
+
+	@TempDir
+	Path tempDir;
+
+	private interface Writer {
+
+		void write( DataOutputStream out ) throws IOException;
+	}
+
+	private static DataInputStream roundTrip( Writer writer ) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try ( DataOutputStream out = new DataOutputStream( bytes ) ) {
+			writer.write( out );
+		}
+		return new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) );
+	}
+
+	private static byte[] bytesOf( RequestSpec spec ) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try ( DataOutputStream out = new DataOutputStream( bytes ) ) {
+			spec.writeTo( out );
+		}
+		return bytes.toByteArray();
+	}
+
+	private static RequestSpec newSpec() {
+		return new RequestSpec( "/srv/www", "localhost", 8443, true )
+		    .setMethod( "post" )
+		    .setPath( "/users/${id}?tab=${tab}" )
+		    .setBody( "{\"name\":\"${name}\"}" )
+		    .setContentType( "application/json" )
+		    .addHeader( "X-User", "${id}" )
+		    .setResponseMode( "checksum" )
+		    .setSlowClient( new SlowClient( 1_000, 2_000, 4_096 ) );
+	}
+
+	@DisplayName( "It transfers a request spec with its templates" )
+	@Test
+	public void testSpec() throws IOException {
+		RequestSpec	spec	= newSpec();
+		RequestSpec	copy	= RequestSpec.readFrom( roundTrip( spec::writeTo ) );
+
+		assertThat( copy.getWebroot() ).isEqualTo( "/srv/www" );
+		assertThat( copy.getRoute() ).isEqualTo( "POST /users/${id}" );
+		assertThat( copy.getPath() ).isEqualTo( "/users/${id}?tab=${tab}" );
+		assertThat( copy.getResponseMode() ).isEqualTo( ResponseMode.CHECKSUM );
+		// Everything else survives a second trip unchanged
+		assertThat( bytesOf( copy ) ).isEqualTo( bytesOf( spec ) );
+	}
+
+	@DisplayName( "It refuses to transfer a spec served through an HTTP cache" )
+	@Test
+	public void testSpecWithCache() {
+		RequestSpec spec = newSpec().setHttpCache( new HttpCache() );
+		assertThrows( BoxRuntimeException.class, () -> roundTrip( spec::writeTo ) );
+	}
+
+	@DisplayName( "It transfers a job" )
+	@Test
+	public void testJob() throws IOException {
+		Job	job		= new Job( 1, 4, newSpec(), WorkerProtocol.NO_FEEDER, "", FeederMode.CIRCULAR, ';',
+		    List.of( new Stage( 5_000, 0, 25 ), new Stage( 10_000, 25, 25 ) ), 250, 30_000, false, 10_000_000 );
+		Job	copy	= Job.readFrom( roundTrip( job::writeTo ) );
+
+		assertThat( copy.index() ).isEqualTo( 1 );
+		assertThat( copy.workers() ).isEqualTo( 4 );
+		assertThat( copy.stages() ).isEqualTo( job.stages() );
+		assertThat( copy.delimiter() ).isEqualTo( ';' );
+		assertThat( copy.maxInFlight() ).isEqualTo( 250 );
+		assertThat( copy.drainTimeout() ).isEqualTo( 30_000L );
+		assertThat( copy.virtualThreads() ).isFalse();
+		assertThat( copy.startDelay() ).isEqualTo( 10_000_000L );
+		assertThat( copy.openFeeder() ).isNull();
+	}
+
+	@DisplayName( "It transfers a result with its histograms" )
+	@Test
+	public void testResult() throws IOException {
+		Histogram latency = new Histogram( 3 );
+		for ( long value = 1; value <= 1_000; value++ ) {
+			latency.recordValue( value * 1_000_000 );
+		}
+		Result			result	= new Result( 42, 1_000, 998, 2, 3, true, 10_000.5, Map.of( "200", 995L, "0", 3L ), latency, new Histogram( 3 ) );
+		DataInputStream	in		= roundTrip( result::writeTo );
+		assertThat( in.readByte() ).isEqualTo( WorkerProtocol.RESULT );
+		Result copy = Result.readFrom( in );
+
+		assertThat( copy.pid() ).isEqualTo( 42L );
+		assertThat( copy.completed() ).isEqualTo( 998L );
+		assertThat( copy.durationMs() ).isEqualTo( 10_000.5 );
+		assertThat( copy.statusCodes() ).containsExactly( "200", 995L, "0", 3L );
+		assertThat( copy.latency() ).isEqualTo( latency );
+		assertThat( copy.serviceTime().getTotalCount() ).isEqualTo( 0L );
+	}
+
+	@DisplayName( "It partitions an exhaust feeder between the workers" )
+	@Test
+	public void testPartitionedFeeder() throws IOException {
+		Path			file	= Files.writeString( this.tempDir.resolve( "ids.csv" ), "id\n1\n2\n3\n4\n5\n", StandardCharsets.UTF_8 );
+		List<String>	seen	= new ArrayList<>();
+		for ( int index = 0; index < 2; index++ ) {
+			Job job = new Job( index, 2, newSpec(), WorkerProtocol.CSV_FEEDER, file.toString(), FeederMode.EXHAUST, ',',
+			    List.of( new Stage( 1_000, 1, 1 ) ), 10, 1_000, true, 0 );
+			try ( IFeeder feeder = job.openFeeder() ) {
+				for ( IStruct record = feeder.next(); record != null; record = feeder.next() ) {
+					seen.add( index + ":" + record.get( Key.of( "id" ) ) );
+				}
+			}
+		}
+		assertThat( seen ).containsExactly( "0:1", "0:3", "0:5", "1:2", "1:4" ).inOrder();
+	}
+
+	@DisplayName( "It finds the process a worker connected from by its pid" )
+	@Test
+	public void testSpawnIndex() throws IOException, InterruptedException {
+		String			java		= Path.of( System.getProperty( "java.home" ), "bin", "java" ).toString();
+		List<Process>	processes	= new ArrayList<>();
+		for ( int i = 0; i < 2; i++ ) {
+			processes.add( new ProcessBuilder( java, "-version" ).redirectErrorStream( true ).start() );
+		}
+		try {
+			assertThat( WorkerCoordinator.spawnIndex( processes, processes.get( 1 ).pid() ) ).isEqualTo( 1 );
+			assertThat( WorkerCoordinator.spawnIndex( processes, processes.get( 0 ).pid() ) ).isEqualTo( 0 );
+			assertThrows( BoxRuntimeException.class, () -> WorkerCoordinator.spawnIndex( processes, -1 ) );
+		} finally {
+			for ( Process process : processes ) {
+				process.getInputStream().transferTo( OutputStream.nullOutputStream() );
+				process.waitFor();
+			}
+		}
+	}
+}
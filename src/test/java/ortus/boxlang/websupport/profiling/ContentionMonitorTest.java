@@ -0,0 +1,116 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+
+public class ContentionMonitorTest {
+
+	private final Object lock = new Object();
+
+	private void holdLock( CountDownLatch held, CountDownLatch release ) {
+		synchronized ( this.lock ) {
+			held.countDown();
+			try {
+				release.await();
+			} catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void enterLock( ContentionMonitor monitor ) {
+		monitor.begin();
+		try {
+			synchronized ( this.lock ) {
+				Thread.onSpinWait();
+			}
+		} finally {
+			monitor.end();
+		}
+	}
+
+	@DisplayName( "It attributes blocked threads to the lock, its stack and its owner" )
+	@Test
+	public void testBlockedOnMonitor() throws Exception {
+		ContentionMonitor	monitor	= new ContentionMonitor( 60_000, 16 );
+		CountDownLatch		held	= new CountDownLatch( 1 );
+		CountDownLatch		release	= new CountDownLatch( 1 );
+
+		Thread				owner	= new Thread( () -> holdLock( held, release ), "lock-owner" );
+		owner.start();
+		held.await();
+		Thread worker = new Thread( () -> enterLock( monitor ), "lock-worker" );
+		worker.start();
+		while ( worker.getState() != Thread.State.BLOCKED ) {
+			Thread.onSpinWait();
+		}
+		Thread.sleep( 20 );
+
+		monitor.sample();
+		monitor.sample();
+		release.countDown();
+		worker.join();
+		owner.join();
+		monitor.shutdown();
+
+		IStruct report = monitor.toStruct();
+		assertThat( report.get( Key.of( "samples" ) ) ).isEqualTo( 2L );
+		assertThat( report.get( Key.of( "executions" ) ) ).isEqualTo( 1L );
+		assertThat( ( ( IStruct ) report.get( Key.of( "states" ) ) ).get( Key.of( "BLOCKED" ) ) ).isEqualTo( 2L );
+		assertThat( report.get( Key.of( "blockedRatio" ) ) ).isEqualTo( 1.0 );
+
+		IStruct site = ( IStruct ) ( ( Array ) report.get( Key.of( "locks" ) ) ).get( 0 );
+		assertThat( site.get( Key.of( "lock" ) ) ).isEqualTo( "java.lang.Object" );
+		assertThat( site.get( Key.of( "blocked" ) ) ).isEqualTo( 2L );
+		assertThat( ( String ) site.get( Key.of( "stack" ) ) ).contains( "ContentionMonitorTest.enterLock" );
+		IStruct holder = ( IStruct ) ( ( Array ) site.get( Key.of( "owners" ) ) ).get( 0 );
+		assertThat( ( String ) holder.get( Key.of( "stack" ) ) ).startsWith( "lock-owner;" );
+		assertThat( ( String ) holder.get( Key.of( "stack" ) ) ).contains( "ContentionMonitorTest.holdLock" );
+		assertThat( monitor.getCollapsedStacks() ).startsWith( "java.lang.Object;" );
+
+		// The blocked time is exact on platform threads
+		IStruct timing = ( IStruct ) ( ( Array ) report.get( Key.of( "workers" ) ) ).get( 0 );
+		assertThat( timing.get( Key.of( "thread" ) ) ).isEqualTo( "lock-worker" );
+		assertThat( timing.get( Key.of( "blockedCount" ) ) ).isEqualTo( 1L );
+		assertThat( ( double ) timing.get( Key.of( "blockedMs" ) ) ).isAtLeast( 10.0 );
+		assertThat( report.get( Key.of( "timedExecutions" ) ) ).isEqualTo( 1L );
+	}
+
+	@DisplayName( "It leaves contention monitoring as it found it" )
+	@Test
+	public void testRestoresMonitoring() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		threads.setThreadContentionMonitoringEnabled( false );
+		ContentionMonitor monitor = new ContentionMonitor();
+		monitor.begin();
+		assertThat( threads.isThreadContentionMonitoringEnabled() ).isTrue();
+		monitor.end();
+		monitor.shutdown();
+		assertThat( threads.isThreadContentionMonitoringEnabled() ).isFalse();
+		assertThat( monitor.toStruct().get( Key.of( "timedExecutions" ) ) ).isEqualTo( 1L );
+	}
+}
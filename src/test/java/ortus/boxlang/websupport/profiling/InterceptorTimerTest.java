@@ -0,0 +1,118 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ortus.boxlang.runtime.events.InterceptorPool;
+import ortus.boxlang.runtime.interop.DynamicObject;
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.websupport.BaseIntegrationTest;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+
+public class InterceptorTimerTest extends BaseIntegrationTest {
+
+	private static final String	WEBROOT				= Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString();
+
+	private static final Key	ON_REQUEST_START	= Key.of( "onRequestStart" );
+
+	private static final Key	PRE_TEMPLATE_INVOKE	= Key.of( "preTemplateInvoke" );
+
+	private static final Key	ON_MOCK_TIMED		= Key.of( "onMockTimed" );
+
+	/**
+	 * An interceptor of a runtime point and of a custom point, slow enough to be measured
+	 */
+	public static class SlowInterceptor {
+
+		public void preTemplateInvoke( IStruct data ) throws InterruptedException {
+			Thread.sleep( 2 );
+		}
+
+		public void onMockTimed( IStruct data ) throws InterruptedException {
+			Thread.sleep( 2 );
+		}
+	}
+
+	@DisplayName( "It attributes the time between markers to the interceptor that ran between them" )
+	@Test
+	public void testAttributesTimePerInterceptor() {
+		InterceptorTimer			timer		= InterceptorTimer.getShared();
+		InterceptorTimer.Recording	recording	= new InterceptorTimer.Recording();
+
+		// head, security (3ms), logging (1ms, tail)
+		recording.mark( new TimingMarker( timer, ON_REQUEST_START, null, true, false ), 0 );
+		recording.mark( new TimingMarker( timer, ON_REQUEST_START, "app.Security", false, false ), 3_000_000 );
+		recording.mark( new TimingMarker( timer, ON_REQUEST_START, "app.Logging", false, true ), 4_000_000 );
+
+		IStruct point = recording.toStruct().getAsStruct( ON_REQUEST_START );
+		assertThat( point.get( Key.of( "count" ) ) ).isEqualTo( 1L );
+		assertThat( point.get( Key.of( "totalMs" ) ) ).isEqualTo( 4.0 );
+
+		IStruct interceptors = point.getAsStruct( Key.of( "interceptors" ) );
+		assertThat( interceptors.getKeysAsStrings() ).containsExactly( "app.Security", "app.Logging" ).inOrder();
+		assertThat( interceptors.getAsStruct( Key.of( "app.Security" ) ).get( Key.of( "totalMs" ) ) ).isEqualTo( 3.0 );
+		assertThat( interceptors.getAsStruct( Key.of( "app.Logging" ) ).get( Key.of( "totalMs" ) ) ).isEqualTo( 1.0 );
+	}
+
+	@DisplayName( "It accepts runtime and custom interception points" )
+	@Test
+	public void testPoints() {
+		InterceptorTimer timer = new InterceptorTimer( List.of( "onRequestStart", "preFunctionInvoke" ) ).addPoints( List.of( "onSomethingCustom", "onRequestStart" ) );
+		assertThat( timer.getPoints() ).containsExactly( "onRequestStart", "preFunctionInvoke", "onSomethingCustom" ).inOrder();
+		assertThrows( BoxRuntimeException.class, () -> new InterceptorTimer( List.of( " " ) ) );
+	}
+
+	@DisplayName( "It fires markers around the interceptors of a real execution and of a custom point" )
+	@Test
+	public void testTimesExecution() {
+		InterceptorPool	pool		= runtime.getInterceptorService();
+		DynamicObject	interceptor	= DynamicObject.of( new SlowInterceptor() );
+		pool.registerInterceptionPoint( ON_MOCK_TIMED );
+		pool.register( interceptor, PRE_TEMPLATE_INVOKE, ON_MOCK_TIMED );
+		try {
+			InterceptorTimer	timer		= new InterceptorTimer( List.of( "preTemplateInvoke", "onMockTimed" ) );
+			MockHTTPExchange	exchange	= new MockHTTPExchange( WEBROOT, "localhost", 8080, false, context );
+			exchange.setInterceptorTimer( timer );
+			exchange.execute( "/index.bxm", "GET" );
+
+			IStruct point = exchange.getInterceptorTimings().getAsStruct( PRE_TEMPLATE_INVOKE );
+			assertThat( ( long ) point.get( Key.of( "count" ) ) ).isAtLeast( 1L );
+			assertThat( ( double ) point.get( Key.of( "totalMs" ) ) ).isAtLeast( 2.0 );
+			IStruct timed = point.getAsStruct( Key.of( "interceptors" ) ).getAsStruct( Key.of( SlowInterceptor.class.getName() ) );
+			assertThat( ( double ) timed.get( Key.of( "totalMs" ) ) ).isAtLeast( 2.0 );
+
+			// A custom point, announced on the timed thread
+			timer.begin();
+			pool.announce( ON_MOCK_TIMED, new Struct() );
+			IStruct custom = timer.end().getAsStruct( ON_MOCK_TIMED );
+			assertThat( custom.get( Key.of( "count" ) ) ).isEqualTo( 1L );
+			assertThat( ( double ) custom.get( Key.of( "totalMs" ) ) ).isAtLeast( 2.0 );
+		} finally {
+			pool.unregister( interceptor, PRE_TEMPLATE_INVOKE, ON_MOCK_TIMED );
+		}
+	}
+
+}
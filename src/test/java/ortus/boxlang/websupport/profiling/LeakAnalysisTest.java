@@ -0,0 +1,83 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LeakAnalysisTest {
+
+	@DisplayName( "It tells steady growth from noise" )
+	@Test
+	public void testTrend() {
+		double[]	x		= { 0, 100, 200, 300, 400 };
+		Trend		growing	= Trend.fit( x, new double[] { 1000, 1100, 1210, 1290, 1400 } );
+		assertThat( growing.slope() ).isWithin( 0.01 ).of( 0.99 );
+		assertThat( growing.r2() ).isGreaterThan( 0.99 );
+		assertThat( growing.isGrowing( 400, 100, 0.8 ) ).isTrue();
+		assertThat( growing.isGrowing( 400, 1000, 0.8 ) ).isFalse();
+
+		Trend noise = Trend.fit( x, new double[] { 1000, 1400, 900, 1300, 1050 } );
+		assertThat( noise.isGrowing( 400, 10, 0.8 ) ).isFalse();
+
+		Trend flat = Trend.fit( x, new double[] { 5, 5, 5, 5, 5 } );
+		assertThat( flat.slope() ).isEqualTo( 0.0 );
+		assertThat( flat.r2() ).isEqualTo( 1.0 );
+		assertThat( flat.isGrowing( 400, 0, 0.8 ) ).isFalse();
+
+		assertThat( Trend.fit( new double[] { 0, 1 }, new double[] { 0, 100 } ).isGrowing( 1, 10, 0.8 ) ).isFalse();
+	}
+
+	@DisplayName( "It counts scope entries deeply and once" )
+	@Test
+	public void testScopeMeter() {
+		Map<String, Object>	scope	= new HashMap<>();
+		List<Object>		cache	= new ArrayList<>( List.of( "a", "b", "c" ) );
+		scope.put( "name", "app" );
+		scope.put( "cache", cache );
+		scope.put( "alias", cache );
+		scope.put( "self", scope );
+		scope.put( "pair", new Object[] { 1, Map.of( "k", "v" ) } );
+
+		// 5 top level entries, 3 cache elements walked once, 2 array elements and 1 nested map entry
+		assertThat( ScopeMeter.countEntries( scope, ScopeMeter.DEFAULT_LIMIT ) ).isEqualTo( 11 );
+		assertThat( ScopeMeter.countEntries( scope, 4 ) ).isEqualTo( 4 );
+		assertThat( ScopeMeter.countEntries( null, 10 ) ).isEqualTo( 0 );
+	}
+
+	@DisplayName( "It counts the live instances of tracked classes" )
+	@Test
+	public void testLiveInstances() {
+		List<Object>		retained	= new ArrayList<>();
+		for ( int i = 0; i < 64; i++ ) {
+			retained.add( new Marker() );
+		}
+		Map<String, Long>	counts		= HeapSampler.liveInstances( List.of( Marker.class.getName(), "no.such.Class" ) );
+
+		assertThat( counts.get( "no.such.Class" ) ).isEqualTo( 0L );
+		assertThat( counts.get( Marker.class.getName() ) ).isEqualTo( ( long ) retained.size() );
+		assertThat( HeapSampler.heapAfterGC() ).isGreaterThan( 0L );
+	}
+
+	private static final class Marker {
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.websupport.BaseIntegrationTest;
+import ortus.boxlang.websupport.load.RequestSpec;
+
+public class LeakDetectorTest extends BaseIntegrationTest {
+
+	private static final String WEBROOT = Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString();
+
+	@DisplayName( "It flags a growing application scope and keeps a single session" )
+	@Test
+	public void testRun() {
+		RequestSpec	spec	= new RequestSpec( WEBROOT, "localhost", 8080, false ).setPath( "/leak/grow.bxm" );
+		IStruct		report	= new LeakDetector( spec, null )
+		    .setWarmup( 5 )
+		    .setIterations( 50 )
+		    .setSampleEvery( 10 )
+		    .run();
+
+		assertThat( report.get( Key.of( "errors" ) ) ).isEqualTo( 0L );
+		assertThat( report.get( Key.of( "serverErrors" ) ) ).isEqualTo( 0L );
+
+		Array suspects = ( Array ) report.get( Key.of( "suspects" ) );
+		assertThat( suspects ).contains( "applicationEntries" );
+		assertThat( suspects ).doesNotContain( "sessions" );
+		assertThat( suspects ).doesNotContain( "sessionEntries" );
+		assertThat( report.get( Key.of( "leaking" ) ) ).isEqualTo( true );
+
+		// The session cookie is sent back, so every sample sees the one session of the warmup
+		Array samples = ( Array ) report.get( Key.of( "samples" ) );
+		assertThat( samples ).hasSize( 6 );
+		samples.forEach( sample -> assertThat( ( ( IStruct ) sample ).get( Key.of( "sessions" ) ) ).isEqualTo( 1L ) );
+	}
+
+}
@@ -0,0 +1,117 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.websupport.BaseIntegrationTest;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+
+public class QueryProfilerTest extends BaseIntegrationTest {
+
+	private static final String WEBROOT = Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString();
+
+	private static IStruct first( IStruct profile, String list ) {
+		return ( IStruct ) ( ( Array ) profile.get( Key.of( list ) ) ).get( 0 );
+	}
+
+	@DisplayName( "It normalizes literals, parameters, lists, comments, whitespace and case" )
+	@Test
+	public void testNormalize() {
+		assertThat( QueryProfiler.normalize( "SELECT *  FROM users\n WHERE id = 42 AND name = 'O''Brien' -- lookup" ) )
+		    .isEqualTo( "select * from users where id = ? and name = ?" );
+		assertThat( QueryProfiler.normalize( "select * from orders where user_id IN (1, 2, 3) and status = :status /* hint */ and total > 1.5e3" ) )
+		    .isEqualTo( "select * from orders where user_id in (?) and status = ? and total > ?" );
+		assertThat( QueryProfiler.normalize( "SELECT col1, \"Order Items\".Qty FROM t2 WHERE created::date = ?" ) )
+		    .isEqualTo( "select col1, \"Order Items\".qty from t2 where created::date = ?" );
+	}
+
+	@DisplayName( "It flags repeated shapes as N+1 or duplicates and aggregates them across executions" )
+	@Test
+	public void testFlagsRepeatedShapes() {
+		QueryProfiler.Recording recording = new QueryProfiler.Recording( 3, 2 );
+		recording.add( "SELECT id FROM customers", null, 2_000_000, 3, () -> "list.bxm" );
+		for ( int id = 1; id <= 3; id++ ) {
+			recording.add( "SELECT * FROM orders WHERE customer_id = ?", Array.of( id ), 1_000_000, 2, () -> "list.bxm" );
+			recording.add( "SELECT * FROM settings WHERE name = 'theme'", null, 500_000, -1, () -> "layout.bxm" );
+		}
+
+		IStruct profile = recording.toStruct();
+		assertThat( profile.get( Key.of( "queries" ) ) ).isEqualTo( 7L );
+		assertThat( profile.get( Key.of( "totalMs" ) ) ).isEqualTo( 6.5 );
+		assertThat( profile.get( Key.of( "rows" ) ) ).isEqualTo( 9L );
+		assertThat( profile.get( Key.of( "truncated" ) ) ).isEqualTo( 5L );
+		assertThat( ( Array ) profile.get( Key.of( "shapes" ) ) ).hasSize( 3 );
+		assertThat( ( Array ) profile.get( Key.of( "nPlusOne" ) ) ).hasSize( 1 );
+		assertThat( ( Array ) profile.get( Key.of( "duplicates" ) ) ).hasSize( 1 );
+
+		IStruct nPlusOne = first( profile, "nPlusOne" );
+		assertThat( nPlusOne.get( Key.of( "sql" ) ) ).isEqualTo( "select * from orders where customer_id = ?" );
+		assertThat( nPlusOne.get( Key.of( "count" ) ) ).isEqualTo( 3L );
+		assertThat( nPlusOne.get( Key.of( "distinctParameters" ) ) ).isEqualTo( 3 );
+		assertThat( nPlusOne.get( Key.of( "origin" ) ) ).isEqualTo( "list.bxm" );
+		assertThat( first( profile, "duplicates" ).get( Key.of( "distinctParameters" ) ) ).isEqualTo( 1 );
+
+		QueryProfiler.Recording aggregate = new QueryProfiler.Recording( 3, 0 );
+		aggregate.merge( recording );
+		aggregate.merge( recording );
+		IStruct stats = aggregate.toStats();
+		assertThat( stats.get( Key.of( "executions" ) ) ).isEqualTo( 2L );
+		assertThat( stats.get( Key.of( "queriesPerExecution" ) ) ).isEqualTo( 7.0 );
+		assertThat( first( stats, "nPlusOne" ).get( Key.of( "nPlusOneExecutions" ) ) ).isEqualTo( 2L );
+
+		assertThrows( BoxRuntimeException.class, () -> new QueryProfiler( 1, 100 ) );
+	}
+
+	@DisplayName( "It profiles the queries of an execution against an embedded database" )
+	@Test
+	public void testProfilesExecution() {
+		// The first execution also runs onApplicationStart, which creates and fills the tables
+		new MockHTTPExchange( WEBROOT, "localhost", 8080, false, context ).execute( "/queries/orders.bxm", "GET" );
+
+		QueryProfiler		profiler	= new QueryProfiler();
+		MockHTTPExchange	exchange	= new MockHTTPExchange( WEBROOT, "localhost", 8080, false, context );
+		exchange.setQueryProfiler( profiler );
+		exchange.execute( "/queries/orders.bxm", "GET" );
+
+		assertThat( exchange.getResponseStatus() ).isEqualTo( 200 );
+		IStruct profile = exchange.getQueryProfile();
+		// The list, one lookup per customer and the repeated count
+		assertThat( profile.get( Key.of( "queries" ) ) ).isEqualTo( 12L );
+
+		IStruct nPlusOne = first( profile, "nPlusOne" );
+		assertThat( nPlusOne.get( Key.of( "sql" ) ) ).isEqualTo( "select id, total from orders where customer_id = ?" );
+		assertThat( nPlusOne.get( Key.of( "count" ) ) ).isEqualTo( 6L );
+		assertThat( nPlusOne.get( Key.of( "rows" ) ) ).isEqualTo( 6L );
+		assertThat( ( String ) nPlusOne.get( Key.of( "origin" ) ) ).contains( "orders.bxm" );
+		assertThat( first( profile, "duplicates" ).get( Key.of( "count" ) ) ).isEqualTo( 5L );
+
+		// Once the exchange is done the listener is gone
+		exchange.setQueryProfiler( null );
+		exchange.execute( "/queries/orders.bxm", "GET" );
+		assertThat( profiler.getStats().get( Key.of( "executions" ) ) ).isEqualTo( 1L );
+		assertThat( profiler.reset().getStats().get( Key.of( "queries" ) ) ).isEqualTo( 0L );
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.profiling;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class StackSamplerTest {
+
+	@DisplayName( "It maps BoxLang generated frames to templates and functions" )
+	@Test
+	public void testMapsBoxLangFrames() {
+		StackFrameMapper	mapper	= new StackFrameMapper( false, 64 );
+		StackTraceElement[]	frames	= new StackTraceElement[] {
+		    new StackTraceElement( "boxgenerated.templates.app.models.UserService$bx$Func_getUsers", "_invoke", "UserService.bx", 42 ),
+		    new StackTraceElement( "boxgenerated.templates.app.models.UserService$bx$Func_getUsers", "invoke", "UserService.bx", 40 ),
+		    new StackTraceElement( "boxgenerated.templates.app.Index$bxm", "_invoke", null, 3 ),
+		    new StackTraceElement( "ortus.boxlang.web.WebRequestExecutor", "execute", "WebRequestExecutor.java", 120 )
+		};
+
+		assertThat( mapper.collapse( "/index.bxm", frames ) )
+		    .isEqualTo( "/index.bxm;WebRequestExecutor.execute;Index.bxm;UserService.bx:getUsers()" );
+		assertThat( new StackFrameMapper( true, 64 ).collapse( "/index.bxm", frames ) )
+		    .isEqualTo( "/index.bxm;Index.bxm;UserService.bx:getUsers()" );
+		assertThat( new StackFrameMapper( true, 2 ).collapse( "/", frames ) )
+		    .isEqualTo( "/;UserService.bx:getUsers()" );
+	}
+
+	@DisplayName( "It samples active threads into collapsed stacks per request path" )
+	@Test
+	public void testSamplesActiveThreads() throws Exception {
+		StackSampler	sampler	= new StackSampler( 1000, false, 256 );
+		CountDownLatch	started	= new CountDownLatch( 1 );
+		CountDownLatch	done	= new CountDownLatch( 1 );
+
+		Thread			worker	= new Thread( () -> {
+									sampler.begin( "api/users" );
+									try {
+										started.countDown();
+										done.await();
+									} catch ( InterruptedException e ) {
+										Thread.currentThread().interrupt();
+									} finally {
+										sampler.end();
+									}
+								} );
+		worker.start();
+		started.await();
+		while ( worker.getState() != Thread.State.WAITING ) {
+			Thread.onSpinWait();
+		}
+
+		sampler.sample();
+		sampler.sample();
+		done.countDown();
+		worker.join();
+		sampler.shutdown();
+
+		String collapsed = sampler.getCollapsedStacks( "/api/users" );
+		assertThat( collapsed ).startsWith( "/api/users;" );
+		assertThat( collapsed ).contains( "CountDownLatch.await" );
+		assertThat( collapsed.trim() ).endsWith( " 2" );
+		assertThat( sampler.getCollapsedStacks() ).isEqualTo( collapsed );
+
+		sampler.reset();
+		assertThat( sampler.getCollapsedStacks() ).isEmpty();
+	}
+
+}
@@ -0,0 +1,115 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.snapshot;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.Array;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+import ortus.boxlang.websupport.BaseIntegrationTest;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+
+public class SnapshotStoreTest extends BaseIntegrationTest {
+
+	private static final String	WEBROOT	= Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString();
+
+	@TempDir
+	Path						tempDir;
+
+	private MockHTTPExchange execute( String responseMode ) {
+		MockHTTPExchange exchange = new MockHTTPExchange( WEBROOT, "localhost", 8080, false, context );
+		exchange.setResponseMode( responseMode );
+		exchange.setRequestPath( "/index.bxm" );
+		exchange.setRequestMethod( "GET" );
+		return exchange.execute();
+	}
+
+	@DisplayName( "It normalizes timestamps, uuids and ids" )
+	@Test
+	public void testNormalizers() {
+		String body = "{\"id\":42,\"userId\": 7,\"at\":\"2025-12-10T12:39:40.123Z\",\"token\":\"3f2504e0-4f89-11d3-9a0c-0305e82c3301\"}";
+		String normalized = Normalizer.builtIn( "ids" ).apply( Normalizer.builtIn( "uuids" ).apply( Normalizer.builtIn( "timestamps" ).apply( body ) ) );
+		assertThat( normalized ).isEqualTo( "{\"id\":<id>,\"userId\": <id>,\"at\":\"<timestamp>\",\"token\":\"<uuid>\"}" );
+		assertThat( Normalizer.of( "csrf", "csrf=\\w+", "csrf=x" ).apply( "a csrf=abc1 b" ) ).isEqualTo( "a csrf=x b" );
+		assertThrows( BoxRuntimeException.class, () -> Normalizer.builtIn( "dates" ) );
+	}
+
+	@DisplayName( "It round trips index lines with escaped fields" )
+	@Test
+	public void testIndexLine() {
+		Snapshot snapshot = new Snapshot( "GET /search?q=a\tb", 200, 1234, "00ff00ff00ff00ff", Map.of( "content-type", "text/html; charset=UTF-8" ) );
+		assertThat( Snapshot.fromIndexLine( snapshot.toIndexLine() ) ).isEqualTo( snapshot );
+	}
+
+	@DisplayName( "It records, matches and reports mismatches with a diff" )
+	@Test
+	public void testVerify() {
+		String			directory	= this.tempDir.toString();
+		SnapshotStore	store		= new SnapshotStore( directory, List.of(), List.of( "Content-Type" ), true, false );
+		assertThat( store.verify( execute( "buffer" ) ).get( Key.of( "result" ) ) ).isEqualTo( "new" );
+		store.save();
+
+		// A fresh store loads the index and verifies by hash only, even without a buffered body
+		SnapshotStore reloaded = new SnapshotStore( directory, List.of(), List.of( "Content-Type" ), false, false );
+		assertThat( reloaded.size() ).isEqualTo( 1 );
+		assertThat( reloaded.verify( execute( "checksum" ) ).get( Key.of( "result" ) ) ).isEqualTo( "match" );
+		assertThat( reloaded.verify( execute( "buffer" ) ).get( Key.of( "result" ) ) ).isEqualTo( "match" );
+		assertThat( reloaded.isClean() ).isTrue();
+
+		// A normalizer that rewrites the greeting makes the body differ from the recorded one
+		SnapshotStore	changed	= new SnapshotStore( directory, List.of( Normalizer.of( "greeting", "Hello", "Goodbye" ) ), List.of( "Content-Type" ), false,
+		    false );
+		IStruct			report	= changed.verify( execute( "buffer" ) );
+		assertThat( report.get( Key.of( "result" ) ) ).isEqualTo( "mismatch" );
+		assertThat( ( ( IStruct ) report.get( Key.of( "diff" ) ) ).getAsString( Key.of( "actual" ) ) ).contains( "Goodbye" );
+		assertThat( changed.isClean() ).isFalse();
+		assertThrows( BoxRuntimeException.class, () -> changed.verify( execute( "checksum" ) ) );
+
+		// Once the response matches again, the actual body of the mismatch is stale and removed
+		Path actualFile = Path.of( report.getAsString( Key.of( "actualFile" ) ) );
+		assertThat( Files.exists( actualFile ) ).isTrue();
+		assertThat( reloaded.verify( execute( "buffer" ) ).get( Key.of( "result" ) ) ).isEqualTo( "match" );
+		assertThat( Files.exists( actualFile ) ).isFalse();
+	}
+
+	@DisplayName( "It reports a header configuration change as its own reason" )
+	@Test
+	public void testHeaderConfigChange() {
+		String			directory	= this.tempDir.toString();
+		SnapshotStore	store		= new SnapshotStore( directory, List.of(), List.of( "Content-Type" ), false, false );
+		store.verify( execute( "checksum" ) );
+		store.save();
+
+		SnapshotStore	changed	= new SnapshotStore( directory, List.of(), List.of( "Content-Type", "X-Powered-By" ), false, false );
+		IStruct			report	= changed.verify( execute( "checksum" ) );
+		assertThat( report.get( Key.of( "result" ) ) ).isEqualTo( "mismatch" );
+		Array reasons = ( Array ) report.get( Key.of( "reasons" ) );
+		assertThat( reasons ).hasSize( 1 );
+		assertThat( ( String ) reasons.get( 0 ) ).contains( "headers recorded [content-type] != configured [content-type, x-powered-by]" );
+	}
+
+}
@@ -0,0 +1,116 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.stub;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+public class RouteStubRegistryTest {
+
+	private static String nameOf( RouteStubRegistry.Match match ) {
+		return match == null ? null : match.route().getName();
+	}
+
+	@DisplayName( "It prefers literal segments, then parameters, then the rest of the path" )
+	@Test
+	public void testPriority() {
+		RouteStubRegistry registry = new RouteStubRegistry();
+		registry.addRoute( new StubRoute( "GET", "/api/*" ).setName( "rest" ) );
+		registry.addRoute( new StubRoute( "GET", "/api/users/:id" ).setName( "user" ) );
+		registry.addRoute( new StubRoute( "GET", "/api/users/me" ).setName( "me" ) );
+		registry.addRoute( new StubRoute( "GET", "/api/{resource}/*/history" ).setName( "history" ) );
+
+		assertThat( nameOf( registry.match( "GET", "/api/users/me" ) ) ).isEqualTo( "me" );
+		assertThat( nameOf( registry.match( "get", "/api/users/42?tab=orders" ) ) ).isEqualTo( "user" );
+		assertThat( nameOf( registry.match( "GET", "/api/orders/7/history/" ) ) ).isEqualTo( "history" );
+		assertThat( nameOf( registry.match( "GET", "/api/users/42/avatar" ) ) ).isEqualTo( "rest" );
+		assertThat( nameOf( registry.match( "GET", "/api" ) ) ).isEqualTo( "rest" );
+		assertThat( registry.match( "GET", "/index.bxm" ) ).isNull();
+
+		assertThat( registry.match( "GET", "/api/users/42" ).params() ).containsExactly( "id", "42" );
+		assertThat( registry.match( "GET", "/api/orders/7/history" ).params() ).containsExactly( "resource", "orders" );
+	}
+
+	@DisplayName( "It backtracks to another branch when a route does not answer the method" )
+	@Test
+	public void testMethods() {
+		RouteStubRegistry registry = new RouteStubRegistry();
+		registry.addRoute( new StubRoute( "POST", "/api/users/me" ).setName( "update me" ) );
+		registry.addRoute( new StubRoute( "*", "/api/users/:id" ).setName( "user" ) );
+		registry.addRoute( new StubRoute( "DELETE", "/api/users/:id" ).setName( "delete user" ) );
+
+		assertThat( nameOf( registry.match( "POST", "/api/users/me" ) ) ).isEqualTo( "update me" );
+		assertThat( nameOf( registry.match( "GET", "/api/users/me" ) ) ).isEqualTo( "user" );
+		assertThat( nameOf( registry.match( "DELETE", "/api/users/me" ) ) ).isEqualTo( "delete user" );
+	}
+
+	@DisplayName( "It backtracks from a literal branch to overlapping parameter routes" )
+	@Test
+	public void testOverlappingRoutes() {
+		RouteStubRegistry registry = new RouteStubRegistry();
+		registry.addRoute( new StubRoute( "GET", "/api/users/me/settings" ).setName( "settings" ) );
+		registry.addRoute( new StubRoute( "GET", "/api/users/:id/posts" ).setName( "posts" ) );
+		registry.addRoute( new StubRoute( "GET", "/api/:resource/:id" ).setName( "resource" ) );
+		registry.addRoute( new StubRoute( "GET", "/api/*" ).setName( "rest" ) );
+
+		assertThat( nameOf( registry.match( "GET", "/api/users/me/settings" ) ) ).isEqualTo( "settings" );
+		assertThat( nameOf( registry.match( "GET", "/api/users/me/posts" ) ) ).isEqualTo( "posts" );
+		assertThat( nameOf( registry.match( "GET", "/api/users/me" ) ) ).isEqualTo( "resource" );
+		assertThat( nameOf( registry.match( "GET", "/api/users/me/avatar" ) ) ).isEqualTo( "rest" );
+
+		// The captures of the abandoned branches do not leak into the match
+		assertThat( registry.match( "GET", "/api/users/me/posts" ).params() ).containsExactly( "id", "me" );
+		assertThat( registry.match( "GET", "/api/users/me" ).params() ).containsExactly( "resource", "users", "id", "me" ).inOrder();
+	}
+
+	@DisplayName( "It replaces, removes and clears routes" )
+	@Test
+	public void testRoutes() {
+		RouteStubRegistry registry = new RouteStubRegistry();
+		registry.addRoute( new StubRoute( "GET", "/" ).setName( "home" ) );
+		registry.addRoute( new StubRoute( "GET", "/pricing/:sku" ).setStatus( 200 ) );
+		registry.addRoute( new StubRoute( "get", "/pricing/{sku}/" ).setStatus( 503 ) );
+		// Parameter names aside the patterns are the same, the last route wins
+		assertThat( registry.size() ).isEqualTo( 2 );
+		assertThat( nameOf( registry.match( "GET", "" ) ) ).isEqualTo( "home" );
+		assertThat( registry.match( "GET", "/pricing/A1" ).route().getStatus() ).isEqualTo( 503 );
+		assertThat( registry.removeRoute( "GET", "/pricing/:id" ).getStatus() ).isEqualTo( 503 );
+		assertThat( registry.match( "GET", "/pricing/A1" ) ).isNull();
+		assertThat( registry.removeRoute( "GET", "/pricing/:sku" ) ).isNull();
+
+		registry.clearRoutes();
+		assertThat( registry.isEmpty() ).isTrue();
+		assertThat( registry.match( "GET", "/" ) ).isNull();
+		assertThrows( BoxRuntimeException.class, () -> registry.addRoute( new StubRoute( "GET", "/pricing/v*/list" ) ) );
+	}
+
+	@DisplayName( "It matches regardless of the number of routes" )
+	@Test
+	public void testManyRoutes() {
+		RouteStubRegistry registry = new RouteStubRegistry();
+		for ( int i = 0; i < 5_000; i++ ) {
+			registry.addRoute( new StubRoute( "GET", "/api/v1/resource" + i + "/:id/items/{item}" ).setName( "route" + i ) );
+		}
+		RouteStubRegistry.Match match = registry.match( "GET", "/api/v1/resource4321/17/items/3" );
+		assertThat( nameOf( match ) ).isEqualTo( "route4321" );
+		assertThat( match.params() ).containsExactly( "id", "17", "item", "3" ).inOrder();
+		assertThat( registry.match( "GET", "/api/v1/resource4321/17/items" ) ).isNull();
+	}
+}
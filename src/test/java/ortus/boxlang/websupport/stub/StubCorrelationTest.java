@@ -0,0 +1,83 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.stub;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.websupport.BaseIntegrationTest;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+
+public class StubCorrelationTest extends BaseIntegrationTest {
+
+	private static final String WEBROOT = Path.of( "src/test/resources/webroot" ).toAbsolutePath().toString();
+
+	@AfterEach
+	public void stopServer() {
+		StubServer.stop( "correlation" );
+	}
+
+	@DisplayName( "It attributes the http calls of concurrent executions to their own execution" )
+	@Test
+	public void testConcurrentExecutions() throws InterruptedException {
+		StubServer server = StubServer.start( "correlation", 0 );
+		// Slow enough for the executions to overlap
+		server.stub( Struct.of( "path", "/ping", "name", "ping", "latency", 100 ) );
+
+		List<MockHTTPExchange>	exchanges	= List.of(
+		    new MockHTTPExchange( WEBROOT, "localhost", 8080, false, context ),
+		    new MockHTTPExchange( WEBROOT, "localhost", 8080, false, context )
+		);
+		CountDownLatch			start		= new CountDownLatch( 1 );
+		Thread[]				threads		= new Thread[ exchanges.size() ];
+		for ( int i = 0; i < exchanges.size(); i++ ) {
+			MockHTTPExchange exchange = exchanges.get( i );
+			exchange.addURLParam( "target", server.getBaseURL() );
+			exchange.addURLParam( "calls", i + 2 );
+			threads[ i ] = Thread.ofPlatform().start( () -> {
+				try {
+					start.await();
+					exchange.execute( "/stub/calls.bxm", "GET" );
+				} catch ( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+				}
+			} );
+		}
+		start.countDown();
+		for ( Thread thread : threads ) {
+			thread.join();
+		}
+
+		for ( int i = 0; i < exchanges.size(); i++ ) {
+			MockHTTPExchange exchange = exchanges.get( i );
+			assertThat( exchange.getResponseStatus() ).isEqualTo( 200 );
+			IStruct ping = ( IStruct ) exchange.getDownstreamCalls().get( Key.of( "ping" ) );
+			assertThat( ping.get( Key.of( "calls" ) ) ).isEqualTo( ( long ) i + 2 );
+		}
+		IStruct stats = server.getStats();
+		assertThat( stats.get( Key.of( "untagged" ) ) ).isEqualTo( 0L );
+		assertThat( stats.get( Key.of( "unattributed" ) ) ).isEqualTo( 0L );
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package ortus.boxlang.websupport.stub;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.types.IStruct;
+import ortus.boxlang.runtime.types.Struct;
+import ortus.boxlang.runtime.types.exceptions.BoxRuntimeException;
+
+public class StubServerTest {
+
+	private final HttpClient client = HttpClient.newHttpClient();
+
+	@AfterEach
+	public void stopServers() {
+		StubServer.stopAll();
+	}
+
+	private HttpResponse<String> call( StubServer server, String method, String path ) throws Exception {
+		HttpRequest request = HttpRequest.newBuilder( URI.create( server.getBaseURL() + path ) )
+		    .method( method, HttpRequest.BodyPublishers.noBody() )
+		    .build();
+		return this.client.send( request, HttpResponse.BodyHandlers.ofString() );
+	}
+
+	@DisplayName( "It fits a log-normal distribution through a median and a p99" )
+	@Test
+	public void testPercentilesDistribution() {
+		LatencyDistribution	distribution	= LatencyDistribution.percentiles( 50, 2000 );
+		SplittableRandom	random			= new SplittableRandom( 42 );
+		double[]			samples			= new double[ 100_000 ];
+		for ( int i = 0; i < samples.length; i++ ) {
+			samples[ i ] = distribution.sample( random );
+		}
+		Arrays.sort( samples );
+		assertThat( samples[ samples.length / 2 ] ).isWithin( 5 ).of( 50 );
+		assertThat( samples[ ( int ) ( samples.length * 0.99 ) ] ).isWithin( 250 ).of( 2000 );
+
+		assertThat( LatencyDistribution.of( 25 ).sample( random ) ).isEqualTo( 25.0 );
+		double uniform = LatencyDistribution.of( Struct.of( "min", 10, "max", 20 ) ).sample( random );
+		assertThat( uniform ).isAtLeast( 10.0 );
+		assertThat( uniform ).isAtMost( 20.0 );
+		assertThrows( BoxRuntimeException.class, () -> LatencyDistribution.percentiles( 100, 50 ) );
+	}
+
+	@DisplayName( "It answers matching calls with the canned response after the latency" )
+	@Test
+	public void testCannedResponses() throws Exception {
+		StubServer server = StubServer.start( "test", 0 );
+		server.stub( Struct.of( "method", "GET", "path", "/api/users/*", "body", "{\"id\":1}", "contentType", "application/json", "latency", 30 ) );
+		server.stub( Struct.of( "path", "/api/flaky", "errorRate", 1, "errorStatus", 502 ) );
+
+		HttpResponse<String> response = call( server, "GET", "/api/users/1?expand=true" );
+		assertThat( response.statusCode() ).isEqualTo( 200 );
+		assertThat( response.body() ).isEqualTo( "{\"id\":1}" );
+		assertThat( response.headers().firstValue( "Content-Type" ).orElse( "" ) ).isEqualTo( "application/json" );
+
+		assertThat( call( server, "POST", "/api/users/1" ).statusCode() ).isEqualTo( 404 );
+		assertThat( call( server, "DELETE", "/api/flaky" ).statusCode() ).isEqualTo( 502 );
+
+		IStruct	stats	= server.getStats();
+		IStruct	users	= ( IStruct ) ( ( IStruct ) stats.get( Key.of( "routes" ) ) ).get( Key.of( "GET /api/users/*" ) );
+		assertThat( stats.get( Key.of( "unmatched" ) ) ).isEqualTo( 1L );
+		assertThat( users.get( Key.of( "calls" ) ) ).isEqualTo( 1L );
+		assertThat( ( double ) ( ( IStruct ) users.get( Key.of( "latency" ) ) ).get( Key.of( "max" ) ) ).isAtLeast( 30.0 );
+		assertThat( server.getRoute( "* /api/flaky" ).getStats().get( Key.of( "errors" ) ) ).isEqualTo( 1L );
+
+		assertThrows( BoxRuntimeException.class, () -> StubServer.start( "test", 0 ) );
+		assertThat( StubServer.stop( "test" ) ).isTrue();
+		assertThat( StubServer.get( "test" ) ).isNull();
+	}
+
+	@DisplayName( "It throttles the body to the route bandwidth" )
+	@Test
+	public void testBandwidth() throws Exception {
+		StubServer server = StubServer.start( "test", 0 );
+		server.addRoute( new StubRoute( "GET", "/download" ).setBody( "x".repeat( 2000 ) ).setBandwidth( 10_000 ) );
+
+		long					start		= System.nanoTime();
+		HttpResponse<String>	response	= call( server, "GET", "/download" );
+		assertThat( response.body() ).hasLength( 2000 );
+		assertThat( ( System.nanoTime() - start ) / 1_000_000 ).isAtLeast( 150L );
+	}
+
+	@DisplayName( "It attributes calls to the single running execution" )
+	@Test
+	public void testAttribution() throws Exception {
+		assertThat( StubServer.track() ).isNull();
+
+		StubServer server = StubServer.start( "test", 0 );
+		server.stub( Struct.of( "path", "/ping", "name", "ping" ) );
+
+		DownstreamCalls calls = StubServer.track();
+		call( server, "GET", "/ping" );
+		call( server, "GET", "/ping" );
+		DownstreamCalls other = StubServer.track();
+		call( server, "GET", "/ping" );
+		StubServer.untrack( other );
+		StubServer.untrack( calls );
+
+		IStruct ping = ( IStruct ) calls.toStruct().get( Key.of( "ping" ) );
+		assertThat( ping.get( Key.of( "calls" ) ) ).isEqualTo( 2L );
+		assertThat( other.toStruct() ).isEmpty();
+		assertThat( server.getStats().get( Key.of( "unattributed" ) ) ).isEqualTo( 1L );
+		assertThat( server.getStats().get( Key.of( "untagged" ) ) ).isEqualTo( 3L );
+	}
+
+	@DisplayName( "It attributes tagged calls to their execution while several run at once" )
+	@Test
+	public void testCorrelation() throws Exception {
+		StubServer server = StubServer.start( "test", 0 );
+		server.stub( Struct.of( "path", "/ping", "name", "ping" ) );
+
+		DownstreamCalls		first	= StubServer.track();
+		DownstreamCalls		second	= StubServer.track();
+		HttpRequest.Builder	builder	= HttpRequest.newBuilder( URI.create( server.getBaseURL() + "/ping" ) );
+		assertThat( StubCorrelator.tag( Struct.of( "requestBuilder", builder ), second ) ).isTrue();
+		assertThat( StubCorrelator.tag( Struct.of( "httpRequest", builder.build() ), second ) ).isFalse();
+		assertThat( StubCorrelator.correlate( null, Struct.of( "requestBuilder", builder ) ) ).isFalse();
+		this.client.send( builder.build(), HttpResponse.BodyHandlers.discarding() );
+		this.client.send( builder.build(), HttpResponse.BodyHandlers.discarding() );
+		StubServer.untrack( second );
+		// The execution of a late call is over, it is not attributed to another one
+		this.client.send( builder.build(), HttpResponse.BodyHandlers.discarding() );
+		StubServer.untrack( first );
+
+		IStruct ping = ( IStruct ) second.toStruct().get( Key.of( "ping" ) );
+		assertThat( ping.get( Key.of( "calls" ) ) ).isEqualTo( 2L );
+		assertThat( first.toStruct() ).isEmpty();
+		assertThat( server.getStats().get( Key.of( "unattributed" ) ) ).isEqualTo( 1L );
+		assertThat( server.getStats().get( Key.of( "untagged" ) ) ).isEqualTo( 0L );
+	}
+
+}
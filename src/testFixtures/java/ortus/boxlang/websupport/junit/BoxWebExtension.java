@@ -0,0 +1,321 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.junit;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolver;
+import org.junit.platform.commons.support.AnnotationSupport;
+
+import ortus.boxlang.runtime.BoxRuntime;
+import ortus.boxlang.runtime.context.IBoxContext;
+import ortus.boxlang.runtime.context.ScriptingRequestBoxContext;
+import ortus.boxlang.runtime.modules.ModuleRecord;
+import ortus.boxlang.runtime.scopes.Key;
+import ortus.boxlang.runtime.services.ModuleService;
+import ortus.boxlang.websupport.exchange.MockHTTPExchange;
+
+/**
+ * A JUnit 5 extension for testing BoxLang web applications with mock requests.
+ * <p>
+ * The BoxLang runtime and this module are booted once per JVM, on the first test class that uses the extension, and shared by
+ * every test class after it. The extension then resolves these parameters of test, lifecycle and constructor methods:
+ * <ul>
+ * <li>{@code MockHTTPExchange}: a new, initialized exchange configured by an optional {@link MockWebRequest} annotation</li>
+ * <li>{@code ScriptingRequestBoxContext} or {@code IBoxContext}: the caller context of the first exchange injected into the
+ * same test (or class), a child of the web context that exchange is created with, so web BIFs run through it see the mock.
+ * {@code execute()} runs in a web context of its own: read its results through the exchange, not through this context.
+ * Later exchanges of the same test get their own caller context</li>
+ * <li>{@code BoxRuntime}: the shared runtime</li>
+ * </ul>
+ * Each exchange gets its own request context and nothing is shared between tests, so classes and methods can run with JUnit
+ * parallel execution. Exchanges are cleared once the test (or, for class level injection, the class) completes.
+ * <p>
+ * The boot is configured through JUnit configuration parameters, for example in {@code junit-platform.properties}:
+ * <ul>
+ * <li>{@value #CONFIG_PARAMETER}: the runtime config file, defaults to {@code src/test/resources/boxlang.json} when it exists</li>
+ * <li>{@value #MODULE_PATH_PARAMETER}: the built module folder to load, defaults to {@code build/module}</li>
+ * <li>{@value #WEBROOT_PARAMETER}: the default webroot, defaults to {@code src/test/resources/webroot}</li>
+ * </ul>
+ */
+public class BoxWebExtension implements BeforeAllCallback, AfterEachCallback, AfterAllCallback, ParameterResolver {
+
+	/**
+	 * The configuration parameter holding the runtime config file
+	 */
+	public static final String						CONFIG_PARAMETER		= "boxlang.websupport.config";
+
+	/**
+	 * The configuration parameter holding the module folder to load
+	 */
+	public static final String						MODULE_PATH_PARAMETER	= "boxlang.websupport.modulePath";
+
+	/**
+	 * The configuration parameter holding the default webroot
+	 */
+	public static final String						WEBROOT_PARAMETER		= "boxlang.websupport.webroot";
+
+	/**
+	 * The store namespace of the values shared by the whole launcher session
+	 */
+	private static final ExtensionContext.Namespace	NAMESPACE				= ExtensionContext.Namespace.create( BoxWebExtension.class );
+
+	/**
+	 * The defaults of the configuration parameters
+	 */
+	private static final Path						DEFAULT_CONFIG			= Path.of( "src/test/resources/boxlang.json" );
+	private static final String						DEFAULT_MODULE_PATH		= "build/module";
+	private static final String						DEFAULT_WEBROOT			= "src/test/resources/webroot";
+
+	/**
+	 * The name the module is registered under
+	 */
+	private static final Key						MODULE_NAME				= new Key( "bxwebsupport" );
+
+	/**
+	 * Store keys
+	 */
+	private static final String						RUNTIME_KEY				= "runtime";
+	private static final String						CONTEXT_KEY				= "context";
+	private static final String						EXCHANGES_KEY			= "exchanges";
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Callbacks
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	@Override
+	public void beforeAll( ExtensionContext context ) {
+		getRuntime( context );
+	}
+
+	@Override
+	public void afterEach( ExtensionContext context ) {
+		release( context );
+	}
+
+	@Override
+	public void afterAll( ExtensionContext context ) {
+		release( context );
+	}
+
+	@Override
+	public boolean supportsParameter( ParameterContext parameterContext, ExtensionContext extensionContext ) {
+		Class<?> type = parameterContext.getParameter().getType();
+		return type == MockHTTPExchange.class
+		    || type == ScriptingRequestBoxContext.class
+		    || type == IBoxContext.class
+		    || type == BoxRuntime.class;
+	}
+
+	@Override
+	public Object resolveParameter( ParameterContext parameterContext, ExtensionContext extensionContext ) {
+		Class<?>	type	= parameterContext.getParameter().getType();
+		BoxRuntime	runtime	= getRuntime( extensionContext );
+		if ( type == BoxRuntime.class ) {
+			return runtime;
+		}
+		if ( type == MockHTTPExchange.class ) {
+			return newExchange( parameterContext.findAnnotation( MockWebRequest.class ).orElse( null ), extensionContext );
+		}
+		return getCaller( extensionContext ).context();
+	}
+
+	/**
+	 * ------------------------------------------------------------------------------------
+	 * Helpers
+	 * ------------------------------------------------------------------------------------
+	 */
+
+	/**
+	 * Get the shared runtime, booting it and loading the module on first use.
+	 * The root store lives as long as the launcher session, concurrent callers wait for the single boot.
+	 *
+	 * @param context Any extension context
+	 *
+	 * @return The shared runtime
+	 */
+	public static BoxRuntime getRuntime( ExtensionContext context ) {
+		ExtensionContext root = context.getRoot();
+		return root.getStore( NAMESPACE ).computeIfAbsent( RUNTIME_KEY, key -> boot( root ), BoxRuntime.class );
+	}
+
+	/**
+	 * Boot the runtime and load the module
+	 *
+	 * @param context The root extension context
+	 *
+	 * @return The runtime
+	 */
+	private static BoxRuntime boot( ExtensionContext context ) {
+		String		config	= context.getConfigurationParameter( CONFIG_PARAMETER )
+		    .orElse( Files.exists( DEFAULT_CONFIG ) ? DEFAULT_CONFIG.toString() : null );
+		BoxRuntime	runtime	= config == null ? BoxRuntime.getInstance( true ) : BoxRuntime.getInstance( true, config );
+		loadModule( runtime, context.getConfigurationParameter( MODULE_PATH_PARAMETER ).orElse( DEFAULT_MODULE_PATH ) );
+		return runtime;
+	}
+
+	/**
+	 * Load the module into the runtime unless a previous boot or test base class already did. Every caller in the JVM, this
+	 * extension and the test base classes alike, must load the module through here so they share the same guard.
+	 *
+	 * @param runtime    The runtime
+	 * @param modulePath The built module folder
+	 *
+	 * @return The record of the loaded module
+	 */
+	public static synchronized ModuleRecord loadModule( BoxRuntime runtime, String modulePath ) {
+		ModuleService moduleService = runtime.getModuleService();
+		if ( moduleService.hasModule( MODULE_NAME ) ) {
+			return moduleService.getRegistry().get( MODULE_NAME );
+		}
+		IBoxContext		context			= runtime.getRuntimeContext();
+		ModuleRecord	moduleRecord	= new ModuleRecord( Path.of( modulePath ).toAbsolutePath().toString() );
+		moduleService.getRegistry().put( MODULE_NAME, moduleRecord );
+		moduleRecord
+		    .loadDescriptor( context )
+		    .register( context )
+		    .activate( context );
+		return moduleRecord;
+	}
+
+	/**
+	 * Create an exchange for a parameter and track it for cleanup
+	 *
+	 * @param request The parameter annotation, or null for the defaults
+	 * @param context The extension context of the method being injected
+	 *
+	 * @return The initialized exchange, with its web context attached to its caller context
+	 */
+	private static MockHTTPExchange newExchange( MockWebRequest request, ExtensionContext context ) {
+		String				webroot		= request == null || request.webroot().isBlank() ? defaultWebroot( context ) : request.webroot();
+		MockHTTPExchange	exchange	= new MockHTTPExchange(
+		    Path.of( webroot ).toAbsolutePath().toString(),
+		    request == null ? "localhost" : request.host(),
+		    request == null ? 8080 : request.port(),
+		    request != null && request.secure(),
+		    getCaller( context ).claim()
+		);
+		if ( request != null ) {
+			exchange.setResponseMode( request.responseMode() );
+			exchange.setRequestPath( request.path() );
+			exchange.setRequestMethod( request.method() );
+		} else {
+			exchange.setRequestPath( "/" );
+			exchange.setRequestMethod( "GET" );
+		}
+		// The web context is lazy, attach it now so web BIFs run through the caller context see the mock
+		exchange.initializeWebContext();
+		getExchanges( context ).add( exchange );
+		return exchange;
+	}
+
+	/**
+	 * Resolve the default webroot: the test class annotation first, then the configuration parameter
+	 *
+	 * @param context The extension context
+	 *
+	 * @return The webroot
+	 */
+	private static String defaultWebroot( ExtensionContext context ) {
+		return context.getTestClass()
+		    .flatMap( testClass -> AnnotationSupport.findAnnotation( testClass, BoxWebTest.class ) )
+		    .map( BoxWebTest::webroot )
+		    .filter( webroot -> !webroot.isBlank() )
+		    .or( () -> context.getConfigurationParameter( WEBROOT_PARAMETER ) )
+		    .orElse( DEFAULT_WEBROOT );
+	}
+
+	/**
+	 * Get the store of a single extension context. Stores look values up through their parents, so the namespace is scoped to
+	 * the context to keep a class level exchange or request context from leaking into its (possibly parallel) tests.
+	 *
+	 * @param context The extension context
+	 *
+	 * @return The store
+	 */
+	private static ExtensionContext.Store getStore( ExtensionContext context ) {
+		return context.getStore( ExtensionContext.Namespace.create( BoxWebExtension.class, context.getUniqueId() ) );
+	}
+
+	/**
+	 * Get the caller context of an extension context, the one its first exchange is attached to
+	 *
+	 * @param context The extension context
+	 *
+	 * @return The caller context
+	 */
+	private static Caller getCaller( ExtensionContext context ) {
+		return getStore( context ).computeIfAbsent( CONTEXT_KEY, key -> new Caller( new ScriptingRequestBoxContext(), new AtomicBoolean() ),
+		    Caller.class );
+	}
+
+	/**
+	 * Get the exchanges created for an extension context
+	 *
+	 * @param context The extension context
+	 *
+	 * @return The exchanges
+	 */
+	@SuppressWarnings( "unchecked" )
+	private static Queue<MockHTTPExchange> getExchanges( ExtensionContext context ) {
+		return getStore( context ).computeIfAbsent( EXCHANGES_KEY, key -> new ConcurrentLinkedQueue<>(), Queue.class );
+	}
+
+	/**
+	 * Clear the exchanges and drop the request context of an extension context
+	 *
+	 * @param context The extension context
+	 */
+	@SuppressWarnings( "unchecked" )
+	private static void release( ExtensionContext context ) {
+		ExtensionContext.Store	store		= getStore( context );
+		Queue<MockHTTPExchange>	exchanges	= store.remove( EXCHANGES_KEY, Queue.class );
+		if ( exchanges != null ) {
+			exchanges.forEach( MockHTTPExchange::clearAll );
+		}
+		store.remove( CONTEXT_KEY );
+	}
+
+	/**
+	 * The caller context of an extension context. A web context becomes the parent of the caller context it is attached to,
+	 * so only one exchange can claim it.
+	 *
+	 * @param context The caller context injected as {@code IBoxContext}
+	 * @param claimed Whether an exchange is attached to the context
+	 */
+	private record Caller( ScriptingRequestBoxContext context, AtomicBoolean claimed ) {
+
+		/**
+		 * @return The caller context for a new exchange: this one for the first exchange, a new one after it
+		 */
+		ScriptingRequestBoxContext claim() {
+			return this.claimed.compareAndSet( false, true ) ? this.context : new ScriptingRequestBoxContext();
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.junit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+/**
+ * Marks a test class as a BoxLang web test.
+ * <p>
+ * Registers the {@link BoxWebExtension}, which boots the BoxLang runtime and this module once per JVM and injects a fresh
+ * {@code MockHTTPExchange} into every parameter annotated with {@link MockWebRequest}.
+ *
+ * <pre>
+ * &#64;BoxWebTest( webroot = "src/test/resources/webroot" )
+ * class HomePageTest {
+ *
+ * 	&#64;Test
+ * 	void rendersHome( &#64;MockWebRequest( path = "/index.bxm" ) MockHTTPExchange exchange ) {
+ * 		assertThat( exchange.execute().getResponseStatus() ).isEqualTo( 200 );
+ * 	}
+ * }
+ * </pre>
+ */
+@Target( ElementType.TYPE )
+@Retention( RetentionPolicy.RUNTIME )
+@Documented
+@Inherited
+@ExtendWith( BoxWebExtension.class )
+public @interface BoxWebTest {
+
+	/**
+	 * The default webroot of the exchanges injected into this class, relative to the working directory.
+	 * Empty to use the {@value BoxWebExtension#WEBROOT_PARAMETER} configuration parameter.
+	 *
+	 * @return The default webroot
+	 */
+	String webroot() default "";
+}
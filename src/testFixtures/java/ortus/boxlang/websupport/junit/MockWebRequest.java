@@ -0,0 +1,73 @@
+/**
+ * [BoxLang]
+ *
+ * Copyright [2023] [Ortus Solutions, Corp]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ortus.boxlang.websupport.junit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Configures the {@code MockHTTPExchange} the {@link BoxWebExtension} injects into a test or lifecycle method parameter.
+ * <p>
+ * Every annotated parameter receives its own exchange with its own request context, so tests stay isolated when JUnit runs
+ * them in parallel. The exchange is initialized but not executed, call {@code execute()} once the request is set up.
+ */
+@Target( ElementType.PARAMETER )
+@Retention( RetentionPolicy.RUNTIME )
+@Documented
+public @interface MockWebRequest {
+
+	/**
+	 * The webroot, relative to the working directory. Empty to use the {@link BoxWebTest#webroot()} of the test class.
+	 *
+	 * @return The webroot
+	 */
+	String webroot() default "";
+
+	/**
+	 * @return The request path
+	 */
+	String path() default "/";
+
+	/**
+	 * @return The request method
+	 */
+	String method() default "GET";
+
+	/**
+	 * @return The response mode: buffer, discard or checksum
+	 */
+	String responseMode() default "buffer";
+
+	/**
+	 * @return The host of the mocked server
+	 */
+	String host() default "localhost";
+
+	/**
+	 * @return The port of the mocked server
+	 */
+	int port() default 8080;
+
+	/**
+	 * @return Whether the mocked server is secure
+	 */
+	boolean secure() default false;
+}